@@ -5,7 +5,9 @@ import android.content.Context
 import android.content.SharedPreferences
 import android.net.Uri
 import android.os.Looper
+import android.os.SystemClock
 import android.text.TextUtils
+import android.util.Log
 import com.android.launcher3.*
 import com.android.launcher3.allapps.search.DefaultAppSearchAlgorithm
 import com.android.launcher3.util.ComponentKey
@@ -18,6 +20,8 @@ import org.zimmob.zimlx.groups.AppGroupsManager
 import org.zimmob.zimlx.groups.DrawerTabs
 import org.zimmob.zimlx.iconpack.IconPackManager
 import org.zimmob.zimlx.preferences.DockStyle
+import org.zimmob.zimlx.preferences.PrefStore
+import org.zimmob.zimlx.preferences.SettingsAppsList
 import org.zimmob.zimlx.settings.GridSize
 import org.zimmob.zimlx.settings.GridSize2D
 import org.zimmob.zimlx.smartspace.*
@@ -40,6 +44,8 @@ class ZimPreferences(val context: Context) : SharedPreferences.OnSharedPreferenc
     private val onChangeListeners: MutableMap<String, MutableSet<OnPreferenceChangeListener>> = HashMap()
     private var onChangeCallback: ZimPreferencesChangeCallback? = null
     val sharedPrefs = migratePrefs()
+    val prefStore = PrefStore(File(context.filesDir, PrefStore.DIR_NAME))
+    private val devicePrefStore = PrefStore(File(prefStore.dir, "device"))
 
     private fun migratePrefs(): SharedPreferences {
         val dir = context.cacheDir.parent
@@ -253,7 +259,7 @@ class ZimPreferences(val context: Context) : SharedPreferences.OnSharedPreferenc
     }
 
     val recentBackups = object : MutableListPref<Uri>(
-            Utilities.getDevicePrefs(context), "pref_recentBackups") {
+            Utilities.getDevicePrefs(context), devicePrefStore, "pref_recentBackups") {
         override fun unflattenValue(value: String) = Uri.parse(value)
     }
 
@@ -302,6 +308,8 @@ class ZimPreferences(val context: Context) : SharedPreferences.OnSharedPreferenc
 
     fun reloadIcons() {
         LauncherAppState.getInstance(context).reloadIconCache()
+        // The app pickers in settings hold on to the icons they loaded
+        SettingsAppsList.releaseIfCreated()
         runOnMainThread {
             onChangeCallback?.recreate()
         }
@@ -338,22 +346,42 @@ class ZimPreferences(val context: Context) : SharedPreferences.OnSharedPreferenc
 
 
     abstract inner class MutableListPref<T>(private val prefs: SharedPreferences,
+                                            store: PrefStore,
                                             private val prefKey: String,
-                                            onChange: () -> Unit = doNothing,
-                                            default: List<T> = emptyList()) {
+                                            private val onChange: () -> Unit = doNothing,
+                                            private val default: List<T> = emptyList()) {
 
         constructor(prefKey: String, onChange: () -> Unit = doNothing, default: List<T> = emptyList())
-                : this(sharedPrefs, prefKey, onChange, default)
+                : this(sharedPrefs, prefStore, prefKey, onChange, default)
 
-        private val valueList = ArrayList<T>()
+        private val journal = store.getJournal(prefKey)
+        private val valueList by lazy { load() }
         private val listeners: MutableSet<MutableListPrefChangeListener> = Collections.newSetFromMap(WeakHashMap())
-
-        init {
-            val arr = JSONArray(prefs.getString(prefKey, getJsonString(default)))
-            (0 until arr.length()).mapTo(valueList) { unflattenValue(arr.getString(it)) }
-            if (onChange != doNothing) {
-                onChangeMap[prefKey] = onChange
+        // Whether the journal has nothing to apply deltas to yet, the list still holds the defaults
+        private var needsSnapshot = false
+
+        private fun load(): ArrayList<T> {
+            val start = SystemClock.uptimeMillis()
+            val list = ArrayList<T>()
+            val json = prefs.getString(prefKey, null)
+            if (journal.exists()) {
+                journal.readList().mapTo(list, ::unflattenValue)
+                if (json != null) {
+                    // Left over from a migration, only dropped once the journal made it to disk
+                    prefs.edit().remove(prefKey).apply()
+                }
+            } else if (json != null) {
+                // Written before the store existed, or restored from an older backup
+                val arr = JSONArray(json)
+                (0 until arr.length()).mapTo(list) { unflattenValue(arr.getString(it)) }
+                journal.listReplace(list.map(::flattenValue), false)
+            } else {
+                // Defaults aren't written until the list is changed, so they can still change
+                list.addAll(default)
+                needsSnapshot = true
             }
+            Log.d(TAG, "Loaded $prefKey (${list.size} items) in ${SystemClock.uptimeMillis() - start}ms")
+            return list
         }
 
         fun toList() = ArrayList<T>(valueList)
@@ -367,36 +395,35 @@ class ZimPreferences(val context: Context) : SharedPreferences.OnSharedPreferenc
 
         operator fun set(position: Int, value: T) {
             valueList[position] = value
-            saveChanges()
+            edit { journal.listSet(position, flattenValue(value), blockingEditing) }
         }
 
         fun getAll(): List<T> = valueList
 
         fun setAll(value: List<T>) {
             if (value == valueList) return
-            valueList.clear()
-            valueList.addAll(value)
-            saveChanges()
+            replaceWith(value)
         }
 
         fun add(value: T) {
-            valueList.add(value)
-            saveChanges()
+            add(valueList.size, value)
         }
 
         fun add(position: Int, value: T) {
             valueList.add(position, value)
-            saveChanges()
+            edit { journal.listAdd(position, flattenValue(value), blockingEditing) }
         }
 
         fun remove(value: T) {
-            valueList.remove(value)
-            saveChanges()
+            val position = valueList.indexOf(value)
+            if (position >= 0) {
+                removeAt(position)
+            }
         }
 
         fun removeAt(position: Int) {
             valueList.removeAt(position)
-            saveChanges()
+            edit { journal.listRemove(position, blockingEditing) }
         }
 
         fun contains(value: T): Boolean {
@@ -404,9 +431,10 @@ class ZimPreferences(val context: Context) : SharedPreferences.OnSharedPreferenc
         }
 
         fun replaceWith(newList: List<T>) {
+            val values = newList.map(::flattenValue)
             valueList.clear()
             valueList.addAll(newList)
-            saveChanges()
+            edit { journal.listReplace(values, blockingEditing) }
         }
 
         fun getList() = valueList
@@ -419,18 +447,31 @@ class ZimPreferences(val context: Context) : SharedPreferences.OnSharedPreferenc
             listeners.remove(listener)
         }
 
-        private fun saveChanges() {
-            @SuppressLint("CommitPrefEdits")
-            val editor = prefs.edit()
-            editor.putString(prefKey, getJsonString(valueList))
-            if (!bulkEditing)
-                commitOrApply(editor, blockingEditing)
+        private inline fun edit(write: () -> Unit) {
+            if (bulkEditing) {
+                // Written out as a whole once the bulk edit ends
+                pendingBulkWrites[prefKey] = ::onBulkEditEnded
+                return
+            }
+            if (needsSnapshot || journal.shouldCompact(valueList.size)) {
+                // Deltas can't be applied to defaults which were never written
+                journal.listReplace(valueList.map(::flattenValue), blockingEditing)
+                needsSnapshot = false
+            } else {
+                write()
+            }
+            notifyChanged()
         }
 
-        private fun getJsonString(list: List<T>): String {
-            val arr = JSONArray()
-            list.forEach { arr.put(flattenValue(it)) }
-            return arr.toString()
+        private fun onBulkEditEnded() {
+            journal.listReplace(valueList.map(::flattenValue), blockingEditing)
+            needsSnapshot = false
+            notifyChanged()
+        }
+
+        private fun notifyChanged() {
+            onStoredPrefChanged(prefKey, onChange)
+            listeners.toList().forEach { it.onListPrefChanged(prefKey) }
         }
     }
 
@@ -439,17 +480,36 @@ class ZimPreferences(val context: Context) : SharedPreferences.OnSharedPreferenc
         fun onListPrefChanged(key: String)
     }
 
-    abstract inner class MutableMapPref<K, V>(private val prefKey: String, onChange: () -> Unit = doNothing) {
-        private val valueMap = HashMap<K, V>()
+    abstract inner class MutableMapPref<K, V>(private val prefKey: String,
+                                              private val onChange: () -> Unit = doNothing) {
 
-        init {
-            val obj = JSONObject(sharedPrefs.getString(prefKey, "{}"))
-            obj.keys().forEach {
-                valueMap[unflattenKey(it)] = unflattenValue(obj.getString(it))
-            }
-            if (onChange !== doNothing) {
-                onChangeMap[prefKey] = onChange
+        private val journal = prefStore.getJournal(prefKey)
+        private val valueMap by lazy { load() }
+
+        private fun load(): HashMap<K, V> {
+            val start = SystemClock.uptimeMillis()
+            val map = HashMap<K, V>()
+            val json = sharedPrefs.getString(prefKey, null)
+            if (journal.exists()) {
+                journal.readMap().forEach { (key, value) ->
+                    map[unflattenKey(key)] = unflattenValue(value)
+                }
+                if (json != null) {
+                    // Left over from a migration, only dropped once the journal made it to disk
+                    sharedPrefs.edit().remove(prefKey).apply()
+                }
+            } else if (json != null) {
+                // Written before the store existed, or restored from an older backup
+                val obj = JSONObject(json)
+                val values = HashMap<String, String>()
+                obj.keys().forEach {
+                    values[it] = obj.getString(it)
+                    map[unflattenKey(it)] = unflattenValue(values[it]!!)
+                }
+                journal.mapReplace(values, false)
             }
+            Log.d(TAG, "Loaded $prefKey (${map.size} entries) in ${SystemClock.uptimeMillis() - start}ms")
+            return map
         }
 
         fun toMap() = HashMap<K, V>(valueMap)
@@ -463,20 +523,12 @@ class ZimPreferences(val context: Context) : SharedPreferences.OnSharedPreferenc
         operator fun set(key: K, value: V?) {
             if (value != null) {
                 valueMap[key] = value
+                edit { journal.mapPut(flattenKey(key), flattenValue(value), blockingEditing) }
             } else {
+                if (!valueMap.containsKey(key)) return
                 valueMap.remove(key)
+                edit { journal.mapRemove(flattenKey(key), blockingEditing) }
             }
-            saveChanges()
-        }
-
-        private fun saveChanges() {
-            val obj = JSONObject()
-            valueMap.entries.forEach { obj.put(flattenKey(it.key), flattenValue(it.value)) }
-            @SuppressLint("CommitPrefEdits")
-            val editor = if (bulkEditing) editor!! else sharedPrefs.edit()
-            editor.putString(prefKey, obj.toString())
-            if (!bulkEditing)
-                commitOrApply(editor, blockingEditing)
         }
 
         operator fun get(key: K): V? {
@@ -485,7 +537,31 @@ class ZimPreferences(val context: Context) : SharedPreferences.OnSharedPreferenc
 
         fun clear() {
             valueMap.clear()
-            saveChanges()
+            edit { journal.mapReplace(emptyMap(), blockingEditing) }
+        }
+
+        private inline fun edit(write: () -> Unit) {
+            if (bulkEditing) {
+                // Written out as a whole once the bulk edit ends
+                pendingBulkWrites[prefKey] = ::onBulkEditEnded
+                return
+            }
+            write()
+            if (journal.shouldCompact(valueMap.size)) {
+                writeSnapshot()
+            }
+            onStoredPrefChanged(prefKey, onChange)
+        }
+
+        private fun onBulkEditEnded() {
+            writeSnapshot()
+            onStoredPrefChanged(prefKey, onChange)
+        }
+
+        private fun writeSnapshot() {
+            val values = HashMap<String, String>()
+            valueMap.forEach { (key, value) -> values[flattenKey(key)] = flattenValue(value) }
+            journal.mapReplace(values, blockingEditing)
         }
     }
 
@@ -620,6 +696,8 @@ class ZimPreferences(val context: Context) : SharedPreferences.OnSharedPreferenc
     var blockingEditing = false
     var bulkEditing = false
     var editor: SharedPreferences.Editor? = null
+    // List and map prefs changed during the current bulk edit, by key
+    private val pendingBulkWrites = LinkedHashMap<String, () -> Unit>()
 
     fun beginBlockingEdit() {
         blockingEditing = true
@@ -639,6 +717,9 @@ class ZimPreferences(val context: Context) : SharedPreferences.OnSharedPreferenc
         bulkEditing = false
         commitOrApply(editor!!, blockingEditing)
         editor = null
+        val writes = ArrayList(pendingBulkWrites.values)
+        pendingBulkWrites.clear()
+        writes.forEach { it() }
     }
 
     inline fun blockingEdit(body: ZimPreferences.() -> Unit) {
@@ -731,6 +812,16 @@ class ZimPreferences(val context: Context) : SharedPreferences.OnSharedPreferenc
         onChangeListeners[key]?.forEach { it.onValueChanged(key, this, false) }
     }
 
+    /**
+     * Change notification for prefs kept in [prefStore], which don't go through
+     * [onSharedPreferenceChanged]. Like that listener, it only fires while a callback is registered.
+     */
+    private fun onStoredPrefChanged(key: String, onChange: () -> Unit) {
+        if (onChangeCallback == null) return
+        onChange.invoke()
+        onChangeListeners[key]?.forEach { it.onValueChanged(key, this, false) }
+    }
+
     fun registerCallback(callback: ZimPreferencesChangeCallback) {
         sharedPrefs.registerOnSharedPreferenceChangeListener(this)
         onChangeCallback = callback
@@ -0,0 +1,270 @@
+/*
+ *     This file is part of Lawnchair Launcher.
+ *
+ *     Lawnchair Launcher is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Lawnchair Launcher is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Lawnchair Launcher.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.zimmob.zimlx.adaptive;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.pm.LauncherActivityInfo;
+import android.content.pm.PackageManager;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.os.UserHandle;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.android.launcher3.LauncherFiles;
+import com.android.launcher3.compat.UserManagerCompat;
+import com.android.launcher3.util.SQLiteCacheHelper;
+
+/**
+ * Persists the results of {@link AdaptiveIconGenerator}'s pixel analysis so unchanged sources
+ * don't have to be analyzed again when icons are regenerated. Rows are keyed by the icon source,
+ * the profile, the icon shape and the legacy treatment options, and are invalidated as soon as the
+ * version of the package providing the source changes.
+ */
+public class AdaptiveIconCache {
+
+    private static final String TAG = "AdaptiveIconCache";
+
+    private static final Object LOCK = new Object();
+    private static AdaptiveIconCache sInstance;
+
+    // Versions of the packages providing sources, looked up once until the package changes
+    private static final ConcurrentHashMap<String, Long> sPackageVersions =
+            new ConcurrentHashMap<>();
+
+    private final AnalysisDB mDb;
+
+    private AdaptiveIconCache(Context context) {
+        mDb = new AnalysisDB(context.getApplicationContext());
+    }
+
+    public static AdaptiveIconCache getInstance(Context context) {
+        synchronized (LOCK) {
+            if (sInstance == null) {
+                sInstance = new AdaptiveIconCache(context);
+            }
+        }
+        return sInstance;
+    }
+
+    /**
+     * Returns the stored analysis for the key, or null if there is none for the current version.
+     */
+    @Nullable
+    public Analysis get(Key key, String shape, int options) {
+        try (Cursor c = mDb.query(AnalysisDB.COLUMNS,
+                AnalysisDB.COLUMN_SOURCE + " = ? AND " + AnalysisDB.COLUMN_USER + " = ? AND "
+                        + AnalysisDB.COLUMN_SHAPE + " = ? AND " + AnalysisDB.COLUMN_OPTIONS + " = ?",
+                new String[]{key.source, Long.toString(key.serial), shape, Integer.toString(options)})) {
+            if (!c.moveToNext() || c.getLong(0) != key.version) {
+                return null;
+            }
+            Analysis analysis = new Analysis();
+            analysis.scale = c.getFloat(1);
+            int flags = c.getInt(2);
+            analysis.matchesMaskShape = (flags & FLAG_MATCHES_MASK) != 0;
+            analysis.isFullBleed = (flags & FLAG_FULL_BLEED) != 0;
+            analysis.noMixinNeeded = (flags & FLAG_NO_MIXIN) != 0;
+            analysis.isBackgroundWhite = (flags & FLAG_BACKGROUND_WHITE) != 0;
+            analysis.backgroundColor = c.getInt(3);
+            analysis.width = c.getInt(4);
+            analysis.height = c.getInt(5);
+            analysis.aWidth = c.getFloat(6);
+            analysis.aHeight = c.getFloat(7);
+            return analysis;
+        } catch (SQLiteException e) {
+            Log.d(TAG, "Error reading icon analysis", e);
+            return null;
+        }
+    }
+
+    public void put(Key key, String shape, int options, Analysis analysis) {
+        int flags = 0;
+        if (analysis.matchesMaskShape) flags |= FLAG_MATCHES_MASK;
+        if (analysis.isFullBleed) flags |= FLAG_FULL_BLEED;
+        if (analysis.noMixinNeeded) flags |= FLAG_NO_MIXIN;
+        if (analysis.isBackgroundWhite) flags |= FLAG_BACKGROUND_WHITE;
+
+        ContentValues values = new ContentValues();
+        values.put(AnalysisDB.COLUMN_SOURCE, key.source);
+        values.put(AnalysisDB.COLUMN_USER, key.serial);
+        values.put(AnalysisDB.COLUMN_SHAPE, shape);
+        values.put(AnalysisDB.COLUMN_OPTIONS, options);
+        values.put(AnalysisDB.COLUMN_VERSION, key.version);
+        values.put(AnalysisDB.COLUMN_SCALE, analysis.scale);
+        values.put(AnalysisDB.COLUMN_FLAGS, flags);
+        values.put(AnalysisDB.COLUMN_COLOR, analysis.backgroundColor);
+        values.put(AnalysisDB.COLUMN_WIDTH, analysis.width);
+        values.put(AnalysisDB.COLUMN_HEIGHT, analysis.height);
+        values.put(AnalysisDB.COLUMN_VISIBLE_WIDTH, analysis.aWidth);
+        values.put(AnalysisDB.COLUMN_VISIBLE_HEIGHT, analysis.aHeight);
+        mDb.insertOrReplace(values);
+    }
+
+    /**
+     * Drops all stored results for sources provided by the package.
+     */
+    public void removePackage(String packageName) {
+        sPackageVersions.remove(packageName);
+        mDb.delete(AnalysisDB.COLUMN_SOURCE + " LIKE ?", new String[]{packageName + "/%"});
+    }
+
+    /**
+     * Key for an activity icon loaded from the system at the given density, optionally through its
+     * round icon.
+     */
+    @Nullable
+    public static Key forActivity(Context context, LauncherActivityInfo info, int iconDpi,
+            boolean round) {
+        String packageName = info.getComponentName().getPackageName();
+        long version = getPackageVersion(context, packageName);
+        if (version == 0) {
+            return null;
+        }
+        String source = info.getComponentName().flattenToString() + "@" + iconDpi
+                + (round ? "#round" : "");
+        return new Key(source, getSerial(context, info.getUser()), version);
+    }
+
+    /**
+     * Key for a static drawable of an icon pack, iconDpi is 0 if the drawable isn't loaded for a
+     * specific density.
+     */
+    @Nullable
+    public static Key forPackDrawable(Context context, String packPackageName, int drawableId,
+            int iconDpi) {
+        long version = getPackageVersion(context, packPackageName);
+        if (version == 0) {
+            return null;
+        }
+        String source = packPackageName + "/#" + Integer.toHexString(drawableId) + "@" + iconDpi;
+        return new Key(source, 0, version);
+    }
+
+    private static long getSerial(Context context, UserHandle user) {
+        return UserManagerCompat.getInstance(context).getSerialNumberForUser(user);
+    }
+
+    /**
+     * Forgets the package versions looked up so far, for when all icons are reloaded.
+     */
+    public void clearPackageVersions() {
+        sPackageVersions.clear();
+    }
+
+    private static long getPackageVersion(Context context, String packageName) {
+        Long cached = sPackageVersions.get(packageName);
+        if (cached != null) {
+            return cached;
+        }
+        try {
+            long version = context.getPackageManager()
+                    .getPackageInfo(packageName, 0).lastUpdateTime;
+            sPackageVersions.put(packageName, version);
+            return version;
+        } catch (PackageManager.NameNotFoundException e) {
+            return 0;
+        }
+    }
+
+    private static final int FLAG_MATCHES_MASK = 1;
+    private static final int FLAG_FULL_BLEED = 1 << 1;
+    private static final int FLAG_NO_MIXIN = 1 << 2;
+    private static final int FLAG_BACKGROUND_WHITE = 1 << 3;
+
+    public static final class Key {
+
+        final String source;
+        final long serial;
+        final long version;
+
+        Key(String source, long serial, long version) {
+            this.source = source;
+            this.serial = serial;
+            this.version = version;
+        }
+    }
+
+    /**
+     * Everything {@link AdaptiveIconGenerator} needs to build its result without the source pixels.
+     */
+    public static final class Analysis {
+        public float scale;
+        public boolean matchesMaskShape;
+        public boolean isFullBleed;
+        public boolean noMixinNeeded;
+        public boolean isBackgroundWhite;
+        public int backgroundColor;
+        public int width;
+        public int height;
+        public float aWidth;
+        public float aHeight;
+    }
+
+    private static final class AnalysisDB extends SQLiteCacheHelper {
+        // Version 2: the pixel analysis reads the actual pixels of the source
+        private final static int RELEASE_VERSION = 2;
+
+        private final static String TABLE_NAME = "analysis";
+        private final static String COLUMN_SOURCE = "source";
+        private final static String COLUMN_USER = "profileId";
+        private final static String COLUMN_SHAPE = "shape";
+        private final static String COLUMN_OPTIONS = "options";
+        private final static String COLUMN_VERSION = "version";
+        private final static String COLUMN_SCALE = "scale";
+        private final static String COLUMN_FLAGS = "flags";
+        private final static String COLUMN_COLOR = "color";
+        private final static String COLUMN_WIDTH = "width";
+        private final static String COLUMN_HEIGHT = "height";
+        private final static String COLUMN_VISIBLE_WIDTH = "visible_width";
+        private final static String COLUMN_VISIBLE_HEIGHT = "visible_height";
+
+        private final static String[] COLUMNS = new String[]{
+                COLUMN_VERSION, COLUMN_SCALE, COLUMN_FLAGS, COLUMN_COLOR, COLUMN_WIDTH,
+                COLUMN_HEIGHT, COLUMN_VISIBLE_WIDTH, COLUMN_VISIBLE_HEIGHT};
+
+        public AnalysisDB(Context context) {
+            super(context, LauncherFiles.ADAPTIVE_ICONS_DB, RELEASE_VERSION, TABLE_NAME);
+        }
+
+        @Override
+        protected void onCreateTable(SQLiteDatabase db) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE_NAME + " (" +
+                    COLUMN_SOURCE + " TEXT NOT NULL, " +
+                    COLUMN_USER + " INTEGER NOT NULL, " +
+                    COLUMN_SHAPE + " TEXT NOT NULL, " +
+                    COLUMN_OPTIONS + " INTEGER NOT NULL, " +
+                    COLUMN_VERSION + " INTEGER NOT NULL DEFAULT 0, " +
+                    COLUMN_SCALE + " REAL NOT NULL DEFAULT 0, " +
+                    COLUMN_FLAGS + " INTEGER NOT NULL DEFAULT 0, " +
+                    COLUMN_COLOR + " INTEGER NOT NULL DEFAULT 0, " +
+                    COLUMN_WIDTH + " INTEGER NOT NULL DEFAULT 0, " +
+                    COLUMN_HEIGHT + " INTEGER NOT NULL DEFAULT 0, " +
+                    COLUMN_VISIBLE_WIDTH + " REAL NOT NULL DEFAULT 0, " +
+                    COLUMN_VISIBLE_HEIGHT + " REAL NOT NULL DEFAULT 0, " +
+                    "PRIMARY KEY (" + COLUMN_SOURCE + ", " + COLUMN_USER + ", " +
+                    COLUMN_SHAPE + ", " + COLUMN_OPTIONS + ") " +
+                    ");");
+        }
+    }
+}
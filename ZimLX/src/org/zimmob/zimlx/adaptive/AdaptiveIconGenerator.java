@@ -24,10 +24,9 @@ import android.graphics.RectF;
 import android.graphics.drawable.ColorDrawable;
 import android.graphics.drawable.Drawable;
 import android.util.Log;
-import android.util.SparseIntArray;
 
 import androidx.annotation.NonNull;
-import androidx.core.graphics.ColorUtils;
+import androidx.annotation.Nullable;
 
 import com.android.launcher3.Utilities;
 import com.android.launcher3.graphics.ColorExtractor;
@@ -39,16 +38,18 @@ import org.zimmob.zimlx.ZimPreferences;
 import org.zimmob.zimlx.iconpack.AdaptiveIconCompat;
 import org.zimmob.zimlx.iconpack.ZimIconProvider;
 
+import java.util.Arrays;
+
 import static java.lang.Math.max;
 import static java.lang.Math.min;
 import static java.lang.Math.round;
 
-
 // TODO: Make this thing async somehow (maybe using some drawable wrappers?)
 public class AdaptiveIconGenerator {
 
-    // Average number of derived colors (based on averages with ~100 icons and performance testing)
-    private static final int NUMBER_OF_COLORS_GUESSTIMATION = 45;
+    // Posterized channels are multiples of 25, so there are 11 levels per channel
+    private static final int POSTERIZE_STEP = 25;
+    private static final int POSTERIZE_LEVELS = 11;
 
     // Found after some experimenting, might be improved with some more testing
     private static final float FULL_BLEED_ICON_SCALE = 1.44f;
@@ -59,8 +60,21 @@ public class AdaptiveIconGenerator {
     // Minimal alpha to be considered opaque
     private static final int MIN_VISIBLE_ALPHA = 0xEF;
 
+    private static final int OPTION_WRAP = 1;
+    private static final int OPTION_EXTRACT_COLOR = 1 << 1;
+    private static final int OPTION_TREAT_WHITE = 1 << 2;
+
+    private static final ThreadLocal<Scratch> sScratch = new ThreadLocal<Scratch>() {
+        @Override
+        protected Scratch initialValue() {
+            return new Scratch();
+        }
+    };
+
     private Context context;
     private Drawable icon;
+    @Nullable
+    private final AdaptiveIconCache.Key cacheKey;
 
     private final boolean extractColor;
     private final boolean treatWhite;
@@ -83,8 +97,18 @@ public class AdaptiveIconGenerator {
     private AdaptiveIconCompat tmp;
 
     public AdaptiveIconGenerator(Context context, @NonNull Drawable icon) {
+        this(context, icon, null);
+    }
+
+    /**
+     * @param cacheKey identifies the icon source, if set the analysis is looked up in and stored
+     *                 to {@link AdaptiveIconCache} instead of being recomputed every time
+     */
+    public AdaptiveIconGenerator(Context context, @NonNull Drawable icon,
+            @Nullable AdaptiveIconCache.Key cacheKey) {
         this.context = context;
         this.icon = AdaptiveIconCompat.wrap(icon);
+        this.cacheKey = cacheKey;
         ZimPreferences prefs = Utilities.getZimPrefs(context);
         shouldWrap = prefs.getEnableLegacyTreatment();
         extractColor = shouldWrap && prefs.getColorizedLegacyTreatment();
@@ -93,175 +117,260 @@ public class AdaptiveIconGenerator {
 
     private void loop() {
         if (Utilities.ATLEAST_OREO && shouldWrap) {
-            Drawable extractee = icon;
-            if (icon instanceof AdaptiveIconCompat) {
-                if (!treatWhite) {
-                    onExitLoop();
-                    return;
-                }
-                AdaptiveIconCompat aid = (AdaptiveIconCompat) icon;
-                // we still check this seperately as this is the only information we need from the background
-                if (!ColorExtractor.isSingleColor(aid.getBackground(), Color.WHITE)) {
-                    onExitLoop();
-                    return;
+            if (cacheKey == null) {
+                analyze();
+            } else {
+                AdaptiveIconCache cache = AdaptiveIconCache.getInstance(context);
+                String shape = getShapeKey();
+                int options = getOptions();
+                AdaptiveIconCache.Analysis analysis = cache.get(cacheKey, shape, options);
+                if (analysis != null) {
+                    restore(analysis);
+                } else {
+                    analyze();
+                    cache.put(cacheKey, shape, options, save());
                 }
-                isBackgroundWhite = true;
-                extractee = aid.getForeground();
             }
+        }
+        onExitLoop();
+    }
 
-            if (extractee == null) {
-                Log.e("AdaptiveIconGenerator", "extractee is null, skipping.");
-                onExitLoop();
+    private void analyze() {
+        Drawable extractee = icon;
+        if (icon instanceof AdaptiveIconCompat) {
+            if (!treatWhite) {
+                return;
+            }
+            AdaptiveIconCompat aid = (AdaptiveIconCompat) icon;
+            // we still check this seperately as this is the only information we need from the background
+            if (!ColorExtractor.isSingleColor(aid.getBackground(), Color.WHITE)) {
                 return;
             }
+            isBackgroundWhite = true;
+            extractee = aid.getForeground();
+        }
 
-            LauncherIcons li = LauncherIcons.obtain(context);
-            IconNormalizer normalizer = li.getNormalizer();
-            li.recycle();
+        if (extractee == null) {
+            Log.e("AdaptiveIconGenerator", "extractee is null, skipping.");
+            return;
+        }
 
-            boolean[] outShape = new boolean[1];
-            RectF bounds = new RectF();
+        Scratch scratch = sScratch.get();
+        boolean[] outShape = scratch.outShape;
+        RectF bounds = scratch.bounds;
+        outShape[0] = false;
+        bounds.setEmpty();
 
-            initTmpIfNeeded();
+        initTmpIfNeeded();
+        // The normalizer is only ours while the LauncherIcons instance hasn't been recycled
+        try (LauncherIcons li = LauncherIcons.obtain(context)) {
+            IconNormalizer normalizer = li.getNormalizer();
             scale = normalizer.getScale(extractee, bounds, tmp.getIconMask(), outShape, MIN_VISIBLE_ALPHA);
-            matchesMaskShape = outShape[0];
+        }
+        matchesMaskShape = outShape[0];
 
-            if (extractee instanceof ColorDrawable) {
-                isFullBleed = true;
-                fullBleedChecked = true;
-            }
+        if (extractee instanceof ColorDrawable) {
+            isFullBleed = true;
+            fullBleedChecked = true;
+        }
 
-            width = extractee.getIntrinsicWidth();
-            height = extractee.getIntrinsicHeight();
-            aWidth = width * (1 - (bounds.left + bounds.right));
-            aHeight = height * (1 - (bounds.top + bounds.bottom));
-
-            // Check if the icon is squareish
-            final float ratio = aHeight / aWidth;
-            boolean isSquareish = 0.999 < ratio && ratio < 1.0001;
-            boolean almostSquarish = isSquareish || (0.97 < ratio && ratio < 1.005);
-            if (!isSquareish) {
-                isFullBleed = false;
-                fullBleedChecked = true;
-            }
+        width = extractee.getIntrinsicWidth();
+        height = extractee.getIntrinsicHeight();
+        aWidth = width * (1 - (bounds.left + bounds.right));
+        aHeight = height * (1 - (bounds.top + bounds.bottom));
+
+        // Check if the icon is squareish
+        final float ratio = aHeight / aWidth;
+        boolean isSquareish = 0.999 < ratio && ratio < 1.0001;
+        boolean almostSquarish = isSquareish || (0.97 < ratio && ratio < 1.005);
+        if (!isSquareish) {
+            isFullBleed = false;
+            fullBleedChecked = true;
+        }
 
-            final Bitmap bitmap = Utilities.drawableToBitmap(extractee);
-            if (bitmap == null) {
-                onExitLoop();
-                return;
-            }
+        final Bitmap bitmap = Utilities.drawableToBitmap(extractee);
+        if (bitmap == null) {
+            return;
+        }
 
-            if (!bitmap.hasAlpha()) {
-                isFullBleed = true;
-                fullBleedChecked = true;
-            }
+        if (!bitmap.hasAlpha()) {
+            isFullBleed = true;
+            fullBleedChecked = true;
+        }
 
-            final int size = height * width;
-            SparseIntArray rgbScoreHistogram = new SparseIntArray(NUMBER_OF_COLORS_GUESSTIMATION);
-            final int[] pixels = new int[size];
-            //bitmap.getPixels(pixels, 0, width, 0, 0, width, height);
-
-            /*
-             *   Calculate the number of padding pixels around the actual icon (i)
-             *   +----------------+
-             *   |      top       |
-             *   +---+--------+---+
-             *   |   |        |   |
-             *   | l |    i   | r |
-             *   |   |        |   |
-             *   +---+--------+---+
-             *   |     bottom     |
-             *   +----------------+
-             */
-            float adjHeight = height - bounds.top - bounds.bottom;
-            float l = bounds.left * width * adjHeight;
-            float top = bounds.top * height * width;
-            float r = bounds.right * width * adjHeight;
-            float bottom = bounds.bottom * height * width;
-            int addPixels = Math.round(l + top + r + bottom);
-
-            // Any icon with less than 10% transparent pixels (padding excluded) is considered "full-bleed-ish"
-            final int maxTransparent = (int) (round(size * .10) + addPixels);
-            // Any icon with less than 27% transparent pixels (padding excluded) doesn't need a color mix-in
-            final int noMixinScore = (int) (round(size * .27) + addPixels);
-
-            int highScore = 0;
-            int bestRGB = 0;
-            int transparentScore = 0;
-            for (int pixel : pixels) {
-                int alpha = 0xFF & (pixel >> 24);
-                if (alpha < MIN_VISIBLE_ALPHA) {
-                    // Drop mostly-transparent pixels.
-                    transparentScore++;
-                    if (transparentScore > maxTransparent) {
-                        isFullBleed = false;
-                        fullBleedChecked = true;
-                        if (!extractColor) {
-                            break;
-                        }
+        // The bitmap of a BitmapDrawable doesn't have to be its intrinsic size
+        final int pixelWidth = bitmap.getWidth();
+        final int pixelHeight = bitmap.getHeight();
+        final int size = pixelWidth * pixelHeight;
+        final int[] rgbScoreHistogram = scratch.histogram;
+        Arrays.fill(rgbScoreHistogram, 0);
+        final int[] pixels = scratch.getPixels(size);
+        readPixels(bitmap, pixels);
+
+        /*
+         *   Calculate the number of padding pixels around the actual icon (i)
+         *   +----------------+
+         *   |      top       |
+         *   +---+--------+---+
+         *   |   |        |   |
+         *   | l |    i   | r |
+         *   |   |        |   |
+         *   +---+--------+---+
+         *   |     bottom     |
+         *   +----------------+
+         */
+        float adjHeight = pixelHeight - bounds.top - bounds.bottom;
+        float l = bounds.left * pixelWidth * adjHeight;
+        float top = bounds.top * pixelHeight * pixelWidth;
+        float r = bounds.right * pixelWidth * adjHeight;
+        float bottom = bounds.bottom * pixelHeight * pixelWidth;
+        int addPixels = Math.round(l + top + r + bottom);
+
+        // Any icon with less than 10% transparent pixels (padding excluded) is considered "full-bleed-ish"
+        final int maxTransparent = (int) (round(size * .10) + addPixels);
+        // Any icon with less than 27% transparent pixels (padding excluded) doesn't need a color mix-in
+        final int noMixinScore = (int) (round(size * .27) + addPixels);
+
+        int highScore = 0;
+        int bestRGB = 0;
+        int transparentScore = 0;
+        for (int i = 0; i < size; i++) {
+            int pixel = pixels[i];
+            int alpha = 0xFF & (pixel >> 24);
+            if (alpha < MIN_VISIBLE_ALPHA) {
+                // Drop mostly-transparent pixels.
+                transparentScore++;
+                if (transparentScore > maxTransparent) {
+                    isFullBleed = false;
+                    fullBleedChecked = true;
+                    if (!extractColor) {
+                        break;
                     }
-                    continue;
-                }
-                // Reduce color complexity.
-                int rgb = ColorExtractor.posterize(pixel);
-                if (rgb < 0) {
-                    // Defensively avoid array bounds violations.
-                    continue;
-                }
-                int currentScore = rgbScoreHistogram.get(rgb) + 1;
-                rgbScoreHistogram.append(rgb, currentScore);
-                if (currentScore > highScore) {
-                    highScore = currentScore;
-                    bestRGB = rgb;
                 }
+                continue;
+            }
+            // Reduce color complexity.
+            int rgb = ColorExtractor.posterize(pixel);
+            if (rgb < 0) {
+                // Defensively avoid array bounds violations.
+                continue;
+            }
+            int currentScore = ++rgbScoreHistogram[histogramIndex(rgb)];
+            if (currentScore > highScore) {
+                highScore = currentScore;
+                bestRGB = rgb;
             }
+        }
 
-            // add back the alpha channel
-            bestRGB |= 0xff << 24;
+        // add back the alpha channel
+        bestRGB |= 0xff << 24;
 
-            // not yet checked = not set to false = has to be full bleed, isBackgroundWhite = true = is adaptive
-            isFullBleed |= !fullBleedChecked && !isBackgroundWhite;
+        // not yet checked = not set to false = has to be full bleed, isBackgroundWhite = true = is adaptive
+        isFullBleed |= !fullBleedChecked && !isBackgroundWhite;
 
-            // return early if a mix-in isnt needed
-            noMixinNeeded = !isFullBleed && !isBackgroundWhite && almostSquarish && transparentScore <= noMixinScore;
-            if (isFullBleed || noMixinNeeded) {
-                backgroundColor = bestRGB;
-                onExitLoop();
-                return;
-            }
+        // return early if a mix-in isnt needed
+        noMixinNeeded = !isFullBleed && !isBackgroundWhite && almostSquarish && transparentScore <= noMixinScore;
+        if (isFullBleed || noMixinNeeded) {
+            backgroundColor = bestRGB;
+            return;
+        }
 
-            if (!extractColor) {
-                backgroundColor = Color.WHITE;
-                onExitLoop();
-                return;
-            }
+        if (!extractColor) {
+            backgroundColor = Color.WHITE;
+            return;
+        }
 
-            // "single color"
-            //final int numColors = rgbScoreHistogram.size();
-            //boolean singleColor = numColors <= SINGLE_COLOR_LIMIT;
-
-            // Convert to HSL to get the lightness and adjust the color
-            final float[] hsl = new float[3];
-            ColorUtils.colorToHSL(bestRGB, hsl);
-            //float lightness = hsl[2];
-
-            //boolean light = lightness > .5;
-            // Apply dark background to mostly white icons
-            //boolean veryLight = lightness > .75 && singleColor;
-            // Apply light background to mostly dark icons
-            //boolean veryDark = lightness < .35 && singleColor;
-
-            // Adjust color to reach suitable contrast depending on the relationship between the colors
-            //final int opaqueSize = size - transparentScore;
-            //final float pxPerColor = opaqueSize / (float) numColors;
-            //float mixRatio = min(max(pxPerColor / highScore, .15f), .7f);
-
-            // Vary color mix-in based on lightness and amount of colors
-            //int fill = (light && !veryLight) || veryDark ? 0xFFFFFFFF : 0xFF333333;
-            //backgroundColor = ColorUtils.blendARGB(bestRGB, fill, mixRatio);
-            backgroundColor = ColorExtractor.findDominantColorByHue(bitmap);
+        // "single color"
+        //final int numColors = rgbScoreHistogram.size();
+        //boolean singleColor = numColors <= SINGLE_COLOR_LIMIT;
+
+        // Convert to HSL to get the lightness and adjust the color
+        //final float[] hsl = new float[3];
+        //ColorUtils.colorToHSL(bestRGB, hsl);
+        //float lightness = hsl[2];
+
+        //boolean light = lightness > .5;
+        // Apply dark background to mostly white icons
+        //boolean veryLight = lightness > .75 && singleColor;
+        // Apply light background to mostly dark icons
+        //boolean veryDark = lightness < .35 && singleColor;
+
+        // Adjust color to reach suitable contrast depending on the relationship between the colors
+        //final int opaqueSize = size - transparentScore;
+        //final float pxPerColor = opaqueSize / (float) numColors;
+        //float mixRatio = min(max(pxPerColor / highScore, .15f), .7f);
+
+        // Vary color mix-in based on lightness and amount of colors
+        //int fill = (light && !veryLight) || veryDark ? 0xFFFFFFFF : 0xFF333333;
+        //backgroundColor = ColorUtils.blendARGB(bestRGB, fill, mixRatio);
+        backgroundColor = ColorExtractor.findDominantColorByHue(bitmap);
+    }
+
+    private static void readPixels(Bitmap bitmap, int[] pixels) {
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        if (Utilities.ATLEAST_OREO && bitmap.getConfig() == Bitmap.Config.HARDWARE) {
+            // Hardware bitmaps can't be read directly
+            Bitmap copy = bitmap.copy(Bitmap.Config.ARGB_8888, false);
+            copy.getPixels(pixels, 0, width, 0, 0, width, height);
+            copy.recycle();
+        } else {
+            bitmap.getPixels(pixels, 0, width, 0, 0, width, height);
         }
-        onExitLoop();
+    }
+
+    private static int histogramIndex(int rgb) {
+        int red = (rgb >> 16) & 0xFF;
+        int green = (rgb >> 8) & 0xFF;
+        int blue = rgb & 0xFF;
+        return ((red / POSTERIZE_STEP) * POSTERIZE_LEVELS + green / POSTERIZE_STEP)
+                * POSTERIZE_LEVELS + blue / POSTERIZE_STEP;
+    }
+
+    private String getShapeKey() {
+        IconShapeManager manager = IconShapeManager.getInstanceNoCreate();
+        if (manager == null) {
+            return "none";
+        }
+        String shape = manager.getIconShape().toString();
+        // The system shape is stored as an empty string so that it keeps following the system
+        return shape.isEmpty() ? "system" : shape;
+    }
+
+    private int getOptions() {
+        int options = 0;
+        if (shouldWrap) options |= OPTION_WRAP;
+        if (extractColor) options |= OPTION_EXTRACT_COLOR;
+        if (treatWhite) options |= OPTION_TREAT_WHITE;
+        return options;
+    }
+
+    private void restore(AdaptiveIconCache.Analysis analysis) {
+        scale = analysis.scale;
+        matchesMaskShape = analysis.matchesMaskShape;
+        isFullBleed = analysis.isFullBleed;
+        noMixinNeeded = analysis.noMixinNeeded;
+        isBackgroundWhite = analysis.isBackgroundWhite;
+        backgroundColor = analysis.backgroundColor;
+        width = analysis.width;
+        height = analysis.height;
+        aWidth = analysis.aWidth;
+        aHeight = analysis.aHeight;
+    }
+
+    private AdaptiveIconCache.Analysis save() {
+        AdaptiveIconCache.Analysis analysis = new AdaptiveIconCache.Analysis();
+        analysis.scale = scale;
+        analysis.matchesMaskShape = matchesMaskShape;
+        analysis.isFullBleed = isFullBleed;
+        analysis.noMixinNeeded = noMixinNeeded;
+        analysis.isBackgroundWhite = isBackgroundWhite;
+        analysis.backgroundColor = backgroundColor;
+        analysis.width = width;
+        analysis.height = height;
+        analysis.aWidth = aWidth;
+        analysis.aHeight = aHeight;
+        return analysis;
     }
 
     private void onExitLoop() {
@@ -316,4 +425,21 @@ public class AdaptiveIconGenerator {
         }
         return result;
     }
+
+    /**
+     * Per-thread buffers for the pixel analysis, icons are analyzed on several threads at once.
+     */
+    private static final class Scratch {
+        final boolean[] outShape = new boolean[1];
+        final RectF bounds = new RectF();
+        final int[] histogram = new int[POSTERIZE_LEVELS * POSTERIZE_LEVELS * POSTERIZE_LEVELS];
+        private int[] pixels = new int[0];
+
+        int[] getPixels(int size) {
+            if (pixels.length < size) {
+                pixels = new int[size];
+            }
+            return pixels;
+        }
+    }
 }
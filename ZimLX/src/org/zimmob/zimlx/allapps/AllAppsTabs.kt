@@ -17,12 +17,10 @@
 
 package org.zimmob.zimlx.allapps
 
-import android.content.ComponentName
 import android.content.Context
 import android.os.Process
-import com.android.launcher3.ItemInfo
-import com.android.launcher3.util.ComponentKey
 import com.android.launcher3.util.ItemInfoMatcher
+import org.zimmob.zimlx.groups.ComponentKeyMatcher
 import org.zimmob.zimlx.groups.DrawerTabs
 import org.zimmob.zimlx.groups.FlowerpotTabs
 import org.zimmob.zimlx.zimPrefs
@@ -40,23 +38,22 @@ class AllAppsTabs(private val context: Context) : Iterable<AllAppsTabs.Tab> {
             }
         }
 
-    private val addedApps = ArrayList<ComponentKey>()
-
     init {
         reloadTabs()
     }
 
     fun reloadTabs() {
-        addedApps.clear()
+        // Filled while the tabs are created, the matchers only run once the drawer binds them
+        val addedApps = ComponentKeyMatcher()
         tabs.clear()
         context.zimPrefs.currentTabsModel.getGroups().mapNotNullTo(tabs) {
             when {
                 hasWorkApps && it is DrawerTabs.PersonalTab ->
-                    PersonalTab(createMatcher(addedApps, personalMatcher), drawerTab = it)
+                    PersonalTab(addedApps.excluding(personalMatcher), drawerTab = it)
                 hasWorkApps && it is DrawerTabs.WorkTab ->
-                    WorkTab(createMatcher(addedApps, workMatcher), drawerTab = it)
+                    WorkTab(addedApps.excluding(workMatcher), drawerTab = it)
                 !hasWorkApps && it is DrawerTabs.AllAppsTab ->
-                    AllAppsTab(createMatcher(addedApps), drawerTab = it)
+                    AllAppsTab(addedApps.excluding(), drawerTab = it)
                 it is DrawerTabs.CustomTab -> {
                     if (it.hideFromAllApps.value()) {
                         addedApps.addAll(it.contents.value())
@@ -72,23 +69,6 @@ class AllAppsTabs(private val context: Context) : Iterable<AllAppsTabs.Tab> {
         }
     }
 
-    private fun createTabMatcher(components: Set<ComponentKey>): ItemInfoMatcher {
-        return object : ItemInfoMatcher() {
-            override fun matches(info: ItemInfo, cn: ComponentName?): Boolean {
-                return components.contains(ComponentKey(info.targetComponent, info.user))
-            }
-        }
-    }
-
-    private fun createMatcher(components: List<ComponentKey>, base: ItemInfoMatcher? = null): ItemInfoMatcher {
-        return object : ItemInfoMatcher() {
-            override fun matches(info: ItemInfo, cn: ComponentName?): Boolean {
-                if (base?.matches(info, cn) == false) return false
-                return !components.contains(ComponentKey(info.targetComponent, info.user))
-            }
-        }
-    }
-
     override fun iterator(): Iterator<Tab> {
         return tabs.iterator()
     }
@@ -1,8 +1,11 @@
 package org.zimmob.zimlx.backup
 
 import android.Manifest.permission.READ_EXTERNAL_STORAGE
+import android.annotation.SuppressLint
 import android.content.Intent
 import android.content.pm.PackageManager
+import android.net.Uri
+import android.os.AsyncTask
 import android.os.Bundle
 import android.view.View
 import android.widget.TextView
@@ -132,14 +135,31 @@ class BackupListActivity : SettingsBaseActivity(), BackupListAdapter.Callbacks {
     }
 
     private fun shareBackup(position: Int) {
-        val shareTitle = getString(R.string.backup_share_title)
-        val shareText = getString(R.string.backup_share_text)
-        val shareIntent = Intent(Intent.ACTION_SEND)
-        shareIntent.type = ZimBackup.MIME_TYPE
-        shareIntent.putExtra(Intent.EXTRA_STREAM, adapter[position].uri)
-        shareIntent.putExtra(Intent.EXTRA_SUBJECT, shareTitle)
-        shareIntent.putExtra(Intent.EXTRA_TEXT, shareText)
-        startActivity(Intent.createChooser(shareIntent, shareTitle))
+        ShareBackupTask(adapter[position]).execute()
+    }
+
+    @SuppressLint("StaticFieldLeak")
+    private inner class ShareBackupTask(val backup: ZimBackup) : AsyncTask<Void, Void, Uri?>() {
+
+        override fun doInBackground(vararg params: Void?): Uri? {
+            return backup.getShareableUri()
+        }
+
+        override fun onPostExecute(result: Uri?) {
+            if (result == null) {
+                Snackbar.make(findViewById(android.R.id.content), R.string.backup_failed,
+                        Snackbar.LENGTH_SHORT).show()
+                return
+            }
+            val shareTitle = getString(R.string.backup_share_title)
+            val shareText = getString(R.string.backup_share_text)
+            val shareIntent = Intent(Intent.ACTION_SEND)
+            shareIntent.type = ZimBackup.MIME_TYPE
+            shareIntent.putExtra(Intent.EXTRA_STREAM, result)
+            shareIntent.putExtra(Intent.EXTRA_SUBJECT, shareTitle)
+            shareIntent.putExtra(Intent.EXTRA_TEXT, shareText)
+            startActivity(Intent.createChooser(shareIntent, shareTitle))
+        }
     }
 
     private fun saveChanges() {
@@ -0,0 +1,289 @@
+/*
+ *     This file is part of Lawnchair Launcher.
+ *
+ *     Lawnchair Launcher is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Lawnchair Launcher is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Lawnchair Launcher.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.zimmob.zimlx.backup
+
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.IOException
+import java.io.InputStream
+import java.io.OutputStream
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.nio.channels.FileChannel
+import java.nio.charset.StandardCharsets
+import java.util.*
+import java.util.zip.CRC32
+import java.util.zip.Deflater
+import java.util.zip.Inflater
+import java.util.zip.InflaterInputStream
+
+/**
+ * Minimal zip support for backups.
+ *
+ * [Entry] holds the payload of a single entry, compressed up front so entries can be prepared
+ * concurrently and [Writer] only has to copy bytes. [Index] reads the central directory of an
+ * existing archive so single entries can be read without scanning through the whole file.
+ */
+object BackupZip {
+
+    private const val LOCAL_HEADER_SIG = 0x04034b50
+    private const val CENTRAL_HEADER_SIG = 0x02014b50
+    private const val END_SIG = 0x06054b50
+
+    private const val LOCAL_HEADER_SIZE = 30
+    private const val CENTRAL_HEADER_SIZE = 46
+    private const val END_SIZE = 22
+    private const val MAX_COMMENT_SIZE = 0xffff
+
+    private const val VERSION = 20
+    private const val FLAG_UTF8 = 1 shl 11
+
+    const val METHOD_STORED = 0
+    const val METHOD_DEFLATED = 8
+
+    class Entry private constructor(val name: String, val method: Int, val crc: Long,
+                                    val size: Long, val data: ByteArray) {
+
+        companion object {
+
+            /**
+             * Entry kept as is, for small entries which have to be read quickly and data which
+             * is already compressed.
+             */
+            fun stored(name: String, bytes: ByteArray): Entry {
+                return Entry(name, METHOD_STORED, crc(bytes), bytes.size.toLong(), bytes)
+            }
+
+            fun deflated(name: String, bytes: ByteArray): Entry {
+                val deflater = Deflater(Deflater.DEFAULT_COMPRESSION, true)
+                try {
+                    deflater.setInput(bytes)
+                    deflater.finish()
+                    val out = ByteArrayOutputStream(Math.max(64, bytes.size / 2))
+                    val buffer = ByteArray(8192)
+                    while (!deflater.finished()) {
+                        val count = deflater.deflate(buffer)
+                        out.write(buffer, 0, count)
+                    }
+                    return Entry(name, METHOD_DEFLATED, crc(bytes), bytes.size.toLong(),
+                            out.toByteArray())
+                } finally {
+                    deflater.end()
+                }
+            }
+
+            private fun crc(bytes: ByteArray) = CRC32().apply { update(bytes) }.value
+        }
+    }
+
+    /**
+     * Writes prepared entries in the order they are added, followed by the central directory.
+     */
+    class Writer(private val out: OutputStream) {
+
+        private val entries = ArrayList<Pair<Entry, Long>>()
+        private var offset = 0L
+        private val time: Int
+        private val date: Int
+
+        init {
+            val calendar = Calendar.getInstance()
+            time = (calendar.get(Calendar.HOUR_OF_DAY) shl 11) or
+                    (calendar.get(Calendar.MINUTE) shl 5) or
+                    (calendar.get(Calendar.SECOND) shr 1)
+            date = ((calendar.get(Calendar.YEAR) - 1980) shl 9) or
+                    ((calendar.get(Calendar.MONTH) + 1) shl 5) or
+                    calendar.get(Calendar.DAY_OF_MONTH)
+        }
+
+        fun write(entry: Entry) {
+            val name = entry.name.toByteArray(StandardCharsets.UTF_8)
+            val header = buffer(LOCAL_HEADER_SIZE + name.size)
+                    .putInt(LOCAL_HEADER_SIG)
+                    .putShort(VERSION.toShort())
+                    .putShort(FLAG_UTF8.toShort())
+                    .putShort(entry.method.toShort())
+                    .putShort(time.toShort())
+                    .putShort(date.toShort())
+                    .putInt(entry.crc.toInt())
+                    .putInt(entry.data.size)
+                    .putInt(entry.size.toInt())
+                    .putShort(name.size.toShort())
+                    .putShort(0)
+                    .put(name)
+            out.write(header.array())
+            out.write(entry.data)
+            entries.add(entry to offset)
+            offset += header.capacity() + entry.data.size
+        }
+
+        /**
+         * Writes the central directory, the output stream is left open.
+         */
+        fun finish() {
+            val start = offset
+            entries.forEach { (entry, entryOffset) ->
+                val name = entry.name.toByteArray(StandardCharsets.UTF_8)
+                val header = buffer(CENTRAL_HEADER_SIZE + name.size)
+                        .putInt(CENTRAL_HEADER_SIG)
+                        .putShort(VERSION.toShort())
+                        .putShort(VERSION.toShort())
+                        .putShort(FLAG_UTF8.toShort())
+                        .putShort(entry.method.toShort())
+                        .putShort(time.toShort())
+                        .putShort(date.toShort())
+                        .putInt(entry.crc.toInt())
+                        .putInt(entry.data.size)
+                        .putInt(entry.size.toInt())
+                        .putShort(name.size.toShort())
+                        .putShort(0)
+                        .putShort(0)
+                        .putShort(0)
+                        .putShort(0)
+                        .putInt(0)
+                        .putInt(entryOffset.toInt())
+                        .put(name)
+                out.write(header.array())
+                offset += header.capacity()
+            }
+            val end = buffer(END_SIZE)
+                    .putInt(END_SIG)
+                    .putShort(0)
+                    .putShort(0)
+                    .putShort(entries.size.toShort())
+                    .putShort(entries.size.toShort())
+                    .putInt((offset - start).toInt())
+                    .putInt(start.toInt())
+                    .putShort(0)
+            out.write(end.array())
+            out.flush()
+        }
+    }
+
+    /**
+     * Central directory of an archive which is open for random access.
+     */
+    class Index private constructor(private val channel: FileChannel,
+                                    private val entries: Map<String, IndexEntry>) {
+
+        val names get() = entries.keys
+
+        operator fun contains(name: String) = entries.containsKey(name)
+
+        /**
+         * Reads the whole entry into memory, returns null if there is no such entry.
+         */
+        fun read(name: String): ByteArray? {
+            return open(name)?.use { it.readBytes() }
+        }
+
+        fun open(name: String): InputStream? {
+            val entry = entries[name] ?: return null
+            val header = readFully(channel, entry.offset, LOCAL_HEADER_SIZE)
+            if (header.getInt(0) != LOCAL_HEADER_SIG) {
+                throw IOException("Bad local header for $name")
+            }
+            val dataStart = entry.offset + LOCAL_HEADER_SIZE +
+                    header.getUnsignedShort(26) + header.getUnsignedShort(28)
+            val data = ByteArray(entry.compressedSize.toInt())
+            readFully(channel, dataStart, ByteBuffer.wrap(data))
+            return when (entry.method) {
+                METHOD_STORED -> ByteArrayInputStream(data)
+                // Inflater in nowrap mode may need a dummy byte after the compressed data
+                METHOD_DEFLATED -> {
+                    val inflater = Inflater(true)
+                    object : InflaterInputStream(
+                            ByteArrayInputStream(data.copyOf(data.size + 1)), inflater) {
+                        // Only the inflater created by the stream itself is ended on close
+                        override fun close() {
+                            try {
+                                super.close()
+                            } finally {
+                                inflater.end()
+                            }
+                        }
+                    }
+                }
+                else -> throw IOException("Unsupported compression method ${entry.method}")
+            }
+        }
+
+        private class IndexEntry(val method: Int, val compressedSize: Long, val offset: Long)
+
+        companion object {
+
+            /**
+             * Reads the central directory, throws if the channel isn't a readable zip file.
+             */
+            fun read(channel: FileChannel): Index {
+                val size = channel.size()
+                if (size < END_SIZE) throw IOException("Not a zip file")
+                val tailSize = Math.min(size, (END_SIZE + MAX_COMMENT_SIZE).toLong()).toInt()
+                val tail = readFully(channel, size - tailSize, tailSize)
+                var endPos = tailSize - END_SIZE
+                while (endPos >= 0 && tail.getInt(endPos) != END_SIG) {
+                    endPos--
+                }
+                if (endPos < 0) throw IOException("No central directory")
+
+                val count = tail.getUnsignedShort(endPos + 10)
+                val dirSize = tail.getInt(endPos + 12).toLong() and 0xffffffffL
+                val dirOffset = tail.getInt(endPos + 16).toLong() and 0xffffffffL
+                val dir = readFully(channel, dirOffset, dirSize.toInt())
+
+                val entries = HashMap<String, IndexEntry>()
+                var pos = 0
+                for (i in 0 until count) {
+                    if (dir.getInt(pos) != CENTRAL_HEADER_SIG) {
+                        throw IOException("Bad central directory header")
+                    }
+                    val method = dir.getUnsignedShort(pos + 10)
+                    val compressedSize = dir.getInt(pos + 20).toLong() and 0xffffffffL
+                    val nameLength = dir.getUnsignedShort(pos + 28)
+                    val extraLength = dir.getUnsignedShort(pos + 30)
+                    val commentLength = dir.getUnsignedShort(pos + 32)
+                    val offset = dir.getInt(pos + 42).toLong() and 0xffffffffL
+                    val name = String(dir.array(), pos + CENTRAL_HEADER_SIZE, nameLength,
+                            StandardCharsets.UTF_8)
+                    entries[name] = IndexEntry(method, compressedSize, offset)
+                    pos += CENTRAL_HEADER_SIZE + nameLength + extraLength + commentLength
+                }
+                return Index(channel, entries)
+            }
+        }
+    }
+
+    private fun buffer(size: Int) = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN)
+
+    private fun ByteBuffer.getUnsignedShort(index: Int) = getShort(index).toInt() and 0xffff
+
+    private fun readFully(channel: FileChannel, position: Long, size: Int): ByteBuffer {
+        val buffer = buffer(size)
+        readFully(channel, position, buffer)
+        return buffer
+    }
+
+    private fun readFully(channel: FileChannel, position: Long, buffer: ByteBuffer) {
+        var pos = position
+        while (buffer.hasRemaining()) {
+            val count = channel.read(buffer, pos)
+            if (count < 0) throw IOException("Unexpected end of zip file")
+            pos += count
+        }
+    }
+}
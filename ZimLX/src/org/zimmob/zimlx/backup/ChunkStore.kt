@@ -0,0 +1,262 @@
+/*
+ *     This file is part of Lawnchair Launcher.
+ *
+ *     Lawnchair Launcher is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Lawnchair Launcher is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Lawnchair Launcher.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.zimmob.zimlx.backup
+
+import org.json.JSONArray
+import org.json.JSONObject
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.File
+import java.io.FileOutputStream
+import java.io.IOException
+import java.io.InputStream
+import java.io.SequenceInputStream
+import java.security.MessageDigest
+import java.util.*
+import java.util.concurrent.atomic.AtomicLong
+import java.util.zip.Deflater
+import java.util.zip.Inflater
+
+/**
+ * Content addressed storage for the files of incremental backups.
+ *
+ * Files are split into chunks at content defined boundaries, so an edit only changes the chunks
+ * around it, and every chunk is stored once under the SHA-256 of its contents. A backup then only
+ * needs a [Manifest] listing the chunks of each of its files, and chunks which are already in the
+ * store cost nothing. Chunks no manifest refers to anymore are removed by [gc].
+ */
+class ChunkStore(val dir: File) {
+
+    /**
+     * Total number of bytes passed to [put].
+     */
+    val totalBytes = AtomicLong()
+    /**
+     * Bytes of chunks which weren't in the store yet.
+     */
+    val newBytes = AtomicLong()
+    /**
+     * Bytes written to disk for the new chunks, after compression.
+     */
+    val writtenBytes = AtomicLong()
+
+    /**
+     * Stores the chunks of [data] which are missing and returns the hashes of all of them in order.
+     */
+    fun put(data: ByteArray): List<String> {
+        val digest = MessageDigest.getInstance(DIGEST)
+        val hashes = ArrayList<String>()
+        var start = 0
+        while (start < data.size) {
+            val end = findChunkEnd(data, start)
+            digest.update(data, start, end - start)
+            val hash = toHex(digest.digest())
+            if (!contains(hash)) {
+                write(hash, data, start, end - start)
+                newBytes.addAndGet((end - start).toLong())
+            }
+            hashes.add(hash)
+            start = end
+        }
+        totalBytes.addAndGet(data.size.toLong())
+        return hashes
+    }
+
+    operator fun contains(hash: String) = getFile(hash).exists()
+
+    /**
+     * Returns a stream reading the chunks one after another. Chunks are checked against their hash
+     * as they are read, a missing or damaged chunk fails the read with an [IOException].
+     */
+    fun open(hashes: List<String>): InputStream {
+        val iterator = hashes.iterator()
+        return SequenceInputStream(object : Enumeration<InputStream> {
+            override fun hasMoreElements() = iterator.hasNext()
+
+            override fun nextElement(): InputStream = ByteArrayInputStream(read(iterator.next()))
+        })
+    }
+
+    @Throws(IOException::class)
+    fun read(hash: String): ByteArray {
+        val stored = getFile(hash).readBytes()
+        if (stored.isEmpty()) throw IOException("Empty chunk $hash")
+        val data = when (stored[0].toInt()) {
+            BackupZip.METHOD_STORED -> stored.copyOfRange(1, stored.size)
+            BackupZip.METHOD_DEFLATED -> inflate(stored)
+            else -> throw IOException("Unknown chunk format for $hash")
+        }
+        if (toHex(MessageDigest.getInstance(DIGEST).digest(data)) != hash) {
+            throw IOException("Chunk $hash is damaged")
+        }
+        return data
+    }
+
+    /**
+     * Deletes all chunks which aren't in [referenced] and returns the number of bytes freed.
+     * Must not run while chunks for a new backup are being stored.
+     */
+    fun gc(referenced: Set<String>): Long {
+        var freed = 0L
+        dir.listFiles()?.filter { it.isDirectory }?.forEach { bucket ->
+            bucket.listFiles()?.forEach { file ->
+                if (file.name.endsWith(TMP_SUFFIX) || file.name !in referenced) {
+                    val length = file.length()
+                    if (file.delete()) {
+                        freed += length
+                    }
+                }
+            }
+            // Only succeeds if the bucket is empty now
+            bucket.delete()
+        }
+        return freed
+    }
+
+    private fun getFile(hash: String) = File(File(dir, hash.substring(0, 2)), hash)
+
+    private fun write(hash: String, data: ByteArray, offset: Int, length: Int) {
+        val file = getFile(hash)
+        file.parentFile.mkdirs()
+        // Written under a temporary name first so a chunk can't be seen before it's complete
+        val tmp = File.createTempFile(hash.substring(0, 8), TMP_SUFFIX, file.parentFile)
+        try {
+            val deflated = deflate(data, offset, length)
+            FileOutputStream(tmp).use { out ->
+                if (deflated.size < length) {
+                    out.write(BackupZip.METHOD_DEFLATED)
+                    out.write(deflated)
+                } else {
+                    out.write(BackupZip.METHOD_STORED)
+                    out.write(data, offset, length)
+                }
+                out.fd.sync()
+            }
+            writtenBytes.addAndGet(tmp.length())
+            if (!tmp.renameTo(file)) {
+                throw IOException("Failed to store chunk $hash")
+            }
+        } finally {
+            tmp.delete()
+        }
+    }
+
+    private fun deflate(data: ByteArray, offset: Int, length: Int): ByteArray {
+        val deflater = Deflater()
+        try {
+            deflater.setInput(data, offset, length)
+            deflater.finish()
+            val out = ByteArrayOutputStream(length / 2 + 64)
+            val buffer = ByteArray(8192)
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer))
+            }
+            return out.toByteArray()
+        } finally {
+            deflater.end()
+        }
+    }
+
+    private fun inflate(stored: ByteArray): ByteArray {
+        val inflater = Inflater()
+        try {
+            inflater.setInput(stored, 1, stored.size - 1)
+            val out = ByteArrayOutputStream(MAX_CHUNK_SIZE)
+            val buffer = ByteArray(8192)
+            while (!inflater.finished()) {
+                val count = inflater.inflate(buffer)
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw IOException("Truncated chunk")
+                }
+                out.write(buffer, 0, count)
+            }
+            return out.toByteArray()
+        } finally {
+            inflater.end()
+        }
+    }
+
+    /**
+     * Chunks of a backup's files, stored in the backup archive in place of the files themselves.
+     */
+    class Manifest(val files: Map<String, List<String>>) {
+
+        val chunks get() = files.values.flatMapTo(HashSet()) { it }
+
+        override fun toString(): String {
+            val obj = JSONObject()
+            files.forEach { (name, hashes) -> obj.put(name, JSONArray(hashes)) }
+            return JSONObject().put(KEY_VERSION, VERSION).put(KEY_FILES, obj).toString()
+        }
+
+        companion object {
+
+            private const val VERSION = 1
+            private const val KEY_VERSION = "version"
+            private const val KEY_FILES = "files"
+
+            fun fromString(string: String): Manifest {
+                val obj = JSONObject(string).getJSONObject(KEY_FILES)
+                val files = LinkedHashMap<String, List<String>>()
+                obj.keys().forEach { name ->
+                    val hashes = obj.getJSONArray(name)
+                    files[name] = (0 until hashes.length()).map { hashes.getString(it) }
+                }
+                return Manifest(files)
+            }
+        }
+    }
+
+    companion object {
+
+        private const val DIGEST = "SHA-256"
+        private const val TMP_SUFFIX = ".tmp"
+
+        private const val MIN_CHUNK_SIZE = 2 * 1024
+        private const val MAX_CHUNK_SIZE = 64 * 1024
+        // A boundary needs the top 13 bits of the hash to be 0, for 8k chunks on average
+        private const val BOUNDARY_SHIFT = 32 - 13
+
+        // Fixed seed, the boundaries have to be the same across runs for chunks to be reused
+        private val GEAR = Random(0x5a1d_c4e7L).let { random -> IntArray(256) { random.nextInt() } }
+
+        /**
+         * Finds the end of the chunk starting at [start] using a gear hash. Every byte shifts the
+         * hash by one, so it only depends on the last 32 bytes and the same content gives the
+         * same boundaries wherever it ends up in the file.
+         */
+        fun findChunkEnd(data: ByteArray, start: Int): Int {
+            val end = Math.min(data.size, start + MAX_CHUNK_SIZE)
+            val minEnd = start + MIN_CHUNK_SIZE
+            var hash = 0
+            for (i in start until end) {
+                hash = (hash shl 1) + GEAR[data[i].toInt() and 0xff]
+                if (i >= minEnd && hash ushr BOUNDARY_SHIFT == 0) {
+                    return i + 1
+                }
+            }
+            return end
+        }
+
+        private fun toHex(bytes: ByteArray): String {
+            val sb = StringBuilder(bytes.size * 2)
+            bytes.forEach { sb.append(String.format("%02x", it)) }
+            return sb.toString()
+        }
+    }
+}
@@ -34,6 +34,7 @@ class NewBackupActivity : SettingsBaseActivity() {
     private val backupWallpaper by lazy { findViewById<CheckBox>(R.id.content_wallpaper) }
 
     private val backupLocationDevice by lazy { findViewById<RadioButton>(R.id.location_device) }
+    private val backupIncremental by lazy { findViewById<CheckBox>(R.id.incremental) }
 
     private val config by lazy { findViewById<View>(R.id.config) }
     private val startButton by lazy { findViewById<FloatingActionButton>(R.id.fab) }
@@ -59,6 +60,11 @@ class NewBackupActivity : SettingsBaseActivity() {
 
         backupName.setText(getTimestamp())
 
+        // Chunks are kept in the backup folder, so only backups stored there can be incremental
+        backupLocationDevice.setOnCheckedChangeListener { _, isChecked ->
+            backupIncremental.isEnabled = isChecked
+        }
+
         startButton.setOnClickListener {
             onStartBackup()
         }
@@ -179,7 +185,8 @@ class NewBackupActivity : SettingsBaseActivity() {
                     context = context,
                     name = backupName.text.toString(),
                     location = backupUri,
-                    contents = contents
+                    contents = contents,
+                    incremental = backupLocationDevice.isChecked && backupIncremental.isChecked
             )
         }
 
@@ -9,19 +9,26 @@ import android.graphics.BitmapFactory
 import android.net.Uri
 import android.os.AsyncTask
 import android.os.Environment
+import android.os.SystemClock
 import android.util.Log
 import androidx.core.content.FileProvider
 import com.android.launcher3.BuildConfig
 import com.android.launcher3.LauncherFiles
+import com.android.launcher3.LauncherSettings
 import com.android.launcher3.Utilities
+import com.android.launcher3.util.IOUtils
 import org.json.JSONArray
+import org.json.JSONException
+import org.zimmob.zimlx.preferences.PrefStore
 import java.io.*
 import java.nio.charset.StandardCharsets
 import java.text.SimpleDateFormat
 import java.util.*
+import java.util.concurrent.Callable
+import java.util.concurrent.Future
+import java.util.concurrent.FutureTask
 import java.util.zip.ZipEntry
 import java.util.zip.ZipInputStream
-import java.util.zip.ZipOutputStream
 
 class ZimBackup(val context: Context, val uri: Uri) {
 
@@ -29,46 +36,77 @@ class ZimBackup(val context: Context, val uri: Uri) {
     val meta by lazy { readMeta() }
 
     private fun readMeta(): Meta? {
+        return readEntry(Meta.FILE_NAME)?.let { Meta.fromString(String(it, StandardCharsets.UTF_8)) }
+    }
+
+    /**
+     * Returns the chunks of the files of an incremental backup, or null for a regular backup.
+     */
+    fun readManifest(): ChunkStore.Manifest? {
+        return readEntry(MANIFEST_FILE_NAME)?.let {
+            ChunkStore.Manifest.fromString(String(it, StandardCharsets.UTF_8))
+        }
+    }
+
+    /**
+     * Like [readManifest], but throws if the backup or its manifest can't be read, so that a backup
+     * which failed to read isn't mistaken for one without a manifest.
+     */
+    @Throws(IOException::class)
+    fun readManifestOrThrow(): ChunkStore.Manifest? {
+        val pfd = context.contentResolver.openFileDescriptor(uri, "r")
+                ?: throw IOException("Unable to open $uri")
+        val data = pfd.use {
+            FileInputStream(it.fileDescriptor).use { inStream ->
+                BackupZip.Index.read(inStream.channel).read(MANIFEST_FILE_NAME)
+            }
+        } ?: return null
         try {
-            val pfd = context.contentResolver.openFileDescriptor(uri, "r")
-            val inStream = FileInputStream(pfd?.fileDescriptor)
-            val zipIs = ZipInputStream(inStream)
-            var entry: ZipEntry?
-            var meta: Meta? = null
-            try {
-                while (true) {
-                    entry = zipIs.nextEntry
-                    if (entry == null) break
-                    if (entry.name != Meta.FILE_NAME) continue
-                    meta = Meta.fromString(String(zipIs.readBytes(), StandardCharsets.UTF_8))
-                    break
-                }
-            } catch (t: Throwable) {
-                Log.e(TAG, "Unable to read meta for $uri", t)
-            } finally {
-                zipIs.close()
-                inStream.close()
-                pfd?.close()
-                return meta
+            return ChunkStore.Manifest.fromString(String(data, StandardCharsets.UTF_8))
+        } catch (e: JSONException) {
+            throw IOException("Unable to parse the manifest of $uri", e)
+        }
+    }
+
+    private fun readEntry(name: String): ByteArray? {
+        var data: ByteArray? = null
+        val indexed = readIndex { index ->
+            data = index.read(name)
+        }
+        if (indexed) return data
+
+        readZip { zipIs ->
+            while (true) {
+                val entry = zipIs.nextEntry ?: break
+                if (entry.name != name) continue
+                data = zipIs.readBytes()
+                break
             }
-        } catch (t: Throwable) {
-            Log.e(TAG, "Unable to read meta for $uri", t)
-            return null
         }
+        return data
     }
 
     private fun readPreview(): Pair<Bitmap?, Bitmap?>? {
-        var entry: ZipEntry?
         var screenshot: Bitmap? = null
         var wallpaper: Bitmap? = null
-        readZip { zipIs ->
-            while (true) {
-                entry = zipIs.nextEntry
-                if (entry == null) break
-                if (entry!!.name == "screenshot.png") {
-                    screenshot = BitmapFactory.decodeStream(zipIs)
-                } else if (entry!!.name == WALLPAPER_FILE_NAME) {
-                    wallpaper = BitmapFactory.decodeStream(zipIs)
+        val indexed = readIndex { index ->
+            screenshot = index.open(SCREENSHOT_FILE_NAME)?.use { BitmapFactory.decodeStream(it) }
+            // Older backups don't have a preview, fall back to the full wallpaper
+            val wallpaperName = if (WALLPAPER_PREVIEW_FILE_NAME in index)
+                WALLPAPER_PREVIEW_FILE_NAME else WALLPAPER_FILE_NAME
+            wallpaper = index.open(wallpaperName)?.use { BitmapFactory.decodeStream(it) }
+        }
+        if (!indexed) {
+            readZip { zipIs ->
+                while (true) {
+                    val entry = zipIs.nextEntry ?: break
+                    when (entry.name) {
+                        SCREENSHOT_FILE_NAME -> screenshot = BitmapFactory.decodeStream(zipIs)
+                        WALLPAPER_PREVIEW_FILE_NAME -> wallpaper = BitmapFactory.decodeStream(zipIs)
+                        WALLPAPER_FILE_NAME -> if (wallpaper == null) {
+                            wallpaper = BitmapFactory.decodeStream(zipIs)
+                        }
+                    }
                 }
             }
         }
@@ -77,6 +115,28 @@ class ZimBackup(val context: Context, val uri: Uri) {
                 Utilities.getScaledDownBitmap(wallpaper, 1000, false))
     }
 
+    /**
+     * Reads the central directory and passes it to [body], so only the entries which are needed
+     * have to be read. Returns false if the backup can't be read that way, e.g. if the provider
+     * only hands out a pipe.
+     */
+    private inline fun readIndex(body: (BackupZip.Index) -> Unit): Boolean {
+        try {
+            val pfd = context.contentResolver.openFileDescriptor(uri, "r") ?: return false
+            val inStream = FileInputStream(pfd.fileDescriptor)
+            try {
+                body(BackupZip.Index.read(inStream.channel))
+            } finally {
+                inStream.close()
+                pfd.close()
+            }
+            return true
+        } catch (t: Throwable) {
+            Log.w(TAG, "Unable to index $uri, scanning it instead", t)
+            return false
+        }
+    }
+
     private inline fun readZip(body: (ZipInputStream) -> Unit) {
         try {
             val pfd = context.contentResolver.openFileDescriptor(uri, "r")
@@ -102,11 +162,64 @@ class ZimBackup(val context: Context, val uri: Uri) {
             val dbFile = contextWrapper.getDatabasePath(LauncherFiles.LAUNCHER_DB)
             val dir = contextWrapper.cacheDir.parent
             val settingsFile = File(dir, "shared_prefs/" + LauncherFiles.SHARED_PREFERENCES_KEY + ".xml")
+            val prefStore = Utilities.getZimPrefs(context).prefStore
+
+            // Make sure an incremental backup is complete before anything gets overwritten
+            val manifest = readManifest()
+            val chunkStore = if (manifest != null) getChunkStore() else null
+            if (manifest != null) {
+                val missing = manifest.chunks.count { it !in chunkStore!! }
+                if (missing != 0) {
+                    Log.e(TAG, "Failed to restore $uri, $missing chunks are missing")
+                    return false
+                }
+            }
+
+            if (contents and INCLUDE_SETTINGS != 0) {
+                // Older backups keep these prefs in the settings file, they get imported from there
+                prefStore.flush()
+                prefStore.listFiles().forEach { it.delete() }
+            }
+
+            val data = ByteArray(BUFFER)
+            fun restoreEntry(name: String, input: InputStream) {
+                val file = if (name == dbFile.name) {
+                    if (contents and INCLUDE_HOMESCREEN == 0) return
+                    // The write-ahead log of the current database would be replayed on top of it
+                    File(dbFile.path + "-wal").delete()
+                    File(dbFile.path + "-shm").delete()
+                    dbFile
+                } else if (name == settingsFile.name) {
+                    if (contents and INCLUDE_SETTINGS == 0) return
+                    settingsFile
+                } else if (name.startsWith(PREF_STORE_PREFIX)) {
+                    if (contents and INCLUDE_SETTINGS == 0) return
+                    val prefName = name.substring(PREF_STORE_PREFIX.length)
+                    if (prefName.isEmpty() || prefName.contains('/') || prefName.startsWith(".")) return
+                    prefStore.dir.mkdirs()
+                    File(prefStore.dir, prefName)
+                } else if (name == WALLPAPER_FILE_NAME) {
+                    if (contents and INCLUDE_WALLPAPER == 0) return
+                    val wallpaperManager = WallpaperManager.getInstance(context)
+                    wallpaperManager.setBitmap(BitmapFactory.decodeStream(input))
+                    return
+                } else {
+                    return
+                }
+                val out = FileOutputStream(file)
+                Log.d(TAG, "Restoring $name to ${file.absolutePath}")
+                var count: Int
+                while (true) {
+                    count = input.read(data, 0, BUFFER)
+                    if (count == -1) break
+                    out.write(data, 0, count)
+                }
+                out.close()
+            }
 
             val pfd = context.contentResolver.openFileDescriptor(uri, "r")
             val inStream = FileInputStream(pfd?.fileDescriptor)
             val zipIs = ZipInputStream(inStream)
-            val data = ByteArray(BUFFER)
             var entry: ZipEntry?
             var success = false
             try {
@@ -114,29 +227,11 @@ class ZimBackup(val context: Context, val uri: Uri) {
                     entry = zipIs.nextEntry
                     if (entry == null) break
                     Log.d(TAG, "Found entry ${entry.name}")
-                    val file = if (entry.name == dbFile.name) {
-                        if (contents and INCLUDE_HOMESCREEN == 0) continue
-                        dbFile
-                    } else if (entry.name == settingsFile.name) {
-                        if (contents and INCLUDE_SETTINGS == 0) continue
-                        settingsFile
-                    } else if (entry.name == WALLPAPER_FILE_NAME) {
-                        if (contents and INCLUDE_WALLPAPER == 0) continue
-                        val wallpaperManager = WallpaperManager.getInstance(context)
-                        wallpaperManager.setBitmap(BitmapFactory.decodeStream(zipIs))
-                        continue
-                    } else {
-                        continue
-                    }
-                    val out = FileOutputStream(file)
-                    Log.d(TAG, "Restoring ${entry.name} to ${file.absolutePath}")
-                    var count: Int
-                    while (true) {
-                        count = zipIs.read(data, 0, BUFFER)
-                        if (count == -1) break
-                        out.write(data, 0, count)
-                    }
-                    out.close()
+                    restoreEntry(entry.name, zipIs)
+                }
+                manifest?.files?.forEach { (name, hashes) ->
+                    Log.d(TAG, "Found ${hashes.size} chunks for $name")
+                    chunkStore!!.open(hashes).use { restoreEntry(name, it) }
                 }
                 success = true
             } catch (t: Throwable) {
@@ -153,6 +248,42 @@ class ZimBackup(val context: Context, val uri: Uri) {
         }
     }
 
+    /**
+     * Returns a uri which can be handed to other apps. Incremental backups only hold a manifest of
+     * chunks in the local backup folder, so a regular backup with the same contents is written
+     * for them.
+     */
+    fun getShareableUri(): Uri? {
+        val manifest = readManifest() ?: return uri
+        val exportDir = File(getFolder(), EXPORT_DIR_NAME)
+        // Only the most recent export is kept around
+        exportDir.listFiles()?.forEach { it.delete() }
+        exportDir.mkdirs()
+        val name = uri.lastPathSegment?.substringAfterLast('/')?.takeIf { it.isNotEmpty() }
+                ?: "backup.$EXTENSION"
+        val target = File(exportDir, name)
+        val chunkStore = getChunkStore()
+        val exported = readIndex { index ->
+            FileOutputStream(target).use { outStream ->
+                val out = BufferedOutputStream(outStream)
+                val writer = BackupZip.Writer(out)
+                index.names.filter { it != MANIFEST_FILE_NAME }
+                        .sortedBy { it != Meta.FILE_NAME }
+                        .forEach { writer.write(newEntry(it, index.read(it)!!)) }
+                manifest.files.forEach { (file, hashes) ->
+                    writer.write(newEntry(file, chunkStore.open(hashes).use { it.readBytes() }))
+                }
+                writer.finish()
+                out.flush()
+            }
+        }
+        if (!exported) {
+            target.delete()
+            return null
+        }
+        return FileProvider.getUriForFile(context, "${BuildConfig.APPLICATION_ID}.provider", target)
+    }
+
     fun delete(): Boolean {
         return context.contentResolver.delete(uri, null, null) != 0
     }
@@ -255,8 +386,16 @@ class ZimBackup(val context: Context, val uri: Uri) {
         val EXTRA_MIME_TYPES = arrayOf(MIME_TYPE, "application/x-zip", "application/octet-stream")
 
         const val WALLPAPER_FILE_NAME = "wallpaper.png"
+        const val WALLPAPER_PREVIEW_FILE_NAME = "wallpaper_preview.png"
+        const val SCREENSHOT_FILE_NAME = "screenshot.png"
+        const val PREF_STORE_PREFIX = PrefStore.DIR_NAME + "/"
+        const val MANIFEST_FILE_NAME = "manifest"
+        const val CHUNKS_DIR_NAME = "chunks"
+        const val EXPORT_DIR_NAME = "export"
         val timestampFormat = SimpleDateFormat("dd-MM-yyyy HH:mm:ss", Locale.US)
 
+        private val chunkLock = Any()
+
         fun getFolder(): File {
             val folder = File(Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_DOCUMENTS), "ZimLX/backup")
             Log.d(TAG, "path: $folder")
@@ -288,61 +427,175 @@ class ZimBackup(val context: Context, val uri: Uri) {
             }
         }
 
-        fun create(context: Context, name: String, location: Uri, contents: Int): Boolean {
-            val contextWrapper = ContextWrapper(context)
-            val files: MutableList<File> = ArrayList()
-            if (contents or INCLUDE_HOMESCREEN != 0) {
-                files.add(contextWrapper.getDatabasePath(LauncherFiles.LAUNCHER_DB))
+        /**
+         * Writes a backup to [location]. An [incremental] backup stores its files in the chunk
+         * store of the local backup folder and only writes their manifest to [location].
+         */
+        fun create(context: Context, name: String, location: Uri, contents: Int,
+                   incremental: Boolean = false): Boolean {
+            if (!incremental) {
+                return writeBackup(context, name, location, contents, null)
             }
-            if (contents or INCLUDE_SETTINGS != 0) {
-                val dir = contextWrapper.cacheDir.parent
-                files.add(File(dir, "shared_prefs/" + LauncherFiles.SHARED_PREFERENCES_KEY + ".xml"))
+            synchronized(chunkLock) {
+                val chunkStore = getChunkStore()
+                val success = writeBackup(context, name, location, contents, chunkStore)
+                Log.d(TAG, "Stored ${chunkStore.newBytes} new of ${chunkStore.totalBytes} bytes, " +
+                        "wrote ${chunkStore.writtenBytes} bytes of chunks")
+                collectGarbage(context)
+                return success
             }
+        }
 
+        private fun writeBackup(context: Context, name: String, location: Uri, contents: Int,
+                                chunkStore: ChunkStore?): Boolean {
+            val startTime = SystemClock.uptimeMillis()
+            val contextWrapper = ContextWrapper(context)
             val devOptionsEnabled = Utilities.getZimPrefs(context)
                     .developerOptionsEnabled
             prepareConfig(context)
-            val pfd = context.contentResolver.openFileDescriptor(location, "w")
-            val outStream = FileOutputStream(pfd?.fileDescriptor)
-            val out = ZipOutputStream(BufferedOutputStream(outStream))
-            val data = ByteArray(BUFFER)
+            val snapshotFile = File(context.cacheDir, "backup_" + LauncherFiles.LAUNCHER_DB)
+            // Entries are prepared concurrently but written in the order they are added, so the
+            // metadata and the preview stay at the start of the archive
+            val entries = ArrayList<Future<BackupZip.Entry?>>()
+            val manifestFiles = Collections.synchronizedMap(LinkedHashMap<String, List<String>>())
             var success = false
             try {
-                val metaEntry = ZipEntry(Meta.FILE_NAME)
-                out.putNextEntry(metaEntry)
-                out.write(getMeta(name, contents).toString().toByteArray())
-                if (contents or INCLUDE_WALLPAPER != 0) {
-                    val wallpaperManager = WallpaperManager.getInstance(context)
-                    val wallpaperDrawable = wallpaperManager.drawable
-                    val wallpaperBitmap = Utilities.drawableToBitmap(wallpaperDrawable)
-                    if (wallpaperBitmap != null) {
-                        val wallpaperEntry = ZipEntry(WALLPAPER_FILE_NAME)
-                        out.putNextEntry(wallpaperEntry)
-                        wallpaperBitmap.compress(Bitmap.CompressFormat.PNG, 100, out)
+                fun add(body: () -> BackupZip.Entry?) {
+                    val task = FutureTask(Callable { body() })
+                    Utilities.THREAD_POOL_EXECUTOR.execute(task)
+                    entries.add(task)
+                }
+
+                // Files which go to the chunk store instead of the archive for incremental backups
+                fun addFile(fileName: String, read: () -> ByteArray) = add {
+                    val data = read()
+                    if (chunkStore != null) {
+                        manifestFiles[fileName] = chunkStore.put(data)
+                        null
+                    } else {
+                        newEntry(fileName, data)
                     }
                 }
-                files.forEach { file ->
-                    val input = BufferedInputStream(FileInputStream(file), BUFFER)
-                    val entry = ZipEntry(file.name)
-                    out.putNextEntry(entry)
-                    var count: Int
-                    while (true) {
-                        count = input.read(data, 0, BUFFER)
-                        if (count == -1) break
-                        out.write(data, 0, count)
+
+                add { newEntry(Meta.FILE_NAME, getMeta(name, contents).toString().toByteArray()) }
+                val wallpaper = if (contents and INCLUDE_WALLPAPER != 0) {
+                    Utilities.drawableToBitmap(WallpaperManager.getInstance(context).drawable)
+                } else null
+                if (wallpaper != null) {
+                    add {
+                        val preview = Utilities.getScaledDownBitmap(wallpaper, 1000, true)
+                        val data = compress(preview)
+                        if (preview != wallpaper) {
+                            preview.recycle()
+                        }
+                        newEntry(WALLPAPER_PREVIEW_FILE_NAME, data)
                     }
-                    input.close()
                 }
-                success = true
+                if (contents and INCLUDE_HOMESCREEN != 0) {
+                    addFile(LauncherFiles.LAUNCHER_DB) {
+                        snapshotLauncherDb(context, snapshotFile)
+                        IOUtils.toByteArray(snapshotFile)
+                    }
+                }
+                if (contents and INCLUDE_SETTINGS != 0) {
+                    val dir = contextWrapper.cacheDir.parent
+                    val settingsFile = File(dir, "shared_prefs/" + LauncherFiles.SHARED_PREFERENCES_KEY + ".xml")
+                    addFile(settingsFile.name) { IOUtils.toByteArray(settingsFile) }
+                    val prefStore = Utilities.getZimPrefs(context).prefStore
+                    prefStore.flush()
+                    prefStore.listFiles().forEach { file ->
+                        addFile(PREF_STORE_PREFIX + file.name) { IOUtils.toByteArray(file) }
+                    }
+                }
+                if (wallpaper != null) {
+                    addFile(WALLPAPER_FILE_NAME) { compress(wallpaper) }
+                }
+
+                val pfd = context.contentResolver.openFileDescriptor(location, "w")
+                val outStream = FileOutputStream(pfd?.fileDescriptor)
+                val out = BufferedOutputStream(outStream)
+                try {
+                    val writer = BackupZip.Writer(out)
+                    entries.forEach { task -> task.get()?.let { writer.write(it) } }
+                    if (chunkStore != null) {
+                        val manifest = ChunkStore.Manifest(manifestFiles)
+                        writer.write(newEntry(MANIFEST_FILE_NAME, manifest.toString().toByteArray()))
+                    }
+                    writer.finish()
+                    success = true
+                } finally {
+                    out.close()
+                    outStream.close()
+                    pfd?.close()
+                }
             } catch (t: Throwable) {
                 Log.e(TAG, "Failed to create backup", t)
             } finally {
-                out.close()
-                outStream.close()
-                pfd?.close()
+                // Settle all tasks before the files they read are touched again
+                entries.forEach {
+                    try {
+                        it.get()
+                    } catch (ignored: Exception) {
+                    }
+                }
+                snapshotFile.delete()
                 cleanupConfig(context, devOptionsEnabled)
-                return success
             }
+            Log.d(TAG, "Created backup in ${SystemClock.uptimeMillis() - startTime}ms")
+            return success
+        }
+
+        /**
+         * Removes the chunks which none of the local backups refers to anymore.
+         */
+        fun collectGarbage(context: Context) {
+            synchronized(chunkLock) {
+                if (getFolder().listFiles() == null) {
+                    // The backups couldn't be listed, so it isn't known which chunks are in use
+                    Log.w(TAG, "Unable to list backups, skipping gc")
+                    return
+                }
+                val chunkStore = getChunkStore()
+                val referenced = HashSet<String>()
+                listLocalBackups(context).forEach { backup ->
+                    val manifest = try {
+                        backup.readManifestOrThrow()
+                    } catch (e: Exception) {
+                        // Whatever the backup refers to is unknown, none of the chunks can go
+                        Log.w(TAG, "Unable to read manifest of ${backup.uri}, skipping gc", e)
+                        return
+                    }
+                    manifest?.let { referenced.addAll(it.chunks) }
+                }
+                val freed = chunkStore.gc(referenced)
+                Log.d(TAG, "Removed $freed bytes of unused chunks")
+            }
+        }
+
+        private fun getChunkStore() = ChunkStore(File(getFolder(), CHUNKS_DIR_NAME))
+
+        /**
+         * PNG data is already compressed, deflating it again only costs time.
+         */
+        private fun newEntry(name: String, data: ByteArray) =
+                if (name == Meta.FILE_NAME || name.endsWith(".png")) {
+                    BackupZip.Entry.stored(name, data)
+                } else {
+                    BackupZip.Entry.deflated(name, data)
+                }
+
+        private fun snapshotLauncherDb(context: Context, target: File) {
+            val result = context.contentResolver.call(LauncherSettings.Settings.CONTENT_URI,
+                    LauncherSettings.Settings.METHOD_SNAPSHOT_DB, target.path, null)
+            if (result?.getBoolean(LauncherSettings.Settings.EXTRA_VALUE) != true) {
+                throw IOException("Unable to snapshot ${LauncherFiles.LAUNCHER_DB}")
+            }
+        }
+
+        private fun compress(bitmap: Bitmap): ByteArray {
+            val out = ByteArrayOutputStream()
+            bitmap.compress(Bitmap.CompressFormat.PNG, 100, out)
+            return out.toByteArray()
         }
 
         private fun getMeta(name: String, contents: Int) = Meta(
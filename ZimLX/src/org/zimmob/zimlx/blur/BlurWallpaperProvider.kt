@@ -72,7 +72,7 @@ class BlurWallpaperProvider(val context: Context) {
 
     private val mUpdateRunnable = Runnable { updateWallpaper() }
 
-    private val wallpaperFilter = BlurWallpaperFilter(context)
+    private var wallpaperFilter: WallpaperFilter = BlurWallpaperFilter(context)
     private var applyTask: WallpaperFilter.ApplyTask? = null
 
     private var updatePending = false
@@ -136,7 +136,10 @@ class BlurWallpaperProvider(val context: Context) {
         wallpaper = applyVibrancy(wallpaper)
         Log.d("BWP", "starting blur")
 
-        applyTask = wallpaperFilter.apply(wallpaper).setCallback { result, error ->
+        // The CPU filter completes synchronously, so publish the task before attaching the callback
+        val task = wallpaperFilter.apply(wallpaper)
+        applyTask = task
+        task.setCallback { result, error ->
             if (error == null) {
                 this@BlurWallpaperProvider.wallpaper = result
                 Log.d("BWP", "blur done")
@@ -149,6 +152,11 @@ class BlurWallpaperProvider(val context: Context) {
                         Toast.makeText(context, R.string.blur_oom, Toast.LENGTH_LONG).show()
                         notifyWallpaperChanged()
                     }
+                } else if (wallpaperFilter is BlurWallpaperFilter) {
+                    // GL blur isn't usable on this device, retry in software
+                    Log.w("BWP", "GL blur failed, falling back to CPU blur", error)
+                    wallpaperFilter = CpuBlurWallpaperFilter()
+                    updatePending = true
                 }
                 wallpaper.recycle()
             }
@@ -0,0 +1,76 @@
+/*
+ *     This file is part of Lawnchair Launcher.
+ *
+ *     Lawnchair Launcher is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Lawnchair Launcher is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Lawnchair Launcher.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.zimmob.zimlx.blur
+
+import android.graphics.Bitmap
+import org.zimmob.zimlx.ZimPreferences
+
+/**
+ * Software counterpart of [BlurWallpaperFilter] which doesn't depend on a working GL driver.
+ * Downsamples the same way HokoBlur does, runs [StackBlur] over the pixels and scales back up.
+ */
+class CpuBlurWallpaperFilter : WallpaperFilter {
+
+    private val stackBlur = StackBlur()
+    private var pixels = IntArray(0)
+
+    private var blurRadius = 25
+
+    override fun applyPrefs(prefs: ZimPreferences) {
+        blurRadius = prefs.blurRadius.toInt() / BlurWallpaperProvider.DOWNSAMPLE_FACTOR
+        blurRadius = Math.max(1, Math.min(blurRadius, 25))
+    }
+
+    override fun apply(wallpaper: Bitmap): WallpaperFilter.ApplyTask {
+        return WallpaperFilter.ApplyTask.create { emitter ->
+            try {
+                emitter.onSuccess(blur(wallpaper))
+            } catch (t: Throwable) {
+                emitter.onError(t)
+            }
+        }
+    }
+
+    @Synchronized
+    private fun blur(wallpaper: Bitmap): Bitmap {
+        val factor = BlurWallpaperProvider.DOWNSAMPLE_FACTOR
+        val width = Math.max(1, wallpaper.width / factor)
+        val height = Math.max(1, wallpaper.height / factor)
+
+        val small = Bitmap.createScaledBitmap(wallpaper, width, height, true)
+        val size = width * height
+        if (pixels.size < size) {
+            pixels = IntArray(size)
+        }
+        small.getPixels(pixels, 0, width, 0, 0, width, height)
+        stackBlur.blur(pixels, width, height, blurRadius)
+
+        val blurred = if (small.isMutable && small != wallpaper) small
+                else Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888)
+        blurred.setPixels(pixels, 0, width, 0, 0, width, height)
+        if (small != blurred && small != wallpaper) {
+            small.recycle()
+        }
+
+        val result = Bitmap.createScaledBitmap(blurred, wallpaper.width, wallpaper.height, true)
+        if (result != blurred) {
+            blurred.recycle()
+        }
+        return result
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ *     This file is part of Lawnchair Launcher.
+ *
+ *     Lawnchair Launcher is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Lawnchair Launcher is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Lawnchair Launcher.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.zimmob.zimlx.blur
+
+import java.util.concurrent.ForkJoinPool
+import java.util.concurrent.RecursiveAction
+
+/**
+ * Multi-threaded stack blur over packed ARGB pixels.
+ *
+ * The horizontal pass blurs rows into a scratch buffer and the vertical pass blurs columns back
+ * into the source array. Each pass is split into stripes of lines which are processed on a
+ * fork-join pool. The scratch buffer is kept between calls so repeated blurs of the same size
+ * don't allocate.
+ */
+class StackBlur(private val pool: ForkJoinPool = ForkJoinPool.commonPool()) {
+
+    private var scratch = IntArray(0)
+
+    /**
+     * Blurs [pixels] (width * height, row major) in place with the given radius.
+     */
+    @Synchronized
+    fun blur(pixels: IntArray, width: Int, height: Int, radius: Int) {
+        require(pixels.size >= width * height) { "pixel buffer too small for ${width}x$height" }
+        if (radius < 1 || width <= 0 || height <= 0) return
+
+        val size = width * height
+        if (scratch.size < size) {
+            scratch = IntArray(size)
+        }
+        val tmp = scratch
+
+        // Rows: pixels -> scratch
+        pool.invoke(LinesTask(pixels, tmp, width, width, 1, radius, 0, height,
+                threshold(height)))
+        // Columns: scratch -> pixels
+        pool.invoke(LinesTask(tmp, pixels, height, 1, width, radius, 0, width,
+                threshold(width)))
+    }
+
+    /**
+     * Releases the scratch buffer, e.g. after the wallpaper has been processed and memory is tight.
+     */
+    @Synchronized
+    fun trimMemory() {
+        scratch = IntArray(0)
+    }
+
+    private fun threshold(lines: Int) = Math.max(MIN_STRIPE, lines / (pool.parallelism * 4))
+
+    /**
+     * Blurs lines [from, to) where line i starts at i * lineStep and its pixels are pixelStep apart.
+     */
+    private class LinesTask(
+            private val src: IntArray, private val dst: IntArray,
+            private val length: Int, private val lineStep: Int, private val pixelStep: Int,
+            private val radius: Int, private val from: Int, private val to: Int,
+            private val threshold: Int) : RecursiveAction() {
+
+        override fun compute() {
+            if (to - from <= threshold) {
+                val stack = stackBuffer(2 * radius + 1)
+                for (line in from until to) {
+                    val offset = line * lineStep
+                    blurLine(src, dst, offset, pixelStep, length, radius, stack)
+                }
+                return
+            }
+            val mid = (from + to) ushr 1
+            invokeAll(LinesTask(src, dst, length, lineStep, pixelStep, radius, from, mid, threshold),
+                    LinesTask(src, dst, length, lineStep, pixelStep, radius, mid, to, threshold))
+        }
+    }
+
+    companion object {
+
+        private const val MIN_STRIPE = 16
+
+        private val stackBuffers = object : ThreadLocal<IntArray>() {
+            override fun initialValue() = IntArray(0)
+        }
+
+        private fun stackBuffer(size: Int): IntArray {
+            var buffer = stackBuffers.get()!!
+            if (buffer.size < size) {
+                buffer = IntArray(size)
+                stackBuffers.set(buffer)
+            }
+            return buffer
+        }
+
+        /**
+         * Single line of the stack blur: a triangle kernel of weight (radius + 1 - |i|), computed
+         * with running in/out sums so the cost per pixel doesn't depend on the radius.
+         */
+        @JvmStatic
+        fun blurLine(src: IntArray, dst: IntArray, offset: Int, step: Int, length: Int,
+                     radius: Int, stack: IntArray) {
+            val div = 2 * radius + 1
+            val divSum = (radius + 1) * (radius + 1)
+            val last = length - 1
+
+            var sumA = 0; var sumR = 0; var sumG = 0; var sumB = 0
+            var inA = 0; var inR = 0; var inG = 0; var inB = 0
+            var outA = 0; var outR = 0; var outG = 0; var outB = 0
+
+            for (i in -radius..radius) {
+                val p = src[offset + Math.min(last, Math.max(i, 0)) * step]
+                stack[i + radius] = p
+                val weight = radius + 1 - Math.abs(i)
+                val a = p ushr 24; val r = (p shr 16) and 0xff
+                val g = (p shr 8) and 0xff; val b = p and 0xff
+                sumA += a * weight; sumR += r * weight; sumG += g * weight; sumB += b * weight
+                if (i > 0) {
+                    inA += a; inR += r; inG += g; inB += b
+                } else {
+                    outA += a; outR += r; outG += g; outB += b
+                }
+            }
+
+            var stackPointer = radius
+            var index = offset
+            for (x in 0 until length) {
+                dst[index] = ((sumA / divSum) shl 24) or ((sumR / divSum) shl 16) or
+                        ((sumG / divSum) shl 8) or (sumB / divSum)
+
+                sumA -= outA; sumR -= outR; sumG -= outG; sumB -= outB
+
+                val stackStart = (stackPointer - radius + div) % div
+                var p = stack[stackStart]
+                outA -= p ushr 24; outR -= (p shr 16) and 0xff
+                outG -= (p shr 8) and 0xff; outB -= p and 0xff
+
+                p = src[offset + Math.min(x + radius + 1, last) * step]
+                stack[stackStart] = p
+                inA += p ushr 24; inR += (p shr 16) and 0xff
+                inG += (p shr 8) and 0xff; inB += p and 0xff
+
+                sumA += inA; sumR += inR; sumG += inG; sumB += inB
+
+                stackPointer = (stackPointer + 1) % div
+                p = stack[stackPointer]
+                val a = p ushr 24; val r = (p shr 16) and 0xff
+                val g = (p shr 8) and 0xff; val b = p and 0xff
+                outA += a; outR += r; outG += g; outB += b
+                inA -= a; inR -= r; inG -= g; inB -= b
+
+                index += step
+            }
+        }
+    }
+}
@@ -35,6 +35,12 @@ class FlowerpotApps(private val context: Context, private val pot: Flowerpot) :
     val matches = mutableSetOf<ComponentKey>()
     val packageMatches = mutableSetOf<PackageUserKey>()
 
+    /**
+     * Bumped whenever [matches] changes so matchers compiled from it know when to rebuild.
+     */
+    var version = 0
+        private set
+
     init {
         filterApps()
         launcherApps.addOnAppsChangedCallback(this)
@@ -44,12 +50,14 @@ class FlowerpotApps(private val context: Context, private val pot: Flowerpot) :
         queryIntentMatches()
         matches.clear()
         packageMatches.clear()
+        version++
         UserManagerCompat.getInstance(context).userProfiles.forEach {
             addFromPackage(null, it)
         }
     }
 
     private fun addFromPackage(packageName: String?, user: UserHandle) {
+        version++
         launcherApps.getActivityList(packageName, user).forEach {
             if (intentMatches.contains(it.componentName.packageName)
                     || pot.rules.contains(Rule.Package(it.componentName.packageName))) {
@@ -91,6 +99,7 @@ class FlowerpotApps(private val context: Context, private val pot: Flowerpot) :
     }
 
     override fun onPackageRemoved(packageName: String, user: UserHandle) {
+        version++
         matches.removeAll {
             it.componentName.packageName == packageName && it.user == user
         }
@@ -24,14 +24,13 @@ import android.content.Intent
 import com.android.launcher3.LauncherAppState
 import com.android.launcher3.LauncherState
 import com.android.launcher3.Utilities
-import okhttp3.Request
 import org.json.JSONArray
 import org.zimmob.zimlx.globalsearch.SearchProvider
 import org.zimmob.zimlx.toArrayList
-import org.zimmob.zimlx.util.OkHttpClientBuilder
+import org.zimmob.zimlx.util.ZimHttpClient
 
 abstract class WebSearchProvider(context: Context) : SearchProvider(context) {
-    protected val client = OkHttpClientBuilder().build(context)
+    private val httpClient = ZimHttpClient.getInstance(context)
 
     override val supportsVoiceSearch = false
     override val supportsAssistant = false
@@ -55,8 +54,8 @@ abstract class WebSearchProvider(context: Context) : SearchProvider(context) {
     open fun getSuggestions(query: String): List<String> {
         if (suggestionsUrl == null) return emptyList()
         try {
-            val response = client.newCall(Request.Builder().url(suggestionsUrl!!.format(query)).build()).execute()
-            return JSONArray(response.body?.string())
+            val response = httpClient.get(ZimHttpClient.SEARCH_SUGGESTIONS, suggestionsUrl!!.format(query))
+            return JSONArray(response)
                     .getJSONArray(1)
                     .toArrayList<String>()
                     .take(MAX_SUGGESTIONS)
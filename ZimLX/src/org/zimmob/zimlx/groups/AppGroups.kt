@@ -105,6 +105,7 @@ abstract class AppGroups<T : AppGroups.Group>(private val manager: AppGroupsMana
         val enabled = manager.categorizationEnabled && manager.categorizationType == type
         if (isEnabled != enabled) {
             isEnabled = enabled
+            invalidateCaches()
             onGroupsChanged(changeCallback)
         }
     }
@@ -139,6 +140,7 @@ abstract class AppGroups<T : AppGroups.Group>(private val manager: AppGroupsMana
                 creator(context)?.let { this.groups.add(0, it) }
             }
         }
+        invalidateCaches()
     }
 
     fun saveToJson() {
@@ -150,7 +152,19 @@ abstract class AppGroups<T : AppGroups.Group>(private val manager: AppGroupsMana
         val obj = JSONObject()
         obj.put(KEY_VERSION, currentVersion)
         obj.put(KEY_GROUPS, arr)
-        groupsDataJson = obj.toString()
+        val json = obj.toString()
+        if (json != groupsDataJson) {
+            invalidateCaches()
+        }
+        groupsDataJson = json
+    }
+
+    /**
+     * Drops everything derived from the groups, such as compiled matchers. Called whenever the
+     * groups are loaded, replaced or saved with changes.
+     */
+    protected open fun invalidateCaches() {
+        groups.forEach { it.invalidateCaches() }
     }
 
     companion object {
@@ -209,6 +223,13 @@ abstract class AppGroups<T : AppGroups.Group>(private val manager: AppGroupsMana
             }
         }
 
+        /**
+         * Drops caches derived from the customizations, see [AppGroups.invalidateCaches].
+         */
+        open fun invalidateCaches() {
+
+        }
+
         fun cloneCustomizations(): CustomizationMap {
             return CustomizationMap(customizations)
         }
@@ -0,0 +1,74 @@
+/*
+ *     This file is part of Lawnchair Launcher.
+ *
+ *     Lawnchair Launcher is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Lawnchair Launcher is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Lawnchair Launcher.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.zimmob.zimlx.groups
+
+import android.content.ComponentName
+import android.os.UserHandle
+import com.android.launcher3.ItemInfo
+import com.android.launcher3.util.ComponentKey
+import com.android.launcher3.util.ItemInfoMatcher
+
+/**
+ * Matches items against a set of apps. Keys are indexed by user and then by component, so a
+ * lookup is two hash probes and doesn't allocate a [ComponentKey] per item.
+ */
+class ComponentKeyMatcher(keys: Collection<ComponentKey> = emptyList()) : ItemInfoMatcher() {
+
+    private val index = HashMap<UserHandle, HashSet<ComponentName>>()
+
+    var size = 0
+        private set
+
+    init {
+        addAll(keys)
+    }
+
+    fun add(key: ComponentKey) {
+        if (index.getOrPut(key.user) { HashSet() }.add(key.componentName)) {
+            size++
+        }
+    }
+
+    fun addAll(keys: Collection<ComponentKey>) {
+        keys.forEach(::add)
+    }
+
+    operator fun contains(key: ComponentKey) = contains(key.componentName, key.user)
+
+    fun contains(cn: ComponentName?, user: UserHandle?): Boolean {
+        if (cn == null || user == null) return false
+        return index[user]?.contains(cn) == true
+    }
+
+    override fun matches(info: ItemInfo, cn: ComponentName?): Boolean {
+        return contains(info.targetComponent, info.user)
+    }
+
+    /**
+     * Returns a matcher for the items [base] accepts which are not in this set.
+     */
+    fun excluding(base: ItemInfoMatcher? = null): ItemInfoMatcher {
+        val that = this
+        return object : ItemInfoMatcher() {
+            override fun matches(info: ItemInfo, cn: ComponentName?): Boolean {
+                if (base?.matches(info, cn) == false) return false
+                return !that.matches(info, cn)
+            }
+        }
+    }
+}
@@ -45,11 +45,9 @@ class DrawerFolders(private val manager: AppGroupsManager) : AppGroups<DrawerFol
         changeCallback.reloadDrawer()
     }
 
-    fun getFolderInfos(apps: AlphabeticalAppsList) = getFolderInfos(buildAppsMap(apps)::get)
+    private var hiddenComponents: ComponentKeyMatcher? = null
 
-    private fun buildAppsMap(apps: AlphabeticalAppsList): Map<ComponentKey, AppInfo> {
-        return apps.apps.associateBy { it.toComponentKey() }
-    }
+    fun getFolderInfos(apps: AlphabeticalAppsList) = getFolderInfos(apps::findApp)
 
     private fun getFolderInfos(getAppInfo: (ComponentKey) -> AppInfo?): List<DrawerFolderInfo> = getGroups()
             .asSequence()
@@ -57,12 +55,26 @@ class DrawerFolders(private val manager: AppGroupsManager) : AppGroups<DrawerFol
             .map { it.toFolderInfo(getAppInfo) }
             .toList()
 
-    fun getHiddenComponents() = getGroups()
-            .asSequence()
-            .filterIsInstance<CustomFolder>()
-            .filter { it.hideFromAllApps.value() }
-            .mapNotNull { it.contents.value }
-            .flatMapTo(mutableSetOf()) { it.asSequence() }
+    /**
+     * Apps which are hidden from the drawer because they are in a folder, kept until the folders
+     * change.
+     */
+    fun getHiddenComponents(): ComponentKeyMatcher {
+        return hiddenComponents ?: ComponentKeyMatcher().also { matcher ->
+            getGroups()
+                    .asSequence()
+                    .filterIsInstance<CustomFolder>()
+                    .filter { it.hideFromAllApps.value() }
+                    .mapNotNull { it.contents.value }
+                    .forEach { matcher.addAll(it) }
+            hiddenComponents = matcher
+        }
+    }
+
+    override fun invalidateCaches() {
+        super.invalidateCaches()
+        hiddenComponents = null
+    }
 
     abstract class Folder(val context: Context, type: Int, titleRes: Int) : Group(type, context, titleRes) {
         // Ensure icon customization sticks across group changes
@@ -102,7 +114,17 @@ class DrawerFolders(private val manager: AppGroupsManager) : AppGroups<DrawerFol
             return context.resources.getQuantityString(R.plurals.tab_apps_count, size, size)
         }
 
-        fun getFilter(context: Context): Filter<*> = CustomFilter(context, contents.value())
+        private var filter: CustomFilter? = null
+
+        fun getFilter(context: Context): Filter<*> {
+            val apps = contents.value()
+            return filter?.takeIf { it.matches === apps }
+                    ?: CustomFilter(context, apps).also { filter = it }
+        }
+
+        override fun invalidateCaches() {
+            filter = null
+        }
 
         override fun toFolderInfo(getAppInfo: (ComponentKey) -> AppInfo?) = super.toFolderInfo(getAppInfo).apply {
             // ✨
@@ -91,7 +91,17 @@ abstract class DrawerTabs(manager: AppGroupsManager, type: AppGroupsManager.Cate
             return context.resources.getQuantityString(R.plurals.tab_apps_count, size, size)
         }
 
-        fun getFilter(context: Context): Filter<*> = CustomFilter(context, contents.value()) // IconPackFilter(context)
+        private var filter: CustomFilter? = null
+
+        fun getFilter(context: Context): Filter<*> {
+            val apps = contents.value()
+            return filter?.takeIf { it.matches === apps }
+                    ?: CustomFilter(context, apps).also { filter = it } // IconPackFilter(context)
+        }
+
+        override fun invalidateCaches() {
+            filter = null
+        }
     }
 
     open class PredefinedTab(context: Context, type: Int, titleRes: Int,
@@ -17,9 +17,7 @@
 
 package org.zimmob.zimlx.groups
 
-import android.content.ComponentName
 import android.content.Context
-import com.android.launcher3.ItemInfo
 import com.android.launcher3.util.ComponentKey
 import com.android.launcher3.util.ItemInfoMatcher
 
@@ -34,10 +32,5 @@ abstract class Filter<T>(val context: Context) {
 
 class CustomFilter(context: Context, override val matches: Set<ComponentKey>) : Filter<ComponentKey>(context) {
 
-    override val matcher
-        get() = object : ItemInfoMatcher() {
-            override fun matches(info: ItemInfo, cn: ComponentName?): Boolean {
-                return matches.contains(ComponentKey(info.targetComponent, info.user))
-            }
-        }
-}
\ No newline at end of file
+    override val matcher by lazy { ComponentKeyMatcher(matches) }
+}
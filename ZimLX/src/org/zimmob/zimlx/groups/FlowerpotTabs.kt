@@ -84,8 +84,21 @@ class FlowerpotTabs(manager: AppGroupsManager) : DrawerTabs(manager, AppGroupsMa
             return pot.apps.matches
         }
 
+        private var filter: CustomFilter? = null
+        private var filterVersion = -1
+
         fun getFilter(context: Context): Filter<*> {
-            return CustomFilter(context, getMatches())
+            val matches = getMatches()
+            val version = pot.apps.version
+            return filter?.takeIf { it.matches === matches && filterVersion == version }
+                    ?: CustomFilter(context, matches).also {
+                        filter = it
+                        filterVersion = version
+                    }
+        }
+
+        override fun invalidateCaches() {
+            filter = null
         }
 
         companion object {
@@ -35,6 +35,7 @@ import com.google.android.apps.nexuslauncher.DynamicIconProvider
 import com.google.android.apps.nexuslauncher.clock.DynamicClock
 import org.xmlpull.v1.XmlPullParser
 import org.xmlpull.v1.XmlPullParserException
+import org.zimmob.zimlx.adaptive.AdaptiveIconCache
 import org.zimmob.zimlx.adaptive.AdaptiveIconGenerator
 import org.zimmob.zimlx.getLauncherActivityInfo
 import java.io.IOException
@@ -89,7 +90,8 @@ class DefaultPack(context: Context) : IconPack(context, "") {
         getRoundIcon(component, iconDpi)?.let {
             roundIcon = it.apply { mutate() }
         }
-        val gen = AdaptiveIconGenerator(context, roundIcon ?: originalIcon)
+        val cacheKey = AdaptiveIconCache.forActivity(context, info, iconDpi, roundIcon != null)
+        val gen = AdaptiveIconGenerator(context, roundIcon ?: originalIcon, cacheKey)
         return gen.result
     }
 
@@ -116,7 +118,8 @@ class DefaultPack(context: Context) : IconPack(context, "") {
             getRoundIcon(component, iconDpi)?.let {
                 roundIcon = it.apply { mutate() }
             }
-            val gen = AdaptiveIconGenerator(context, roundIcon ?: originalIcon)
+            val cacheKey = AdaptiveIconCache.forActivity(context, info, iconDpi, roundIcon != null)
+            val gen = AdaptiveIconGenerator(context, roundIcon ?: originalIcon, cacheKey)
             return gen.result
         }
         return iconProvider.getDynamicIcon(info, iconDpi, flattenDrawable)
@@ -40,6 +40,7 @@ import com.google.android.apps.nexuslauncher.clock.CustomClock
 import org.xmlpull.v1.XmlPullParser
 import org.xmlpull.v1.XmlPullParserException
 import org.xmlpull.v1.XmlPullParserFactory
+import org.zimmob.zimlx.adaptive.AdaptiveIconCache
 import org.zimmob.zimlx.adaptive.AdaptiveIconGenerator
 import org.zimmob.zimlx.get
 import org.zimmob.zimlx.iconpack.*
@@ -225,7 +226,7 @@ class IconPackImpl(context: Context, packPackageName: String) : IconPack(context
                     drawable = DynamicDrawable.getIcon(context, drawable, packDynamicDrawables[drawableId]!!, iconDpi)
                 }
                 if (prefs.adaptifyIconPacks) {
-                    val gen = AdaptiveIconGenerator(context, drawable.mutate())
+                    val gen = AdaptiveIconGenerator(context, drawable.mutate(), getAnalysisKey(drawableId, 0))
                     return gen.result
                 }
                 return drawable.mutate()
@@ -261,7 +262,7 @@ class IconPackImpl(context: Context, packPackageName: String) : IconPack(context
                     drawable = DynamicDrawable.getIcon(context, drawable, packDynamicDrawables[drawableId]!!, iconDpi)
                 }
                 if (prefs.adaptifyIconPacks) {
-                    val gen = AdaptiveIconGenerator(context, drawable.mutate())
+                    val gen = AdaptiveIconGenerator(context, drawable.mutate(), getAnalysisKey(drawableId, iconDpi))
                     return gen.result
                 }
                 return drawable.mutate()
@@ -408,6 +409,12 @@ class IconPackImpl(context: Context, packPackageName: String) : IconPack(context
         }
     }
 
+    private fun getAnalysisKey(drawableId: Int, iconDpi: Int): AdaptiveIconCache.Key? {
+        // Clocks and dynamic drawables change over time, their analysis can't be reused
+        if (packClocks.containsKey(drawableId) || packDynamicDrawables.containsKey(drawableId)) return null
+        return AdaptiveIconCache.forPackDrawable(context, packPackageName, drawableId, iconDpi)
+    }
+
     private val idCache = mutableMapOf<String, Int>()
     private fun getDrawableId(name: String) = packResources.getIdentifier(name, "drawable", packPackageName)// idCache.getOrPut(name) {    }
 
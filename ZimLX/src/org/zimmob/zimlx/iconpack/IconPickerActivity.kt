@@ -20,7 +20,7 @@ package org.zimmob.zimlx.iconpack
 import android.app.Activity
 import android.content.Context
 import android.content.Intent
-import android.graphics.drawable.Drawable
+import android.graphics.drawable.BitmapDrawable
 import android.os.Bundle
 import android.os.Handler
 import android.os.Message
@@ -43,6 +43,8 @@ import org.zimmob.zimlx.settings.ui.SettingsBaseActivity
 import org.zimmob.zimlx.views.FadingImageView
 import java.text.Collator
 import java.util.*
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.Future
 import java.util.concurrent.Semaphore
 
 class IconPickerActivity : SettingsBaseActivity(), View.OnLayoutChangeListener, SearchView.OnQueryTextListener {
@@ -59,6 +61,11 @@ class IconPickerActivity : SettingsBaseActivity(), View.OnLayoutChangeListener,
     private var canceled = false
     private val collator = Collator.getInstance()
     private val showDebugInfo = zimPrefs.showDebugInfo
+    private val thumbnailLoader = IconThumbnailLoader.getInstance(this)
+    private val iconSize by lazy { resources.getDimensionPixelSize(R.dimen.icon_preview_size) }
+    @Volatile
+    private var pickerIndex: IconPickerIndex? = null
+    private val iconItems = ConcurrentHashMap<IconPack.Entry, IconItem>()
 
     private var dynamicPadding = 0
 
@@ -99,7 +106,7 @@ class IconPickerActivity : SettingsBaseActivity(), View.OnLayoutChangeListener,
         runOnUiWorkerThread {
             // make sure whatever running on ui worker has finished, then start parsing the pack
             runOnThread(iconPackUiHandler) {
-                iconPack.getAllIcons(::addEntries, { canceled })
+                pickerIndex = IconPickerIndex.load(iconPack, ::addEntries, { canceled })
                 // Wait for the ui to finish processing new data
                 val waiter = Semaphore(0)
                 runOnUiThread {
@@ -124,7 +131,7 @@ class IconPickerActivity : SettingsBaseActivity(), View.OnLayoutChangeListener,
         val newItems = entries.mapNotNull {
             when (it) {
                 is IconPack.CategoryTitle -> CategoryItem(it.title)
-                is IconPack.Entry -> if (it.isAvailable) IconItem(it) else null
+                is IconPack.Entry -> if (it.isAvailable) IconItem(it).also { item -> iconItems[it] = item } else null
                 else -> null
             }
         }
@@ -156,9 +163,12 @@ class IconPickerActivity : SettingsBaseActivity(), View.OnLayoutChangeListener,
 
     private fun processSearchQuery(query: String?) {
         val q = query?.trim()
-        val filtered = if (!TextUtils.isEmpty(q)) {
-            actualItems.filter { it is IconItem && collator.matches(q!!, it.entry.displayName) }.toMutableList()
-        } else null
+        val index = pickerIndex
+        val filtered = when {
+            TextUtils.isEmpty(q) -> null
+            index != null -> index.search(q!!).mapTo(ArrayList<AdapterItem>()) { iconItems[it] ?: IconItem(it) }
+            else -> actualItems.filter { it is IconItem && collator.matches(q!!, it.entry.displayName) }.toMutableList()
+        }
         runOnUiThread {
             val hashCode = items.hashCode()
             searchItems = filtered
@@ -285,16 +295,18 @@ class IconPickerActivity : SettingsBaseActivity(), View.OnLayoutChangeListener,
             }
         }
 
+        override fun onViewRecycled(holder: RecyclerView.ViewHolder) {
+            if (holder is IconHolder) {
+                holder.cancelLoad()
+            }
+        }
+
         fun isItem(position: Int) = getItemViewType(position) == itemType
 
-        inner class IconHolder(itemView: View) : RecyclerView.ViewHolder(itemView), View.OnClickListener, IconItem.Callback {
+        inner class IconHolder(itemView: View) : RecyclerView.ViewHolder(itemView), View.OnClickListener {
 
-            private var iconLoader: IconItem? = null
-                set(value) {
-                    field?.callback = null
-                    field = value
-                    field?.callback = this
-                }
+            private var entry: IconPack.Entry? = null
+            private var pendingLoad: Future<*>? = null
             private var name = "Unknown"
 
             init {
@@ -312,14 +324,27 @@ class IconPickerActivity : SettingsBaseActivity(), View.OnLayoutChangeListener,
             }
 
             fun bind(item: IconItem) {
-                (itemView as FadingImageView).image = null
-                iconLoader = item
-                iconLoader?.loadIcon()
+                cancelLoad()
+                val imageView = itemView as FadingImageView
+                entry = item.entry
+                name = item.entry.displayName
+                val cached = thumbnailLoader.getCached(item.entry, iconSize)
+                if (cached != null) {
+                    imageView.setImageBitmap(cached)
+                    return
+                }
+                imageView.image = null
+                pendingLoad = thumbnailLoader.load(item.entry, iconSize) { entry, bitmap ->
+                    if (entry === this.entry) {
+                        imageView.image = BitmapDrawable(imageView.resources, bitmap)
+                    }
+                }
             }
 
-            override fun onIconLoaded(drawable: Drawable, name: String) {
-                (itemView as FadingImageView).image = drawable
-                this.name = name
+            fun cancelLoad() {
+                pendingLoad?.let { thumbnailLoader.cancel(it) }
+                pendingLoad = null
+                entry = null
             }
 
             override fun onClick(v: View) {
@@ -352,23 +377,7 @@ class IconPickerActivity : SettingsBaseActivity(), View.OnLayoutChangeListener,
 
     class CategoryItem(val title: String) : AdapterItem()
 
-    class IconItem(val entry: IconPack.Entry) : AdapterItem() {
-
-        var callback: Callback? = null
-
-        fun loadIcon() {
-            runOnUiWorkerThread {
-                val drawable = entry.drawable
-                val displayName = entry.displayName
-                runOnMainThread { callback?.onIconLoaded(drawable, displayName) }
-            }
-        }
-
-        interface Callback {
-
-            fun onIconLoaded(drawable: Drawable, name: String)
-        }
-    }
+    class IconItem(val entry: IconPack.Entry) : AdapterItem()
 
     class LoadingItem : AdapterItem()
 
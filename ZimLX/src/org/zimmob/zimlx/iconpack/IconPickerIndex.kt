@@ -0,0 +1,93 @@
+/*
+ *     This file is part of Lawnchair Launcher.
+ *
+ *     Lawnchair Launcher is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Lawnchair Launcher is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Lawnchair Launcher.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.zimmob.zimlx.iconpack
+
+import android.content.pm.PackageManager
+import android.util.LruCache
+import org.zimmob.zimlx.settings.ui.search.PrefixTrie
+
+/**
+ * All icons of a pack as the icon picker shows them, with their names indexed for search.
+ *
+ * Building it parses the whole pack, so the last few built are kept for later picker sessions
+ * until their pack is updated.
+ */
+class IconPickerIndex(entries: List<IconPack.PackEntry>) {
+
+    val entries = entries.filter { it !is IconPack.Entry || it.isAvailable }
+
+    private val trie = PrefixTrie.Builder().also { builder ->
+        this.entries.forEachIndexed { i, entry ->
+            if (entry is IconPack.Entry) {
+                PrefixTrie.tokenize(entry.displayName).forEach { builder.add(it, i) }
+            }
+        }
+    }.build()
+
+    /**
+     * Returns the icons with a word starting with each word of [query], in pack order.
+     */
+    fun search(query: String): List<IconPack.Entry> {
+        var matches: MutableSet<Int>? = null
+        for (word in PrefixTrie.tokenize(query)) {
+            val found = trie.find(word).toHashSet()
+            matches = matches?.apply { retainAll(found) } ?: found
+            if (matches.isEmpty()) break
+        }
+        return matches?.sorted()?.map { entries[it] as IconPack.Entry } ?: emptyList()
+    }
+
+    companion object {
+
+        private val cache = LruCache<String, IconPickerIndex>(2)
+
+        /**
+         * Passes the entries of [pack] to [callback], in batches while parsing or all at once if
+         * an index is cached. Returns the index, or null if loading was canceled.
+         */
+        fun load(pack: IconPack, callback: (List<IconPack.PackEntry>) -> Unit,
+                 cancel: () -> Boolean): IconPickerIndex? {
+            val key = getCacheKey(pack)
+            key?.let { cache.get(it) }?.let {
+                callback(it.entries)
+                return it
+            }
+
+            val entries = ArrayList<IconPack.PackEntry>()
+            pack.getAllIcons({
+                entries.addAll(it)
+                callback(it)
+            }, cancel)
+            if (cancel()) return null
+            return IconPickerIndex(entries).also { index ->
+                key?.let { cache.put(it, index) }
+            }
+        }
+
+        private fun getCacheKey(pack: IconPack): String? {
+            // The default pack lists installed apps, which change without the pack being updated
+            if (pack !is IconPackImpl) return null
+            return try {
+                val info = pack.context.packageManager.getPackageInfo(pack.packPackageName, 0)
+                "${pack.packPackageName}/${info.lastUpdateTime}"
+            } catch (e: PackageManager.NameNotFoundException) {
+                null
+            }
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ *     This file is part of Lawnchair Launcher.
+ *
+ *     Lawnchair Launcher is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Lawnchair Launcher is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Lawnchair Launcher.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.zimmob.zimlx.iconpack
+
+import android.content.Context
+import android.graphics.Bitmap
+import android.graphics.Canvas
+import android.util.Log
+import android.util.LruCache
+import org.zimmob.zimlx.runOnMainThread
+import org.zimmob.zimlx.util.ZimSingletonHolder
+import java.util.concurrent.Future
+import java.util.concurrent.LinkedBlockingDeque
+import java.util.concurrent.ThreadPoolExecutor
+import java.util.concurrent.TimeUnit
+
+/**
+ * Renders icon pack entries into bitmaps of the size the icon picker shows them at, on a small
+ * pool of threads so flinging through large packs doesn't decode on the main thread.
+ *
+ * The most recently requested icons are rendered first, since older requests are usually for
+ * rows which were already scrolled past.
+ */
+class IconThumbnailLoader(private val context: Context) {
+
+    private val executor = ThreadPoolExecutor(POOL_SIZE, POOL_SIZE, 1, TimeUnit.SECONDS,
+            LifoQueue()) { Thread(it, "IconThumbnailLoader").apply { priority = Thread.MIN_PRIORITY } }
+            .apply { allowCoreThreadTimeOut(true) }
+
+    private val cache = object : LruCache<String, Bitmap>(CACHE_SIZE) {
+        override fun sizeOf(key: String, value: Bitmap) = value.byteCount
+    }
+
+    fun getCached(entry: IconPack.Entry, size: Int): Bitmap? = cache.get(getKey(entry, size))
+
+    /**
+     * Renders [entry] at [size] pixels and passes it to [callback] on the main thread. The
+     * returned future can be given to [cancel] once the result isn't needed anymore.
+     */
+    fun load(entry: IconPack.Entry, size: Int,
+             callback: (IconPack.Entry, Bitmap) -> Unit): Future<*> {
+        return executor.submit(Runnable {
+            val key = getKey(entry, size)
+            val bitmap = cache.get(key) ?: render(entry, size)?.also { cache.put(key, it) }
+            if (bitmap != null) {
+                runOnMainThread { callback(entry, bitmap) }
+            }
+        })
+    }
+
+    fun cancel(future: Future<*>) {
+        if (future.cancel(false)) {
+            executor.remove(future as Runnable)
+        }
+    }
+
+    private fun render(entry: IconPack.Entry, size: Int): Bitmap? {
+        return try {
+            val drawable = entry.drawableForDensity(context.resources.displayMetrics.densityDpi)
+            Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888).also {
+                drawable.setBounds(0, 0, size, size)
+                drawable.draw(Canvas(it))
+            }
+        } catch (e: Exception) {
+            Log.d(TAG, "Failed to render ${entry.identifierName}", e)
+            null
+        }
+    }
+
+    private fun getKey(entry: IconPack.Entry, size: Int) = "${entry.toCustomEntry()}@$size"
+
+    private class LifoQueue : LinkedBlockingDeque<Runnable>() {
+
+        override fun offer(e: Runnable) = offerFirst(e)
+    }
+
+    companion object : ZimSingletonHolder<IconThumbnailLoader>(::IconThumbnailLoader) {
+
+        private const val TAG = "IconThumbnailLoader"
+
+        private const val POOL_SIZE = 2
+        private const val CACHE_SIZE = 16 * 1024 * 1024
+    }
+}
@@ -20,16 +20,15 @@ package org.zimmob.zimlx.location
 import android.content.Context
 import android.os.NetworkOnMainThreadException
 import android.os.SystemClock
-import okhttp3.Request
 import org.json.JSONObject
 import org.zimmob.zimlx.perms.CustomPermissionManager
 import org.zimmob.zimlx.perms.checkCustomPermission
-import org.zimmob.zimlx.util.OkHttpClientBuilder
+import org.zimmob.zimlx.util.ZimHttpClient
 import java.util.concurrent.TimeUnit
 
 class IPLocation(private val context: Context, private val cacheValidityMs: Long = TimeUnit.MINUTES.toMillis(30)) {
     private val permissionManager = CustomPermissionManager.getInstance(context)
-    private val client = OkHttpClientBuilder().build(context)
+    private val httpClient = ZimHttpClient.getInstance(context)
 
     private val cacheValid get() = cache != null && timeLast + cacheValidityMs > SystemClock.uptimeMillis()
     private var timeLast = 0L
@@ -51,14 +50,11 @@ class IPLocation(private val context: Context, private val cacheValidityMs: Long
         if (!cacheValid) {
             for (url in URLS) {
                 try {
-                    val response = client.newCall(getRequest(url)).execute()
-                    if (response.isSuccessful && response.body != null) {
-                        val json = JSONObject(response.body?.string())
-                        lat = json.getDouble("latitude")
-                        lon = json.getDouble("longitude")
-                        success = true
-                        break
-                    }
+                    val json = JSONObject(httpClient.get(ZimHttpClient.IP_LOCATION, url))
+                    lat = json.getDouble("latitude")
+                    lon = json.getDouble("longitude")
+                    success = true
+                    break
                 } catch (e: Exception) {
                     if (e is NetworkOnMainThreadException)
                         throw e
@@ -73,8 +69,6 @@ class IPLocation(private val context: Context, private val cacheValidityMs: Long
         }
     }
 
-    private fun getRequest(url: String) = Request.Builder().url(url).get().build()
-
     data class Result(val success: Boolean, val lat: Double, val lon: Double)
 
     companion object {
@@ -28,10 +28,9 @@ import android.view.ViewGroup
 import android.widget.CheckBox
 import android.widget.ImageView
 import android.widget.TextView
+import androidx.annotation.WorkerThread
 import androidx.recyclerview.widget.RecyclerView
 import com.android.launcher3.*
-import com.android.launcher3.compat.LauncherAppsCompat
-import com.android.launcher3.compat.UserManagerCompat
 import com.android.launcher3.util.ComponentKey
 import org.zimmob.zimlx.comparing
 
@@ -51,6 +50,12 @@ open class AppsAdapter(
 
     open val comparator = defaultComparator
 
+    private val appsList = SettingsAppsList.getInstance(context)
+    private val iconHandler = Handler(LauncherModel.getWorkerLooper())
+    private val pendingIcons = HashSet<App>()
+    @Volatile
+    private var lastBoundPosition = 0
+
     fun postLoadApps() {
         Handler(LauncherModel.getWorkerLooper()).postAtFrontOfQueue(::loadAppsList)
     }
@@ -69,6 +74,15 @@ open class AppsAdapter(
     override fun onBindViewHolder(holder: RecyclerView.ViewHolder, position: Int) {
         if (holder is AppHolder) {
             holder.bind(position)
+            loadIconsAround(position)
+        }
+    }
+
+    override fun onBindViewHolder(holder: RecyclerView.ViewHolder, position: Int, payloads: MutableList<Any>) {
+        if (holder is AppHolder && payloads.isNotEmpty() && payloads.all { it == PAYLOAD_ICON }) {
+            holder.bindIcon(apps[position])
+        } else {
+            super.onBindViewHolder(holder, position, payloads)
         }
     }
 
@@ -77,12 +91,38 @@ open class AppsAdapter(
     }
 
     protected open fun loadAppsList() {
-        apps.addAll(getAppsList(context)
-                .map { App(context, it) }
+        apps.addAll(appsList.getApps()
+                .filter { filter?.shouldShowApp(it.key.componentName, it.key.user) ?: true }
                 .sortedWith(comparator))
         handler.postAtFrontOfQueue(::onAppsListLoaded)
     }
 
+    /**
+     * Loads the full icons of the apps around [position] which are still showing their low res
+     * icon, in the order they are bound.
+     */
+    private fun loadIconsAround(position: Int) {
+        lastBoundPosition = position
+        val start = Math.max(0, position - ICON_PREFETCH)
+        val end = Math.min(apps.size - 1, position + ICON_PREFETCH)
+        for (i in start..end) {
+            val app = apps[i]
+            if (app.isIconLoaded || !pendingIcons.add(app)) continue
+            iconHandler.post {
+                // Icons which were scrolled far away while waiting are requested again once bound
+                if (Math.abs(i - lastBoundPosition) <= ICON_PREFETCH * 2) {
+                    app.loadIcon(context)
+                }
+                handler.post {
+                    pendingIcons.remove(app)
+                    if (app.isIconLoaded) {
+                        notifyItemChanged(i, PAYLOAD_ICON)
+                    }
+                }
+            }
+        }
+    }
+
     protected open fun onAppsListLoaded() {
         isLoaded = true
         notifyDataSetChanged()
@@ -96,27 +136,32 @@ open class AppsAdapter(
         callback?.onAppSelected(apps[position])
     }
 
-    private fun getAppsList(context: Context): List<LauncherActivityInfo> {
-        val apps = ArrayList<LauncherActivityInfo>()
-        val profiles = UserManagerCompat.getInstance(context).userProfiles
-        val launcherAppsCompat = LauncherAppsCompat.getInstance(context)
-        profiles.forEach { apps += launcherAppsCompat.getActivityList(null, it) }
-        return if (filter != null) {
-            apps.filter { filter.shouldShowApp(it.componentName, it.user) }
-        } else {
-            apps
-        }
-    }
-
     class App(context: Context, val info: LauncherActivityInfo) {
 
-        val iconDrawable: Drawable
         val key = ComponentKey(info.componentName, info.user)
+        private val appInfo = AppInfo(context, info, info.user)
+        val label: CharSequence
+        var iconDrawable: Drawable
+            private set
+        @Volatile
+        var isIconLoaded: Boolean
+            private set
 
         init {
-            val appInfo = AppInfo(context, info, info.user)
+            // The title and low res icon are almost always in the icon cache already, unlike
+            // the label of the activity info which has to load the app's resources
+            LauncherAppState.getInstance(context).iconCache.getTitleAndIcon(appInfo, true)
+            label = appInfo.title ?: info.label
+            iconDrawable = BitmapDrawable(context.resources, appInfo.iconBitmap)
+            isIconLoaded = !appInfo.usingLowResIcon
+        }
+
+        @WorkerThread
+        fun loadIcon(context: Context) {
+            if (isIconLoaded) return
             LauncherAppState.getInstance(context).iconCache.getTitleAndIcon(appInfo, false)
             iconDrawable = BitmapDrawable(context.resources, appInfo.iconBitmap)
+            isIconLoaded = true
         }
     }
 
@@ -133,12 +178,16 @@ open class AppsAdapter(
         fun bind(position: Int) {
             val app = apps[position]
 
-            label.text = app.info.label
-            icon.setImageDrawable(app.iconDrawable)
+            label.text = app.label
+            bindIcon(app)
 
             onBindApp(app, this)
         }
 
+        fun bindIcon(app: App) {
+            icon.setImageDrawable(app.iconDrawable)
+        }
+
         override fun onClick(v: View) {
             onClickApp(adapterPosition, this)
         }
@@ -152,6 +201,9 @@ open class AppsAdapter(
     }
 
     companion object {
-        val defaultComparator = comparing<App, String> { it.info.label.toString().toLowerCase() }
+        val defaultComparator = comparing<App, String> { it.label.toString().toLowerCase() }
+
+        private const val ICON_PREFETCH = 12
+        private const val PAYLOAD_ICON = "icon"
     }
 }
@@ -68,7 +68,7 @@ class DockSwitchPreference(context: Context, attrs: AttributeSet? = null) : Styl
         return property != null
     }
 
-    class DockSwitchSlice(context: Context, attrs: AttributeSet) : SwitchSlice(context, attrs) {
+    class DockSwitchSlice(context: Context, attrs: SearchIndex.SliceAttributes) : SwitchSlice(context, attrs) {
 
         override fun createSliceView(): View {
             return DockSwitchSliceView(context, key)
@@ -0,0 +1,253 @@
+/*
+ *     This file is part of Lawnchair Launcher.
+ *
+ *     Lawnchair Launcher is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Lawnchair Launcher is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Lawnchair Launcher.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.zimmob.zimlx.preferences
+
+import android.os.Handler
+import android.os.HandlerThread
+import android.os.Process
+import android.util.Log
+import org.json.JSONArray
+import org.json.JSONException
+import org.json.JSONObject
+import java.io.File
+import java.io.FileOutputStream
+import java.io.IOException
+import java.nio.charset.StandardCharsets
+
+/**
+ * File backed storage for the list and map prefs of [org.zimmob.zimlx.ZimPreferences].
+ *
+ * Each pref gets a [Journal] in [dir] holding one JSON record per line. Edits append a record
+ * instead of re-serializing the whole value, and are written behind on a background thread so
+ * edits made in quick succession reach the disk in a single write. Once a journal holds too many
+ * stale records its owner replaces it with a snapshot of the current value.
+ */
+class PrefStore(val dir: File) {
+
+    private val journals = HashMap<String, Journal>()
+
+    fun getJournal(key: String): Journal = synchronized(journals) {
+        journals.getOrPut(key) { Journal(File(dir, key)) }
+    }
+
+    /**
+     * Writes all queued records of this store, blocking until they are on disk.
+     */
+    fun flush() {
+        synchronized(journals) { ArrayList(journals.values) }.forEach { it.flush() }
+    }
+
+    /**
+     * Returns the journal files currently on disk.
+     */
+    fun listFiles(): List<File> = dir.listFiles()?.filter { it.isFile && !it.name.endsWith(TMP_SUFFIX) }
+            ?: emptyList()
+
+    class Journal(val file: File) {
+
+        private val pending = ArrayList<String>()
+        private var truncate = false
+        private var scheduled = false
+        private val writeLock = Any()
+        private val flushRunnable = Runnable { flush() }
+
+        /**
+         * Number of records in the file including the queued ones, used to decide when the
+         * journal is worth compacting.
+         */
+        @get:Synchronized
+        var recordCount = 0
+            private set
+
+        fun exists() = file.exists()
+
+        fun readList(): MutableList<String> {
+            val list = ArrayList<String>()
+            read { record ->
+                when (record.getString(0)) {
+                    OP_ALL -> {
+                        val values = record.getJSONArray(1)
+                        list.clear()
+                        (0 until values.length()).mapTo(list) { values.getString(it) }
+                    }
+                    OP_ADD -> list.add(record.getInt(1), record.getString(2))
+                    OP_SET -> list[record.getInt(1)] = record.getString(2)
+                    OP_REMOVE -> list.removeAt(record.getInt(1))
+                }
+            }
+            return list
+        }
+
+        fun readMap(): MutableMap<String, String> {
+            val map = HashMap<String, String>()
+            read { record ->
+                when (record.getString(0)) {
+                    OP_ALL -> {
+                        val values = record.getJSONObject(1)
+                        map.clear()
+                        values.keys().forEach { map[it] = values.getString(it) }
+                    }
+                    OP_SET -> map[record.getString(1)] = record.getString(2)
+                    OP_REMOVE -> map.remove(record.getString(1))
+                }
+            }
+            return map
+        }
+
+        private fun read(apply: (JSONArray) -> Unit) {
+            flush()
+            var count = 0
+            try {
+                file.forEachLine(StandardCharsets.UTF_8) { line ->
+                    if (line.isEmpty()) return@forEachLine
+                    try {
+                        apply(JSONArray(line))
+                        count++
+                    } catch (e: JSONException) {
+                        // Most likely a record torn by a crash mid write, keep what we have
+                        Log.w(TAG, "Skipping bad record in ${file.name}", e)
+                    } catch (e: IndexOutOfBoundsException) {
+                        Log.w(TAG, "Skipping bad record in ${file.name}", e)
+                    }
+                }
+            } catch (e: IOException) {
+                Log.e(TAG, "Failed to read ${file.name}", e)
+            }
+            synchronized(this) {
+                recordCount = count + pending.size
+            }
+        }
+
+        fun listAdd(position: Int, value: String, blocking: Boolean) =
+                append(JSONArray().put(OP_ADD).put(position).put(value), blocking)
+
+        fun listSet(position: Int, value: String, blocking: Boolean) =
+                append(JSONArray().put(OP_SET).put(position).put(value), blocking)
+
+        fun listRemove(position: Int, blocking: Boolean) =
+                append(JSONArray().put(OP_REMOVE).put(position), blocking)
+
+        fun listReplace(values: List<String>, blocking: Boolean) =
+                replace(JSONArray().put(OP_ALL).put(JSONArray(values)), blocking)
+
+        fun mapPut(key: String, value: String, blocking: Boolean) =
+                append(JSONArray().put(OP_SET).put(key).put(value), blocking)
+
+        fun mapRemove(key: String, blocking: Boolean) =
+                append(JSONArray().put(OP_REMOVE).put(key), blocking)
+
+        fun mapReplace(values: Map<String, String>, blocking: Boolean) =
+                replace(JSONArray().put(OP_ALL).put(JSONObject(values)), blocking)
+
+        /**
+         * Whether the journal has grown well past the live [size] of its value.
+         */
+        fun shouldCompact(size: Int) = recordCount > COMPACT_MIN_RECORDS + 2 * size
+
+        private fun append(record: JSONArray, blocking: Boolean) {
+            synchronized(this) {
+                pending.add(record.toString())
+                recordCount++
+            }
+            schedule(blocking)
+        }
+
+        private fun replace(snapshot: JSONArray, blocking: Boolean) {
+            synchronized(this) {
+                pending.clear()
+                pending.add(snapshot.toString())
+                truncate = true
+                recordCount = 1
+            }
+            schedule(blocking)
+        }
+
+        private fun schedule(blocking: Boolean) {
+            if (blocking) {
+                flush()
+                return
+            }
+            synchronized(this) {
+                if (scheduled) return
+                scheduled = true
+            }
+            handler.postDelayed(flushRunnable, FLUSH_DELAY)
+        }
+
+        /**
+         * Writes the queued records, blocking until they are on disk.
+         */
+        fun flush() {
+            synchronized(writeLock) {
+                val lines: List<String>
+                val rewrite: Boolean
+                synchronized(this) {
+                    scheduled = false
+                    if (pending.isEmpty()) return
+                    lines = ArrayList(pending)
+                    rewrite = truncate
+                    pending.clear()
+                    truncate = false
+                }
+                try {
+                    write(lines, rewrite)
+                } catch (e: IOException) {
+                    Log.e(TAG, "Failed to write ${file.name}", e)
+                }
+            }
+        }
+
+        private fun write(lines: List<String>, rewrite: Boolean) {
+            file.parentFile?.mkdirs()
+            val target = if (rewrite) File(file.path + TMP_SUFFIX) else file
+            FileOutputStream(target, !rewrite).use { out ->
+                val writer = out.bufferedWriter(StandardCharsets.UTF_8)
+                lines.forEach {
+                    writer.write(it)
+                    writer.write("\n")
+                }
+                writer.flush()
+                out.fd.sync()
+            }
+            if (rewrite && !target.renameTo(file)) {
+                throw IOException("Failed to replace ${file.name}")
+            }
+        }
+    }
+
+    companion object {
+        private const val TAG = "PrefStore"
+
+        const val DIR_NAME = "prefs"
+
+        private const val TMP_SUFFIX = ".tmp"
+        private const val FLUSH_DELAY = 100L
+        private const val COMPACT_MIN_RECORDS = 32
+
+        private const val OP_ALL = "all"
+        private const val OP_ADD = "add"
+        private const val OP_SET = "set"
+        private const val OP_REMOVE = "rm"
+
+        private val handler by lazy {
+            val thread = HandlerThread("pref-store", Process.THREAD_PRIORITY_BACKGROUND)
+            thread.start()
+            Handler(thread.looper)
+        }
+    }
+}
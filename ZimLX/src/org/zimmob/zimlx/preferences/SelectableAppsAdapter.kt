@@ -34,7 +34,7 @@ abstract class SelectableAppsAdapter(context: Context, private val callback: Cal
     private val accentTintList = ColorStateList.valueOf(Utilities.getZimPrefs(context).accentColor)
 
     override val comparator = comparing<App, Int> { if (isSelected(it.key)) 0 else 1 }
-            .then { it.info.label.toString().toLowerCase() }
+            .then { it.label.toString().toLowerCase() }
 
     init {
         postLoadApps()
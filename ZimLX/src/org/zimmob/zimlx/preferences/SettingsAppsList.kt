@@ -0,0 +1,90 @@
+/*
+ *     This file is part of Lawnchair Launcher.
+ *
+ *     Lawnchair Launcher is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Lawnchair Launcher is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Lawnchair Launcher.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.zimmob.zimlx.preferences
+
+import android.content.Context
+import android.os.Handler
+import android.os.UserHandle
+import androidx.annotation.WorkerThread
+import com.android.launcher3.LauncherModel
+import com.android.launcher3.compat.LauncherAppsCompat
+import com.android.launcher3.compat.UserManagerCompat
+import com.android.launcher3.shortcuts.ShortcutInfoCompat
+import org.zimmob.zimlx.util.ZimSingletonHolder
+
+/**
+ * The installed apps shown by the app pickers in settings, loaded once and shared by all the
+ * pickers opened until settings are closed, so icons loaded by one picker are already there in
+ * the next.
+ *
+ * Only accessed on the model worker thread, which the icon cache requires anyway.
+ */
+class SettingsAppsList(private val context: Context) : LauncherAppsCompat.OnAppsChangedCallbackCompat {
+
+    private val workerHandler = Handler(LauncherModel.getWorkerLooper())
+    private var apps: List<AppsAdapter.App>? = null
+
+    init {
+        LauncherAppsCompat.getInstance(context).addOnAppsChangedCallback(this)
+    }
+
+    @WorkerThread
+    fun getApps(): List<AppsAdapter.App> {
+        return apps ?: loadApps().also { apps = it }
+    }
+
+    private fun loadApps(): List<AppsAdapter.App> {
+        val launcherAppsCompat = LauncherAppsCompat.getInstance(context)
+        return UserManagerCompat.getInstance(context).userProfiles
+                .flatMap { launcherAppsCompat.getActivityList(null, it) }
+                .map { AppsAdapter.App(context, it) }
+    }
+
+    fun clear() {
+        workerHandler.post { apps = null }
+    }
+
+    override fun onPackageRemoved(packageName: String, user: UserHandle) = clear()
+
+    override fun onPackageAdded(packageName: String, user: UserHandle) = clear()
+
+    override fun onPackageChanged(packageName: String, user: UserHandle) = clear()
+
+    override fun onPackagesAvailable(packageNames: Array<out String>, user: UserHandle, replacing: Boolean) = clear()
+
+    override fun onPackagesUnavailable(packageNames: Array<out String>, user: UserHandle, replacing: Boolean) = clear()
+
+    override fun onPackagesSuspended(packageNames: Array<out String>, user: UserHandle) = clear()
+
+    override fun onPackagesUnsuspended(packageNames: Array<out String>, user: UserHandle) = clear()
+
+    override fun onShortcutsChanged(packageName: String?, shortcuts: MutableList<ShortcutInfoCompat>?, user: UserHandle?) {
+
+    }
+
+    companion object : ZimSingletonHolder<SettingsAppsList>(::SettingsAppsList) {
+
+        /**
+         * Drops the loaded apps once the settings session is over, or when their icons change.
+         */
+        @JvmStatic
+        fun releaseIfCreated() {
+            dangerousGetInstance()?.clear()
+        }
+    }
+}
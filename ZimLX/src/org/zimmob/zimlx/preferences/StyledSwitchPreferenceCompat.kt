@@ -44,15 +44,9 @@ open class StyledSwitchPreferenceCompat(context: Context, attrs: AttributeSet? =
     }
 
 
-    open class SwitchSlice(context: Context, attrs: AttributeSet) : SearchIndex.Slice(context, attrs) {
+    open class SwitchSlice(context: Context, attrs: SearchIndex.SliceAttributes) : SearchIndex.Slice(context, attrs) {
 
-        private val defaultValue: Boolean
-
-        init {
-            val ta = context.obtainStyledAttributes(attrs, intArrayOf(android.R.attr.defaultValue))
-            defaultValue = ta.getBoolean(0, false)
-            ta.recycle()
-        }
+        private val defaultValue = attrs.defaultValue
 
         override fun createSliceView(): View {
             return SwitchSliceView(context, key, defaultValue)
@@ -67,7 +67,7 @@ class IconPackPreference(context: Context, attrs: AttributeSet? = null) : Prefer
         }
     }
 
-    class IconPackSlice(context: Context, attrs: AttributeSet) : SearchIndex.Slice(context, attrs) {
+    class IconPackSlice(context: Context, attrs: SearchIndex.SliceAttributes) : SearchIndex.Slice(context, attrs) {
 
         override fun createSliceView(): View {
             return (View.inflate(context, R.layout.preview_icon, null) as ImageView).apply {
@@ -96,6 +96,7 @@ import org.zimmob.zimlx.preferences.GridSizeDialogFragmentCompat;
 import org.zimmob.zimlx.preferences.GridSizePreference;
 import org.zimmob.zimlx.preferences.IconShapePreference;
 import org.zimmob.zimlx.preferences.ResumablePreference;
+import org.zimmob.zimlx.preferences.SettingsAppsList;
 import org.zimmob.zimlx.preferences.SingleDimensionGridSizeDialogFragmentCompat;
 import org.zimmob.zimlx.preferences.SingleDimensionGridSizePreference;
 import org.zimmob.zimlx.preferences.SmartspaceEventProvidersFragment;
@@ -182,6 +183,14 @@ public class SettingsActivity extends SettingsBaseActivity implements
         defaultHome = resolveDefaultHome();
     }
 
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (!isSubSettings && isFinishing()) {
+            SettingsAppsList.releaseIfCreated();
+        }
+    }
+
     @Override
     public void finish() {
         super.finish();
@@ -0,0 +1,172 @@
+/*
+ *     This file is part of Lawnchair Launcher.
+ *
+ *     Lawnchair Launcher is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Lawnchair Launcher is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Lawnchair Launcher.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.zimmob.zimlx.settings.ui.search
+
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.IOException
+import java.text.Normalizer
+import java.util.*
+
+/**
+ * Maps words to postings, flattened into arrays so it can be written to a file and read back as is.
+ *
+ * Node 0 is the root and the children of a node are stored next to each other, sorted by their
+ * character. Words are added in sorted order, so the postings of all words below a node form a
+ * single range of [postings] and a prefix lookup is only a walk down the prefix.
+ */
+class PrefixTrie private constructor(
+        private val chars: CharArray,
+        private val firstChild: IntArray,
+        private val childCount: IntArray,
+        private val postingStart: IntArray,
+        private val postingEnd: IntArray,
+        private val postings: IntArray) {
+
+    /**
+     * Returns the postings of all words starting with [prefix], a posting may be returned more
+     * than once if several of those words have it.
+     */
+    fun find(prefix: String): IntArray {
+        var node = 0
+        for (c in prefix) {
+            node = findChild(node, c)
+            if (node < 0) return EMPTY
+        }
+        return postings.copyOfRange(postingStart[node], postingEnd[node])
+    }
+
+    private fun findChild(node: Int, c: Char): Int {
+        var low = firstChild[node]
+        var high = low + childCount[node] - 1
+        while (low <= high) {
+            val mid = (low + high) ushr 1
+            when {
+                chars[mid] < c -> low = mid + 1
+                chars[mid] > c -> high = mid - 1
+                else -> return mid
+            }
+        }
+        return -1
+    }
+
+    @Throws(IOException::class)
+    fun writeTo(out: DataOutputStream) {
+        out.writeInt(chars.size)
+        for (i in 0 until chars.size) {
+            out.writeChar(chars[i].toInt())
+            out.writeInt(firstChild[i])
+            out.writeInt(childCount[i])
+            out.writeInt(postingStart[i])
+            out.writeInt(postingEnd[i])
+        }
+        out.writeInt(postings.size)
+        postings.forEach { out.writeInt(it) }
+    }
+
+    class Builder {
+
+        private val words = TreeMap<String, TreeSet<Int>>()
+
+        fun add(word: String, posting: Int) = apply {
+            words.getOrPut(word) { TreeSet() }.add(posting)
+        }
+
+        fun build(): PrefixTrie {
+            val sorted = words.keys.toTypedArray()
+            // Postings of the words in order, offsets[i] is where the ones of sorted[i] start
+            val offsets = IntArray(sorted.size + 1)
+            val postings = IntArray(words.values.sumBy { it.size })
+            sorted.forEachIndexed { i, word ->
+                var offset = offsets[i]
+                words[word]!!.forEach { postings[offset++] = it }
+                offsets[i + 1] = offset
+            }
+
+            val chars = StringBuilder().append('\u0000')
+            val firstChild = ArrayList<Int>()
+            val childCount = ArrayList<Int>()
+            val postingStart = ArrayList<Int>()
+            val postingEnd = ArrayList<Int>()
+            // Nodes are laid out breadth first so the children of each node end up next to
+            // each other. Every node covers the words sorted[low until high] sharing its prefix.
+            val queue = ArrayDeque<IntArray>()
+            queue.add(intArrayOf(0, sorted.size, 0))
+            while (queue.isNotEmpty()) {
+                val (low, high, depth) = queue.poll()
+                postingStart.add(offsets[low])
+                postingEnd.add(offsets[high])
+                firstChild.add(chars.length)
+                var i = low
+                // Only the word ending here can be this short, and it sorts first
+                while (i < high && sorted[i].length == depth) i++
+                var count = 0
+                while (i < high) {
+                    val c = sorted[i][depth]
+                    var j = i + 1
+                    while (j < high && sorted[j][depth] == c) j++
+                    chars.append(c)
+                    queue.add(intArrayOf(i, j, depth + 1))
+                    count++
+                    i = j
+                }
+                childCount.add(count)
+            }
+            return PrefixTrie(chars.toString().toCharArray(), firstChild.toIntArray(),
+                    childCount.toIntArray(), postingStart.toIntArray(), postingEnd.toIntArray(),
+                    postings)
+        }
+    }
+
+    companion object {
+
+        private val EMPTY = IntArray(0)
+        private val MARKS = Regex("\\p{Mn}+")
+        private val SEPARATORS = Regex("[^\\p{L}\\p{Nd}]+")
+
+        /**
+         * Splits [text] into lower case words without accents, the same way for the indexed text
+         * and the query.
+         */
+        @JvmStatic
+        fun tokenize(text: CharSequence): List<String> {
+            val normalized = MARKS.replace(Normalizer.normalize(text, Normalizer.Form.NFD), "")
+            return normalized.toLowerCase().split(SEPARATORS).filter { it.isNotEmpty() }
+        }
+
+        @JvmStatic
+        @Throws(IOException::class)
+        fun readFrom(input: DataInputStream): PrefixTrie {
+            val nodeCount = input.readInt()
+            val chars = CharArray(nodeCount)
+            val firstChild = IntArray(nodeCount)
+            val childCount = IntArray(nodeCount)
+            val postingStart = IntArray(nodeCount)
+            val postingEnd = IntArray(nodeCount)
+            for (i in 0 until nodeCount) {
+                chars[i] = input.readChar()
+                firstChild[i] = input.readInt()
+                childCount[i] = input.readInt()
+                postingStart[i] = input.readInt()
+                postingEnd[i] = input.readInt()
+            }
+            val postings = IntArray(input.readInt()) { input.readInt() }
+            return PrefixTrie(chars, firstChild, childCount, postingStart, postingEnd, postings)
+        }
+    }
+}
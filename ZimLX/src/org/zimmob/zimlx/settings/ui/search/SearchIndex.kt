@@ -19,153 +19,389 @@ package org.zimmob.zimlx.settings.ui.search
 
 import android.content.Context
 import android.content.res.TypedArray
-import android.util.AttributeSet
+import android.util.Log
 import android.util.Xml
 import android.view.View
 import androidx.preference.PreferenceGroup
+import com.android.launcher3.BuildConfig
 import com.android.launcher3.R
 import com.android.launcher3.Utilities
 import org.xmlpull.v1.XmlPullParser
+import org.zimmob.zimlx.preferences.DockSwitchPreference
+import org.zimmob.zimlx.preferences.StyledSwitchPreferenceCompat
 import org.zimmob.zimlx.preferences.SwitchSubPreference
+import org.zimmob.zimlx.settings.ui.IconPackPreference
 import org.zimmob.zimlx.settings.ui.PreferenceController
 import org.zimmob.zimlx.settings.ui.SubPreference
+import java.io.*
 
+/**
+ * Index of all preferences for the settings search.
+ *
+ * Walking the preference xmls is slow, so the result is cached in a file per app version and
+ * locale, together with a [PrefixTrie] over the words of the titles and summaries. Only the parts
+ * which depend on the current state, the controllers and the switches hiding whole screens, are
+ * evaluated when the index is opened.
+ */
 class SearchIndex(private val context: Context) {
 
     companion object {
         private const val TAG = "SearchIndex"
+
+        private const val CACHE_FILE_NAME = "settings_search_index"
+        private const val CACHE_VERSION = 1
+
+        private const val TYPE_SCREEN = 0
+        private const val TYPE_SWITCH_SCREEN = 1
+        private const val TYPE_CATEGORY = 2
+        // A group outside of any screen, it only hides its contents
+        private const val TYPE_GROUP = 3
+
+        // Preferences which show a slice next to their search result
+        private val sliceProviders by lazy {
+            mapOf(StyledSwitchPreferenceCompat::class.java.name to StyledSwitchPreferenceCompat.sliceProvider,
+                    DockSwitchPreference::class.java.name to DockSwitchPreference.sliceProvider,
+                    IconPackPreference::class.java.name to IconPackPreference.sliceProvider)
+        }
     }
 
     val entries = ArrayList<SettingsEntry>()
     val addedKeys = HashSet<String>()
 
+    private val data = loadData()
+    // Visible entries by their position in the cached data
+    private val entriesByIndex = arrayOfNulls<SettingsEntry>(data.entries.size)
+    // Words of entries whose title or summary is set by a controller, the trie doesn't know them
+    private val controllerWords = HashMap<Int, Pair<List<String>, List<String>>>()
+
     init {
-        indexScreen(R.xml.zim_preferences, null)
+        bindData()
     }
 
-    private fun indexScreen(resourceId: Int, parent: SettingsScreen?) {
-        val resources = context.resources
-        val parser = resources.getXml(resourceId)
-        parser.require(XmlPullParser.START_DOCUMENT, null, null)
-        parser.next()
-        parser.next()
-        indexSection(parser, parent)
+    /**
+     * Returns the entries with a word starting with each word of [query], the ones matching only
+     * by their title first.
+     */
+    fun search(query: String): List<SettingsEntry> {
+        val words = PrefixTrie.tokenize(query)
+        if (words.isEmpty()) return emptyList()
+        // Entry index to whether all words so far matched its title
+        var matches: Map<Int, Boolean>? = null
+        for (word in words) {
+            val found = HashMap<Int, Boolean>()
+            data.trie.find(word).forEach { posting ->
+                val index = posting ushr 1
+                if (entriesByIndex[index] != null && index !in controllerWords) {
+                    found[index] = found[index] == true || posting and 1 != 0
+                }
+            }
+            controllerWords.forEach { (index, texts) ->
+                when {
+                    texts.first.any { it.startsWith(word) } -> found[index] = true
+                    texts.second.any { it.startsWith(word) } -> found[index] = false
+                }
+            }
+            val previous = matches
+            val current = if (previous == null) found else found
+                    .filterKeys { it in previous }
+                    .mapValues { (index, inTitle) -> inTitle && previous.getValue(index) }
+            if (current.isEmpty()) return emptyList()
+            matches = current
+        }
+        return (matches ?: emptyMap()).entries
+                .sortedWith(compareBy({ !it.value }, { it.key }))
+                .map { entriesByIndex[it.key]!! }
     }
 
-    private fun indexSection(parser: XmlPullParser, parent: SettingsScreen?) {
-        while (parser.next() != XmlPullParser.END_TAG) {
-            if (parser.eventType != XmlPullParser.START_TAG) {
-                continue
-            }
-            val cls = try {
-                Class.forName(parser.name)
-            } catch (e: ClassNotFoundException) {
-                null
-            }
-            val attrs = Xml.asAttributeSet(parser)
-            val ta = context.obtainStyledAttributes(attrs, R.styleable.IndexablePreference)
-            when {
-                cls != null && SubPreference::class.java.isAssignableFrom(cls) -> {
-                    val controller = createController(ta)
-                    if (controller?.isVisible != false) {
+    private fun loadData(): IndexData {
+        val cacheKey = getCacheKey()
+        val cacheFile = File(context.cacheDir, CACHE_FILE_NAME)
+        if (cacheFile.exists()) {
+            try {
+                DataInputStream(BufferedInputStream(FileInputStream(cacheFile))).use {
+                    val data = IndexData.readFrom(it, cacheKey)
+                    if (data != null) return data
+                }
+            } catch (e: IOException) {
+                Log.w(TAG, "Failed to read cached index", e)
+            }
+        }
+
+        val builder = Builder()
+        builder.indexScreen(R.xml.zim_preferences, -1)
+        val data = IndexData(builder.nodes, builder.entries, buildTrie(builder.entries))
+        val tmp = File(context.cacheDir, "$CACHE_FILE_NAME.tmp")
+        try {
+            DataOutputStream(BufferedOutputStream(FileOutputStream(tmp))).use {
+                data.writeTo(it, cacheKey)
+            }
+            if (!tmp.renameTo(cacheFile)) {
+                Log.w(TAG, "Failed to replace cached index")
+            }
+        } catch (e: IOException) {
+            Log.w(TAG, "Failed to cache index", e)
+        } finally {
+            tmp.delete()
+        }
+        return data
+    }
+
+    private fun getCacheKey(): String {
+        val lastUpdate = try {
+            context.packageManager.getPackageInfo(context.packageName, 0).lastUpdateTime
+        } catch (e: Exception) {
+            0L
+        }
+        val locale = context.resources.configuration.locale
+        return "${BuildConfig.VERSION_CODE}:$lastUpdate:$locale"
+    }
+
+    private fun buildTrie(entries: List<Entry>): PrefixTrie {
+        val builder = PrefixTrie.Builder()
+        entries.forEachIndexed { index, entry ->
+            entry.title?.let { title ->
+                PrefixTrie.tokenize(title).forEach { builder.add(it, index shl 1 or 1) }
+            }
+            entry.summary?.let { summary ->
+                PrefixTrie.tokenize(summary).forEach { builder.add(it, index shl 1) }
+            }
+        }
+        return builder.build()
+    }
+
+    /**
+     * Creates the screens and entries which are visible right now from the cached data.
+     */
+    private fun bindData() {
+        val controllers = HashMap<String, PreferenceController?>()
+        fun getController(controllerClass: String?) = controllerClass?.let {
+            controllers.getOrPut(it) { PreferenceController.create(context, it) }
+        }
+
+        // Parents come before their children, so they are always bound first
+        val screens = arrayOfNulls<SettingsScreen>(data.nodes.size)
+        val visible = BooleanArray(data.nodes.size)
+        data.nodes.forEachIndexed { index, node ->
+            if (node.parent >= 0 && !visible[node.parent]) return@forEachIndexed
+            val controller = getController(node.controllerClass)
+            if (controller?.isVisible == false) return@forEachIndexed
+            val title = controller?.title ?: node.title
+            val parent = if (node.parent >= 0) screens[node.parent] else null
+            when (node.type) {
+                TYPE_CATEGORY -> screens[index] = SettingsCategory(parent!!.title, title,
+                        parent, parent.contentRes, parent.hasPreview)
+                TYPE_SCREEN, TYPE_SWITCH_SCREEN -> {
+                    if (node.type == TYPE_SWITCH_SCREEN && !Utilities.getPrefs(context)
+                                    .getBoolean(node.switchKey, node.switchDefault)) {
+                        return@forEachIndexed
+                    }
+                    screens[index] = SettingsScreen(title ?: return@forEachIndexed, title,
+                            findScreen(parent), node.contentRes, node.hasPreview)
+                }
+            }
+            visible[index] = true
+        }
+
+        data.entries.forEachIndexed { index, entry ->
+            if (!visible[entry.parent]) return@forEachIndexed
+            val controller = getController(entry.controllerClass)
+            if (controller?.isVisible == false) return@forEachIndexed
+            val title = controller?.title ?: entry.title ?: return@forEachIndexed
+            val summary = controller?.summary ?: entry.summary
+            if (!addedKeys.add(entry.key)) return@forEachIndexed
+
+            val settingsEntry = SettingsEntry(entry.iconRes, entry.key, title, summary,
+                    screens[entry.parent], entry.sliceClass, entry.sliceDefault)
+            entries.add(settingsEntry)
+            entriesByIndex[index] = settingsEntry
+            if (controller?.title != null || controller?.summary != null) {
+                controllerWords[index] = Pair(PrefixTrie.tokenize(title),
+                        summary?.let { PrefixTrie.tokenize(it) } ?: emptyList())
+            }
+        }
+    }
+
+    private tailrec fun findScreen(screen: SettingsScreen?): SettingsScreen? {
+        return if (screen is SettingsCategory)
+            findScreen(screen.parent)
+        else
+            screen
+    }
+
+    /**
+     * Walks the preference xmls and records every screen and entry, including the ones which are
+     * hidden right now.
+     */
+    private inner class Builder {
+
+        val nodes = ArrayList<Node>()
+        val entries = ArrayList<Entry>()
+
+        fun indexScreen(resourceId: Int, parent: Int) {
+            val resources = context.resources
+            val parser = resources.getXml(resourceId)
+            parser.require(XmlPullParser.START_DOCUMENT, null, null)
+            parser.next()
+            parser.next()
+            indexSection(parser, parent)
+        }
+
+        private fun hasScreen(node: Int) = node >= 0 && nodes[node].type != TYPE_GROUP
+
+        private fun indexSection(parser: XmlPullParser, parent: Int) {
+            while (parser.next() != XmlPullParser.END_TAG) {
+                if (parser.eventType != XmlPullParser.START_TAG) {
+                    continue
+                }
+                val cls = try {
+                    Class.forName(parser.name)
+                } catch (e: ClassNotFoundException) {
+                    null
+                }
+                val attrs = Xml.asAttributeSet(parser)
+                val ta = context.obtainStyledAttributes(attrs, R.styleable.IndexablePreference)
+                val controllerClass = getControllerClass(ta)
+                when {
+                    cls != null && SubPreference::class.java.isAssignableFrom(cls) -> {
                         val iconRes = ta.getResourceId(R.styleable.IndexablePreference_android_icon, 0)
-                        val title = controller?.title
-                                ?: ta.getString(R.styleable.IndexablePreference_android_title)
+                        val title = ta.getString(R.styleable.IndexablePreference_android_title)
                         val content = ta.getResourceId(R.styleable.IndexablePreference_content, 0)
                         val hasPreview = ta.getBoolean(R.styleable.IndexablePreference_hasPreview, false)
-                        var canIndex = true
-                        if (SwitchSubPreference::class.java.isAssignableFrom(cls)) {
-                            val key = ta.getString(R.styleable.IndexablePreference_android_key)
-                            val defaultValue = ta.getBoolean(R.styleable.IndexablePreference_android_defaultValue, false)
-                            val summary = controller?.summary
-                                    ?: ta.getString(R.styleable.IndexablePreference_android_summary)
-                            if (parent != null && key != null) {
-                                if (addedKeys.add(key)) {
-                                    entries.add(SettingsEntry(iconRes, key, title!!, summary, parent))
-                                }
-                            }
-                            canIndex = Utilities.getPrefs(context).getBoolean(key, defaultValue)
-                        }
-                        if (canIndex) {
-                            indexScreen(content, SettingsScreen(title!!, title, findScreen(parent), content, hasPreview))
+                        val isSwitch = SwitchSubPreference::class.java.isAssignableFrom(cls)
+                        val key = ta.getString(R.styleable.IndexablePreference_android_key)
+                        val defaultValue = ta.getBoolean(R.styleable.IndexablePreference_android_defaultValue, false)
+                        if (isSwitch && hasScreen(parent) && key != null) {
+                            val summary = ta.getString(R.styleable.IndexablePreference_android_summary)
+                            entries.add(Entry(iconRes, key, title, summary, parent, controllerClass))
                         }
-                    }
-                    skip(parser)
-                }
-                cls != null && PreferenceGroup::class.java.isAssignableFrom(cls) -> {
-                    val controller = createController(ta)
-                    if (controller?.isVisible != false) {
-                        val title = controller?.title
-                                ?: ta.getString(R.styleable.IndexablePreference_android_title)
-                        if (parent != null) {
-                            indexSection(parser, SettingsCategory(parent.title, title,
-                                    parent, parent.contentRes, parent.hasPreview))
-                        } else {
-                            indexSection(parser, null)
+                        nodes.add(Node(if (isSwitch) TYPE_SWITCH_SCREEN else TYPE_SCREEN, title,
+                                parent, content, hasPreview, controllerClass, key, defaultValue))
+                        if (content != 0) {
+                            indexScreen(content, nodes.size - 1)
                         }
-                    } else {
                         skip(parser)
                     }
-                }
-                else -> {
-                    val controller = createController(ta)
-                    if (controller?.isVisible != false) {
+                    cls != null && PreferenceGroup::class.java.isAssignableFrom(cls) -> {
+                        val title = ta.getString(R.styleable.IndexablePreference_android_title)
+                        nodes.add(Node(if (hasScreen(parent)) TYPE_CATEGORY else TYPE_GROUP, title,
+                                parent, 0, false, controllerClass))
+                        indexSection(parser, nodes.size - 1)
+                    }
+                    else -> {
                         val iconRes = ta.getResourceId(R.styleable.IndexablePreference_android_icon, 0)
                         val key = ta.getString(R.styleable.IndexablePreference_android_key)
-                        val title = controller?.title
-                                ?: ta.getString(R.styleable.IndexablePreference_android_title)
-                        val summary = controller?.summary
-                                ?: ta.getString(R.styleable.IndexablePreference_android_summary)
-                        if (parent != null && key != null && title != null) {
-                            if (addedKeys.add(key)) {
-                                entries.add(SettingsEntry(iconRes, key, title, summary, parent, getSlice(cls, attrs)))
-                            }
+                        val title = ta.getString(R.styleable.IndexablePreference_android_title)
+                        val summary = ta.getString(R.styleable.IndexablePreference_android_summary)
+                        val sliceClass = parser.name.takeIf { it in sliceProviders }
+                        val defaultValue = ta.getBoolean(R.styleable.IndexablePreference_android_defaultValue, false)
+                        if (hasScreen(parent) && key != null) {
+                            entries.add(Entry(iconRes, key, title, summary, parent, controllerClass,
+                                    sliceClass, defaultValue))
                         }
-                    }
 
-                    skip(parser)
+                        skip(parser)
+                    }
                 }
-            }
 
-            ta.recycle()
+                ta.recycle()
+            }
         }
-    }
 
-    private fun getSlice(cls: Class<*>?, attrs: AttributeSet): Slice? {
-        if (cls == null) return null
-        val provider: SliceProvider
-        try {
-            val providerField = cls.getDeclaredField("sliceProvider")
-            providerField.isAccessible = true
-            provider = providerField.get(null) as? SliceProvider ?: return null
-        } catch (t: Throwable) {
+        private fun getControllerClass(ta: TypedArray): String? {
+            return ta.getString(R.styleable.IndexablePreference_controllerClass)
+        }
 
-            return null
+        private fun skip(parser: XmlPullParser) {
+            if (parser.eventType != XmlPullParser.START_TAG) {
+                throw IllegalStateException()
+            }
+            var depth = 1
+            while (depth != 0) {
+                when (parser.next()) {
+                    XmlPullParser.END_TAG -> depth--
+                    XmlPullParser.START_TAG -> depth++
+                }
+            }
         }
-        return provider.getSlice(context, attrs)
     }
 
-    private fun createController(ta: TypedArray): PreferenceController? {
-        val controllerClass = ta.getString(R.styleable.IndexablePreference_controllerClass)
-        return PreferenceController.create(context, controllerClass)
-    }
+    private class Node(
+            val type: Int,
+            val title: String?,
+            val parent: Int,
+            val contentRes: Int,
+            val hasPreview: Boolean,
+            val controllerClass: String?,
+            val switchKey: String? = null,
+            val switchDefault: Boolean = false)
 
-    private tailrec fun findScreen(screen: SettingsScreen?): SettingsScreen? {
-        return if (screen is SettingsCategory)
-            findScreen(screen.parent)
-        else
-            screen
-    }
+    private class Entry(
+            val iconRes: Int,
+            val key: String,
+            val title: String?,
+            val summary: String?,
+            val parent: Int,
+            val controllerClass: String?,
+            val sliceClass: String? = null,
+            val sliceDefault: Boolean = false)
+
+    private class IndexData(val nodes: List<Node>, val entries: List<Entry>, val trie: PrefixTrie) {
+
+        fun writeTo(out: DataOutputStream, cacheKey: String) {
+            out.writeInt(CACHE_VERSION)
+            out.writeUTF(cacheKey)
+            out.writeInt(nodes.size)
+            nodes.forEach { node ->
+                out.writeInt(node.type)
+                writeString(out, node.title)
+                out.writeInt(node.parent)
+                out.writeInt(node.contentRes)
+                out.writeBoolean(node.hasPreview)
+                writeString(out, node.controllerClass)
+                writeString(out, node.switchKey)
+                out.writeBoolean(node.switchDefault)
+            }
+            out.writeInt(entries.size)
+            entries.forEach { entry ->
+                out.writeInt(entry.iconRes)
+                out.writeUTF(entry.key)
+                writeString(out, entry.title)
+                writeString(out, entry.summary)
+                out.writeInt(entry.parent)
+                writeString(out, entry.controllerClass)
+                writeString(out, entry.sliceClass)
+                out.writeBoolean(entry.sliceDefault)
+            }
+            trie.writeTo(out)
+        }
 
-    private fun skip(parser: XmlPullParser) {
-        if (parser.eventType != XmlPullParser.START_TAG) {
-            throw IllegalStateException()
+        private fun writeString(out: DataOutputStream, value: String?) {
+            out.writeBoolean(value != null)
+            if (value != null) out.writeUTF(value)
         }
-        var depth = 1
-        while (depth != 0) {
-            when (parser.next()) {
-                XmlPullParser.END_TAG -> depth--
-                XmlPullParser.START_TAG -> depth++
+
+        companion object {
+
+            /**
+             * Returns the index or null if it was cached for a different app version or locale.
+             */
+            fun readFrom(input: DataInputStream, cacheKey: String): IndexData? {
+                if (input.readInt() != CACHE_VERSION || input.readUTF() != cacheKey) return null
+                val nodes = (0 until input.readInt()).map {
+                    Node(input.readInt(), readString(input), input.readInt(), input.readInt(),
+                            input.readBoolean(), readString(input), readString(input),
+                            input.readBoolean())
+                }
+                val entries = (0 until input.readInt()).map {
+                    Entry(input.readInt(), input.readUTF(), readString(input), readString(input),
+                            input.readInt(), readString(input), readString(input),
+                            input.readBoolean())
+                }
+                return IndexData(nodes, entries, PrefixTrie.readFrom(input))
+            }
+
+            private fun readString(input: DataInputStream): String? {
+                return if (input.readBoolean()) input.readUTF() else null
             }
         }
     }
@@ -194,7 +430,8 @@ class SearchIndex(private val context: Context) {
             val title: String,
             val summary: String?,
             val parent: SettingsScreen?,
-            private val slice: Slice? = null) {
+            private val sliceClass: String? = null,
+            private val sliceDefault: Boolean = false) {
 
         val breadcrumbs get() = parent?.breadcrumbs ?: ""
 
@@ -204,6 +441,10 @@ class SearchIndex(private val context: Context) {
             return id
         }
 
+        private val slice by lazy {
+            sliceClass?.let { sliceProviders[it]?.getSlice(context, SliceAttributes(key, sliceDefault)) }
+        }
+
         val sliceIsHorizontal by lazy { slice?.isHorizontal == true }
 
         fun getSliceView(): View? {
@@ -211,13 +452,18 @@ class SearchIndex(private val context: Context) {
         }
     }
 
+    /**
+     * The attributes of a preference which slices can use, kept in the cached index.
+     */
+    class SliceAttributes(val key: String, val defaultValue: Boolean)
+
     interface SliceProvider {
-        fun getSlice(context: Context, attrs: AttributeSet): Slice?
+        fun getSlice(context: Context, attrs: SliceAttributes): Slice?
 
         companion object {
-            fun fromLambda(create: (Context, AttributeSet) -> Slice?): SliceProvider {
+            fun fromLambda(create: (Context, SliceAttributes) -> Slice?): SliceProvider {
                 return object : SliceProvider {
-                    override fun getSlice(context: Context, attrs: AttributeSet): Slice? {
+                    override fun getSlice(context: Context, attrs: SliceAttributes): Slice? {
                         return create(context, attrs)
                     }
                 }
@@ -225,9 +471,9 @@ class SearchIndex(private val context: Context) {
         }
     }
 
-    abstract class Slice(val context: Context, attrs: AttributeSet) {
+    abstract class Slice(val context: Context, attrs: SliceAttributes) {
 
-        val key: String
+        val key = attrs.key
 
         // Adds the slice to a larger horizontal space instead of the usual small square
         // TODO: Use this to implement the very complex seekbar preferences.
@@ -235,12 +481,6 @@ class SearchIndex(private val context: Context) {
 
         val sliceView: View? by lazy { createSliceView() }
 
-        init {
-            val ta = context.obtainStyledAttributes(attrs, intArrayOf(android.R.attr.key))
-            key = ta.getString(0)!!
-            ta.recycle()
-        }
-
         abstract fun createSliceView(): View?
     }
 }
@@ -19,6 +19,7 @@ package org.zimmob.zimlx.smartspace
 
 import android.os.Looper
 import android.service.notification.StatusBarNotification
+import android.view.Choreographer
 import com.android.launcher3.LauncherNotifications
 import com.android.launcher3.MainThreadExecutor
 import com.android.launcher3.notification.NotificationKeyData
@@ -35,6 +36,9 @@ class NotificationsManager private constructor() : NotificationListener.Notifica
     private val bgNotificationsMap = mutableMapOf<String, StatusBarNotification>()
     private val listeners = mutableListOf<OnChangeListener>()
     private var refreshPending = false
+    private var changePending = false
+    // Posted on the ui worker thread, which has its own choreographer
+    private val changeCallback = Choreographer.FrameCallback { dispatchChange() }
 
     var notifications = emptyList<StatusBarNotification>()
         private set
@@ -95,13 +99,37 @@ class NotificationsManager private constructor() : NotificationListener.Notifica
         }
 
         refreshPending = false
-        bgNotificationsMap.clear()
-        NotificationListener.getInstanceIfConnected()?.activeNotifications
-                ?.associateByTo(bgNotificationsMap) { it.key }
-        onChange()
+        // Without a listener none of the notifications are known to be active anymore
+        val active = NotificationListener.getInstanceIfConnected()?.activeNotifications
+                ?: emptyArray<StatusBarNotification>()
+        // Only notify listeners if something was actually posted or removed since the last time
+        var changed = false
+        val keys = HashSet<String>()
+        active.forEach { sbn ->
+            keys.add(sbn.key)
+            if (bgNotificationsMap[sbn.key]?.postTime != sbn.postTime) {
+                bgNotificationsMap[sbn.key] = sbn
+                changed = true
+            }
+        }
+        if (bgNotificationsMap.keys.retainAll(keys)) {
+            changed = true
+        }
+        if (changed) onChange()
     }
 
+    /**
+     * Changes are dispatched at the next frame, so a burst of notifications only causes one
+     * update of the listeners.
+     */
     private fun onChange() {
+        if (changePending) return
+        changePending = true
+        Choreographer.getInstance().postFrameCallback(changeCallback)
+    }
+
+    private fun dispatchChange() {
+        changePending = false
         val notifications = bgNotificationsMap.values.toList()
         runOnMainThread {
             this.notifications = notifications
@@ -0,0 +1,193 @@
+/*
+ *     This file is part of Lawnchair Launcher.
+ *
+ *     Lawnchair Launcher is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Lawnchair Launcher is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Lawnchair Launcher.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.zimmob.zimlx.smartspace
+
+import android.content.BroadcastReceiver
+import android.content.Context
+import android.content.Intent
+import android.content.IntentFilter
+import android.os.Handler
+import android.os.HandlerThread
+import android.os.PowerManager
+import android.os.SystemClock
+import android.util.Log
+import org.zimmob.zimlx.util.ZimSingletonHolder
+import java.io.PrintWriter
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.TimeUnit
+
+/**
+ * Runs the periodic refreshes of all smartspace providers on a single thread.
+ *
+ * Refreshes are rounded to shared wake windows so providers with similar intervals run together,
+ * intervals are stretched while the screen is off and nothing runs while no smartspace is shown.
+ * Refreshes which came due in the meantime run as soon as the screen is on and a listener attached.
+ */
+class SmartspaceScheduler(context: Context) {
+
+    private val thread = HandlerThread("SmartspaceScheduler").apply { start() }
+    private val handler = Handler(thread.looper)
+    private val tick = ::runDueTasks
+    private val tasks = CopyOnWriteArrayList<Task>()
+
+    // Only accessed on the scheduler thread
+    private var active = false
+    private var screenOn = true
+
+    private val screenReceiver = object : BroadcastReceiver() {
+
+        override fun onReceive(context: Context, intent: Intent) {
+            screenOn = intent.action == Intent.ACTION_SCREEN_ON
+            runDueTasks()
+        }
+    }
+
+    init {
+        val powerManager = context.getSystemService(Context.POWER_SERVICE) as PowerManager
+        handler.post { screenOn = powerManager.isInteractive }
+        context.registerReceiver(screenReceiver, IntentFilter().apply {
+            addAction(Intent.ACTION_SCREEN_ON)
+            addAction(Intent.ACTION_SCREEN_OFF)
+        }, null, handler)
+    }
+
+    /**
+     * Calls [refresh] on the scheduler thread about every [interval] milliseconds, starting as
+     * soon as possible.
+     */
+    fun schedule(name: String, interval: Long, refresh: () -> Unit): Task {
+        val task = Task(name, interval, refresh)
+        handler.post {
+            tasks.add(task)
+            runDueTasks()
+        }
+        return task
+    }
+
+    /**
+     * Called when the first smartspace listener attaches and after the last one is removed.
+     */
+    fun setActive(active: Boolean) {
+        handler.post {
+            this.active = active
+            runDueTasks()
+        }
+    }
+
+    private fun runDueTasks() {
+        if (active) {
+            val now = SystemClock.uptimeMillis()
+            tasks.filter { getWakeTime(it) <= now }.forEach { it.run() }
+        }
+        handler.removeCallbacks(tick)
+        if (active) {
+            tasks.map { getWakeTime(it) }.min()?.let { handler.postAtTime(tick, it) }
+        }
+    }
+
+    private fun getWakeTime(task: Task): Long {
+        if (task.pending) return 0
+        val interval = if (screenOn) task.interval else task.interval * SCREEN_OFF_BACKOFF
+        // Round to the nearest window, running a little early is as good as running late
+        val window = Math.max(Math.min(WAKE_WINDOW_MS, interval / 2), 1)
+        val due = task.lastRun + interval
+        return (due + window / 2) / window * window
+    }
+
+    fun getStats(): List<RefreshStats> = tasks.map { it.stats }
+
+    fun dump(prefix: String, writer: PrintWriter) {
+        writer.println("${prefix}SmartspaceScheduler:")
+        getStats().forEach { writer.println("$prefix  $it") }
+    }
+
+    inner class Task internal constructor(
+            val name: String, val interval: Long, private val refresh: () -> Unit) {
+
+        // Only accessed on the scheduler thread
+        internal var lastRun = 0L
+        internal var pending = true
+
+        @Volatile
+        var stats = RefreshStats(name)
+            private set
+
+        internal fun run() {
+            val start = SystemClock.uptimeMillis()
+            var failed = false
+            try {
+                refresh()
+            } catch (e: Exception) {
+                Log.d(TAG, "failed to refresh $name", e)
+                failed = true
+            }
+            lastRun = start
+            pending = false
+            stats = stats.add(SystemClock.uptimeMillis() - start, failed)
+        }
+
+        /**
+         * Runs the refresh out of schedule, or once a listener attaches if none is.
+         */
+        fun refreshNow() {
+            handler.post {
+                pending = true
+                runDueTasks()
+            }
+        }
+
+        fun cancel() {
+            handler.post {
+                tasks.remove(this)
+                runDueTasks()
+            }
+        }
+    }
+
+    data class RefreshStats(val name: String, val count: Int = 0, val failures: Int = 0,
+                            val totalDuration: Long = 0, val maxDuration: Long = 0,
+                            val lastDuration: Long = 0) {
+
+        val averageDuration get() = if (count > 0) totalDuration / count else 0L
+
+        internal fun add(duration: Long, failed: Boolean) = copy(
+                count = count + 1,
+                failures = if (failed) failures + 1 else failures,
+                totalDuration = totalDuration + duration,
+                maxDuration = Math.max(maxDuration, duration),
+                lastDuration = duration)
+
+        override fun toString(): String {
+            return "$name: $count refreshes ($failures failed), last ${lastDuration}ms, " +
+                    "avg ${averageDuration}ms, max ${maxDuration}ms"
+        }
+    }
+
+    companion object : ZimSingletonHolder<SmartspaceScheduler>(::SmartspaceScheduler) {
+
+        private const val TAG = "SmartspaceScheduler"
+
+        private val WAKE_WINDOW_MS = TimeUnit.MINUTES.toMillis(5)
+        private const val SCREEN_OFF_BACKOFF = 4
+
+        @JvmStatic
+        fun dumpIfCreated(prefix: String, writer: PrintWriter) {
+            dangerousGetInstance()?.dump(prefix, writer)
+        }
+    }
+}
@@ -26,8 +26,6 @@ import android.content.Intent
 import android.content.pm.PackageManager
 import android.graphics.Bitmap
 import android.net.Uri
-import android.os.Handler
-import android.os.HandlerThread
 import android.provider.Settings
 import android.service.notification.StatusBarNotification
 import android.text.TextUtils
@@ -140,11 +138,16 @@ class ZimSmartspaceController(val context: Context) {
 
     fun addListener(listener: Listener) {
         listeners.add(listener)
+        if (listeners.size == 1) {
+            SmartspaceScheduler.getInstance(context).setActive(true)
+        }
         listener.onDataUpdated(weatherData, cardData)
     }
 
     fun removeListener(listener: Listener) {
-        listeners.remove(listener)
+        if (listeners.remove(listener) && listeners.isEmpty()) {
+            SmartspaceScheduler.getInstance(context).setActive(false)
+        }
     }
 
     fun onProviderChanged() {
@@ -319,34 +322,24 @@ class ZimSmartspaceController(val context: Context) {
 
     abstract class PeriodicDataProvider(controller: ZimSmartspaceController) : DataProvider(controller) {
 
-        private val handlerThread = HandlerThread(this::class.java.simpleName).apply { if (!isAlive) start() }
-        private val handler = Handler(handlerThread.looper)
-        private val update = ::periodicUpdate
+        private val scheduler = SmartspaceScheduler.getInstance(context)
+        private var task: SmartspaceScheduler.Task? = null
 
         open val timeout = TimeUnit.MINUTES.toMillis(30)
 
         override fun startListening() {
             super.startListening()
-            handler.post(update)
-        }
-
-        private fun periodicUpdate() {
-            try {
-                updateData()
-            } catch (e: Exception) {
-                Log.d("PeriodicDataProvider", "failed to update data", e)
-            }
-            handler.postDelayed(update, timeout)
+            task = scheduler.schedule(this::class.java.simpleName, timeout) { updateData() }
         }
 
         override fun stopListening() {
             super.stopListening()
-            handlerThread.quit()
+            task?.cancel()
+            task = null
         }
 
         protected fun updateNow() {
-            handler.removeCallbacks(update)
-            handler.post(update)
+            task?.refreshNow()
         }
 
         open fun updateData() {
@@ -23,11 +23,22 @@ import android.content.Context
 import android.content.Intent
 import android.content.pm.PackageManager
 import android.graphics.Bitmap
+import android.os.UserHandle
+import android.util.LruCache
 import com.android.launcher3.R
+import com.android.launcher3.compat.LauncherAppsCompat
+import com.android.launcher3.shortcuts.ShortcutInfoCompat
+import org.zimmob.zimlx.runOnMainThread
 import org.zimmob.zimlx.util.ZimSingletonHolder
 import org.zimmob.zimlx.zimPrefs
 
-class WeatherIconManager(private val context: Context) {
+/**
+ * Resolves weather condition icons from the selected icon pack.
+ *
+ * The installed packs are only queried once and dropped again when a package changes, and the
+ * rendered icons are kept in a small LRU, so refreshing the weather usually renders nothing.
+ */
+class WeatherIconManager(private val context: Context) : LauncherAppsCompat.OnAppsChangedCallbackCompat {
     private val pm = context.packageManager
     private val prefs = context.zimPrefs
     private val defaultPack =
@@ -37,7 +48,20 @@ class WeatherIconManager(private val context: Context) {
                 override val icon = context.getDrawable(R.drawable.weather_04)
             }
 
-    fun getIconPacks(): List<WeatherIconPack> = mutableListOf<WeatherIconPack>(defaultPack).apply {
+    @Volatile
+    private var iconPacks: List<WeatherIconPack>? = null
+    private val renderedIcons = object : LruCache<RenderedIconKey, Bitmap>(MAX_RENDERED_ICONS_SIZE) {
+        override fun sizeOf(key: RenderedIconKey, value: Bitmap) = value.byteCount
+    }
+
+    init {
+        // Registered on the main thread so it doesn't depend on the looper of the first caller
+        runOnMainThread { LauncherAppsCompat.getInstance(context).addOnAppsChangedCallback(this) }
+    }
+
+    fun getIconPacks(): List<WeatherIconPack> = iconPacks ?: queryIconPacks().also { iconPacks = it }
+
+    private fun queryIconPacks(): List<WeatherIconPack> = mutableListOf<WeatherIconPack>(defaultPack).apply {
         pm.queryIntentActivities(
                 Intent(Intent.ACTION_MAIN).addCategory(
                         INTENT_CATEGORY), PackageManager.GET_META_DATA).map {
@@ -53,21 +77,72 @@ class WeatherIconManager(private val context: Context) {
         }.let { addAll(it) }
     }
 
-    fun getIcon(which: Icon, night: Boolean) = getProvider().getIcon(which, night)
+    /**
+     * Returns the icon for the condition, callers must not modify or recycle it since it's shared.
+     */
+    fun getIcon(which: Icon, night: Boolean): Bitmap {
+        val pack = getPack()
+        // Icons are rendered at their intrinsic size, which only changes with the density
+        val key = RenderedIconKey(pack.pkgName, which, night,
+                context.resources.displayMetrics.densityDpi)
+        return renderedIcons.get(key)
+                ?: pack.provider.getIcon(which, night).also { renderedIcons.put(key, it) }
+    }
 
     fun getPack(): WeatherIconPack = getIconPacks().firstOrNull { it.pkgName == prefs.weatherIconPack }
             ?: defaultPack
 
-    fun getProvider(): IconProvider = if (prefs.weatherIconPack == "")
-        DefaultIconProvider(context)
-    else
-        getIconPacks().firstOrNull { it.pkgName == prefs.weatherIconPack }?.provider
-                ?: DefaultIconProvider(context)
+    fun getProvider(): IconProvider = getPack().provider
+
+    private fun onPackagesChanged(packageNames: Array<out String>) {
+        iconPacks = null
+        renderedIcons.snapshot().keys
+                .filter { it.pkgName in packageNames }
+                .forEach { renderedIcons.remove(it) }
+    }
+
+    override fun onPackageAdded(packageName: String, user: UserHandle) {
+        onPackagesChanged(arrayOf(packageName))
+    }
+
+    override fun onPackageChanged(packageName: String, user: UserHandle) {
+        onPackagesChanged(arrayOf(packageName))
+    }
+
+    override fun onPackageRemoved(packageName: String, user: UserHandle) {
+        onPackagesChanged(arrayOf(packageName))
+    }
+
+    override fun onPackagesAvailable(packageNames: Array<out String>, user: UserHandle, replacing: Boolean) {
+        onPackagesChanged(packageNames)
+    }
+
+    override fun onPackagesUnavailable(packageNames: Array<out String>, user: UserHandle, replacing: Boolean) {
+        onPackagesChanged(packageNames)
+    }
+
+    override fun onPackagesSuspended(packageNames: Array<out String>, user: UserHandle) {
+
+    }
+
+    override fun onPackagesUnsuspended(packageNames: Array<out String>, user: UserHandle) {
+
+    }
+
+    override fun onShortcutsChanged(packageName: String?, shortcuts: MutableList<ShortcutInfoCompat>?, user: UserHandle?) {
+
+    }
+
+    private data class RenderedIconKey(val pkgName: String, val icon: Icon, val night: Boolean,
+                                       val densityDpi: Int)
 
 
     companion object : ZimSingletonHolder<WeatherIconManager>(::WeatherIconManager) {
         const val INTENT_CATEGORY = "com.dvtonder.chronus.ICON_PACK"
         const val METADATA_KEY = "recoloringMode"
+
+        // A handful of icons, enough for the day and night variants of a few conditions
+        private const val MAX_RENDERED_ICONS_SIZE = 2 * 1024 * 1024
     }
 
     enum class Icon {
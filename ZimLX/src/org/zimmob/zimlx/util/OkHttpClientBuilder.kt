@@ -20,10 +20,8 @@ package org.zimmob.zimlx.util
 import android.content.Context
 import okhttp3.OkHttpClient
 import okhttp3.logging.HttpLoggingInterceptor
-import org.zimmob.zimlx.zimPrefs
 
 class OkHttpClientBuilder {
-    private val builder = OkHttpClient.Builder()
     private val queryParams = mutableMapOf<String, String>()
 
     fun addQueryParam(param: Pair<String, String>): OkHttpClientBuilder {
@@ -31,7 +29,18 @@ class OkHttpClientBuilder {
         return this
     }
 
+    /**
+     * Clients built with a context derive from [ZimHttpClient] and share its connection pool,
+     * dispatcher and cache.
+     */
     fun build(context: Context?): OkHttpClient {
+        val builder = if (context != null) {
+            ZimHttpClient.getInstance(context).client.newBuilder()
+        } else {
+            OkHttpClient.Builder().addInterceptor(HttpLoggingInterceptor().apply {
+                level = HttpLoggingInterceptor.Level.BASIC
+            })
+        }
         if (queryParams.isNotEmpty()) {
             builder.addInterceptor {
                 val urlBuilder = it.request().url.newBuilder()
@@ -41,13 +50,6 @@ class OkHttpClientBuilder {
                 it.proceed(it.request().newBuilder().url(urlBuilder.build()).build())
             }
         }
-        builder.addInterceptor(HttpLoggingInterceptor().apply {
-            level = if (context?.zimPrefs?.debugOkHttp == true) {
-                HttpLoggingInterceptor.Level.BODY
-            } else {
-                HttpLoggingInterceptor.Level.BASIC
-            }
-        })
         return builder.build()
     }
 }
\ No newline at end of file
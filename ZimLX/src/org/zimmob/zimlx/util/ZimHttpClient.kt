@@ -0,0 +1,197 @@
+/*
+ *     This file is part of Lawnchair Launcher.
+ *
+ *     Lawnchair Launcher is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Lawnchair Launcher is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Lawnchair Launcher.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.zimmob.zimlx.util
+
+import okhttp3.Cache
+import okhttp3.Interceptor
+import okhttp3.OkHttpClient
+import okhttp3.Request
+import okhttp3.Response
+import okhttp3.logging.HttpLoggingInterceptor
+import org.zimmob.zimlx.zimPrefs
+import java.io.File
+import java.io.IOException
+import java.io.InterruptedIOException
+import java.io.PrintWriter
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.FutureTask
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * The http client shared by everything in the launcher which goes online, so they all use the
+ * same connection pool, dispatcher and disk cache.
+ *
+ * Requests made through [get] belong to an [Endpoint] which sets their timeout and how long
+ * responses may be served from the cache, and identical requests which are already running are
+ * joined instead of being sent again.
+ */
+class ZimHttpClient(cacheDir: File, debug: Boolean) {
+
+    val client: OkHttpClient = OkHttpClient.Builder()
+            .cache(Cache(cacheDir, CACHE_SIZE))
+            .addInterceptor(HttpLoggingInterceptor().apply {
+                level = if (debug) {
+                    HttpLoggingInterceptor.Level.BODY
+                } else {
+                    HttpLoggingInterceptor.Level.BASIC
+                }
+            })
+            .addNetworkInterceptor { applyCachePolicy(it) }
+            .build()
+
+    private val inFlight = ConcurrentHashMap<String, FutureTask<String>>()
+    private val endpointMetrics = ConcurrentHashMap<String, Metrics>()
+
+    /**
+     * Returns the body of a successful GET response for [url], from the cache if [endpoint]
+     * allows it. Blocks, so it must not be called on the main thread.
+     */
+    @Throws(IOException::class)
+    fun get(endpoint: Endpoint, url: String): String {
+        val task = FutureTask<String> { execute(endpoint, url) }
+        val running = inFlight.putIfAbsent(url, task)
+        if (running != null) {
+            getMetrics(endpoint).coalesced.incrementAndGet()
+            return await(running)
+        }
+        try {
+            task.run()
+        } finally {
+            inFlight.remove(url, task)
+        }
+        return await(task)
+    }
+
+    private fun execute(endpoint: Endpoint, url: String): String {
+        val request = Request.Builder()
+                .url(url)
+                .tag(Endpoint::class.java, endpoint)
+                .build()
+        val call = client.newCall(request)
+        call.timeout().timeout(endpoint.timeoutMs, TimeUnit.MILLISECONDS)
+
+        val metrics = getMetrics(endpoint)
+        val start = System.nanoTime()
+        return try {
+            call.execute().use { response ->
+                val body = response.body
+                if (!response.isSuccessful || body == null) {
+                    throw IOException("Unexpected response ${response.code} for ${endpoint.name}")
+                }
+                if (response.networkResponse == null) {
+                    metrics.cacheHits.incrementAndGet()
+                }
+                body.string()
+            }
+        } catch (e: Exception) {
+            metrics.failures.incrementAndGet()
+            throw e
+        } finally {
+            metrics.requests.incrementAndGet()
+            metrics.totalTimeNs.addAndGet(System.nanoTime() - start)
+        }
+    }
+
+    private fun await(task: FutureTask<String>): String {
+        try {
+            return task.get()
+        } catch (e: InterruptedException) {
+            throw InterruptedIOException()
+        } catch (e: ExecutionException) {
+            // Keep runtime exceptions such as NetworkOnMainThreadException as they are
+            when (val cause = e.cause) {
+                is IOException -> throw cause
+                is RuntimeException -> throw cause
+                else -> throw IOException(cause)
+            }
+        }
+    }
+
+    /**
+     * Most of the apis we use don't send any cache headers, let the endpoint decide instead.
+     */
+    private fun applyCachePolicy(chain: Interceptor.Chain): Response {
+        val request = chain.request()
+        val response = chain.proceed(request)
+        val endpoint = request.tag(Endpoint::class.java)
+        if (endpoint == null || endpoint.maxAgeSeconds <= 0 || !response.isSuccessful) {
+            return response
+        }
+        return response.newBuilder()
+                .header("Cache-Control", "max-age=${endpoint.maxAgeSeconds}")
+                .removeHeader("Pragma")
+                .removeHeader("Expires")
+                .build()
+    }
+
+    private fun getMetrics(endpoint: Endpoint): Metrics {
+        return endpointMetrics.getOrPut(endpoint.name) { Metrics() }
+    }
+
+    fun getMetrics(): Map<String, Metrics> = HashMap(endpointMetrics)
+
+    fun dump(prefix: String, writer: PrintWriter) {
+        writer.println("${prefix}ZimHttpClient:")
+        client.cache?.let {
+            writer.println("$prefix  cache: ${it.size()} of ${it.maxSize()} bytes, " +
+                    "${it.hitCount()} hits, ${it.networkCount()} network")
+        }
+        endpointMetrics.forEach { (name, m) -> writer.println("$prefix  $name: $m") }
+    }
+
+    /**
+     * A group of requests sharing the same timeout and cache lifetime, [maxAgeSeconds] 0 leaves
+     * caching to the server's headers.
+     */
+    class Endpoint(val name: String, val timeoutMs: Long, val maxAgeSeconds: Int = 0)
+
+    class Metrics {
+        val requests = AtomicInteger()
+        val cacheHits = AtomicInteger()
+        val coalesced = AtomicInteger()
+        val failures = AtomicInteger()
+        val totalTimeNs = AtomicLong()
+
+        override fun toString(): String {
+            val count = requests.get()
+            val average = if (count > 0) TimeUnit.NANOSECONDS.toMillis(totalTimeNs.get()) / count else 0L
+            return "$count requests (${cacheHits.get()} cached, ${failures.get()} failed), " +
+                    "${coalesced.get()} coalesced, avg ${average}ms"
+        }
+    }
+
+    companion object : ZimSingletonHolder<ZimHttpClient>({
+        ZimHttpClient(File(it.cacheDir, "http"), it.zimPrefs.debugOkHttp)
+    }) {
+
+        private const val CACHE_SIZE = 5L * 1024 * 1024
+
+        @JvmField
+        val SEARCH_SUGGESTIONS = Endpoint("search_suggestions", 3000, 5 * 60)
+        @JvmField
+        val IP_LOCATION = Endpoint("ip_location", 10000, 30 * 60)
+
+        @JvmStatic
+        fun dumpIfCreated(prefix: String, writer: PrintWriter) {
+            dangerousGetInstance()?.dump(prefix, writer)
+        }
+    }
+}
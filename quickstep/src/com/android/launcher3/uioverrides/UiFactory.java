@@ -193,6 +193,10 @@ public class UiFactory {
         }
     }
 
+    public static void dumpStats(Context context, String prefix, PrintWriter writer) {
+        RecentsModel.getInstance(context).getThumbnailPrefetcher().dump(prefix, writer);
+    }
+
     public static void useFadeOutAnimationForLauncherStart(Launcher launcher,
             CancellationSignal cancellationSignal) {
         LauncherAppTransitionManagerImpl appTransitionManager =
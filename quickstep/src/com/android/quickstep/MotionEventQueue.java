@@ -15,7 +15,6 @@
  */
 package com.android.quickstep;
 
-import static android.view.MotionEvent.ACTION_CANCEL;
 import static android.view.MotionEvent.ACTION_MASK;
 import static android.view.MotionEvent.ACTION_MOVE;
 import static android.view.MotionEvent.ACTION_POINTER_INDEX_SHIFT;
@@ -27,12 +26,21 @@ import android.util.Log;
 import android.view.Choreographer;
 import android.view.MotionEvent;
 
+import com.android.quickstep.util.LatencyHistogram;
 import com.android.systemui.shared.system.ChoreographerCompat;
 
-import java.util.ArrayList;
+import java.io.PrintWriter;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 /**
  * Helper class for batching input events
+ *
+ * Events are passed from the binder threads to the choreographer through a fixed size ring
+ * buffer which neither locks nor allocates. Producers claim slots by advancing the tail, and the
+ * consumer frees them again once the events are dispatched.
  */
 @TargetApi(Build.VERSION_CODES.O)
 public class MotionEventQueue {
@@ -58,12 +66,28 @@ public class MotionEventQueue {
     private static final int ACTION_COMMAND =
             ACTION_VIRTUAL | (8 << ACTION_POINTER_INDEX_SHIFT);
 
-    private final EventArray mEmptyArray = new EventArray();
+    // Must be a power of two. Only filled up if the consumer stalls for several frames.
+    private static final int CAPACITY = 128;
+    private static final int INDEX_MASK = CAPACITY - 1;
+
+    private static final LatencyHistogram sLatencies = new LatencyHistogram("Input latency");
+    private static final AtomicInteger sDroppedMoves = new AtomicInteger();
+
     private final Object mExecutionLock = new Object();
 
-    // We use two arrays and swap the current index when one array is being consumed
-    private final EventArray[] mArrays = new EventArray[] {new EventArray(), new EventArray()};
-    private int mCurrentIndex = 0;
+    // The slot at a position can be written by a producer while its sequence equals the position,
+    // and read by the consumer once it is set to position + 1.
+    private final AtomicLongArray mSequences = new AtomicLongArray(CAPACITY);
+    private final MotionEvent[] mEvents = new MotionEvent[CAPACITY];
+    private final int[] mActions = new int[CAPACITY];
+    private final float[] mValues = new float[CAPACITY];
+    private final int[] mArgs = new int[CAPACITY];
+    private final long[] mEnqueueTimes = new long[CAPACITY];
+    private final AtomicLong mTail = new AtomicLong();
+    // Only accessed by the consumer, under mExecutionLock
+    private long mHead;
+
+    private final AtomicBoolean mFrameScheduled = new AtomicBoolean();
 
     private final Runnable mMainFrameCallback = this::frameCallbackForMainChoreographer;
     private final Runnable mInterimFrameCallback = this::frameCallbackForInterimChoreographer;
@@ -72,60 +96,70 @@ public class MotionEventQueue {
 
     private final TouchConsumer mConsumer;
 
-    private Choreographer mInterimChoreographer;
-    private Choreographer mCurrentChoreographer;
-
-    private Runnable mCurrentRunnable;
+    private volatile Choreographer mInterimChoreographer;
+    private volatile Choreographer mCurrentChoreographer;
 
     public MotionEventQueue(Choreographer choreographer, TouchConsumer consumer) {
         mMainChoreographer = choreographer;
         mConsumer = consumer;
         mCurrentChoreographer = mMainChoreographer;
-        mCurrentRunnable = mMainFrameCallback;
+        for (int i = 0; i < CAPACITY; i++) {
+            mSequences.set(i, i);
+        }
 
         setInterimChoreographer(consumer.getIntrimChoreographer(this));
     }
 
     public void setInterimChoreographer(Choreographer choreographer) {
         synchronized (mExecutionLock) {
-            synchronized (mArrays) {
-                setInterimChoreographerLocked(choreographer);
-                ChoreographerCompat.postInputFrame(mCurrentChoreographer, mCurrentRunnable);
-            }
+            mInterimChoreographer = choreographer;
+            mCurrentChoreographer = choreographer == null ? mMainChoreographer : choreographer;
+            postFrameCallback();
         }
     }
 
-    private void  setInterimChoreographerLocked(Choreographer choreographer) {
-        mInterimChoreographer = choreographer;
-        if (choreographer == null) {
-            mCurrentChoreographer = mMainChoreographer;
-            mCurrentRunnable = mMainFrameCallback;
-        } else {
-            mCurrentChoreographer = mInterimChoreographer;
-            mCurrentRunnable = mInterimFrameCallback;
-        }
+    private void postFrameCallback() {
+        Choreographer choreographer = mCurrentChoreographer;
+        ChoreographerCompat.postInputFrame(choreographer, choreographer == mMainChoreographer
+                ? mMainFrameCallback : mInterimFrameCallback);
     }
 
     public void queue(MotionEvent event) {
         mConsumer.preProcessMotionEvent(event);
-        queueNoPreProcess(event);
+        queueNoPreProcess(event, event.getAction(), 0, 0);
     }
 
-    private void queueNoPreProcess(MotionEvent event) {
-        synchronized (mArrays) {
-            EventArray array = mArrays[mCurrentIndex];
-            if (array.isEmpty()) {
-                ChoreographerCompat.postInputFrame(mCurrentChoreographer, mCurrentRunnable);
+    private void queueNoPreProcess(MotionEvent event, int action, float value, int arg) {
+        long position;
+        while (true) {
+            position = mTail.get();
+            long diff = mSequences.get((int) position & INDEX_MASK) - position;
+            if (diff == 0) {
+                if (mTail.compareAndSet(position, position + 1)) {
+                    break;
+                }
+            } else if (diff < 0) {
+                // The queue is full, moves are coalesced anyway so drop them rather than wait.
+                if (action == ACTION_MOVE) {
+                    sDroppedMoves.incrementAndGet();
+                    event.recycle();
+                    return;
+                }
+                Thread.yield();
             }
+            // Otherwise another producer claimed the slot first, try the next one.
+        }
 
-            int eventAction = event.getAction();
-            if (eventAction == ACTION_MOVE && array.lastEventAction == ACTION_MOVE) {
-                // Replace and recycle the last event
-                array.set(array.size() - 1, event).recycle();
-            } else {
-                array.add(event);
-                array.lastEventAction = eventAction;
-            }
+        int index = (int) position & INDEX_MASK;
+        mEvents[index] = event;
+        mActions[index] = action;
+        mValues[index] = value;
+        mArgs[index] = arg;
+        mEnqueueTimes[index] = System.nanoTime();
+        mSequences.set(index, position + 1);
+
+        if (mFrameScheduled.compareAndSet(false, true)) {
+            postFrameCallback();
         }
     }
 
@@ -139,63 +173,82 @@ public class MotionEventQueue {
 
     private void runFor(Choreographer caller) {
         synchronized (mExecutionLock) {
-            EventArray array = swapAndGetCurrentArray(caller);
-            int size = array.size();
-            for (int i = 0; i < size; i++) {
-                MotionEvent event = array.get(i);
-                if (event.getActionMasked() == ACTION_VIRTUAL) {
-                    switch (event.getAction()) {
-                        case ACTION_QUICK_SCRUB_START:
-                            mConsumer.updateTouchTracking(INTERACTION_QUICK_SCRUB);
-                            break;
-                        case ACTION_QUICK_SCRUB_PROGRESS:
-                            mConsumer.onQuickScrubProgress(event.getX());
-                            break;
-                        case ACTION_QUICK_SCRUB_END:
-                            mConsumer.onQuickScrubEnd();
-                            break;
-                        case ACTION_RESET:
-                            mConsumer.reset();
-                            break;
-                        case ACTION_DEFER_INIT:
-                            mConsumer.deferInit();
-                            break;
-                        case ACTION_SHOW_OVERVIEW_FROM_ALT_TAB:
-                            mConsumer.onShowOverviewFromAltTab();
-                            mConsumer.updateTouchTracking(INTERACTION_QUICK_SCRUB);
-                            break;
-                        case ACTION_QUICK_STEP:
-                            mConsumer.onQuickStep(event);
-                            break;
-                        case ACTION_COMMAND:
-                            mConsumer.onCommand(event.getSource());
-                            break;
-                        default:
-                            Log.e(TAG, "Invalid virtual event: " + event.getAction());
-                    }
-                } else {
-                    mConsumer.accept(event);
+            if (caller != mCurrentChoreographer) {
+                return;
+            }
+            // Events queued from now on need another frame, even if they are also handled below.
+            mFrameScheduled.set(false);
+
+            while (true) {
+                int index = (int) mHead & INDEX_MASK;
+                if (mSequences.get(index) != mHead + 1) {
+                    break;
+                }
+                MotionEvent event = mEvents[index];
+                int action = mActions[index];
+                float value = mValues[index];
+                int arg = mArgs[index];
+                sLatencies.record(System.nanoTime() - mEnqueueTimes[index]);
+                mEvents[index] = null;
+                mSequences.set(index, mHead + CAPACITY);
+                mHead++;
+
+                if (action == ACTION_MOVE && isNextEventMove()) {
+                    // Skip to the last of the consecutive moves
+                    event.recycle();
+                    continue;
+                }
+                dispatch(event, action, value, arg);
+                if (event != null) {
+                    event.recycle();
                 }
-                event.recycle();
             }
-            array.clear();
-            array.lastEventAction = ACTION_CANCEL;
         }
     }
 
-    private EventArray swapAndGetCurrentArray(Choreographer caller) {
-        synchronized (mArrays) {
-            if (caller != mCurrentChoreographer) {
-                return mEmptyArray;
+    private boolean isNextEventMove() {
+        int index = (int) mHead & INDEX_MASK;
+        return mSequences.get(index) == mHead + 1 && mActions[index] == ACTION_MOVE;
+    }
+
+    private void dispatch(MotionEvent event, int action, float value, int arg) {
+        if ((action & ACTION_MASK) == ACTION_VIRTUAL) {
+            switch (action) {
+                case ACTION_QUICK_SCRUB_START:
+                    mConsumer.updateTouchTracking(INTERACTION_QUICK_SCRUB);
+                    break;
+                case ACTION_QUICK_SCRUB_PROGRESS:
+                    mConsumer.onQuickScrubProgress(value);
+                    break;
+                case ACTION_QUICK_SCRUB_END:
+                    mConsumer.onQuickScrubEnd();
+                    break;
+                case ACTION_RESET:
+                    mConsumer.reset();
+                    break;
+                case ACTION_DEFER_INIT:
+                    mConsumer.deferInit();
+                    break;
+                case ACTION_SHOW_OVERVIEW_FROM_ALT_TAB:
+                    mConsumer.onShowOverviewFromAltTab();
+                    mConsumer.updateTouchTracking(INTERACTION_QUICK_SCRUB);
+                    break;
+                case ACTION_QUICK_STEP:
+                    mConsumer.onQuickStep(event);
+                    break;
+                case ACTION_COMMAND:
+                    mConsumer.onCommand(arg);
+                    break;
+                default:
+                    Log.e(TAG, "Invalid virtual event: " + action);
             }
-            EventArray current = mArrays[mCurrentIndex];
-            mCurrentIndex = mCurrentIndex ^ 1;
-            return current;
+        } else {
+            mConsumer.accept(event);
         }
     }
 
     private void queueVirtualAction(int action, float progress) {
-        queueNoPreProcess(MotionEvent.obtain(0, 0, action, progress, 0, 0));
+        queueNoPreProcess(null, action, progress, 0);
     }
 
     public void onQuickScrubStart() {
@@ -216,7 +269,7 @@ public class MotionEventQueue {
 
     public void onQuickStep(MotionEvent event) {
         event.setAction(ACTION_QUICK_STEP);
-        queueNoPreProcess(event);
+        queueNoPreProcess(event, ACTION_QUICK_STEP, 0, 0);
     }
 
     public void reset() {
@@ -228,21 +281,18 @@ public class MotionEventQueue {
     }
 
     public void onCommand(int command) {
-        MotionEvent ev = MotionEvent.obtain(0, 0, ACTION_COMMAND, 0, 0, 0);
-        ev.setSource(command);
-        queueNoPreProcess(ev);
+        queueNoPreProcess(null, ACTION_COMMAND, 0, command);
     }
 
     public TouchConsumer getConsumer() {
         return mConsumer;
     }
 
-    private static class EventArray extends ArrayList<MotionEvent> {
-
-        public int lastEventAction = ACTION_CANCEL;
-
-        public EventArray() {
-            super(4);
-        }
+    /**
+     * Prints the time events spent in the queues before being handled.
+     */
+    public static void dump(String prefix, PrintWriter writer) {
+        sLatencies.dump(prefix, writer);
+        writer.println(prefix + "  dropped moves: " + sDroppedMoves.get());
     }
 }
@@ -86,6 +86,8 @@ public class QuickScrubController implements OnAlarmListener {
         mQuickScrubSection = 0;
         mFinishedTransitionToQuickScrub = false;
         mActivityControlHelper = controlHelper;
+        RecentsModel.getInstance(mActivity).getThumbnailPrefetcher()
+                .onQuickScrubStart(mRecentsView);
 
         snapToNextTaskIfAvailable();
         mActivity.getUserEventDispatcher().resetActionDurationMillis();
@@ -93,6 +95,7 @@ public class QuickScrubController implements OnAlarmListener {
 
     public void onQuickScrubEnd() {
         mInQuickScrub = false;
+        RecentsModel.getInstance(mActivity).getThumbnailPrefetcher().onQuickScrubEnd();
         if (ENABLE_AUTO_ADVANCE) {
             mAutoAdvanceAlarm.cancelAlarm();
         }
@@ -138,6 +141,7 @@ public class QuickScrubController implements OnAlarmListener {
         }
         Log.d(TAG, "Quickscrub was active, cancelling");
         mInQuickScrub = false;
+        RecentsModel.getInstance(mActivity).getThumbnailPrefetcher().onQuickScrubEnd();
         mActivityControlHelper = null;
         mOnFinishedTransitionToQuickScrubRunnable = null;
         mRecentsView.setNextPageSwitchRunnable(null);
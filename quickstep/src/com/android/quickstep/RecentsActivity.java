@@ -281,5 +281,6 @@ public class RecentsActivity extends BaseDraggingActivity {
         super.dump(prefix, fd, writer, args);
         writer.println(prefix + "Misc:");
         dumpMisc(writer);
+        UiFactory.dumpStats(this, prefix, writer);
     }
 }
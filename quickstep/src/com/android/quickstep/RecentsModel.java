@@ -84,6 +84,8 @@ public class RecentsModel extends TaskStackChangeListener {
 
     private final Context mContext;
     private final RecentsTaskLoader mRecentsTaskLoader;
+    private final TaskThumbnailPrefetcher mThumbnailPrefetcher;
+    private IconLoader mIconLoader;
     private final MainThreadExecutor mMainThreadExecutor;
 
     private RecentsTaskLoadPlan mLastLoadPlan;
@@ -112,10 +114,12 @@ public class RecentsModel extends TaskStackChangeListener {
             protected IconLoader createNewIconLoader(Context context,
                     TaskKeyLruCache<Drawable> iconCache,
                     LruCache<ComponentName, ActivityInfo> activityInfoCache) {
-                return new NormalizedIconLoader(context, iconCache, activityInfoCache);
+                mIconLoader = new NormalizedIconLoader(context, iconCache, activityInfoCache);
+                return mIconLoader;
             }
         };
         mRecentsTaskLoader.startLoader(mContext);
+        mThumbnailPrefetcher = new TaskThumbnailPrefetcher(mContext, mIconLoader);
         ActivityManagerWrapper.getInstance().registerTaskStackListener(this);
 
         mTaskChangeId = 1;
@@ -127,6 +131,10 @@ public class RecentsModel extends TaskStackChangeListener {
         return mRecentsTaskLoader;
     }
 
+    public TaskThumbnailPrefetcher getThumbnailPrefetcher() {
+        return mThumbnailPrefetcher;
+    }
+
     /**
      * Preloads the task plan
      * @param taskId The running task id or -1
@@ -242,6 +250,7 @@ public class RecentsModel extends TaskStackChangeListener {
             mRecentsTaskLoader.getHighResThumbnailLoader().setVisible(false);
         }
         mRecentsTaskLoader.onTrimMemory(level);
+        mThumbnailPrefetcher.onTrimMemory(level);
     }
 
     public void onOverviewShown(boolean fromHome, String tag) {
@@ -0,0 +1,236 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.quickstep;
+
+import android.annotation.TargetApi;
+import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.os.Build;
+import android.util.LruCache;
+import android.util.SparseBooleanArray;
+import android.view.Choreographer;
+
+import com.android.launcher3.MainThreadExecutor;
+import com.android.launcher3.Utilities;
+import com.android.quickstep.views.RecentsView;
+import com.android.quickstep.views.TaskView;
+import com.android.systemui.shared.recents.model.IconLoader;
+import com.android.systemui.shared.recents.model.Task;
+import com.android.systemui.shared.recents.model.ThumbnailData;
+import com.android.systemui.shared.system.ActivityManagerWrapper;
+import com.android.systemui.shared.system.BackgroundExecutor;
+
+import java.io.PrintWriter;
+
+import androidx.annotation.UiThread;
+
+/**
+ * Loads the thumbnails and icons of the tasks about to be scrolled into view in recents, so that
+ * they can be shown as soon as the task becomes visible instead of after the task loader gets to
+ * them. More tasks are loaded ahead the faster the carousel moves.
+ *
+ * Prefetched thumbnails are kept within a byte budget, and dropped when memory is low.
+ */
+@TargetApi(Build.VERSION_CODES.P)
+public class TaskThumbnailPrefetcher implements Choreographer.FrameCallback {
+
+    private static final int MIN_PREFETCH_COUNT = 1;
+    private static final int MAX_PREFETCH_COUNT = 6;
+    // How far ahead of the scroll, in time, tasks are prefetched for.
+    private static final float PREFETCH_LOOKAHEAD_SECONDS = 0.3f;
+    // The fraction of the app's memory class thumbnails can use.
+    private static final int MEMORY_CLASS_FRACTION = 16;
+
+    private final IconLoader mIconLoader;
+    private final MainThreadExecutor mMainThreadExecutor = new MainThreadExecutor();
+    private final boolean mEnabled;
+    private final LruCache<Integer, ThumbnailData> mThumbnails;
+    // Tasks currently being loaded, only accessed on the main thread.
+    private final SparseBooleanArray mLoading = new SparseBooleanArray();
+
+    private int mHits;
+    private int mMisses;
+
+    private RecentsView mQuickScrubView;
+    private int mQuickScrubFrames;
+    private int mQuickScrubBlankFrames;
+    private int mTotalQuickScrubFrames;
+    private int mTotalQuickScrubBlankFrames;
+
+    public TaskThumbnailPrefetcher(Context context, IconLoader iconLoader) {
+        mIconLoader = iconLoader;
+
+        ActivityManager activityManager =
+                (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        mEnabled = !activityManager.isLowRamDevice();
+        int maxBytes = activityManager.getMemoryClass() * 1024 * 1024 / MEMORY_CLASS_FRACTION;
+        mThumbnails = new LruCache<Integer, ThumbnailData>(maxBytes) {
+            @Override
+            protected int sizeOf(Integer taskId, ThumbnailData data) {
+                return data.thumbnail.getByteCount();
+            }
+        };
+    }
+
+    /**
+     * Returns how many tasks past the visible ones should be loaded while the carousel moves at
+     * {@param pagesPerSecond}.
+     */
+    public int getPrefetchCount(float pagesPerSecond) {
+        if (!mEnabled) {
+            return 0;
+        }
+        return Utilities.boundToRange(
+                MIN_PREFETCH_COUNT + (int) Math.ceil(pagesPerSecond * PREFETCH_LOOKAHEAD_SECONDS),
+                MIN_PREFETCH_COUNT, MAX_PREFETCH_COUNT);
+    }
+
+    /**
+     * Starts loading the thumbnail and icon of {@param task} in the background, unless they are
+     * already loaded.
+     */
+    @UiThread
+    public void prefetch(Task task) {
+        int taskId = task.key.id;
+        if (!mEnabled || mLoading.get(taskId) || mThumbnails.get(taskId) != null) {
+            return;
+        }
+        mLoading.put(taskId, true);
+        BackgroundExecutor.get().submit(() -> {
+            // Fills the icon cache of the task loader, which it reads when binding the task.
+            mIconLoader.getIcon(task);
+            ThumbnailData data = ActivityManagerWrapper.getInstance()
+                    .getTaskThumbnail(taskId, true /* reducedResolution */);
+            mMainThreadExecutor.execute(() -> {
+                mLoading.delete(taskId);
+                if (data.thumbnail != null) {
+                    mThumbnails.put(taskId, data);
+                }
+            });
+        });
+    }
+
+    /**
+     * Called after the task loader was asked for the data of {@param task} as it became visible,
+     * shows the prefetched thumbnail until the task loader delivers its own.
+     */
+    @UiThread
+    public void onTaskVisible(Task task) {
+        if (!mEnabled || (task.thumbnail != null && task.thumbnail.thumbnail != null)) {
+            return;
+        }
+        ThumbnailData data = mThumbnails.get(task.key.id);
+        if (data != null) {
+            mHits++;
+            task.notifyTaskDataLoaded(data, task.icon);
+        } else {
+            mMisses++;
+        }
+    }
+
+    /**
+     * Replaces the prefetched thumbnail of {@param taskId}, if any, with a newer snapshot.
+     */
+    @UiThread
+    public void onTaskSnapshotChanged(int taskId, ThumbnailData snapshot) {
+        if (mThumbnails.get(taskId) != null) {
+            if (snapshot.thumbnail != null) {
+                mThumbnails.put(taskId, snapshot);
+            } else {
+                mThumbnails.remove(taskId);
+            }
+        }
+    }
+
+    @UiThread
+    public void onTaskRemoved(int taskId) {
+        mThumbnails.remove(taskId);
+    }
+
+    public void onTrimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            mThumbnails.evictAll();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            mThumbnails.trimToSize(mThumbnails.maxSize() / 2);
+        }
+    }
+
+    /**
+     * Starts counting the frames drawn while quick scrubbing through {@param recentsView} in which
+     * the task in the center has no thumbnail yet.
+     */
+    @UiThread
+    public void onQuickScrubStart(RecentsView recentsView) {
+        if (mQuickScrubView == null) {
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+        mQuickScrubView = recentsView;
+        mQuickScrubFrames = 0;
+        mQuickScrubBlankFrames = 0;
+    }
+
+    @UiThread
+    public void onQuickScrubEnd() {
+        if (mQuickScrubView == null) {
+            return;
+        }
+        Choreographer.getInstance().removeFrameCallback(this);
+        mQuickScrubView = null;
+        mTotalQuickScrubFrames += mQuickScrubFrames;
+        mTotalQuickScrubBlankFrames += mQuickScrubBlankFrames;
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        if (mQuickScrubView == null) {
+            return;
+        }
+        mQuickScrubFrames++;
+        TaskView taskView = mQuickScrubView.getTaskViewAt(
+                mQuickScrubView.getPageNearestToCenterOfScreen());
+        if (taskView != null && taskView.getTask() != null) {
+            ThumbnailData thumbnail = taskView.getTask().thumbnail;
+            if (thumbnail == null || thumbnail.thumbnail == null) {
+                mQuickScrubBlankFrames++;
+            }
+        }
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    public float getHitRate() {
+        int total = mHits + mMisses;
+        return total == 0 ? 0 : (float) mHits / total;
+    }
+
+    /**
+     * Returns the number of frames without a thumbnail during the last quick scrub.
+     */
+    public int getLastQuickScrubBlankFrames() {
+        return mQuickScrubBlankFrames;
+    }
+
+    public void dump(String prefix, PrintWriter writer) {
+        writer.println(prefix + "TaskThumbnailPrefetcher: enabled=" + mEnabled
+                + " cachedBytes=" + mThumbnails.size() + "/" + mThumbnails.maxSize());
+        writer.println(prefix + "  hits=" + mHits + " misses=" + mMisses
+                + " hitRate=" + getHitRate());
+        writer.println(prefix + "  quickScrub blankFrames=" + mTotalQuickScrubBlankFrames
+                + "/" + mTotalQuickScrubFrames + " last=" + mQuickScrubBlankFrames
+                + "/" + mQuickScrubFrames);
+    }
+}
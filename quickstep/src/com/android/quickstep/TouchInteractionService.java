@@ -52,6 +52,9 @@ import com.android.systemui.shared.system.ActivityManagerWrapper;
 import com.android.systemui.shared.system.ChoreographerCompat;
 import com.android.systemui.shared.system.NavigationBarCompat.HitTarget;
 
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+
 /**
  * Service connected by system-UI for handling touch interaction.
  */
@@ -210,6 +213,14 @@ public class TouchInteractionService extends Service {
         return mMyBinder;
     }
 
+    /**
+     * $ adb shell dumpsys activity service com.android.quickstep.TouchInteractionService
+     */
+    @Override
+    protected void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        MotionEventQueue.dump("", writer);
+    }
+
     private void setupTouchConsumer(@HitTarget int downHitTarget) {
         mEventQueue.reset();
         TouchConsumer oldConsumer = mEventQueue.getConsumer();
@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.quickstep.util;
+
+import java.io.PrintWriter;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts latencies in power of two buckets of microseconds, without allocating or locking so it
+ * can be updated for every input event.
+ */
+public class LatencyHistogram {
+
+    // The last bucket holds everything from 2^(NUM_BUCKETS - 2) us, about 65ms, on.
+    private static final int NUM_BUCKETS = 18;
+
+    private final String mName;
+    private final AtomicIntegerArray mBuckets = new AtomicIntegerArray(NUM_BUCKETS);
+    private final AtomicLong mMaxNanos = new AtomicLong();
+
+    public LatencyHistogram(String name) {
+        mName = name;
+    }
+
+    public void record(long latencyNanos) {
+        long micros = Math.max(latencyNanos / 1000, 0);
+        int bucket = Math.min(64 - Long.numberOfLeadingZeros(micros), NUM_BUCKETS - 1);
+        mBuckets.incrementAndGet(bucket);
+
+        long max = mMaxNanos.get();
+        while (latencyNanos > max && !mMaxNanos.compareAndSet(max, latencyNanos)) {
+            max = mMaxNanos.get();
+        }
+    }
+
+    /**
+     * Returns the upper bound, in microseconds, of the bucket containing the given
+     * {@param percentile} of the recorded latencies.
+     */
+    public long getPercentileMicros(int percentile) {
+        long total = getCount();
+        if (total == 0) {
+            return 0;
+        }
+        long target = (total * percentile + 99) / 100;
+        long seen = 0;
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            seen += mBuckets.get(i);
+            if (seen >= target) {
+                return getBucketEndMicros(i);
+            }
+        }
+        return getBucketEndMicros(NUM_BUCKETS - 1);
+    }
+
+    public long getCount() {
+        long total = 0;
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            total += mBuckets.get(i);
+        }
+        return total;
+    }
+
+    private static long getBucketStartMicros(int bucket) {
+        return bucket == 0 ? 0 : 1L << (bucket - 1);
+    }
+
+    private static long getBucketEndMicros(int bucket) {
+        return 1L << bucket;
+    }
+
+    public void dump(String prefix, PrintWriter writer) {
+        writer.println(prefix + mName + ": count=" + getCount()
+                + " p50<" + getPercentileMicros(50) + "us"
+                + " p90<" + getPercentileMicros(90) + "us"
+                + " p99<" + getPercentileMicros(99) + "us"
+                + " max=" + mMaxNanos.get() / 1000 + "us");
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            int count = mBuckets.get(i);
+            if (count == 0) {
+                continue;
+            }
+            String range = i == NUM_BUCKETS - 1
+                    ? ">=" + getBucketStartMicros(i) + "us"
+                    : "[" + getBucketStartMicros(i) + "us, " + getBucketEndMicros(i) + "us)";
+            writer.println(prefix + "  " + range + ": " + count);
+        }
+    }
+}
@@ -77,6 +77,7 @@ import com.android.launcher3.util.Themes;
 import com.android.quickstep.OverviewCallbacks;
 import com.android.quickstep.QuickScrubController;
 import com.android.quickstep.RecentsModel;
+import com.android.quickstep.TaskThumbnailPrefetcher;
 import com.android.quickstep.TaskUtils;
 import com.android.quickstep.util.ClipAnimationHelper;
 import com.android.quickstep.util.TaskViewDrawable;
@@ -136,6 +137,7 @@ public abstract class RecentsView<T extends BaseActivity> extends PagedView impl
     private final ScrollState mScrollState = new ScrollState();
     // Keeps track of the previously known visible tasks for purposes of loading/unloading task data
     private final SparseBooleanArray mHasVisibleTaskData = new SparseBooleanArray();
+    private int mPrefetchDirection = 1;
 
     /**
      * TODO: Call reloadIdNeeded in onTaskStackChanged.
@@ -143,6 +145,7 @@ public abstract class RecentsView<T extends BaseActivity> extends PagedView impl
     private final TaskStackChangeListener mTaskStackListener = new TaskStackChangeListener() {
         @Override
         public void onTaskSnapshotChanged(int taskId, ThumbnailData snapshot) {
+            mModel.getThumbnailPrefetcher().onTaskSnapshotChanged(taskId, snapshot);
             if (!mHandleTaskStackChanges) {
                 return;
             }
@@ -177,6 +180,7 @@ public abstract class RecentsView<T extends BaseActivity> extends PagedView impl
 
         @Override
         public void onTaskRemoved(int taskId) {
+            mModel.getThumbnailPrefetcher().onTaskRemoved(taskId);
             if (!mHandleTaskStackChanges) {
                 return;
             }
@@ -599,6 +603,7 @@ public abstract class RecentsView<T extends BaseActivity> extends PagedView impl
         }
 
         RecentsTaskLoader loader = mModel.getRecentsTaskLoader();
+        TaskThumbnailPrefetcher prefetcher = mModel.getThumbnailPrefetcher();
         int centerPageIndex = getPageNearestToCenterOfScreen();
         int numChildren = getTaskViewCount();
         int lower = Math.max(0, centerPageIndex - 2);
@@ -617,6 +622,7 @@ public abstract class RecentsView<T extends BaseActivity> extends PagedView impl
                 if (!mHasVisibleTaskData.get(task.key.id)) {
                     loader.loadTaskData(task);
                     loader.getHighResThumbnailLoader().onTaskVisible(task);
+                    prefetcher.onTaskVisible(task);
                 }
                 mHasVisibleTaskData.put(task.key.id, visible);
             } else {
@@ -627,6 +633,22 @@ public abstract class RecentsView<T extends BaseActivity> extends PagedView impl
                 mHasVisibleTaskData.delete(task.key.id);
             }
         }
+
+        // Load the tasks which are about to become visible in the direction of the scroll
+        int direction = Integer.signum(getNextPage() - centerPageIndex);
+        if (direction != 0) {
+            mPrefetchDirection = direction;
+        }
+        float pagesPerSecond = mScroller.isFinished() ? 0
+                : mScroller.getCurrVelocity() / (getNormalChildWidth() + mPageSpacing);
+        int prefetchCount = prefetcher.getPrefetchCount(pagesPerSecond);
+        for (int i = 1; i <= prefetchCount; i++) {
+            int index = mPrefetchDirection > 0 ? upper + i : lower - i;
+            if (index < 0 || index >= numChildren) {
+                break;
+            }
+            prefetcher.prefetch(getTaskViewAt(index).getTask());
+        }
     }
 
     /**
@@ -52,6 +52,8 @@ import com.android.launcher3.graphics.DrawableFactory;
 import com.android.launcher3.graphics.IconPalette;
 import com.android.launcher3.graphics.PreloadIconDrawable;
 import com.android.launcher3.model.PackageItemInfo;
+import com.android.launcher3.shortcuts.DeepShortcutCache;
+import com.android.launcher3.shortcuts.DeepShortcutManager;
 
 import org.zimmob.zimlx.ZimLauncher;
 import org.zimmob.zimlx.ZimPreferences;
@@ -111,6 +113,7 @@ public class BubbleTextView extends TextView implements ItemInfoUpdateReceiver,
     private final boolean mCenterVertically;
 
     private final CheckLongPressHelper mLongPressHelper;
+    private boolean mPrefetchingShortcuts;
     private final StylusEventHelper mStylusEventHelper;
     private final float mSlop;
 
@@ -386,15 +389,18 @@ public class BubbleTextView extends TextView implements ItemInfoUpdateReceiver,
                 // If we're in a stylus button press, don't check for long press.
                 if (!mStylusEventHelper.inStylusButtonPressed()) {
                     mLongPressHelper.postCheckForLongPress();
+                    prefetchShortcuts();
                 }
                 break;
             case MotionEvent.ACTION_CANCEL:
             case MotionEvent.ACTION_UP:
                 mLongPressHelper.cancelLongPress();
+                cancelShortcutsPrefetch();
                 break;
             case MotionEvent.ACTION_MOVE:
                 if (!Utilities.pointInView(this, event.getX(), event.getY(), mSlop)) {
                     mLongPressHelper.cancelLongPress();
+                    cancelShortcutsPrefetch();
                 }
                 break;
         }
@@ -408,6 +414,31 @@ public class BubbleTextView extends TextView implements ItemInfoUpdateReceiver,
         return result;
     }
 
+    /**
+     * Starts loading the deep shortcuts of this icon, so that they are ready if the touch turns
+     * into a long press.
+     */
+    private void prefetchShortcuts() {
+        if (!Utilities.ATLEAST_NOUGAT_MR1 || !(getTag() instanceof ItemInfo)) {
+            return;
+        }
+        ItemInfo info = (ItemInfo) getTag();
+        Launcher launcher = ZimUtilsKt.getLauncherOrNull(getContext());
+        if (launcher == null || !DeepShortcutManager.supportsShortcuts(info)) {
+            return;
+        }
+        DeepShortcutCache.getInstance(getContext()).prefetch(info,
+                launcher.getPopupDataProvider().getShortcutIdsForItem(info));
+        mPrefetchingShortcuts = true;
+    }
+
+    private void cancelShortcutsPrefetch() {
+        if (mPrefetchingShortcuts) {
+            DeepShortcutCache.getInstance(getContext()).cancelPrefetch();
+            mPrefetchingShortcuts = false;
+        }
+    }
+
     public void setStayPressed(boolean stayPressed) {
         mStayPressed = stayPressed;
         refreshDrawableState();
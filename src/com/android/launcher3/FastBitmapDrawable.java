@@ -129,6 +129,10 @@ public class FastBitmapDrawable extends Drawable {
         // No op
     }
 
+    public Bitmap getBitmap() {
+        return mBitmap;
+    }
+
     @Override
     public int getOpacity() {
         return PixelFormat.TRANSLUCENT;
@@ -57,6 +57,7 @@ import com.android.launcher3.util.Provider;
 import com.android.launcher3.util.SQLiteCacheHelper;
 import com.android.launcher3.util.Thunk;
 
+import org.zimmob.zimlx.adaptive.AdaptiveIconCache;
 import org.zimmob.zimlx.iconpack.ZimIconProvider;
 
 import java.util.Collections;
@@ -251,15 +252,20 @@ public class IconCache {
     public synchronized void removeIconsForPkg(String packageName, UserHandle user) {
         removeFromMemCacheLocked(packageName, user);
         long userSerial = mUserManager.getSerialNumberForUser(user);
+        // Matches the components starting with "packageName/" as a range, which unlike LIKE can
+        // use the primary key index and is case sensitive. '0' is the character after '/'.
         mIconDb.delete(
-                IconDB.COLUMN_COMPONENT + " LIKE ? AND " + IconDB.COLUMN_USER + " = ?",
-                new String[]{packageName + "/%", Long.toString(userSerial)});
+                IconDB.COLUMN_COMPONENT + " >= ? AND " + IconDB.COLUMN_COMPONENT + " < ? AND "
+                        + IconDB.COLUMN_USER + " = ?",
+                new String[]{packageName + "/", packageName + "0", Long.toString(userSerial)});
+        AdaptiveIconCache.getInstance(mContext).removePackage(packageName);
     }
 
     public synchronized void removeAllIcons() {
         Preconditions.assertWorkerThread();
         mCache.clear();
         mIconDb.delete(null, null);
+        AdaptiveIconCache.getInstance(mContext).clearPackageVersions();
     }
 
     public void updateDbIcons(Set<String> ignorePackagesForMainUser) {
@@ -701,10 +707,7 @@ public class IconCache {
     private boolean getEntryFromDB(ComponentKey cacheKey, CacheEntry entry, boolean lowRes) {
         Cursor c = null;
         try {
-            c = mIconDb.query(
-                    new String[]{lowRes ? IconDB.COLUMN_ICON_LOW_RES : IconDB.COLUMN_ICON,
-                            IconDB.COLUMN_ICON_COLOR, IconDB.COLUMN_LABEL},
-                    IconDB.COLUMN_COMPONENT + " = ? AND " + IconDB.COLUMN_USER + " = ?",
+            c = mIconDb.rawQuery(lowRes ? mIconDb.mLowResEntryQuery : mIconDb.mEntryQuery,
                     new String[]{cacheKey.componentName.flattenToString(),
                             Long.toString(mUserManager.getSerialNumberForUser(cacheKey.user))});
             if (c.moveToNext()) {
@@ -831,10 +834,21 @@ public class IconCache {
         private final static String COLUMN_LABEL = "label";
         private final static String COLUMN_SYSTEM_STATE = "system_state";
 
+        private final static String ENTRY_SELECTION =
+                COLUMN_COMPONENT + " = ? AND " + COLUMN_USER + " = ?";
+
+        final String mEntryQuery;
+        final String mLowResEntryQuery;
+
         public IconDB(Context context, int iconPixelSize) {
             super(context, LauncherFiles.APP_ICONS_DB,
                     (RELEASE_VERSION << 16) + iconPixelSize,
                     TABLE_NAME);
+            mEntryQuery = buildQuery(new String[]{COLUMN_ICON, COLUMN_ICON_COLOR, COLUMN_LABEL},
+                    ENTRY_SELECTION);
+            mLowResEntryQuery = buildQuery(
+                    new String[]{COLUMN_ICON_LOW_RES, COLUMN_ICON_COLOR, COLUMN_LABEL},
+                    ENTRY_SELECTION);
         }
 
         @Override
@@ -45,6 +45,7 @@ import com.android.launcher3.graphics.LauncherIcons;
 import com.android.launcher3.shortcuts.DeepShortcutManager;
 import com.android.launcher3.shortcuts.ShortcutInfoCompat;
 import com.android.launcher3.shortcuts.ShortcutKey;
+import com.android.launcher3.util.DurableQueue;
 import com.android.launcher3.util.PackageManagerHelper;
 import com.android.launcher3.util.Preconditions;
 import com.android.launcher3.util.Provider;
@@ -54,12 +55,13 @@ import org.json.JSONException;
 import org.json.JSONObject;
 import org.json.JSONStringer;
 
+import java.io.File;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 public class InstallShortcutReceiver extends BroadcastReceiver {
@@ -93,9 +95,12 @@ public class InstallShortcutReceiver extends BroadcastReceiver {
     private static final String APP_WIDGET_TYPE_KEY = "isAppWidget";
     private static final String USER_HANDLE_KEY = "userHandle";
 
-    // The set of shortcuts that are pending install
+    // The set of shortcuts that were pending install in older versions, which kept them in prefs
     private static final String APPS_PENDING_INSTALL = "apps_to_install";
 
+    private static final Object sQueueLock = new Object();
+    private static DurableQueue sInstallQueue;
+
     public static final int NEW_SHORTCUT_BOUNCE_DURATION = 450;
     public static final int NEW_SHORTCUT_STAGGER_DELAY = 85;
 
@@ -108,14 +113,21 @@ public class InstallShortcutReceiver extends BroadcastReceiver {
                     Pair<Context, PendingInstallShortcutInfo> pair =
                             (Pair<Context, PendingInstallShortcutInfo>) msg.obj;
                     String encoded = pair.second.encodeToString();
-                    SharedPreferences prefs = Utilities.getPrefs(pair.first);
-                    Set<String> strings = prefs.getStringSet(APPS_PENDING_INSTALL, null);
-                    strings = (strings != null) ? new HashSet<>(strings) : new HashSet<String>(1);
-                    strings.add(encoded);
-                    prefs.edit().putStringSet(APPS_PENDING_INSTALL, strings).apply();
+                    DurableQueue queue = getInstallQueue(pair.first);
+                    if (encoded != null) {
+                        queue.add(encoded);
+                    }
+                    if (!hasMessages(MSG_ADD_TO_QUEUE)) {
+                        // Bulk adds share a single sync
+                        queue.sync();
+                    }
                     return;
                 }
                 case MSG_FLUSH_QUEUE: {
+                    if (hasMessages(MSG_ADD_TO_QUEUE)) {
+                        // More items are coming, they get flushed together after them
+                        return;
+                    }
                     Context context = (Context) msg.obj;
                     LauncherModel model = LauncherAppState.getInstance(context).getModel();
                     if (model.getCallback() == null) {
@@ -123,17 +135,17 @@ public class InstallShortcutReceiver extends BroadcastReceiver {
                         return;
                     }
 
-                    ArrayList<Pair<ItemInfo, Object>> installQueue = new ArrayList<>();
-                    SharedPreferences prefs = Utilities.getPrefs(context);
-                    Set<String> strings = prefs.getStringSet(APPS_PENDING_INSTALL, null);
-                    if (DBG) Log.d(TAG, "Getting and clearing APPS_PENDING_INSTALL: " + strings);
-                    if (strings == null) {
+                    DurableQueue queue = getInstallQueue(context);
+                    List<Map.Entry<Long, String>> entries = queue.poll();
+                    if (DBG) Log.d(TAG, "Getting and clearing pending installs: " + entries);
+                    if (entries.isEmpty()) {
                         return;
                     }
 
+                    ArrayList<Pair<ItemInfo, Object>> installQueue = new ArrayList<>();
                     LauncherAppsCompat launcherApps = LauncherAppsCompat.getInstance(context);
-                    for (String encoded : strings) {
-                        PendingInstallShortcutInfo info = decode(encoded, context);
+                    for (Map.Entry<Long, String> entry : entries) {
+                        PendingInstallShortcutInfo info = decode(entry.getValue(), context);
                         if (info == null) {
                             continue;
                         }
@@ -149,16 +161,45 @@ public class InstallShortcutReceiver extends BroadcastReceiver {
                         // Generate a shortcut info to add into the model
                         installQueue.add(info.getItemInfo());
                     }
-                    prefs.edit().remove(APPS_PENDING_INSTALL).apply();
                     if (!installQueue.isEmpty()) {
                         model.addAndBindAddedWorkspaceItems(installQueue);
                     }
+                    // The items are written to the database on this looper, drop the entries
+                    // once that's done so they are installed again if we crash before
+                    final long lastId = entries.get(entries.size() - 1).getKey();
+                    post(() -> queue.markConsumed(lastId));
                     return;
                 }
             }
         }
     };
 
+    private static DurableQueue getInstallQueue(Context context) {
+        synchronized (sQueueLock) {
+            if (sInstallQueue == null) {
+                sInstallQueue = new DurableQueue(new File(context.getApplicationContext()
+                        .getFilesDir(), LauncherFiles.INSTALL_QUEUE));
+                migrateLegacyQueue(context, sInstallQueue);
+            }
+            return sInstallQueue;
+        }
+    }
+
+    /**
+     * Moves the entries older versions kept in prefs into the queue.
+     */
+    private static void migrateLegacyQueue(Context context, DurableQueue queue) {
+        SharedPreferences prefs = Utilities.getPrefs(context);
+        Set<String> strings = prefs.getStringSet(APPS_PENDING_INSTALL, null);
+        if (strings == null) {
+            return;
+        }
+        if (!strings.isEmpty()) {
+            queue.addAll(strings);
+        }
+        prefs.edit().remove(APPS_PENDING_INSTALL).commit();
+    }
+
     public static void removeFromInstallQueue(Context context, HashSet<String> packageNames,
                                               UserHandle user) {
         if (packageNames.isEmpty()) {
@@ -166,31 +207,28 @@ public class InstallShortcutReceiver extends BroadcastReceiver {
         }
         Preconditions.assertWorkerThread();
 
-        SharedPreferences sp = Utilities.getPrefs(context);
-        Set<String> strings = sp.getStringSet(APPS_PENDING_INSTALL, null);
+        DurableQueue queue = getInstallQueue(context);
+        List<Map.Entry<Long, String>> entries = queue.getEntries();
         if (DBG) {
-            Log.d(TAG, "APPS_PENDING_INSTALL: " + strings
-                    + ", removing packages: " + packageNames);
+            Log.d(TAG, "Pending installs: " + entries + ", removing packages: " + packageNames);
         }
-        if (Utilities.isEmpty(strings)) {
+        if (entries.isEmpty()) {
             return;
         }
-        Set<String> newStrings = new HashSet<>(strings);
-        Iterator<String> newStringsIter = newStrings.iterator();
-        while (newStringsIter.hasNext()) {
-            String encoded = newStringsIter.next();
+        List<Long> removed = new ArrayList<>();
+        for (Map.Entry<Long, String> entry : entries) {
             try {
-                Decoder decoder = new Decoder(encoded, context);
+                Decoder decoder = new Decoder(entry.getValue(), context);
                 if (packageNames.contains(getIntentPackage(decoder.launcherIntent)) &&
                         user.equals(decoder.user)) {
-                    newStringsIter.remove();
+                    removed.add(entry.getKey());
                 }
             } catch (JSONException | URISyntaxException e) {
                 Log.d(TAG, "Exception reading shortcut to add: " + e);
-                newStringsIter.remove();
+                removed.add(entry.getKey());
             }
         }
-        sp.edit().putStringSet(APPS_PENDING_INSTALL, newStrings).apply();
+        queue.remove(removed);
     }
 
     public void onReceive(Context context, Intent data) {
@@ -267,14 +305,9 @@ public class InstallShortcutReceiver extends BroadcastReceiver {
     public static HashSet<ShortcutKey> getPendingShortcuts(Context context) {
         HashSet<ShortcutKey> result = new HashSet<>();
 
-        Set<String> strings = Utilities.getPrefs(context).getStringSet(APPS_PENDING_INSTALL, null);
-        if (Utilities.isEmpty(strings)) {
-            return result;
-        }
-
-        for (String encoded : strings) {
+        for (Map.Entry<Long, String> entry : getInstallQueue(context).getEntries()) {
             try {
-                Decoder decoder = new Decoder(encoded, context);
+                Decoder decoder = new Decoder(entry.getValue(), context);
                 if (decoder.optBoolean(DEEPSHORTCUT_TYPE_KEY)) {
                     result.add(ShortcutKey.fromIntent(decoder.launcherIntent, decoder.user));
                 }
@@ -303,6 +336,8 @@ public class InstallShortcutReceiver extends BroadcastReceiver {
         if (sInstallQueueDisabledFlags != 0) {
             return;
         }
+        // A single flush after the last queued item is enough
+        sHandler.removeMessages(MSG_FLUSH_QUEUE);
         Message.obtain(sHandler, MSG_FLUSH_QUEUE, context.getApplicationContext()).sendToTarget();
     }
 
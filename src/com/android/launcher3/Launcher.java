@@ -87,6 +87,8 @@ import com.android.launcher3.dynamicui.ExtractedColors;
 import com.android.launcher3.dynamicui.WallpaperColorInfo;
 import com.android.launcher3.folder.FolderIcon;
 import com.android.launcher3.folder.FolderIconPreviewVerifier;
+import com.android.launcher3.graphics.DragBitmapPool;
+import com.android.launcher3.graphics.LauncherIcons;
 import com.android.launcher3.keyboard.CustomActionsPopup;
 import com.android.launcher3.keyboard.ViewGroupFocusHelper;
 import com.android.launcher3.logging.FileLog;
@@ -626,7 +628,9 @@ public class Launcher extends BaseDraggingActivity implements LauncherExterns,
         FolderIconPreviewVerifier verifier = new FolderIconPreviewVerifier(getDeviceProfile().inv);
         if (verifier.isItemInPreview(info.rank) && (info.container >= 0)) {
             View folderIcon = getWorkspace().getHomescreenIconByItemId(info.container);
-            if (folderIcon != null) {
+            if (folderIcon instanceof FolderIcon) {
+                ((FolderIcon) folderIcon).invalidatePreview();
+            } else if (folderIcon != null) {
                 folderIcon.invalidate();
             }
         }
@@ -1840,6 +1844,9 @@ public class Launcher extends BaseDraggingActivity implements LauncherExterns,
             // 3MB of memory for caching which isn't necessary.
             SQLiteDatabase.releaseMemory();
 
+            // Drag bitmaps are only reused while the user is rearranging items.
+            DragBitmapPool.getInstance().clear();
+
             // This clears all widget bitmaps from the widget tray
             // TODO(hyunyoungs)
         }
@@ -2365,6 +2372,7 @@ public class Launcher extends BaseDraggingActivity implements LauncherExterns,
      */
     public void bindAllApplications(ArrayList<AppInfo> apps) {
         mAppsView.getAppsStore().setApps(apps);
+        mAppsView.preInflateIcons();
 
         if (mLauncherCallbacks != null) {
             mLauncherCallbacks.bindAllApplications(apps);
@@ -2540,6 +2548,10 @@ public class Launcher extends BaseDraggingActivity implements LauncherExterns,
         }
 
         mModel.dumpState(prefix, fd, writer, args);
+        LauncherIcons.dumpStats(prefix, writer);
+        DragBitmapPool.dumpStats(prefix, writer);
+        mAppsView.dump(prefix, writer);
+        UiFactory.dumpStats(this, prefix, writer);
 
         if (mLauncherCallbacks != null) {
             mLauncherCallbacks.dump(prefix, fd, writer, args);
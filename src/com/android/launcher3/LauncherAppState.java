@@ -29,6 +29,7 @@ import com.android.launcher3.compat.PackageInstallerCompat;
 import com.android.launcher3.compat.UserManagerCompat;
 import com.android.launcher3.config.FeatureFlags;
 import com.android.launcher3.notification.NotificationListener;
+import com.android.launcher3.shortcuts.DeepShortcutCache;
 import com.android.launcher3.util.ConfigMonitor;
 import com.android.launcher3.util.Preconditions;
 import com.android.launcher3.util.SettingsObserver;
@@ -172,6 +173,7 @@ public class LauncherAppState {
 
     public void reloadIconCache() {
         mIconCache.removeAllIcons();
+        DeepShortcutCache.getInstance(mContext).clear();
         mModel.forceReloadOnNextLaunch();
     }
 
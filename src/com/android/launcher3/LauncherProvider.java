@@ -34,6 +34,7 @@ import android.content.res.Resources;
 import android.database.Cursor;
 import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
 import android.database.sqlite.SQLiteQueryBuilder;
 import android.database.sqlite.SQLiteStatement;
 import android.net.Uri;
@@ -58,12 +59,19 @@ import com.android.launcher3.model.DbDowngradeHelper;
 import com.android.launcher3.provider.LauncherDbUtils;
 import com.android.launcher3.provider.LauncherDbUtils.SQLiteTransaction;
 import com.android.launcher3.provider.RestoreDbTask;
+import com.android.launcher3.util.IOUtils;
 import com.android.launcher3.util.NoLocaleSQLiteHelper;
+import com.android.launcher3.util.WalCheckpointer;
 import com.android.launcher3.util.Preconditions;
 import com.android.launcher3.util.Thunk;
 
 import java.io.File;
 import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
@@ -76,6 +84,8 @@ public class LauncherProvider extends ContentProvider {
     private static final boolean LOGD = false;
 
     private static final String DOWNGRADE_SCHEMA_FILE = "downgrade_schema.json";
+    // Times the log is checkpointed for a snapshot before giving up on writes getting in between
+    private static final int SNAPSHOT_ATTEMPTS = 3;
 
     /**
      * Represents the schema of the database. Changes in scheme need not be backwards compatible.
@@ -395,10 +405,94 @@ public class LauncherProvider extends ContentProvider {
                 mOpenHelper.removeGhostWidgets(mOpenHelper.getWritableDatabase());
                 return null;
             }
+            case LauncherSettings.Settings.METHOD_SNAPSHOT_DB: {
+                Bundle result = new Bundle();
+                result.putBoolean(LauncherSettings.Settings.EXTRA_VALUE, snapshotDb(new File(arg)));
+                return result;
+            }
         }
         return null;
     }
 
+    /**
+     * Copies the database file to {@param target} while holding the write lock, so the copy
+     * doesn't pick up a half applied change from the model.
+     * <p>
+     * In write-ahead log mode the log is first checkpointed into the database file and truncated.
+     * The copy is only made if no write got in before the write lock was taken, as the log isn't
+     * part of the copy.
+     */
+    private boolean snapshotDb(File target) {
+        SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        if (!db.isWriteAheadLoggingEnabled()) {
+            db.beginTransaction();
+            try {
+                return copyDbFile(db, target);
+            } finally {
+                db.endTransaction();
+            }
+        }
+
+        File wal = new File(db.getPath() + "-wal");
+        // Idle checkpoints would compete with ours for the log
+        mOpenHelper.mCheckpointer.pause();
+        try {
+            for (int attempt = 0; attempt < SNAPSHOT_ATTEMPTS; attempt++) {
+                if (!checkpointAndTruncate(db)) {
+                    continue;
+                }
+                db.beginTransaction();
+                try {
+                    if (wal.length() == 0) {
+                        // Nothing can be checkpointed into the file while the log is empty and
+                        // no one else can write
+                        return copyDbFile(db, target);
+                    }
+                } finally {
+                    db.endTransaction();
+                }
+            }
+        } finally {
+            mOpenHelper.mCheckpointer.resume();
+        }
+        Log.e(TAG, "Failed to snapshot database, the log couldn't be checkpointed");
+        return false;
+    }
+
+    /**
+     * Moves all of the log into the database file and truncates the log.
+     *
+     * @return whether the whole log was checkpointed.
+     */
+    private static boolean checkpointAndTruncate(SQLiteDatabase db) {
+        try (Cursor c = db.rawQuery("PRAGMA wal_checkpoint(TRUNCATE)", null)) {
+            // Columns are busy, log pages and checkpointed pages
+            if (!c.moveToFirst()) {
+                return false;
+            }
+            boolean complete = c.getInt(0) == 0 && c.getInt(1) == c.getInt(2);
+            if (!complete) {
+                Log.d(TAG, "Incomplete checkpoint, busy=" + c.getInt(0) + " log=" + c.getInt(1)
+                        + " checkpointed=" + c.getInt(2));
+            }
+            return complete;
+        } catch (SQLiteException e) {
+            Log.d(TAG, "Failed to checkpoint database", e);
+            return false;
+        }
+    }
+
+    private static boolean copyDbFile(SQLiteDatabase db, File target) {
+        try (InputStream in = new FileInputStream(db.getPath());
+             OutputStream out = new FileOutputStream(target)) {
+            IOUtils.copy(in, out);
+            return true;
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to snapshot database", e);
+            return false;
+        }
+    }
+
     /**
      * Deletes any empty folder from the DB.
      * @return Ids of deleted folders.
@@ -434,6 +528,7 @@ public class LauncherProvider extends ContentProvider {
      * Overridden in tests
      */
     protected void notifyListeners() {
+        mOpenHelper.mCheckpointer.onWrite();
         mListenerHandler.sendEmptyMessage(ChangeListenerWrapper.MSG_LAUNCHER_PROVIDER_CHANGED);
     }
 
@@ -545,6 +640,7 @@ public class LauncherProvider extends ContentProvider {
     public static class DatabaseHelper extends NoLocaleSQLiteHelper implements LayoutParserCallback {
         private final Handler mWidgetHostResetHandler;
         private final Context mContext;
+        final WalCheckpointer mCheckpointer;
         private long mMaxItemId = -1;
         private long mMaxScreenId = -1;
 
@@ -571,6 +667,9 @@ public class LauncherProvider extends ContentProvider {
             super(context, tableName, SCHEMA_VERSION);
             mContext = context;
             mWidgetHostResetHandler = widgetHostResetHandler;
+            // Readers don't wait for model writes, see snapshotDb for copying the file
+            setWriteAheadLoggingEnabled(true);
+            mCheckpointer = new WalCheckpointer(this);
         }
 
         protected void initIds() {
@@ -685,6 +784,7 @@ public class LauncherProvider extends ContentProvider {
             }
             DbDowngradeHelper.updateSchemaFile(schemaFile, SCHEMA_VERSION, mContext,
                     R.raw.downgrade_schema);
+            WalCheckpointer.configure(db);
         }
 
         /**
@@ -334,6 +334,11 @@ public class LauncherSettings {
 
         public static final String METHOD_REMOVE_GHOST_WIDGETS = "remove_ghost_widgets";
 
+        /**
+         * Copies a consistent state of the database to the path passed as arg.
+         */
+        public static final String METHOD_SNAPSHOT_DB = "snapshot_db";
+
         public static final String EXTRA_VALUE = "value";
 
         public static Bundle call(ContentResolver cr, String method) {
@@ -112,7 +112,7 @@ public class WidgetPreviewLoader {
      * sizes (landscape vs portrait).
      */
     private static class CacheDb extends SQLiteCacheHelper {
-        private static final int DB_VERSION = 9;
+        private static final int DB_VERSION = 10;
 
         private static final String TABLE_NAME = "shortcut_and_widget_previews";
         private static final String COLUMN_COMPONENT = "componentName";
@@ -123,8 +123,15 @@ public class WidgetPreviewLoader {
         private static final String COLUMN_VERSION = "version";
         private static final String COLUMN_PREVIEW_BITMAP = "preview_bitmap";
 
+        private static final String INDEX_PACKAGE = "idx_package_user";
+
+        final String mPreviewQuery;
+
         public CacheDb(Context context) {
             super(context, LauncherFiles.WIDGET_PREVIEWS_DB, DB_VERSION, TABLE_NAME);
+            mPreviewQuery = buildQuery(new String[]{COLUMN_PREVIEW_BITMAP},
+                    COLUMN_COMPONENT + " = ? AND " + COLUMN_USER + " = ? AND "
+                            + COLUMN_SIZE + " = ?");
         }
 
         @Override
@@ -139,6 +146,9 @@ public class WidgetPreviewLoader {
                     COLUMN_PREVIEW_BITMAP + " BLOB, " +
                     "PRIMARY KEY (" + COLUMN_COMPONENT + ", " + COLUMN_USER + ", " + COLUMN_SIZE + ") " +
                     ");");
+            // Previews are removed per package, without it every removal scans the whole table
+            database.execSQL("CREATE INDEX IF NOT EXISTS " + INDEX_PACKAGE + " ON " + TABLE_NAME
+                    + " (" + COLUMN_PACKAGE + ", " + COLUMN_USER + ");");
         }
     }
 
@@ -256,10 +266,7 @@ public class WidgetPreviewLoader {
     Bitmap readFromDb(WidgetCacheKey key, Bitmap recycle, PreviewLoadTask loadTask) {
         Cursor cursor = null;
         try {
-            cursor = mDb.query(
-                    new String[]{CacheDb.COLUMN_PREVIEW_BITMAP},
-                    CacheDb.COLUMN_COMPONENT + " = ? AND " + CacheDb.COLUMN_USER + " = ? AND "
-                            + CacheDb.COLUMN_SIZE + " = ?",
+            cursor = mDb.rawQuery(mDb.mPreviewQuery,
                     new String[]{
                             key.componentName.flattenToShortString(),
                             Long.toString(mUserManager.getSerialNumberForUser(key.user)),
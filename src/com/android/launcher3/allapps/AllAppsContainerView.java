@@ -21,6 +21,8 @@ import android.graphics.Canvas;
 import android.graphics.Paint;
 import android.graphics.Point;
 import android.graphics.Rect;
+import android.os.Looper;
+import android.os.MessageQueue;
 import android.os.Process;
 import android.text.Selection;
 import android.text.SpannableStringBuilder;
@@ -45,6 +47,8 @@ import com.android.launcher3.Insettable;
 import com.android.launcher3.InsettableFrameLayout;
 import com.android.launcher3.ItemInfo;
 import com.android.launcher3.Launcher;
+import com.android.launcher3.LauncherState;
+import com.android.launcher3.LauncherStateManager.StateListener;
 import com.android.launcher3.R;
 import com.android.launcher3.Utilities;
 import com.android.launcher3.config.FeatureFlags;
@@ -63,17 +67,19 @@ import org.zimmob.zimlx.ZimUtilsKt;
 import org.zimmob.zimlx.allapps.AllAppsTabs;
 import org.zimmob.zimlx.allapps.AllAppsTabsController;
 
+import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 
 import static androidx.recyclerview.widget.RecyclerView.OnScrollListener;
+import static com.android.launcher3.LauncherState.ALL_APPS;
 
 /**
  * The all apps view container.
  */
 public class AllAppsContainerView extends SpringRelativeLayout implements DragSource,
-        Insettable, OnDeviceProfileChangeListener {
+        Insettable, OnDeviceProfileChangeListener, StateListener {
 
     private static final float FLING_VELOCITY_MULTIPLIER = 135f;
     // Starts the springs after at least 55% of the animation has passed.
@@ -84,6 +90,8 @@ public class AllAppsContainerView extends SpringRelativeLayout implements DragSo
     private final ItemInfoMatcher mPersonalMatcher = ItemInfoMatcher.ofUser(Process.myUserHandle());
     private final ItemInfoMatcher mWorkMatcher = ItemInfoMatcher.not(mPersonalMatcher);
     private final AllAppsStore mAllAppsStore = new AllAppsStore();
+    private final AllAppsRecycledViewPool mRecycledViewPool;
+    private MessageQueue.IdleHandler mPreInflateHandler;
 
     private final Paint mNavBarScrimPaint;
     private int mNavBarScrimHeight = 0;
@@ -119,12 +127,15 @@ public class AllAppsContainerView extends SpringRelativeLayout implements DragSo
 
         mLauncher = Launcher.getLauncher(context);
         mLauncher.addOnDeviceProfileChangeListener(this);
+        mLauncher.getStateManager().addStateListener(this);
 
         mSearchQueryBuilder = new SpannableStringBuilder();
         Selection.setSelection(mSearchQueryBuilder, 0);
 
         AllAppsTabs allAppsTabs = new AllAppsTabs(context);
         mTabsController = new AllAppsTabsController(allAppsTabs, this);
+        mRecycledViewPool = new AllAppsRecycledViewPool();
+        mRecycledViewPool.updateSize(mLauncher.getDeviceProfile(), mTabsController.getTabsCount());
         createHolders();
 
         mNavBarScrimColor = Themes.getAttrColor(context, R.attr.allAppsNavBarScrimColor);
@@ -158,12 +169,61 @@ public class AllAppsContainerView extends SpringRelativeLayout implements DragSo
     public void onDeviceProfileChanged(DeviceProfile dp) {
         for (AdapterHolder holder : mAH) {
             if (holder.recyclerView != null) {
-                // Remove all views and clear the pool, while keeping the data same. After this
-                // call, all the viewHolders will be recreated.
+                // Remove all views, while keeping the data same. After this call and clearing
+                // the pool, all the viewHolders will be recreated.
                 holder.recyclerView.swapAdapter(holder.recyclerView.getAdapter(), true);
-                holder.recyclerView.getRecycledViewPool().clear();
             }
         }
+        mRecycledViewPool.clear();
+        mRecycledViewPool.updateSize(dp, mTabsController.getTabsCount());
+    }
+
+    @Override
+    public void onStateSetImmediately(LauncherState state) {
+        onStateTransitionStart(state);
+    }
+
+    @Override
+    public void onStateTransitionStart(LauncherState toState) {
+        if (toState == ALL_APPS) {
+            mRecycledViewPool.beginEvent(AllAppsRecycledViewPool.EVENT_DRAWER_OPEN);
+        } else {
+            mRecycledViewPool.endEvent();
+        }
+    }
+
+    @Override
+    public void onStateTransitionComplete(LauncherState finalState) {
+    }
+
+    /**
+     * Fills the shared view pool with icons whenever the main thread is idle, so that opening
+     * the drawer or switching tabs for the first time doesn't have to inflate them.
+     */
+    public void preInflateIcons() {
+        if (mPreInflateHandler != null) {
+            return;
+        }
+        mPreInflateHandler = () -> {
+            AdapterHolder holder = mAH[AdapterHolder.MAIN];
+            int attachedIcons = 0;
+            for (AdapterHolder h : mAH) {
+                if (h.recyclerView != null) {
+                    attachedIcons += h.recyclerView.getChildCount();
+                }
+            }
+            if (holder.recyclerView != null && mRecycledViewPool.preInflateIcon(
+                    holder.adapter, holder.recyclerView, attachedIcons)) {
+                return true;
+            }
+            mPreInflateHandler = null;
+            return false;
+        };
+        Looper.myQueue().addIdleHandler(mPreInflateHandler);
+    }
+
+    public void dump(String prefix, PrintWriter writer) {
+        mRecycledViewPool.dump(prefix, writer);
     }
 
     private void onAppsUpdated() {
@@ -372,6 +432,7 @@ public class AllAppsContainerView extends SpringRelativeLayout implements DragSo
         mTabsController.unregisterIconContainers(mAllAppsStore);
 
         createHolders();
+        mRecycledViewPool.updateSize(mLauncher.getDeviceProfile(), mTabsController.getTabsCount());
         replaceRVContainer(showTabs);
         mUsingTabs = showTabs;
 
@@ -382,7 +443,7 @@ public class AllAppsContainerView extends SpringRelativeLayout implements DragSo
             if (currentTab == 0) {
                 tabStrip.setScroll(0, 1);
             }
-            onTabChanged(currentTab);
+            updateActiveTab(currentTab);
         } else {
             mTabsController.setup((View) findViewById(R.id.apps_list_view));
             AllAppsRecyclerView recyclerView = mAH[AdapterHolder.MAIN].recyclerView;
@@ -428,6 +489,11 @@ public class AllAppsContainerView extends SpringRelativeLayout implements DragSo
     }
 
     public void onTabChanged(int pos) {
+        mRecycledViewPool.beginEvent(AllAppsRecycledViewPool.EVENT_TAB_SWITCH);
+        updateActiveTab(pos);
+    }
+
+    private void updateActiveTab(int pos) {
         pos = Utilities.boundToRange(pos, 0, mTabsController.getTabsCount() - 1);
         mHeader.setCurrentActive(pos);
         reset(true /* animate */, true);
@@ -579,6 +645,7 @@ public class AllAppsContainerView extends SpringRelativeLayout implements DragSo
         AdapterHolder(boolean isWork) {
             appsList = new AlphabeticalAppsList(mLauncher, mAllAppsStore, isWork);
             adapter = new AllAppsGridAdapter(mLauncher, appsList);
+            adapter.setRecycledViewPool(mRecycledViewPool);
             appsList.setAdapter(adapter);
             layoutManager = adapter.getLayoutManager();
         }
@@ -588,6 +655,7 @@ public class AllAppsContainerView extends SpringRelativeLayout implements DragSo
             recyclerView = (AllAppsRecyclerView) rv;
             recyclerView.setEdgeEffectFactory(createEdgeEffectFactory());
             recyclerView.setApps(appsList, mUsingTabs);
+            recyclerView.setRecycledViewPool(mRecycledViewPool);
             recyclerView.setLayoutManager(layoutManager);
             recyclerView.setAdapter(adapter);
             recyclerView.setHasFixedSize(true);
@@ -196,6 +196,7 @@ public class AllAppsGridAdapter extends RecyclerView.Adapter<AllAppsGridAdapter.
 
     private BindViewCallback mBindViewCallback;
     private OnFocusChangeListener mIconFocusListener;
+    private AllAppsRecycledViewPool mRecycledViewPool;
 
     // The text to show when there are no search results and no market search handler.
     private String mEmptySearchMessage;
@@ -232,6 +233,14 @@ public class AllAppsGridAdapter extends RecyclerView.Adapter<AllAppsGridAdapter.
         mIconFocusListener = focusListener;
     }
 
+    /**
+     * Sets the pool shared with the adapters of the other tabs, which is told about every view
+     * holder created here.
+     */
+    public void setRecycledViewPool(AllAppsRecycledViewPool pool) {
+        mRecycledViewPool = pool;
+    }
+
     /**
      * Sets the last search query that was made, used to show when there are no results and to also
      * seed the intent for searching the market.
@@ -258,6 +267,9 @@ public class AllAppsGridAdapter extends RecyclerView.Adapter<AllAppsGridAdapter.
 
     @Override
     public ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        if (mRecycledViewPool != null) {
+            mRecycledViewPool.onCreateViewHolder(viewType);
+        }
         switch (viewType) {
             case VIEW_TYPE_ICON:
                 BubbleTextView icon = (BubbleTextView) mLayoutInflater.inflate(
@@ -278,7 +290,6 @@ public class AllAppsGridAdapter extends RecyclerView.Adapter<AllAppsGridAdapter.
             case VIEW_TYPE_SEARCH_MARKET:
                 View searchMarketView = mLayoutInflater.inflate(R.layout.all_apps_search_market,
                         parent, false);
-                searchMarketView.setOnClickListener(v -> mLauncher.startActivitySafely(v, mMarketSearchIntent, null));
                 return new ViewHolder(searchMarketView);
 
             case VIEW_TYPE_ALL_APPS_DIVIDER:
@@ -310,6 +321,8 @@ public class AllAppsGridAdapter extends RecyclerView.Adapter<AllAppsGridAdapter.
             case VIEW_TYPE_ICON:
                 AppInfo info = mApps.getAdapterItems().get(position).appInfo;
                 BubbleTextView icon = (BubbleTextView) holder.itemView;
+                // The icon might have been created by the adapter of another tab.
+                icon.setOnFocusChangeListener(mIconFocusListener);
                 icon.reset();
                 icon.applyFromApplicationInfo(info);
                 break;
@@ -322,6 +335,9 @@ public class AllAppsGridAdapter extends RecyclerView.Adapter<AllAppsGridAdapter.
                 break;
             case VIEW_TYPE_SEARCH_MARKET:
                 TextView searchView = (TextView) holder.itemView;
+                // The view might have been created by an adapter which was replaced since.
+                searchView.setOnClickListener(
+                        v -> mLauncher.startActivitySafely(v, mMarketSearchIntent, null));
                 if (mMarketSearchIntent != null) {
                     searchView.setVisibility(View.VISIBLE);
                 } else {
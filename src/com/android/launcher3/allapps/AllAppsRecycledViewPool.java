@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.allapps;
+
+import android.util.Log;
+
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.android.launcher3.DeviceProfile;
+
+import java.io.PrintWriter;
+
+/**
+ * The view pool shared by the recycler views of all the tabs in all apps, so that icons don't
+ * have to be inflated again when switching tabs or when the tabs are rebuilt, for example when
+ * entering and leaving search.
+ *
+ * Also counts the view holders created by the adapters, so the inflations caused by opening the
+ * drawer or switching tabs can be checked in the dump.
+ */
+public class AllAppsRecycledViewPool extends RecyclerView.RecycledViewPool {
+
+    private static final String TAG = "AllAppsRecycledViewPool";
+    private static final boolean DEBUG = false;
+
+    public static final int EVENT_DRAWER_OPEN = 0;
+    public static final int EVENT_TAB_SWITCH = 1;
+    private static final String[] EVENT_NAMES = {"drawer open", "tab switch"};
+
+    private int mIconsPerPage;
+    private int mNumTabs = 1;
+
+    private boolean mPreInflating;
+    private int mInflations;
+    private int mPreInflations;
+
+    private int mCurrentEvent = -1;
+    private int mCurrentEventInflations;
+    private final int[] mEventCounts = new int[EVENT_NAMES.length];
+    private final int[] mEventInflations = new int[EVENT_NAMES.length];
+    private final int[] mLastEventInflations = new int[EVENT_NAMES.length];
+
+    /**
+     * Sizes the pool to hold a page of icons for each of the {@param numTabs} tabs, which is what
+     * comes back into the pool when the tabs are rebuilt.
+     */
+    public void updateSize(DeviceProfile grid, int numTabs) {
+        int approxRows = (int) Math.ceil(grid.availableHeightPx / grid.allAppsIconSizePx);
+        mIconsPerPage = approxRows * grid.inv.numColsDrawer;
+        mNumTabs = Math.max(numTabs, 1);
+
+        setMaxRecycledViews(AllAppsGridAdapter.VIEW_TYPE_EMPTY_SEARCH, 1);
+        setMaxRecycledViews(AllAppsGridAdapter.VIEW_TYPE_ALL_APPS_DIVIDER, 1);
+        setMaxRecycledViews(AllAppsGridAdapter.VIEW_TYPE_SEARCH_MARKET, 1);
+        setMaxRecycledViews(AllAppsGridAdapter.VIEW_TYPE_ICON, mIconsPerPage * mNumTabs);
+    }
+
+    /**
+     * Inflates one icon into the pool if there are fewer icons than needed to show a page of
+     * each tab, not counting the {@param attachedIcons} already shown.
+     *
+     * @return whether more icons are still missing.
+     */
+    public boolean preInflateIcon(AllAppsGridAdapter adapter, RecyclerView parent,
+                                  int attachedIcons) {
+        int missing = mIconsPerPage * mNumTabs - attachedIcons
+                - getRecycledViewCount(AllAppsGridAdapter.VIEW_TYPE_ICON);
+        if (missing <= 0) {
+            return false;
+        }
+        mPreInflating = true;
+        RecyclerView.ViewHolder holder =
+                adapter.createViewHolder(parent, AllAppsGridAdapter.VIEW_TYPE_ICON);
+        mPreInflating = false;
+        putRecycledView(holder);
+        mPreInflations++;
+        return missing > 1;
+    }
+
+    /**
+     * Called by the adapters whenever they create a view holder.
+     */
+    void onCreateViewHolder(int viewType) {
+        if (mPreInflating) {
+            return;
+        }
+        mInflations++;
+        if (mCurrentEvent >= 0) {
+            mCurrentEventInflations++;
+        }
+    }
+
+    /**
+     * Starts attributing the views inflated from now on to {@param event}, until the next event
+     * starts or {@link #endEvent()} is called.
+     */
+    public void beginEvent(int event) {
+        endEvent();
+        mCurrentEvent = event;
+        mCurrentEventInflations = 0;
+    }
+
+    public void endEvent() {
+        if (mCurrentEvent < 0) {
+            return;
+        }
+        mEventCounts[mCurrentEvent]++;
+        mEventInflations[mCurrentEvent] += mCurrentEventInflations;
+        mLastEventInflations[mCurrentEvent] = mCurrentEventInflations;
+        if (DEBUG) {
+            Log.d(TAG, mCurrentEventInflations + " views inflated for "
+                    + EVENT_NAMES[mCurrentEvent]);
+        }
+        mCurrentEvent = -1;
+    }
+
+    /**
+     * Returns the number of views inflated during the last {@param event}.
+     */
+    public int getLastEventInflations(int event) {
+        return mLastEventInflations[event];
+    }
+
+    public void dump(String prefix, PrintWriter writer) {
+        writer.println(prefix + "All apps view pool: inflations=" + mInflations
+                + " preInflations=" + mPreInflations
+                + " pooledIcons=" + getRecycledViewCount(AllAppsGridAdapter.VIEW_TYPE_ICON)
+                + "/" + mIconsPerPage * mNumTabs);
+        for (int i = 0; i < EVENT_NAMES.length; i++) {
+            writer.println(prefix + "  " + EVENT_NAMES[i] + ": count=" + mEventCounts[i]
+                    + " inflations=" + mEventInflations[i]
+                    + " last=" + mLastEventInflations[i]);
+        }
+    }
+}
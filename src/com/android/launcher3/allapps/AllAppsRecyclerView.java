@@ -53,7 +53,6 @@ public class AllAppsRecyclerView extends BaseRecyclerView implements LogContaine
 
     // The specific view heights that we use to calculate scroll
     private SparseIntArray mViewHeights = new SparseIntArray();
-    private SparseIntArray mCachedScrollPositions = new SparseIntArray();
 
     // The empty-search result background
     private AllAppsBackgroundDrawable mEmptySearchBackground;
@@ -84,6 +83,7 @@ public class AllAppsRecyclerView extends BaseRecyclerView implements LogContaine
      */
     public void setApps(AlphabeticalAppsList apps, boolean usingTabs) {
         mApps = apps;
+        mApps.setItemHeightProvider(this::getItemHeight);
         mFastScrollHelper = new AllAppsFastScrollHelper(this, apps);
     }
 
@@ -91,18 +91,17 @@ public class AllAppsRecyclerView extends BaseRecyclerView implements LogContaine
         return mApps;
     }
 
-    private void updatePoolSize() {
+    /**
+     * The pool itself is shared by all tabs and sized by {@link AllAppsContainerView}.
+     */
+    private void updateViewHeights() {
         DeviceProfile grid = Launcher.getLauncher(getContext()).getDeviceProfile();
-        RecyclerView.RecycledViewPool pool = getRecycledViewPool();
-        int approxRows = (int) Math.ceil(grid.availableHeightPx / grid.allAppsIconSizePx);
-        pool.setMaxRecycledViews(AllAppsGridAdapter.VIEW_TYPE_EMPTY_SEARCH, 1);
-        pool.setMaxRecycledViews(AllAppsGridAdapter.VIEW_TYPE_ALL_APPS_DIVIDER, 1);
-        pool.setMaxRecycledViews(AllAppsGridAdapter.VIEW_TYPE_SEARCH_MARKET, 1);
-        pool.setMaxRecycledViews(AllAppsGridAdapter.VIEW_TYPE_ICON, approxRows * mNumAppsPerRow);
-
         mViewHeights.clear();
         mViewHeights.put(AllAppsGridAdapter.VIEW_TYPE_ICON, grid.allAppsCellHeightPx);
         mViewHeights.put(AllAppsGridAdapter.VIEW_TYPE_FOLDER, grid.allAppsCellHeightPx);
+        if (mApps != null) {
+            mApps.invalidateItemOffsets();
+        }
     }
 
     /**
@@ -134,7 +133,7 @@ public class AllAppsRecyclerView extends BaseRecyclerView implements LogContaine
     @Override
     protected void onSizeChanged(int w, int h, int oldw, int oldh) {
         updateEmptySearchBackgroundBounds();
-        updatePoolSize();
+        updateViewHeights();
     }
 
     @Override
@@ -191,16 +190,8 @@ public class AllAppsRecyclerView extends BaseRecyclerView implements LogContaine
         stopScroll();
 
         // Find the fastscroll section that maps to this touch fraction
-        List<AlphabeticalAppsList.FastScrollSectionInfo> fastScrollSections =
-                mApps.getFastScrollerSections();
-        AlphabeticalAppsList.FastScrollSectionInfo lastInfo = fastScrollSections.get(0);
-        for (int i = 1; i < fastScrollSections.size(); i++) {
-            AlphabeticalAppsList.FastScrollSectionInfo info = fastScrollSections.get(i);
-            if (info.touchFraction > touchFraction) {
-                break;
-            }
-            lastInfo = info;
-        }
+        AlphabeticalAppsList.FastScrollSectionInfo lastInfo =
+                mApps.getFastScrollerSectionAt(touchFraction);
 
         // Update the fast scroll
         int scrollY = getCurrentScrollY();
@@ -220,7 +211,7 @@ public class AllAppsRecyclerView extends BaseRecyclerView implements LogContaine
         super.setAdapter(adapter);
         adapter.registerAdapterDataObserver(new RecyclerView.AdapterDataObserver() {
             public void onChanged() {
-                mCachedScrollPositions.clear();
+                mApps.invalidateItemOffsets();
             }
         });
         mFastScrollHelper.onSetAdapter((AllAppsGridAdapter) adapter);
@@ -340,47 +331,26 @@ public class AllAppsRecyclerView extends BaseRecyclerView implements LogContaine
     }
 
     public int getCurrentScrollY(int position, int offset) {
-        List<AlphabeticalAppsList.AdapterItem> items = mApps.getAdapterItems();
-        AlphabeticalAppsList.AdapterItem posItem = position < items.size() ?
-                items.get(position) : null;
-        int y = mCachedScrollPositions.get(position, -1);
-        if (y < 0) {
-            y = 0;
-            for (int i = 0; i < position; i++) {
-                AlphabeticalAppsList.AdapterItem item = items.get(i);
-                if (AllAppsGridAdapter.isIconViewType(item.viewType)) {
-                    // Break once we reach the desired row
-                    if (posItem != null && posItem.viewType == item.viewType &&
-                            posItem.rowIndex == item.rowIndex) {
-                        break;
-                    }
-                    // Otherwise, only account for the first icon in the row since they are the same
-                    // size within a row
-                    if (item.rowAppIndex == 0) {
-                        y += mViewHeights.get(item.viewType, 0);
-                    }
-                } else {
-                    // Rest of the views span the full width
-                    int elHeight = mViewHeights.get(item.viewType);
-                    if (elHeight == 0) {
-                        ViewHolder holder = findViewHolderForAdapterPosition(i);
-                        if (holder == null) {
-                            holder = getAdapter().createViewHolder(this, item.viewType);
-                            getAdapter().onBindViewHolder(holder, i);
-                            holder.itemView.measure(UNSPECIFIED, UNSPECIFIED);
-                            elHeight = holder.itemView.getMeasuredHeight();
-
-                            getRecycledViewPool().putRecycledView(holder);
-                        } else {
-                            elHeight = holder.itemView.getMeasuredHeight();
-                        }
-                    }
-                    y += elHeight;
-                }
-            }
-            mCachedScrollPositions.put(position, y);
+        return mApps.getItemOffset(position) - offset;
+    }
+
+    private int getItemHeight(int position, AlphabeticalAppsList.AdapterItem item) {
+        int height = mViewHeights.get(item.viewType);
+        if (height != 0 || AllAppsGridAdapter.isIconViewType(item.viewType)) {
+            return height;
+        }
+        ViewHolder holder = findViewHolderForAdapterPosition(position);
+        if (holder == null) {
+            holder = getAdapter().createViewHolder(this, item.viewType);
+            getAdapter().onBindViewHolder(holder, position);
+            holder.itemView.measure(UNSPECIFIED, UNSPECIFIED);
+            height = holder.itemView.getMeasuredHeight();
+
+            getRecycledViewPool().putRecycledView(holder);
+        } else {
+            height = holder.itemView.getMeasuredHeight();
         }
-        return y - offset;
+        return height;
     }
 
     /**
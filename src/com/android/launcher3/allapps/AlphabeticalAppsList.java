@@ -21,6 +21,7 @@ import android.content.pm.PackageManager;
 import android.graphics.Color;
 import android.os.UserHandle;
 
+import androidx.annotation.VisibleForTesting;
 import androidx.core.graphics.ColorUtils;
 
 import com.android.launcher3.AppInfo;
@@ -38,6 +39,7 @@ import com.android.launcher3.util.LabelComparator;
 
 import org.zimmob.zimlx.ZimPreferences;
 import org.zimmob.zimlx.allapps.AppColorComparator;
+import org.zimmob.zimlx.groups.ComponentKeyMatcher;
 import org.zimmob.zimlx.groups.DrawerFolderInfo;
 import org.zimmob.zimlx.groups.DrawerFolderItem;
 import org.zimmob.zimlx.model.AppCountInfo;
@@ -52,7 +54,6 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-import java.util.Set;
 import java.util.TreeMap;
 
 import static org.zimmob.zimlx.util.Config.SORT_AZ;
@@ -93,6 +94,14 @@ public class AlphabeticalAppsList implements AllAppsStore.OnUpdateListener {
         }
     }
 
+    /**
+     * Measures adapter items for computing scroll offsets.
+     */
+    public interface ItemHeightProvider {
+
+        int getItemHeight(int position, AdapterItem item);
+    }
+
     /**
      * Info about a particular adapter item (can be either section or app)
      */
@@ -218,6 +227,11 @@ public class AlphabeticalAppsList implements AllAppsStore.OnUpdateListener {
 
     private List<String> mSearchSuggestions;
 
+    // The offset of each adapter item's row, see getItemOffset()
+    private int[] mItemOffsets;
+    private boolean mItemOffsetsValid;
+    private ItemHeightProvider mItemHeightProvider = (position, item) -> 0;
+
     public AlphabeticalAppsList(Context context, AllAppsStore appsStore, boolean isWork) {
         mAllAppsStore = appsStore;
         mLauncher = Launcher.getLauncher(context);
@@ -242,6 +256,17 @@ public class AlphabeticalAppsList implements AllAppsStore.OnUpdateListener {
         mAdapter = adapter;
     }
 
+    /**
+     * Returns the app for the key if it is part of this list, without scanning the list.
+     */
+    public AppInfo findApp(ComponentKey key) {
+        AppInfo app = mAllAppsStore.getApp(key);
+        if (app == null || (mItemFilter != null && !mItemFilter.matches(app, null))) {
+            return null;
+        }
+        return app;
+    }
+
     /**
      * Returns all the apps.
      */
@@ -296,6 +321,25 @@ public class AlphabeticalAppsList implements AllAppsStore.OnUpdateListener {
         return mFastScrollerSections;
     }
 
+    /**
+     * Returns the last fast scroller section starting at or before {@param touchFraction}, or
+     * the first section if there is none.
+     */
+    public FastScrollSectionInfo getFastScrollerSectionAt(float touchFraction) {
+        // Sections are in adapter order, so their touch fractions never decrease
+        int low = 1;
+        int high = mFastScrollerSections.size() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (mFastScrollerSections.get(mid).touchFraction > touchFraction) {
+                high = mid - 1;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return mFastScrollerSections.get(low - 1);
+    }
+
     /**
      * Returns the current filtered list of applications broken down into their sections.
      */
@@ -303,6 +347,64 @@ public class AlphabeticalAppsList implements AllAppsStore.OnUpdateListener {
         return mAdapterItems;
     }
 
+    /**
+     * Sets the provider used to measure the adapter items when computing their offsets.
+     */
+    public void setItemHeightProvider(ItemHeightProvider heightProvider) {
+        mItemHeightProvider = heightProvider;
+        invalidateItemOffsets();
+    }
+
+    /**
+     * Marks the item offsets as outdated, for example because the item heights changed. They are
+     * computed again on the next call to {@link #getItemOffset(int)}.
+     */
+    public void invalidateItemOffsets() {
+        mItemOffsetsValid = false;
+    }
+
+    /**
+     * Returns the distance from the top of the list to the top of the row of the item at
+     * {@param position}, or the height of all items if it is the item count.
+     */
+    public int getItemOffset(int position) {
+        if (!mItemOffsetsValid) {
+            mItemOffsets = computeItemOffsets(mAdapterItems, mItemHeightProvider, mItemOffsets);
+            mItemOffsetsValid = true;
+        }
+        return mItemOffsets[Math.max(0, Math.min(position, mAdapterItems.size()))];
+    }
+
+    /**
+     * Returns the offset of the row of each item in {@param items}, followed by their total
+     * height. Icons in the same row all have the offset of the row, and only the first icon of a
+     * row adds to the height.
+     */
+    @VisibleForTesting
+    static int[] computeItemOffsets(List<AdapterItem> items, ItemHeightProvider heightProvider,
+                                    int[] reuse) {
+        int count = items.size();
+        int[] offsets = reuse != null && reuse.length == count + 1 ? reuse : new int[count + 1];
+        int y = 0;
+        int rowTop = 0;
+        for (int i = 0; i < count; i++) {
+            AdapterItem item = items.get(i);
+            if (AllAppsGridAdapter.isIconViewType(item.viewType)) {
+                if (item.rowAppIndex == 0) {
+                    rowTop = y;
+                    y += heightProvider.getItemHeight(i, item);
+                }
+                offsets[i] = rowTop;
+            } else {
+                // Rest of the views span the full width
+                offsets[i] = y;
+                y += heightProvider.getItemHeight(i, item);
+            }
+        }
+        offsets[count] = y;
+        return offsets;
+    }
+
     /**
      * Returns the number of rows of applications
      */
@@ -485,12 +587,12 @@ public class AlphabeticalAppsList implements AllAppsStore.OnUpdateListener {
             }
         }
 
-        Set<ComponentKey> folderFilters = getFolderFilteredApps();
+        ComponentKeyMatcher folderFilters = getFolderFilteredApps();
 
         // Recreate the filtered and sectioned apps (for convenience for the grid layout) from the
         // ordered set of sections
         for (AppInfo info : getFiltersAppInfos()) {
-            if (!hasFilter() && folderFilters.contains(info.toComponentKey())) {
+            if (!hasFilter() && folderFilters.matches(info, null)) {
                 continue;
             }
             String sectionName = getAndUpdateCachedSectionName(info);
@@ -583,6 +685,7 @@ public class AlphabeticalAppsList implements AllAppsStore.OnUpdateListener {
         if (shouldShowWorkFooter()) {
             mAdapterItems.add(AdapterItem.asWorkTabFooter(position++));
         }
+        invalidateItemOffsets();
     }
 
     private boolean shouldShowWorkFooter() {
@@ -651,7 +754,7 @@ public class AlphabeticalAppsList implements AllAppsStore.OnUpdateListener {
                 .getFolderInfos(this);
     }
 
-    private Set<ComponentKey> getFolderFilteredApps() {
+    private ComponentKeyMatcher getFolderFilteredApps() {
         return Utilities.getZimPrefs(mLauncher)
                 .getAppGroupsManager()
                 .getDrawerFolders()
@@ -28,6 +28,8 @@ import com.android.launcher3.notification.NotificationKeyData;
 import com.android.launcher3.util.PackageUserKey;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 
 import androidx.annotation.Nullable;
@@ -45,10 +47,16 @@ public class BadgeInfo {
     private PackageUserKey mPackageUserKey;
 
     /**
-     * The keys of the notifications that this badge represents. These keys can later be
-     * used to retrieve {@link NotificationInfo}'s.
+     * The keys of the notifications that this badge represents, indexed by their notification
+     * key. These keys can later be used to retrieve {@link NotificationInfo}'s.
      */
-    private List<NotificationKeyData> mNotificationKeys;
+    private final LinkedHashMap<String, NotificationKeyData> mNotificationKeys;
+
+    /**
+     * Snapshot of {@link #mNotificationKeys} handed out by {@link #getNotificationKeys()},
+     * null when it has to be rebuilt.
+     */
+    private List<NotificationKeyData> mNotificationKeyList;
 
     /**
      * The current sum of the counts in {@link #mNotificationKeys},
@@ -69,16 +77,14 @@ public class BadgeInfo {
 
     public BadgeInfo(PackageUserKey packageUserKey) {
         mPackageUserKey = packageUserKey;
-        mNotificationKeys = new ArrayList<>();
+        mNotificationKeys = new LinkedHashMap<>();
     }
 
     /**
      * Returns whether the notification was added or its count changed.
      */
     public boolean addOrUpdateNotificationKey(NotificationKeyData notificationKey) {
-        int indexOfPrevKey = mNotificationKeys.indexOf(notificationKey);
-        NotificationKeyData prevKey = indexOfPrevKey == -1 ? null
-                : mNotificationKeys.get(indexOfPrevKey);
+        NotificationKeyData prevKey = mNotificationKeys.get(notificationKey.notificationKey);
         if (prevKey != null) {
             if (prevKey.count == notificationKey.count) {
                 return false;
@@ -89,26 +95,35 @@ public class BadgeInfo {
             prevKey.count = notificationKey.count;
             return true;
         }
-        boolean added = mNotificationKeys.add(notificationKey);
-        if (added) {
-            mTotalCount += notificationKey.count;
-        }
-        return added;
+        mNotificationKeys.put(notificationKey.notificationKey, notificationKey);
+        mNotificationKeyList = null;
+        mTotalCount += notificationKey.count;
+        return true;
     }
 
     /**
      * Returns whether the notification was removed (false if it didn't exist).
      */
     public boolean removeNotificationKey(NotificationKeyData notificationKey) {
-        boolean removed = mNotificationKeys.remove(notificationKey);
-        if (removed) {
-            mTotalCount -= notificationKey.count;
+        NotificationKeyData removed = mNotificationKeys.remove(notificationKey.notificationKey);
+        if (removed == null) {
+            return false;
         }
-        return removed;
+        mNotificationKeyList = null;
+        mTotalCount -= removed.count;
+        return true;
     }
 
     public List<NotificationKeyData> getNotificationKeys() {
-        return mNotificationKeys;
+        if (mNotificationKeyList == null) {
+            mNotificationKeyList = Collections.unmodifiableList(
+                    new ArrayList<>(mNotificationKeys.values()));
+        }
+        return mNotificationKeyList;
+    }
+
+    public int getNotificationKeyCount() {
+        return mNotificationKeys.size();
     }
 
     public int getNotificationCount() {
@@ -124,6 +139,10 @@ public class BadgeInfo {
         return mNotificationInfo != null;
     }
 
+    public @Nullable NotificationInfo getNotificationToShow() {
+        return mNotificationInfo;
+    }
+
     /**
      * Returns a shader to set on a Paint that will draw the notification icon in a badge.
      * <p>
@@ -142,7 +142,7 @@ public class BadgeRenderer {
         // Prepare the background and shadow and possible stacking effect.
         int backgroundWithShadowSize = backgroundWithShadow.getHeight(); // Same as width.
         boolean shouldStack = !isDot && badgeInfo != null
-                && badgeInfo.getNotificationKeys().size() > 1;
+                && badgeInfo.getNotificationKeyCount() > 1;
         if (shouldStack) {
             int offsetDiffX = mStackOffsetX - mOffset;
             int offsetDiffY = mStackOffsetY - mOffset;
@@ -37,7 +37,7 @@ public class FolderBadgeInfo extends BadgeInfo {
         if (badgeToAdd == null) {
             return;
         }
-        mNumNotifications += badgeToAdd.getNotificationKeys().size();
+        mNumNotifications += badgeToAdd.getNotificationKeyCount();
         mNumNotifications = Utilities.boundToRange(
                 mNumNotifications, MIN_COUNT, BadgeInfo.MAX_COUNT);
     }
@@ -46,7 +46,7 @@ public class FolderBadgeInfo extends BadgeInfo {
         if (badgeToSubtract == null) {
             return;
         }
-        mNumNotifications -= badgeToSubtract.getNotificationKeys().size();
+        mNumNotifications -= badgeToSubtract.getNotificationKeyCount();
         mNumNotifications = Utilities.boundToRange(
                 mNumNotifications, MIN_COUNT, BadgeInfo.MAX_COUNT);
     }
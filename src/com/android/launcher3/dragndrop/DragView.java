@@ -60,6 +60,7 @@ import com.android.launcher3.anim.Interpolators;
 import com.android.launcher3.compat.LauncherAppsCompat;
 import com.android.launcher3.compat.ShortcutConfigActivityInfo;
 import com.android.launcher3.config.FeatureFlags;
+import com.android.launcher3.graphics.DragBitmapPool;
 import com.android.launcher3.graphics.LauncherIcons;
 import com.android.launcher3.shortcuts.DeepShortcutManager;
 import com.android.launcher3.shortcuts.ShortcutInfoCompat;
@@ -645,6 +646,7 @@ public class DragView extends View {
     public void remove() {
         if (getParent() != null) {
             mDragLayer.removeView(DragView.this);
+            DragBitmapPool.getInstance().releaseAfterOutline(mBitmap);
         }
     }
 
@@ -563,12 +563,7 @@ public class FolderIcon extends FrameLayout implements FolderListener, Launcher.
         if (mFolder == null) return;
         if (mFolder.getItemCount() == 0 && !mAnimating) return;
 
-        final int saveCount = canvas.save();
-        canvas.clipPath(mBackground.getClipPath());
-
-        mPreviewItemManager.draw(canvas);
-
-        canvas.restoreToCount(saveCount);
+        mPreviewItemManager.drawClipped(canvas);
 
         if (!mBackground.drawingDelegated()) {
             mBackground.drawBackgroundStroke(canvas);
@@ -656,6 +651,22 @@ public class FolderIcon extends FrameLayout implements FolderListener, Launcher.
         return mPreviewItemManager.verifyDrawable(who) || super.verifyDrawable(who);
     }
 
+    @Override
+    public void invalidateDrawable(@NonNull Drawable drawable) {
+        if (mPreviewItemManager.verifyDrawable(drawable)) {
+            mPreviewItemManager.invalidatePreviewCache();
+        }
+        super.invalidateDrawable(drawable);
+    }
+
+    /**
+     * Redraws the preview after the icon of one of the items in it changed.
+     */
+    public void invalidatePreview() {
+        mPreviewItemManager.invalidatePreviewCache();
+        invalidate();
+    }
+
     @Override
     public void onItemsChanged(boolean animate) {
         if (mInfo.isCoverMode()) {
@@ -19,7 +19,10 @@ package com.android.launcher3.folder;
 import android.animation.Animator;
 import android.animation.AnimatorListenerAdapter;
 import android.animation.ValueAnimator;
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Path;
 import android.graphics.Rect;
 import android.graphics.drawable.Drawable;
 import android.view.View;
@@ -28,6 +31,7 @@ import android.widget.TextView;
 import com.android.launcher3.BubbleTextView;
 import com.android.launcher3.ShortcutInfo;
 import com.android.launcher3.Utilities;
+import com.android.launcher3.graphics.BitmapRenderer;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -61,6 +65,11 @@ public class PreviewItemManager {
     private float mCurrentPageItemsTransX = 0;
     private boolean mShouldSlideInFirstPage;
 
+    // The clipped preview, rendered once while none of the items are moving
+    private Bitmap mPreviewCache;
+    private boolean mPreviewCacheValid;
+    private final Paint mPreviewCachePaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+
     static final int INITIAL_ITEM_ANIMATION_DURATION = 350;
     private static final int FINAL_ITEM_ANIMATION_DURATION = 200;
 
@@ -164,7 +173,62 @@ public class PreviewItemManager {
         canvas.translate(-bg.basePreviewOffsetX, -bg.basePreviewOffsetY);
     }
 
+    /**
+     * Draws the preview items clipped to the folder background. While nothing in the preview is
+     * moving, the result is kept in a bitmap so that redrawing the icon, like on every frame of a
+     * workspace scroll or state transition, is a single bitmap draw.
+     */
+    public void drawClipped(Canvas canvas) {
+        PreviewBackground bg = mIcon.getFolderBackground();
+        if (!canCachePreview(bg)) {
+            drawClipped(canvas, bg.getClipPath());
+            return;
+        }
+        if (!mPreviewCacheValid) {
+            final Path clipPath = bg.getClipPath();
+            final int offsetX = bg.basePreviewOffsetX;
+            final int offsetY = bg.basePreviewOffsetY;
+            mPreviewCache = BitmapRenderer.createHardwareBitmap(bg.previewSize, bg.previewSize,
+                    (c) -> {
+                        c.translate(-offsetX, -offsetY);
+                        drawClipped(c, clipPath);
+                    });
+            mPreviewCacheValid = true;
+        }
+        canvas.drawBitmap(mPreviewCache, bg.basePreviewOffsetX, bg.basePreviewOffsetY,
+                mPreviewCachePaint);
+    }
+
+    private void drawClipped(Canvas canvas, Path clipPath) {
+        final int saveCount = canvas.save();
+        canvas.clipPath(clipPath);
+        draw(canvas);
+        canvas.restoreToCount(saveCount);
+    }
+
+    private boolean canCachePreview(PreviewBackground bg) {
+        // The background scales while accepting a drop, which changes the clip
+        if (bg.mScale != 1f || bg.previewSize <= 0 || mShouldSlideInFirstPage
+                || mIcon.mFolder.isOpen()) {
+            return false;
+        }
+        for (int i = 0; i < mFirstPageParams.size(); i++) {
+            if (mFirstPageParams.get(i).anim != null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Makes the next draw render the preview items again.
+     */
+    public void invalidatePreviewCache() {
+        mPreviewCacheValid = false;
+    }
+
     public void onParamsChanged() {
+        invalidatePreviewCache();
         mIcon.invalidate();
     }
 
@@ -195,12 +259,14 @@ public class PreviewItemManager {
                 mFirstPageParams.get(index) : null;
         if (params != null) {
             params.hidden = hidden;
+            invalidatePreviewCache();
         }
     }
 
     void buildParamsForPage(int page, ArrayList<PreviewItemDrawingParams> params, boolean animate) {
         List<BubbleTextView> items = mIcon.getPreviewItemsOnPage(page);
         int prevNumItems = params.size();
+        invalidatePreviewCache();
 
         // We adjust the size of the list to match the number of items in the preview.
         while (items.size() < params.size()) {
@@ -247,6 +313,8 @@ public class PreviewItemManager {
         // If we are not closing on the first page, we animate the current page preview items
         // out, and animate the first page preview items in.
         mShouldSlideInFirstPage = currentPage != 0;
+        // Items may have changed without telling us while the folder was open
+        invalidatePreviewCache();
         if (mShouldSlideInFirstPage) {
             mCurrentPageItemsTransX = 0;
             buildParamsForPage(currentPage, mCurrentPageParams, false);
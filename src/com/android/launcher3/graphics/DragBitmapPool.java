@@ -0,0 +1,215 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.launcher3.graphics;
+
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.util.LruCache;
+import android.util.SparseArray;
+
+import com.android.launcher3.util.UiThreadHelper;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * Reuses the bitmaps drawn while dragging items around, so that rearranging items doesn't
+ * allocate new full size bitmaps for every drag.
+ *
+ * Drag previews are kept in buckets of power of two byte sizes and reconfigured to the size of
+ * the next preview. Drag outlines are cached for the item and icon they were generated from, as
+ * they are expensive to generate and only change when the icon does.
+ */
+public class DragBitmapPool {
+
+    private static final int MAX_POOL_BYTES = 8 * 1024 * 1024;
+    private static final int MAX_BITMAPS_PER_BUCKET = 2;
+    private static final int MAX_OUTLINE_BYTES = 2 * 1024 * 1024;
+
+    private static DragBitmapPool sInstance;
+    private static final Object sInstanceLock = new Object();
+
+    public static DragBitmapPool getInstance() {
+        synchronized (sInstanceLock) {
+            if (sInstance == null) {
+                sInstance = new DragBitmapPool();
+            }
+            return sInstance;
+        }
+    }
+
+    // Free bitmaps by the log2 of their allocation size
+    private final SparseArray<ArrayList<Bitmap>> mBuckets = new SparseArray<>();
+    // Bitmaps handed out by the pool, the only ones accepted back
+    private final Set<Bitmap> mLent = Collections.newSetFromMap(new WeakHashMap<>());
+    private int mPoolBytes;
+
+    private final LruCache<OutlineKey, Bitmap> mOutlines =
+            new LruCache<OutlineKey, Bitmap>(MAX_OUTLINE_BYTES) {
+                @Override
+                protected int sizeOf(OutlineKey key, Bitmap value) {
+                    return value.getByteCount();
+                }
+            };
+
+    private int mAllocations;
+    private int mReuses;
+
+    private DragBitmapPool() { }
+
+    /**
+     * Returns a cleared, mutable ARGB_8888 bitmap of the given size, which should be given back
+     * through {@link #releaseAfterOutline(Bitmap)} once the drag is over.
+     */
+    public synchronized Bitmap obtain(int width, int height) {
+        int rowBytes = width * 4;
+        // Smallest bucket whose bitmaps are all large enough
+        int bucket = 32 - Integer.numberOfLeadingZeros(rowBytes * height - 1);
+        Bitmap result;
+        ArrayList<Bitmap> free = mBuckets.get(bucket);
+        if (free != null && !free.isEmpty()) {
+            result = free.remove(free.size() - 1);
+            mPoolBytes -= result.getAllocationByteCount();
+            result.reconfigure(width, height, Bitmap.Config.ARGB_8888);
+            result.eraseColor(0);
+            mReuses++;
+        } else {
+            // Allocate the whole bucket so that any other size in the bucket fits later on.
+            int capacityHeight = ((1 << bucket) + rowBytes - 1) / rowBytes;
+            result = Bitmap.createBitmap(width, capacityHeight, Bitmap.Config.ARGB_8888);
+            result.reconfigure(width, height, Bitmap.Config.ARGB_8888);
+            mAllocations++;
+        }
+        mLent.add(result);
+        return result;
+    }
+
+    /**
+     * Takes back {@param bitmap} if it came from this pool. The bitmap is only reused once the
+     * drag outline, which is generated from the preview in the background, is done with it.
+     */
+    public void releaseAfterOutline(Bitmap bitmap) {
+        synchronized (this) {
+            if (!mLent.remove(bitmap)) {
+                return;
+            }
+        }
+        new Handler(UiThreadHelper.getBackgroundLooper()).post(() -> release(bitmap));
+    }
+
+    private synchronized void release(Bitmap bitmap) {
+        if (bitmap.isRecycled()) {
+            return;
+        }
+        int bytes = bitmap.getAllocationByteCount();
+        // Largest bucket the bitmap can hold all sizes of
+        int bucket = 31 - Integer.numberOfLeadingZeros(bytes);
+        ArrayList<Bitmap> free = mBuckets.get(bucket);
+        if (free == null) {
+            free = new ArrayList<>(MAX_BITMAPS_PER_BUCKET);
+            mBuckets.put(bucket, free);
+        }
+        if (free.size() < MAX_BITMAPS_PER_BUCKET && mPoolBytes + bytes <= MAX_POOL_BYTES) {
+            free.add(bitmap);
+            mPoolBytes += bytes;
+        }
+    }
+
+    public Bitmap getOutline(OutlineKey key) {
+        return mOutlines.get(key);
+    }
+
+    /**
+     * Caches {@param outline} for {@param key}. Cached outlines are never reused for anything
+     * else, as the drop target might still be fading out an outline after the drag.
+     */
+    public void putOutline(OutlineKey key, Bitmap outline) {
+        mOutlines.put(key, outline);
+    }
+
+    public synchronized void clear() {
+        mBuckets.clear();
+        mPoolBytes = 0;
+        mOutlines.evictAll();
+    }
+
+    public static void dumpStats(String prefix, PrintWriter writer) {
+        DragBitmapPool pool;
+        synchronized (sInstanceLock) {
+            pool = sInstance;
+        }
+        if (pool == null) {
+            return;
+        }
+        synchronized (pool) {
+            writer.println(prefix + "DragBitmapPool: allocations=" + pool.mAllocations
+                    + " reuses=" + pool.mReuses + " pooledBytes=" + pool.mPoolBytes
+                    + " outlines hits=" + pool.mOutlines.hitCount()
+                    + " misses=" + pool.mOutlines.missCount()
+                    + " bytes=" + pool.mOutlines.size());
+        }
+    }
+
+    /**
+     * Identifies the outline of an item, as drawn by a given preview provider with a given icon at
+     * a given scale. Icons are compared by identity, since the icon cache creates a new bitmap
+     * whenever an icon changes.
+     */
+    public static class OutlineKey {
+
+        private final Class<?> mProvider;
+        private final long mItemId;
+        private final Bitmap mIcon;
+        private final float mIconScale;
+        private final int mWidth;
+        private final int mHeight;
+
+        public OutlineKey(Class<?> provider, long itemId, Bitmap icon, float iconScale,
+                          int width, int height) {
+            mProvider = provider;
+            mItemId = itemId;
+            mIcon = icon;
+            mIconScale = iconScale;
+            mWidth = width;
+            mHeight = height;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof OutlineKey)) {
+                return false;
+            }
+            OutlineKey other = (OutlineKey) o;
+            return mProvider == other.mProvider && mItemId == other.mItemId
+                    && mIcon == other.mIcon && mIconScale == other.mIconScale
+                    && mWidth == other.mWidth && mHeight == other.mHeight;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = mProvider.hashCode();
+            result = 31 * result + (int) (mItemId ^ (mItemId >>> 32));
+            result = 31 * result + System.identityHashCode(mIcon);
+            result = 31 * result + Float.floatToIntBits(mIconScale);
+            result = 31 * result + mWidth;
+            return 31 * result + mHeight;
+        }
+    }
+}
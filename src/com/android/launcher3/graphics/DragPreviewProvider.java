@@ -29,10 +29,13 @@ import android.os.Handler;
 import android.view.View;
 
 import com.android.launcher3.BubbleTextView;
+import com.android.launcher3.FastBitmapDrawable;
+import com.android.launcher3.ItemInfo;
 import com.android.launcher3.Launcher;
 import com.android.launcher3.R;
 import com.android.launcher3.config.FeatureFlags;
 import com.android.launcher3.folder.FolderIcon;
+import com.android.launcher3.graphics.DragBitmapPool.OutlineKey;
 import com.android.launcher3.util.UiThreadHelper;
 import com.android.launcher3.widget.LauncherAppWidgetHostView;
 
@@ -43,6 +46,9 @@ import java.nio.ByteBuffer;
  */
 public class DragPreviewProvider {
 
+    // Only used on the background looper, where all outlines are generated
+    private static byte[] sOutlinePixels = new byte[0];
+
     private final Rect mTempRect = new Rect();
 
     protected final View mView;
@@ -52,7 +58,7 @@ public class DragPreviewProvider {
 
     protected final int blurSizeOutline;
 
-    private OutlineGeneratorCallback mOutlineGeneratorCallback;
+    private boolean mOutlineGenerated;
     public Bitmap generatedDragOutline;
 
     public DragPreviewProvider(View view) {
@@ -131,21 +137,60 @@ public class DragPreviewProvider {
             height = (int) (mView.getHeight() * scale);
 
             // Use software renderer for widgets as we know that they already work
-            return BitmapRenderer.createSoftwareBitmap(width + blurSizeOutline,
+            return createPooledBitmap(width + blurSizeOutline,
                     height + blurSizeOutline, (c) -> drawDragView(c, scale));
         }
 
-        return BitmapRenderer.createHardwareBitmap(width + blurSizeOutline,
+        if (BitmapRenderer.USE_HARDWARE_BITMAP) {
+            return BitmapRenderer.createHardwareBitmap(width + blurSizeOutline,
+                    height + blurSizeOutline, (c) -> drawDragView(c, 1));
+        }
+        return createPooledBitmap(width + blurSizeOutline,
                 height + blurSizeOutline, (c) -> drawDragView(c, 1));
     }
 
+    /**
+     * Draws a software bitmap reused from the {@link DragBitmapPool}, which the drag view gives
+     * back when it is removed.
+     */
+    protected static Bitmap createPooledBitmap(int width, int height,
+                                               BitmapRenderer.Renderer renderer) {
+        Bitmap result = DragBitmapPool.getInstance().obtain(width, height);
+        renderer.draw(new Canvas(result));
+        return result;
+    }
+
     public final void generateDragOutline(Bitmap preview) {
-        if (FeatureFlags.IS_DOGFOOD_BUILD && mOutlineGeneratorCallback != null) {
+        if (FeatureFlags.IS_DOGFOOD_BUILD && mOutlineGenerated) {
             throw new RuntimeException("Drag outline generated twice");
         }
+        mOutlineGenerated = true;
 
-        mOutlineGeneratorCallback = new OutlineGeneratorCallback(preview);
-        new Handler(UiThreadHelper.getBackgroundLooper()).post(mOutlineGeneratorCallback);
+        OutlineKey key = getOutlineKey(preview);
+        Bitmap outline = key == null ? null : DragBitmapPool.getInstance().getOutline(key);
+        if (outline != null) {
+            generatedDragOutline = outline;
+            return;
+        }
+        new Handler(UiThreadHelper.getBackgroundLooper())
+                .post(new OutlineGeneratorCallback(preview, key));
+    }
+
+    /**
+     * Returns the key under which the outline of {@link #mView} is cached, or null if its outline
+     * can't be told apart from the outline of a different looking view.
+     */
+    private OutlineKey getOutlineKey(Bitmap preview) {
+        if (!(mView instanceof BubbleTextView) || !(mView.getTag() instanceof ItemInfo)) {
+            return null;
+        }
+        Drawable icon = ((BubbleTextView) mView).getIcon();
+        if (!(icon instanceof FastBitmapDrawable) || icon instanceof PreloadIconDrawable) {
+            return null;
+        }
+        FastBitmapDrawable fbd = (FastBitmapDrawable) icon;
+        return new OutlineKey(getClass(), ((ItemInfo) mView.getTag()).id, fbd.getBitmap(),
+                fbd.getAnimatedScale(), preview.getWidth(), preview.getHeight());
     }
 
     protected static Rect getDrawableBounds(Drawable d) {
@@ -182,10 +227,12 @@ public class DragPreviewProvider {
     private class OutlineGeneratorCallback implements Runnable {
 
         private final Bitmap mPreviewSnapshot;
+        private final OutlineKey mKey;
         private final Context mContext;
 
-        OutlineGeneratorCallback(Bitmap preview) {
+        OutlineGeneratorCallback(Bitmap preview, OutlineKey key) {
             mPreviewSnapshot = preview;
+            mKey = key;
             mContext = mView.getContext();
         }
 
@@ -195,18 +242,21 @@ public class DragPreviewProvider {
 
             // We start by removing most of the alpha channel so as to ignore shadows, and
             // other types of partial transparency when defining the shape of the object
-            byte[] pixels = new byte[preview.getWidth() * preview.getHeight()];
-            ByteBuffer buffer = ByteBuffer.wrap(pixels);
-            buffer.rewind();
+            int pixelCount = preview.getWidth() * preview.getHeight();
+            if (sOutlinePixels.length < pixelCount) {
+                sOutlinePixels = new byte[pixelCount];
+            }
+            byte[] pixels = sOutlinePixels;
+            ByteBuffer buffer = ByteBuffer.wrap(pixels, 0, pixelCount);
             preview.copyPixelsToBuffer(buffer);
 
-            for (int i = 0; i < pixels.length; i++) {
+            for (int i = 0; i < pixelCount; i++) {
                 if ((pixels[i] & 0xFF) < 188) {
                     pixels[i] = 0;
                 }
             }
 
-            buffer.rewind();
+            buffer.position(0);
             preview.copyPixelsFromBuffer(buffer);
 
             final Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG | Paint.FILTER_BITMAP_FLAG);
@@ -256,6 +306,9 @@ public class DragPreviewProvider {
             thickOuterBlur.recycle();
             thickInnerBlur.recycle();
 
+            if (mKey != null) {
+                DragBitmapPool.getInstance().putOutline(mKey, preview);
+            }
             generatedDragOutline = preview;
         }
     }
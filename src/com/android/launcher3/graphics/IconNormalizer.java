@@ -45,6 +45,11 @@ import org.zimmob.zimlx.iconpack.AdaptiveIconCompat;
 
 import java.nio.ByteBuffer;
 
+/**
+ * Instances keep their scratch bitmap and buffers as state and are not thread safe. Use the one
+ * owned by {@link LauncherIcons#obtain(Context)}, which is confined to the obtaining thread until
+ * it is recycled.
+ */
 public class IconNormalizer {
 
     private static final String TAG = "IconNormalizer";
@@ -67,9 +72,6 @@ public class IconNormalizer {
     private static final float PIXEL_DIFF_PERCENTAGE_THRESHOLD = 0.005f;
     private static final float SCALE_NOT_INITIALIZED = 0;
 
-    private static final Object LOCK = new Object();
-    private static IconNormalizer sIconNormalizer;
-
     // Ratio of the diameter of an normalized circular icon to the actual icon size.
     public static final float ICON_VISIBLE_AREA_FACTOR = 0.92f;
 
@@ -120,15 +122,6 @@ public class IconNormalizer {
         mAdaptiveIconScale = SCALE_NOT_INITIALIZED;
     }
 
-    public static IconNormalizer getInstance(Context context) {
-        synchronized (LOCK) {
-            if (sIconNormalizer == null) {
-                sIconNormalizer = new IconNormalizer(context);
-            }
-        }
-        return sIconNormalizer;
-    }
-
     /**
      * Returns if the shape of the icon is same as the path.
      * For this method to work, the shape path bounds should be in [0,1]x[0,1] bounds.
@@ -275,8 +268,8 @@ public class IconNormalizer {
      *
      * @param outBounds optional rect to receive the fraction distance from each edge.
      */
-    public synchronized float getScale(@NonNull Drawable d, @Nullable RectF outBounds,
-                                       @Nullable Path path, @Nullable boolean[] outMaskShape) {
+    public float getScale(@NonNull Drawable d, @Nullable RectF outBounds,
+                          @Nullable Path path, @Nullable boolean[] outMaskShape) {
         if (Utilities.ATLEAST_OREO && d instanceof AdaptiveIconDrawable) {
             if (mAdaptiveIconScale != SCALE_NOT_INITIALIZED) {
                 if (outBounds != null) {
@@ -422,8 +415,8 @@ public class IconNormalizer {
      * @param outBounds optional rect to receive the fraction distance from each edge.
      */
     @RequiresApi(api = Build.VERSION_CODES.O)
-    public synchronized float getScale(@NonNull Drawable d, @Nullable RectF outBounds,
-                                       @Nullable Path path, @Nullable boolean[] outMaskShape, int minVisibleAlpha) {
+    public float getScale(@NonNull Drawable d, @Nullable RectF outBounds,
+                          @Nullable Path path, @Nullable boolean[] outMaskShape, int minVisibleAlpha) {
         if (d instanceof AdaptiveIconCompat) {
             if (mAdaptiveIconScale != SCALE_NOT_INITIALIZED) {
                 if (outBounds != null) {
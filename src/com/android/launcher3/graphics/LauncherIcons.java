@@ -49,8 +49,13 @@ import com.android.launcher3.shortcuts.ShortcutInfoCompat;
 import com.android.launcher3.util.Provider;
 import com.android.launcher3.util.Themes;
 
+import org.zimmob.zimlx.adaptive.IconShape;
+import org.zimmob.zimlx.adaptive.IconShapeManager;
+
 import androidx.annotation.Nullable;
 
+import java.io.PrintWriter;
+
 import static android.graphics.Paint.DITHER_FLAG;
 import static android.graphics.Paint.FILTER_BITMAP_FLAG;
 import static com.android.launcher3.graphics.ShadowGenerator.BLUR_FACTOR;
@@ -65,6 +70,13 @@ public class LauncherIcons implements AutoCloseable {
     public static final Object sPoolSync = new Object();
     private static LauncherIcons sPool;
 
+    // Pool statistics guarded by sPoolSync. Every instance created after the first one means that
+    // several threads were rendering icons at the same time.
+    private static int sObtainCount;
+    private static int sCreateCount;
+    private static int sInUseCount;
+    private static int sMaxInUseCount;
+
     private final Rect mOldBounds = new Rect();
     private final Context mContext;
     private final Canvas mCanvas;
@@ -85,15 +97,21 @@ public class LauncherIcons implements AutoCloseable {
     /**
      * Return a new Message instance from the global pool. Allows us to
      * avoid allocating new objects in many cases.
+     * The returned instance, including its {@link IconNormalizer} and {@link ShadowGenerator},
+     * belongs to the calling thread until it is recycled.
      */
     public static LauncherIcons obtain(Context context) {
         synchronized (sPoolSync) {
+            sObtainCount++;
+            sInUseCount++;
+            sMaxInUseCount = Math.max(sMaxInUseCount, sInUseCount);
             if (sPool != null) {
                 LauncherIcons m = sPool;
                 sPool = m.next;
                 m.next = null;
                 return m;
             }
+            sCreateCount++;
         }
         return new LauncherIcons(context);
     }
@@ -103,6 +121,7 @@ public class LauncherIcons implements AutoCloseable {
      */
     public void recycle() {
         synchronized (sPoolSync) {
+            sInUseCount--;
             // Clear any temporary state variables
             mWrapperBackgroundColor = DEFAULT_WRAPPER_BACKGROUND;
 
@@ -116,6 +135,15 @@ public class LauncherIcons implements AutoCloseable {
         recycle();
     }
 
+    public static void dumpStats(String prefix, PrintWriter writer) {
+        synchronized (sPoolSync) {
+            writer.println(prefix + "LauncherIcons pool:");
+            writer.println(prefix + "  obtained=" + sObtainCount + " created=" + sCreateCount
+                    + " inUse=" + sInUseCount + " maxInUse=" + sMaxInUseCount);
+        }
+        ShadowGenerator.dumpStats(prefix, writer);
+    }
+
     private LauncherIcons(Context context) {
         mContext = context.getApplicationContext();
         mPm = mContext.getPackageManager();
@@ -196,7 +224,8 @@ public class LauncherIcons implements AutoCloseable {
         Bitmap bitmap = createIconBitmap(icon, scale[0]);
         if (Utilities.ATLEAST_OREO && icon instanceof AdaptiveIconDrawable) {
             mCanvas.setBitmap(bitmap);
-            getShadowGenerator().recreateIcon(Bitmap.createBitmap(bitmap), mCanvas);
+            getShadowGenerator().recreateIcon(Bitmap.createBitmap(bitmap),
+                    getSilhouetteKey(icon, scale[0]), mCanvas);
             mCanvas.setBitmap(null);
         }
 
@@ -218,6 +247,20 @@ public class LauncherIcons implements AutoCloseable {
         return BitmapInfo.fromBitmap(result);
     }
 
+    /**
+     * Returns a key shared by all icons which have the same outline once drawn at {@param scale},
+     * or null if the outline depends on the icon's content.
+     */
+    @Nullable
+    private String getSilhouetteKey(Drawable icon, float scale) {
+        if (Utilities.ATLEAST_OREO && icon instanceof AdaptiveIconDrawable) {
+            // Adaptive icons are all clipped to the mask of the current icon shape
+            IconShape shape = IconShapeManager.Companion.getInstance(mContext).getIconShape();
+            return "adaptive:" + shape + "@" + scale;
+        }
+        return null;
+    }
+
     /**
      * Creates a normalized bitmap suitable for the all apps view. The bitmap is also visually
      * normalized with other icons and has enough spacing to add shadow.
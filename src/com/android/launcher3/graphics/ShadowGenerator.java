@@ -27,13 +27,19 @@ import android.graphics.Paint;
 import android.graphics.PorterDuff;
 import android.graphics.PorterDuffXfermode;
 import android.graphics.RectF;
+import android.os.SystemClock;
 
 import com.android.launcher3.LauncherAppState;
 
+import java.io.PrintWriter;
+import java.util.HashMap;
+
+import androidx.annotation.Nullable;
 import androidx.core.graphics.ColorUtils;
 
 /**
  * Utility class to add shadows to bitmaps.
+ * Instances are not thread safe, icon code should use the one owned by {@link LauncherIcons}.
  */
 public class ShadowGenerator {
 
@@ -47,16 +53,31 @@ public class ShadowGenerator {
 
     private static final int AMBIENT_SHADOW_ALPHA = 30;
 
+    // Max alpha difference for a pixel to still be considered part of the same silhouette
+    private static final int TEMPLATE_ALPHA_TOLERANCE = 8;
+    // Fraction of pixels which may differ from the template silhouette
+    private static final float TEMPLATE_MISMATCH_RATIO = 0.002f;
+    private static final int MAX_TEMPLATES = 8;
+    // Consecutive icons which have to miss a confirmed template before it is replaced
+    private static final int MAX_TEMPLATE_MISSES = 4;
+
+    // Prerendered shadows keyed by silhouette, guarded by itself
+    private static final HashMap<String, ShadowTemplate> sTemplates = new HashMap<>();
+
+    // Icon generation statistics, guarded by sTemplates
+    private static int sTemplateCount;
+    private static long sTemplateNanos;
+    private static int sBlurCount;
+    private static long sBlurNanos;
+
     private final int mIconSize;
 
     private final Canvas mCanvas;
     private final Paint mBlurPaint;
     private final Paint mDrawPaint;
     private final BlurMaskFilter mDefaultBlurMaskFilter;
-
-    private static final Object LOCK = new Object();
-    // Singleton object guarded by {@link #LOCK}
-    private static ShadowGenerator sShadowGenerator;
+    private final int[] mOffset = new int[2];
+    private int[] mPixels = new int[0];
 
     public ShadowGenerator(Context context) {
         mIconSize = LauncherAppState.getIDP(context).iconBitmapSize;
@@ -66,43 +87,109 @@ public class ShadowGenerator {
         mDefaultBlurMaskFilter = new BlurMaskFilter(mIconSize * BLUR_FACTOR, Blur.NORMAL);
     }
 
-    public static ShadowGenerator getInstance(Context context) {
-        // TODO: This currently fails as the system default icon also needs a shadow as it
-        // uses adaptive icon.
-        // Preconditions.assertNonUiThread();
-        synchronized (LOCK) {
-            if (sShadowGenerator == null) {
-                sShadowGenerator = new ShadowGenerator(context);
+    public void recreateIcon(Bitmap icon, Canvas out) {
+        recreateIcon(icon, mDefaultBlurMaskFilter, AMBIENT_SHADOW_ALPHA, KEY_SHADOW_ALPHA, out);
+    }
+
+    /**
+     * Same as {@link #recreateIcon(Bitmap, Canvas)}, but icons which share the silhouette
+     * identified by {@param silhouetteKey} reuse a prerendered shadow instead of blurring their
+     * own alpha. Icons which don't actually match the silhouette are blurred as usual.
+     */
+    public void recreateIcon(Bitmap icon, @Nullable String silhouetteKey, Canvas out) {
+        if (silhouetteKey == null) {
+            recreateIcon(icon, out);
+            return;
+        }
+        long start = SystemClock.elapsedRealtimeNanos();
+        String key = silhouetteKey + "/" + icon.getWidth() + "x" + icon.getHeight()
+                + "/" + mIconSize + "/" + AMBIENT_SHADOW_ALPHA + "/" + KEY_SHADOW_ALPHA;
+        ShadowTemplate template;
+        synchronized (sTemplates) {
+            template = sTemplates.get(key);
+        }
+
+        int[] pixels = readPixels(icon);
+        boolean matches = template != null && template.matches(pixels);
+        if (matches && template.confirmed) {
+            drawShadowed(icon, template.shadow, template.offsetX, template.offsetY,
+                    AMBIENT_SHADOW_ALPHA, KEY_SHADOW_ALPHA, out);
+            synchronized (sTemplates) {
+                template.misses = 0;
+                sTemplateCount++;
+                sTemplateNanos += SystemClock.elapsedRealtimeNanos() - start;
             }
+            return;
+        }
+
+        mBlurPaint.setMaskFilter(mDefaultBlurMaskFilter);
+        Bitmap shadow = icon.extractAlpha(mBlurPaint, mOffset);
+        drawShadowed(icon, shadow, mOffset[0], mOffset[1], AMBIENT_SHADOW_ALPHA, KEY_SHADOW_ALPHA,
+                out);
+
+        synchronized (sTemplates) {
+            if (matches) {
+                // A second icon agrees with the candidate, it's safe to use from now on
+                template.confirmed = true;
+            } else if (template == null || !template.confirmed
+                    || ++template.misses >= MAX_TEMPLATE_MISSES) {
+                // Icons keep missing a confirmed template when the silhouette it was made for
+                // is no longer used, start over with a new candidate
+                if (sTemplates.size() >= MAX_TEMPLATES) {
+                    sTemplates.clear();
+                }
+                sTemplates.put(key, new ShadowTemplate(shadow, mOffset[0], mOffset[1], pixels,
+                        icon.getWidth() * icon.getHeight()));
+            }
+            sBlurCount++;
+            sBlurNanos += SystemClock.elapsedRealtimeNanos() - start;
         }
-        return sShadowGenerator;
     }
 
-    public synchronized void recreateIcon(Bitmap icon, Canvas out) {
-        recreateIcon(icon, mDefaultBlurMaskFilter, AMBIENT_SHADOW_ALPHA, KEY_SHADOW_ALPHA, out);
+    private int[] readPixels(Bitmap icon) {
+        int size = icon.getWidth() * icon.getHeight();
+        if (mPixels.length < size) {
+            mPixels = new int[size];
+        }
+        icon.getPixels(mPixels, 0, icon.getWidth(), 0, 0, icon.getWidth(), icon.getHeight());
+        return mPixels;
     }
 
-    public synchronized void recreateIcon(Bitmap icon, BlurMaskFilter blurMaskFilter,
-                                          int ambientAlpha, int keyAlpha, Canvas out) {
-        int[] offset = new int[2];
+    public static void dumpStats(String prefix, PrintWriter writer) {
+        synchronized (sTemplates) {
+            writer.println(prefix + "Icon shadows:");
+            writer.println(prefix + "  templates=" + sTemplates.size()
+                    + " templateHits=" + sTemplateCount
+                    + " avgTemplateUs=" + (sTemplateCount == 0 ? 0 : sTemplateNanos / sTemplateCount / 1000)
+                    + " blurred=" + sBlurCount
+                    + " avgBlurUs=" + (sBlurCount == 0 ? 0 : sBlurNanos / sBlurCount / 1000));
+        }
+    }
+
+    public void recreateIcon(Bitmap icon, BlurMaskFilter blurMaskFilter,
+                             int ambientAlpha, int keyAlpha, Canvas out) {
         mBlurPaint.setMaskFilter(blurMaskFilter);
-        Bitmap shadow = icon.extractAlpha(mBlurPaint, offset);
+        Bitmap shadow = icon.extractAlpha(mBlurPaint, mOffset);
+        drawShadowed(icon, shadow, mOffset[0], mOffset[1], ambientAlpha, keyAlpha, out);
+    }
 
+    private void drawShadowed(Bitmap icon, Bitmap shadow, int offsetX, int offsetY,
+                              int ambientAlpha, int keyAlpha, Canvas out) {
         // Draw ambient shadow
         mDrawPaint.setAlpha(ambientAlpha);
-        out.drawBitmap(shadow, offset[0], offset[1], mDrawPaint);
+        out.drawBitmap(shadow, offsetX, offsetY, mDrawPaint);
 
         // Draw key shadow
         mDrawPaint.setAlpha(keyAlpha);
-        out.drawBitmap(shadow, offset[0], offset[1] + KEY_SHADOW_DISTANCE * mIconSize, mDrawPaint);
+        out.drawBitmap(shadow, offsetX, offsetY + KEY_SHADOW_DISTANCE * mIconSize, mDrawPaint);
 
         // Draw the icon
         mDrawPaint.setAlpha(255);
         out.drawBitmap(icon, 0, 0, mDrawPaint);
     }
 
-    public synchronized Bitmap recreateIcon(Bitmap icon, boolean resize,
-                                            BlurMaskFilter blurMaskFilter, int ambientAlpha, int keyAlpha) {
+    public Bitmap recreateIcon(Bitmap icon, boolean resize,
+                               BlurMaskFilter blurMaskFilter, int ambientAlpha, int keyAlpha) {
         int width = resize ? mIconSize : icon.getWidth();
         int height = resize ? mIconSize : icon.getHeight();
         int[] offset = new int[2];
@@ -147,6 +234,44 @@ public class ShadowGenerator {
         return scale;
     }
 
+    /**
+     * Blurred alpha of an icon along with the silhouette it was generated from.
+     */
+    private static final class ShadowTemplate {
+
+        final Bitmap shadow;
+        final int offsetX;
+        final int offsetY;
+        final byte[] alpha;
+        // Only used once a second icon matched the silhouette, so a one-off icon which happened to
+        // be generated first doesn't become the template
+        volatile boolean confirmed;
+        // Guarded by sTemplates
+        int misses;
+
+        ShadowTemplate(Bitmap shadow, int offsetX, int offsetY, int[] pixels, int size) {
+            this.shadow = shadow;
+            this.offsetX = offsetX;
+            this.offsetY = offsetY;
+            alpha = new byte[size];
+            for (int i = 0; i < size; i++) {
+                alpha[i] = (byte) (pixels[i] >>> 24);
+            }
+        }
+
+        boolean matches(int[] pixels) {
+            int allowedMismatches = (int) (alpha.length * TEMPLATE_MISMATCH_RATIO);
+            for (int i = 0; i < alpha.length; i++) {
+                int diff = (alpha[i] & 0xFF) - (pixels[i] >>> 24);
+                if ((diff > TEMPLATE_ALPHA_TOLERANCE || diff < -TEMPLATE_ALPHA_TOLERANCE)
+                        && --allowedMismatches < 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
     public static class Builder {
 
         public final RectF bounds = new RectF();
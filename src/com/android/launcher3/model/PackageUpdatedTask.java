@@ -42,6 +42,7 @@ import com.android.launcher3.config.FeatureFlags;
 import com.android.launcher3.graphics.BitmapInfo;
 import com.android.launcher3.graphics.LauncherIcons;
 import com.android.launcher3.logging.FileLog;
+import com.android.launcher3.shortcuts.DeepShortcutCache;
 import com.android.launcher3.shortcuts.DeepShortcutManager;
 import com.android.launcher3.shortcuts.ShortcutInfoCompat;
 import com.android.launcher3.util.FlagOp;
@@ -92,6 +93,7 @@ public class PackageUpdatedTask extends BaseModelUpdateTask {
     public void execute(LauncherAppState app, BgDataModel dataModel, AllAppsList appsList) {
         final Context context = app.getContext();
         final IconCache iconCache = app.getIconCache();
+        final DeepShortcutCache shortcutCache = DeepShortcutCache.getInstance(context);
 
         final String[] packages = mPackages;
         final int N = packages.length;
@@ -131,6 +133,7 @@ public class PackageUpdatedTask extends BaseModelUpdateTask {
                     iconCache.updateIconsForPkg(packages[i], mUser);
                     appsList.updatePackage(context, packages[i], mUser);
                     app.getWidgetCache().removePackage(packages[i], mUser);
+                    shortcutCache.invalidate(packages[i], mUser);
                 }
                 // Since package was just updated, the target must be available now.
                 flagOp = FlagOp.removeFlag(ShortcutInfo.FLAG_DISABLED_NOT_AVAILABLE);
@@ -146,6 +149,7 @@ public class PackageUpdatedTask extends BaseModelUpdateTask {
                     if (DEBUG) Log.d(TAG, "mAllAppsList.removePackage " + packages[i]);
                     appsList.removePackage(packages[i], mUser);
                     app.getWidgetCache().removePackage(packages[i], mUser);
+                    shortcutCache.invalidate(packages[i], mUser);
                 }
                 flagOp = FlagOp.addFlag(ShortcutInfo.FLAG_DISABLED_NOT_AVAILABLE);
                 break;
@@ -164,10 +168,12 @@ public class PackageUpdatedTask extends BaseModelUpdateTask {
                 // We want to update all packages for this user.
                 matcher = ItemInfoMatcher.ofUser(mUser);
                 appsList.updateDisabledFlags(matcher, flagOp);
+                shortcutCache.clear();
                 break;
             case OP_RELOAD:
                 if (DEBUG) Log.d(TAG, "mAllAppsList.reloadPackages");
                 appsList.reloadPackages(context, mUser);
+                shortcutCache.clear();
                 break;
         }
 
@@ -374,9 +380,10 @@ public class PackageUpdatedTask extends BaseModelUpdateTask {
             });
         }
 
-        if (Utilities.ATLEAST_OREO && mOp == OP_ADD) {
-            // Load widgets for the new package. Changes due to app updates are handled through
-            // AppWidgetHost events, this is just to initialize the long-press options.
+        if ((Utilities.ATLEAST_OREO && mOp == OP_ADD)
+                || mOp == OP_UPDATE || mOp == OP_REMOVE || mOp == OP_UNAVAILABLE) {
+            // Update the widget rows of just the changed packages, so the widget tray never has
+            // to reload every provider of every profile for a single app.
             for (int i = 0; i < N; i++) {
                 dataModel.widgetsModel.update(app, new PackageUserKey(packages[i], mUser));
             }
@@ -24,6 +24,7 @@ import com.android.launcher3.util.PackageUserKey;
 import com.android.launcher3.util.Preconditions;
 import com.android.launcher3.widget.WidgetItemComparator;
 import com.android.launcher3.widget.WidgetListRowEntry;
+import com.android.launcher3.widget.WidgetsListAdapter.WidgetListRowEntryComparator;
 
 import java.util.ArrayList;
 import java.util.Collections;
@@ -48,26 +49,24 @@ public class WidgetsModel {
     /* Map of widgets and shortcuts that are tracked per package. */
     private final MultiHashMap<PackageItemInfo, WidgetItem> mWidgetsList = new MultiHashMap<>();
 
+    /* One row per package in mWidgetsList, kept sorted by package title. */
+    private final ArrayList<WidgetListRowEntry> mRows = new ArrayList<>();
+
+    // Locale dependent, recreated with each full update
+    private WidgetListRowEntryComparator mRowComparator;
+    private WidgetItemComparator mWidgetComparator;
+    private AlphabeticIndexCompat mIndexer;
+
     private AppFilter mAppFilter;
 
     /**
-     * Returns a list of {@link WidgetListRowEntry}. All {@link WidgetItem} in a single row
-     * are sorted (based on label and user), but the overall list of {@link WidgetListRowEntry}s
-     * is not sorted. This list is sorted at the UI when using
-     * {@link com.android.launcher3.widget.WidgetsDiffReporter}
+     * Returns a list of {@link WidgetListRowEntry}, sorted by package title. All
+     * {@link WidgetItem} in a single row are sorted (based on label and user).
+     *
+     * The rows are maintained as packages are updated, so this only copies the list.
      */
     public synchronized ArrayList<WidgetListRowEntry> getWidgetsList(Context context) {
-        ArrayList<WidgetListRowEntry> result = new ArrayList<>();
-        AlphabeticIndexCompat indexer = new AlphabeticIndexCompat(context);
-
-        WidgetItemComparator widgetComparator = new WidgetItemComparator();
-        for (Map.Entry<PackageItemInfo, ArrayList<WidgetItem>> entry : mWidgetsList.entrySet()) {
-            WidgetListRowEntry row = new WidgetListRowEntry(entry.getKey(), entry.getValue());
-            row.titleSectionName = indexer.computeSectionName(row.pkgItem.title);
-            Collections.sort(row.widgets, widgetComparator);
-            result.add(row);
-        }
-        return result;
+        return new ArrayList<>(mRows);
     }
 
     /**
@@ -201,5 +200,58 @@ public class WidgetsModel {
         for (PackageItemInfo p : tmpPackageItemInfos.values()) {
             iconCache.getTitleAndIconForApp(p, true /* userLowResIcon */);
         }
+
+        // Update the rows, now that the package titles are known
+        if (packageUser == null || mIndexer == null) {
+            // The locale might have changed since the last full update
+            mRowComparator = new WidgetListRowEntryComparator();
+            mWidgetComparator = new WidgetItemComparator();
+            mIndexer = new AlphabeticIndexCompat(app.getContext());
+        }
+        if (packageUser == null) {
+            mRows.clear();
+            for (Map.Entry<PackageItemInfo, ArrayList<WidgetItem>> entry : mWidgetsList.entrySet()) {
+                mRows.add(createRow(entry.getKey(), entry.getValue()));
+            }
+            Collections.sort(mRows, mRowComparator);
+        } else {
+            removeRow(packageUser.mPackageName);
+            PackageItemInfo packageItem = tmpPackageItemInfos.get(packageUser.mPackageName);
+            if (packageItem != null) {
+                ArrayList<WidgetItem> items = mWidgetsList.get(packageItem);
+                if (items == null || items.isEmpty()) {
+                    mWidgetsList.remove(packageItem);
+                } else {
+                    addRow(createRow(packageItem, items));
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates a row with its own copy of {@param items}, so rows which were already passed to
+     * the UI never change and can be diffed against their replacement.
+     */
+    private WidgetListRowEntry createRow(PackageItemInfo packageItem, ArrayList<WidgetItem> items) {
+        ArrayList<WidgetItem> widgets = new ArrayList<>(items);
+        Collections.sort(widgets, mWidgetComparator);
+        WidgetListRowEntry row = new WidgetListRowEntry(packageItem, widgets);
+        row.titleSectionName = mIndexer.computeSectionName(packageItem.title);
+        return row;
+    }
+
+    private void addRow(WidgetListRowEntry row) {
+        int index = Collections.binarySearch(mRows, row, mRowComparator);
+        mRows.add(index < 0 ? -index - 1 : index, row);
+    }
+
+    private void removeRow(String packageName) {
+        Iterator<WidgetListRowEntry> iterator = mRows.iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().pkgItem.packageName.equals(packageName)) {
+                iterator.remove();
+                return;
+            }
+        }
     }
 }
\ No newline at end of file
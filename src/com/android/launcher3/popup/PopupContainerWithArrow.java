@@ -55,10 +55,12 @@ import com.android.launcher3.logging.LoggerUtils;
 import com.android.launcher3.notification.NotificationInfo;
 import com.android.launcher3.notification.NotificationItemView;
 import com.android.launcher3.notification.NotificationKeyData;
+import com.android.launcher3.shortcuts.DeepShortcutCache;
 import com.android.launcher3.shortcuts.DeepShortcutManager;
 import com.android.launcher3.shortcuts.DeepShortcutView;
 import com.android.launcher3.shortcuts.ShortcutDragPreviewProvider;
 import com.android.launcher3.touch.ItemLongClickListener;
+import com.android.launcher3.util.ComponentKey;
 import com.android.launcher3.util.PackageUserKey;
 import com.google.android.apps.nexuslauncher.allapps.ActionView;
 
@@ -275,11 +277,20 @@ public class PopupContainerWithArrow extends ArrowPopup implements DragSource,
         // All views are added. Animate layout from now on.
         setLayoutTransition(new LayoutTransition());
 
-        // Load the shortcuts on a background thread and update the container as it animates.
+        // Show the shortcuts right away if they were loaded before, for example while the icon
+        // was being long pressed.
+        DeepShortcutCache.Entry cachedShortcuts = shortcutIds.isEmpty() ? null
+                : DeepShortcutCache.getInstance(mLauncher).getIfPresent(new ComponentKey(
+                        originalItemInfo.getTargetComponent(), originalItemInfo.user), shortcutIds);
+        if (cachedShortcuts != null) {
+            PopupPopulator.applyShortcuts(cachedShortcuts, this, mShortcuts, notificationKeys);
+        }
+
+        // Load the rest on a background thread and update the container as it animates.
         final Looper workerLooper = LauncherModel.getWorkerLooper();
         new Handler(workerLooper).postAtFrontOfQueue(PopupPopulator.createUpdateRunnable(
                 mLauncher, originalItemInfo, new Handler(Looper.getMainLooper()),
-                this, shortcutIds, mShortcuts, notificationKeys));
+                this, shortcutIds, mShortcuts, notificationKeys, cachedShortcuts != null));
     }
 
     private String getTitleForAccessibility() {
@@ -469,7 +480,7 @@ public class PopupContainerWithArrow extends ArrowPopup implements DragSource,
         }
         ItemInfo originalInfo = (ItemInfo) mOriginalIcon.getTag();
         BadgeInfo badgeInfo = updatedBadges.get(PackageUserKey.fromItemInfo(originalInfo));
-        if (badgeInfo == null || badgeInfo.getNotificationKeys().size() == 0) {
+        if (badgeInfo == null || badgeInfo.getNotificationKeyCount() == 0) {
             // No more notifications, remove the notification views and expand all shortcuts.
             mNotificationItemView.removeAllViews();
             mNotificationItemView = null;
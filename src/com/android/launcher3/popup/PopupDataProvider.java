@@ -21,14 +21,17 @@ import android.content.Context;
 import android.content.pm.LauncherApps;
 import android.service.notification.StatusBarNotification;
 import android.util.Log;
+import android.view.Choreographer;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import com.android.launcher3.ItemInfo;
 import com.android.launcher3.Launcher;
 import com.android.launcher3.Utilities;
 import com.android.launcher3.badge.BadgeInfo;
 import com.android.launcher3.model.WidgetItem;
+import com.android.launcher3.notification.NotificationInfo;
 import com.android.launcher3.notification.NotificationKeyData;
 import com.android.launcher3.notification.NotificationListener;
 import com.android.launcher3.shortcuts.DeepShortcutManager;
@@ -44,9 +47,11 @@ import org.zimmob.zimlx.popup.ZimShortcut;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 
 /**
  * Provides data for the popup menu that appears after long-clicking on apps.
@@ -76,6 +81,15 @@ public class PopupDataProvider implements NotificationListener.NotificationsChan
     private MultiHashMap<ComponentKey, String> mDeepShortcutMap = new MultiHashMap<>();
     /** Maps packages to their BadgeInfo's . */
     private Map<PackageUserKey, BadgeInfo> mPackageUserToBadgeInfos = new HashMap<>();
+    /** Packages whose badge may have changed since icons were last updated. */
+    private final HashSet<PackageUserKey> mPendingBadgeUpdates = new HashSet<>();
+    /** The badge state icons were last updated with, see {@link #getBadgeState(BadgeInfo)}. */
+    private final HashMap<PackageUserKey, BadgeState> mAppliedBadgeStates = new HashMap<>();
+    /** Whether notifications were removed, so an open popup may have to drop some. */
+    private boolean mTrimPending;
+    private boolean mBadgeUpdateScheduled;
+    private final Choreographer.FrameCallback mBadgeUpdateCallback =
+            frameTimeNanos -> applyBadgeUpdates();
     /**
      * Maps packages to their Widgets
      */
@@ -108,12 +122,12 @@ public class PopupDataProvider implements NotificationListener.NotificationsChan
             badgeShouldBeRefreshed = shouldBeFilteredOut
                     ? badgeInfo.removeNotificationKey(notificationKey)
                     : badgeInfo.addOrUpdateNotificationKey(notificationKey);
-            if (badgeInfo.getNotificationKeys().size() == 0) {
+            if (badgeInfo.getNotificationKeyCount() == 0) {
                 mPackageUserToBadgeInfos.remove(postedPackageUserKey);
             }
         }
         if (badgeShouldBeRefreshed) {
-            mLauncher.updateIconBadges(Utilities.singletonHashSet(postedPackageUserKey));
+            scheduleBadgeUpdate(postedPackageUserKey, shouldBeFilteredOut);
         }
     }
 
@@ -122,19 +136,19 @@ public class PopupDataProvider implements NotificationListener.NotificationsChan
                                       NotificationKeyData notificationKey) {
         BadgeInfo oldBadgeInfo = mPackageUserToBadgeInfos.get(removedPackageUserKey);
         if (oldBadgeInfo != null && oldBadgeInfo.removeNotificationKey(notificationKey)) {
-            if (oldBadgeInfo.getNotificationKeys().size() == 0) {
+            if (oldBadgeInfo.getNotificationKeyCount() == 0) {
                 mPackageUserToBadgeInfos.remove(removedPackageUserKey);
             }
-            mLauncher.updateIconBadges(Utilities.singletonHashSet(removedPackageUserKey));
-            trimNotifications(mPackageUserToBadgeInfos);
+            scheduleBadgeUpdate(removedPackageUserKey, true);
         }
     }
 
     @Override
     public void onNotificationFullRefresh(List<StatusBarNotification> activeNotifications) {
         if (activeNotifications == null) return;
-        // This will contain the PackageUserKeys which have updated badges.
-        HashMap<PackageUserKey, BadgeInfo> updatedBadges = new HashMap<>(mPackageUserToBadgeInfos);
+        // Icons showing a badge and the packages with notifications now are checked at the next
+        // frame, the ones whose badge looks the same are left alone.
+        mPendingBadgeUpdates.addAll(mAppliedBadgeStates.keySet());
         mPackageUserToBadgeInfos.clear();
         for (StatusBarNotification notification : activeNotifications) {
             PackageUserKey packageUserKey = PackageUserKey.fromNotification(notification);
@@ -142,28 +156,92 @@ public class PopupDataProvider implements NotificationListener.NotificationsChan
             if (badgeInfo == null) {
                 badgeInfo = new BadgeInfo(packageUserKey);
                 mPackageUserToBadgeInfos.put(packageUserKey, badgeInfo);
+                mPendingBadgeUpdates.add(packageUserKey);
             }
             badgeInfo.addOrUpdateNotificationKey(NotificationKeyData
                     .fromNotification(notification));
         }
+        mTrimPending = true;
+        scheduleBadgeUpdate();
+    }
 
-        // Add and remove from updatedBadges so it contains the PackageUserKeys of updated badges.
-        for (PackageUserKey packageUserKey : mPackageUserToBadgeInfos.keySet()) {
-            BadgeInfo prevBadge = updatedBadges.get(packageUserKey);
-            BadgeInfo newBadge = mPackageUserToBadgeInfos.get(packageUserKey);
-            if (prevBadge == null) {
-                updatedBadges.put(packageUserKey, newBadge);
-            } else {
-                if (!prevBadge.shouldBeInvalidated(newBadge)) {
-                    updatedBadges.remove(packageUserKey);
-                }
-            }
+    private void scheduleBadgeUpdate(PackageUserKey packageUserKey, boolean removed) {
+        mPendingBadgeUpdates.add(packageUserKey);
+        mTrimPending |= removed;
+        scheduleBadgeUpdate();
+    }
+
+    /**
+     * Chatty apps can post many updates within a frame, icons are updated once per frame at most.
+     */
+    private void scheduleBadgeUpdate() {
+        if (!mBadgeUpdateScheduled) {
+            mBadgeUpdateScheduled = true;
+            Choreographer.getInstance().postFrameCallback(mBadgeUpdateCallback);
         }
+    }
 
+    private void applyBadgeUpdates() {
+        mBadgeUpdateScheduled = false;
+        HashSet<PackageUserKey> updatedBadges = new HashSet<>();
+        for (PackageUserKey packageUserKey : mPendingBadgeUpdates) {
+            BadgeInfo badgeInfo = mPackageUserToBadgeInfos.get(packageUserKey);
+            BadgeState state = getBadgeState(badgeInfo);
+            BadgeState prevState = state == null ? mAppliedBadgeStates.remove(packageUserKey)
+                    : mAppliedBadgeStates.put(packageUserKey, state);
+            if (!Objects.equals(prevState, state)) {
+                updatedBadges.add(packageUserKey);
+            }
+        }
+        mPendingBadgeUpdates.clear();
         if (!updatedBadges.isEmpty()) {
-            mLauncher.updateIconBadges(updatedBadges.keySet());
+            mLauncher.updateIconBadges(updatedBadges);
+        }
+        if (mTrimPending) {
+            mTrimPending = false;
+            trimNotifications(mPackageUserToBadgeInfos);
+        }
+    }
+
+    /**
+     * Returns everything about a badge which affects how icons draw it, null if there is no badge.
+     */
+    @Nullable
+    private static BadgeState getBadgeState(BadgeInfo badgeInfo) {
+        if (badgeInfo == null) {
+            return null;
+        }
+        return new BadgeState(badgeInfo.getNotificationKeyCount(),
+                badgeInfo.getNotificationCount(), badgeInfo.getNotificationToShow());
+    }
+
+    private static final class BadgeState {
+
+        private final int mKeyCount;
+        private final int mCount;
+        // Compared by identity, a notification to show is replaced rather than updated
+        private final NotificationInfo mShown;
+
+        BadgeState(int keyCount, int count, @Nullable NotificationInfo shown) {
+            mKeyCount = keyCount;
+            mCount = count;
+            mShown = shown;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof BadgeState)) {
+                return false;
+            }
+            BadgeState other = (BadgeState) o;
+            return mKeyCount == other.mKeyCount && mCount == other.mCount
+                    && mShown == other.mShown;
+        }
+
+        @Override
+        public int hashCode() {
+            return (31 * mKeyCount + mCount) * 31 + System.identityHashCode(mShown);
         }
-        trimNotifications(updatedBadges);
     }
 
     private void trimNotifications(Map<PackageUserKey, BadgeInfo> updatedBadges) {
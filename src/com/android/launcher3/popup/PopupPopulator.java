@@ -24,12 +24,12 @@ import android.service.notification.StatusBarNotification;
 import com.android.launcher3.ItemInfo;
 import com.android.launcher3.Launcher;
 import com.android.launcher3.ShortcutInfo;
-import com.android.launcher3.graphics.LauncherIcons;
 import com.android.launcher3.notification.NotificationInfo;
 import com.android.launcher3.notification.NotificationKeyData;
-import com.android.launcher3.shortcuts.DeepShortcutManager;
+import com.android.launcher3.shortcuts.DeepShortcutCache;
 import com.android.launcher3.shortcuts.DeepShortcutView;
 import com.android.launcher3.shortcuts.ShortcutInfoCompat;
+import com.android.launcher3.util.ComponentKey;
 import com.android.launcher3.util.PackageUserKey;
 
 import java.util.ArrayList;
@@ -123,10 +123,32 @@ public class PopupPopulator {
         return filteredShortcuts;
     }
 
+    /**
+     * Binds the shortcuts of {@param entry} to {@param shortcutViews}, leaving out the one
+     * already shown as a notification. Must be called on the UI thread.
+     */
+    public static void applyShortcuts(DeepShortcutCache.Entry entry,
+                                      PopupContainerWithArrow container,
+                                      List<DeepShortcutView> shortcutViews,
+                                      List<NotificationKeyData> notificationKeys) {
+        String shortcutIdToDeDupe = notificationKeys.isEmpty() ? null
+                : notificationKeys.get(0).shortcutId;
+        // Sorting happens in place, the cached list is shared between popups
+        List<ShortcutInfoCompat> shortcuts = PopupPopulator.sortAndFilterShortcuts(
+                new ArrayList<>(entry.shortcuts), shortcutIdToDeDupe);
+        for (int i = 0; i < shortcuts.size() && i < shortcutViews.size(); i++) {
+            final ShortcutInfoCompat shortcut = shortcuts.get(i);
+            final ShortcutInfo si = entry.newShortcutInfo(shortcut);
+            si.rank = i;
+            shortcutViews.get(i).applyShortcutInfo(si, shortcut, container);
+        }
+    }
+
     public static Runnable createUpdateRunnable(final Launcher launcher, final ItemInfo originalInfo,
                                                 final Handler uiHandler, final PopupContainerWithArrow container,
                                                 final List<String> shortcutIds, final List<DeepShortcutView> shortcutViews,
-                                                final List<NotificationKeyData> notificationKeys) {
+                                                final List<NotificationKeyData> notificationKeys,
+                                                final boolean shortcutsApplied) {
         final ComponentName activity = originalInfo.getTargetComponent();
         final UserHandle user = originalInfo.user;
         return () -> {
@@ -141,22 +163,11 @@ public class PopupPopulator {
                 uiHandler.post(() -> container.applyNotificationInfos(infos));
             }
 
-            List<ShortcutInfoCompat> shortcuts = DeepShortcutManager.getInstance(launcher)
-                    .queryForShortcutsContainer(activity, shortcutIds, user);
-            String shortcutIdToDeDupe = notificationKeys.isEmpty() ? null
-                    : notificationKeys.get(0).shortcutId;
-            shortcuts = PopupPopulator.sortAndFilterShortcuts(shortcuts, shortcutIdToDeDupe);
-            for (int i = 0; i < shortcuts.size() && i < shortcutViews.size(); i++) {
-                final ShortcutInfoCompat shortcut = shortcuts.get(i);
-                final ShortcutInfo si = new ShortcutInfo(shortcut, launcher);
-                // Use unbadged icon for the menu.
-                LauncherIcons li = LauncherIcons.obtain(launcher);
-                li.createShortcutIcon(shortcut, false /* badged */).applyTo(si);
-                li.recycle();
-                si.rank = i;
-
-                final DeepShortcutView view = shortcutViews.get(i);
-                uiHandler.post(() -> view.applyShortcutInfo(si, shortcut, container));
+            if (!shortcutsApplied && !shortcutIds.isEmpty()) {
+                DeepShortcutCache.Entry shortcuts = DeepShortcutCache.getInstance(launcher)
+                        .get(new ComponentKey(activity, user), shortcutIds);
+                uiHandler.post(() -> applyShortcuts(
+                        shortcuts, container, shortcutViews, notificationKeys));
             }
 
             // This ensures that mLauncher.getWidgetsForPackageUser()
@@ -0,0 +1,193 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.launcher3.shortcuts;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.os.Handler;
+import android.os.UserHandle;
+import android.util.LruCache;
+import android.view.ViewConfiguration;
+
+import com.android.launcher3.ItemInfo;
+import com.android.launcher3.LauncherModel;
+import com.android.launcher3.ShortcutInfo;
+import com.android.launcher3.graphics.LauncherIcons;
+import com.android.launcher3.util.ComponentKey;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.UiThread;
+import androidx.annotation.WorkerThread;
+
+/**
+ * Keeps the deep shortcuts shown in the popup of recently long pressed apps, together with their
+ * rendered icons, so the popup doesn't have to wait for the shortcut service every time.
+ *
+ * Entries are dropped whenever the shortcuts or the package of an app change.
+ */
+public class DeepShortcutCache {
+
+    private static final int MAX_ENTRIES = 8;
+
+    private static DeepShortcutCache sInstance;
+    private static final Object sInstanceLock = new Object();
+
+    public static DeepShortcutCache getInstance(Context context) {
+        synchronized (sInstanceLock) {
+            if (sInstance == null) {
+                sInstance = new DeepShortcutCache(context.getApplicationContext());
+            }
+            return sInstance;
+        }
+    }
+
+    private final Context mContext;
+    private final Handler mWorkerHandler;
+    private final LruCache<ComponentKey, Entry> mEntries = new LruCache<>(MAX_ENTRIES);
+
+    // Incremented on every invalidation, so that queries which were already running when the
+    // shortcuts changed don't put their outdated results back.
+    private int mGeneration;
+
+    private Runnable mPendingPrefetch;
+
+    private DeepShortcutCache(Context context) {
+        mContext = context;
+        mWorkerHandler = new Handler(LauncherModel.getWorkerLooper());
+    }
+
+    /**
+     * Returns the cached shortcuts of {@param key} if they were loaded for the same {@param ids}.
+     */
+    @Nullable
+    public Entry getIfPresent(ComponentKey key, List<String> ids) {
+        Entry entry = mEntries.get(key);
+        return entry != null && entry.mIds.equals(ids) ? entry : null;
+    }
+
+    /**
+     * Returns the shortcuts of {@param key}, querying them and rendering their icons if they
+     * aren't cached yet.
+     */
+    @WorkerThread
+    public Entry get(ComponentKey key, List<String> ids) {
+        Entry entry = getIfPresent(key, ids);
+        if (entry != null) {
+            return entry;
+        }
+
+        int generation;
+        synchronized (this) {
+            generation = mGeneration;
+        }
+        entry = new Entry(ids, DeepShortcutManager.getInstance(mContext)
+                .queryForShortcutsContainer(key.componentName, ids, key.user));
+
+        LauncherIcons li = LauncherIcons.obtain(mContext);
+        for (ShortcutInfoCompat shortcut : entry.shortcuts) {
+            ShortcutInfo si = new ShortcutInfo(shortcut, mContext);
+            // Use unbadged icon for the menu.
+            li.createShortcutIcon(shortcut, false /* badged */).applyTo(si);
+            entry.mInfos.put(shortcut.getId(), si);
+        }
+        li.recycle();
+
+        synchronized (this) {
+            if (generation == mGeneration) {
+                mEntries.put(key, entry);
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Starts loading the shortcuts of {@param info} in the background, as its icon was just
+     * touched and might be long pressed. Waits for the tap timeout first, so taps and scrolls
+     * which end up calling {@link #cancelPrefetch()} don't cost a query.
+     */
+    @UiThread
+    public void prefetch(ItemInfo info, List<String> ids) {
+        cancelPrefetch();
+        ComponentName component = info.getTargetComponent();
+        if (component == null || ids.isEmpty()) {
+            return;
+        }
+        ComponentKey key = new ComponentKey(component, info.user);
+        if (getIfPresent(key, ids) != null) {
+            return;
+        }
+        mPendingPrefetch = () -> get(key, ids);
+        mWorkerHandler.postDelayed(mPendingPrefetch, ViewConfiguration.getTapTimeout());
+    }
+
+    @UiThread
+    public void cancelPrefetch() {
+        if (mPendingPrefetch != null) {
+            mWorkerHandler.removeCallbacks(mPendingPrefetch);
+            mPendingPrefetch = null;
+        }
+    }
+
+    /**
+     * Drops the shortcuts of all activities of {@param packageName} for {@param user}.
+     */
+    public synchronized void invalidate(String packageName, UserHandle user) {
+        mGeneration++;
+        for (ComponentKey key : mEntries.snapshot().keySet()) {
+            if (key.componentName.getPackageName().equals(packageName) && key.user.equals(user)) {
+                mEntries.remove(key);
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        mGeneration++;
+        mEntries.evictAll();
+    }
+
+    /**
+     * The shortcuts of one activity, in the order returned by the shortcut service.
+     */
+    public static class Entry {
+
+        public final List<ShortcutInfoCompat> shortcuts;
+
+        private final List<String> mIds;
+        private final Map<String, ShortcutInfo> mInfos = new HashMap<>();
+
+        private Entry(List<String> ids, List<ShortcutInfoCompat> shortcuts) {
+            mIds = new ArrayList<>(ids);
+            this.shortcuts = Collections.unmodifiableList(shortcuts);
+        }
+
+        /**
+         * Returns a new info for {@param shortcut} with its icon already applied.
+         */
+        public ShortcutInfo newShortcutInfo(ShortcutInfoCompat shortcut) {
+            ShortcutInfo template = mInfos.get(shortcut.getId());
+            ShortcutInfo si = new ShortcutInfo(template);
+            si.disabledMessage = template.disabledMessage;
+            return si;
+        }
+    }
+}
@@ -88,8 +88,12 @@ public class DeepShortcutManager {
         return mWasLastCallSuccess;
     }
 
-    public void onShortcutsChanged(List<ShortcutInfoCompat> shortcuts) {
-        // mShortcutCache.removeShortcuts(shortcuts);
+    /**
+     * Called when the shortcuts of {@param packageName} have changed, so that the next popup of
+     * the package queries them again.
+     */
+    public void onShortcutsChanged(String packageName, UserHandle user) {
+        DeepShortcutCache.getInstance(mContext).invalidate(packageName, user);
     }
 
     /**
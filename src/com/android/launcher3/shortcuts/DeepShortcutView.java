@@ -113,7 +113,24 @@ public class DeepShortcutView extends FrameLayout {
         mDetail = detail;
         mBubbleText.applyFromShortcutInfo(info);
         mIconView.setBackground(mBubbleText.getIcon());
+        updateLabel();
 
+        // TODO: Add the click handler to this view directly and not the child view.
+        mBubbleText.setOnClickListener(ItemClickHandler.INSTANCE);
+        mBubbleText.setOnLongClickListener(container);
+        mBubbleText.setOnTouchListener(container);
+    }
+
+    @Override
+    protected void onLayout(boolean changed, int left, int top, int right, int bottom) {
+        super.onLayout(changed, left, top, right, bottom);
+        // Cached shortcuts are applied before the first layout, when the label width is unknown
+        if (changed && mDetail != null) {
+            updateLabel();
+        }
+    }
+
+    private void updateLabel() {
         // Use the long label as long as it exists and fits.
         CharSequence longLabel = mDetail.getLongLabel();
         int availableWidth = mBubbleText.getWidth() - mBubbleText.getTotalPaddingLeft()
@@ -121,11 +138,6 @@ public class DeepShortcutView extends FrameLayout {
         boolean usingLongLabel = !TextUtils.isEmpty(longLabel)
                 && mBubbleText.getPaint().measureText(longLabel.toString()) <= availableWidth;
         mBubbleText.setText(usingLongLabel ? longLabel : mDetail.getShortLabel());
-
-        // TODO: Add the click handler to this view directly and not the child view.
-        mBubbleText.setOnClickListener(ItemClickHandler.INSTANCE);
-        mBubbleText.setOnLongClickListener(container);
-        mBubbleText.setOnTouchListener(container);
     }
 
     /**
@@ -17,7 +17,6 @@
 package com.android.launcher3.shortcuts;
 
 import android.graphics.Bitmap;
-import android.graphics.Canvas;
 import android.graphics.Point;
 import android.graphics.Rect;
 import android.graphics.drawable.Drawable;
@@ -44,17 +43,12 @@ public class ShortcutDragPreviewProvider extends DragPreviewProvider {
         Rect bounds = getDrawableBounds(d);
 
         int size = Launcher.getLauncher(mView.getContext()).getDeviceProfile().iconSizePx;
-        final Bitmap b = Bitmap.createBitmap(
-                size + blurSizeOutline,
-                size + blurSizeOutline,
-                Bitmap.Config.ARGB_8888);
-
-        Canvas canvas = new Canvas(b);
-        canvas.translate(blurSizeOutline / 2, blurSizeOutline / 2);
-        canvas.scale(((float) size) / bounds.width(), ((float) size) / bounds.height(), 0, 0);
-        canvas.translate(bounds.left, bounds.top);
-        d.draw(canvas);
-        return b;
+        return createPooledBitmap(size + blurSizeOutline, size + blurSizeOutline, (canvas) -> {
+            canvas.translate(blurSizeOutline / 2, blurSizeOutline / 2);
+            canvas.scale(((float) size) / bounds.width(), ((float) size) / bounds.height(), 0, 0);
+            canvas.translate(bounds.left, bounds.top);
+            d.draw(canvas);
+        });
     }
 
     @Override
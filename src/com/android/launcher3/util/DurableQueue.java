@@ -0,0 +1,311 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.launcher3.util;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A queue of single line strings persisted in an append-only file.
+ * <p>
+ * Every change is a single appended record, so adding an entry costs the same no matter how many
+ * entries are queued. Entries are handed out by {@link #poll()} and only dropped from the file
+ * once {@link #markConsumed(long)} confirms they were processed, so a crash in between replays
+ * them rather than losing them. A record torn by a crash mid write is cut off when the file is
+ * loaded again, and the file is rewritten once it's mostly made of stale records.
+ */
+public class DurableQueue {
+
+    private static final String TAG = "DurableQueue";
+
+    private static final char RECORD_ADD = '+';
+    private static final char RECORD_REMOVE = '-';
+    private static final char RECORD_CONSUMED = '~';
+    private static final char SEPARATOR = ' ';
+
+    private static final int COMPACT_MIN_RECORDS = 64;
+
+    private final File mFile;
+    private final LinkedHashMap<Long, String> mEntries = new LinkedHashMap<>();
+    /** Entries returned by {@link #poll()} which weren't marked as consumed yet. */
+    private final LinkedHashMap<Long, String> mInFlight = new LinkedHashMap<>();
+
+    private FileOutputStream mOut;
+    private boolean mLoaded;
+    private boolean mSyncPending;
+    private long mNextId = 1;
+    private int mRecordCount;
+
+    public DurableQueue(File file) {
+        mFile = file;
+    }
+
+    /**
+     * Appends the value, which may not contain line breaks, and returns its id. The record
+     * survives the process dying right away, use {@link #sync()} to also get it to the disk.
+     */
+    public synchronized long add(String value) {
+        if (value.indexOf('\n') >= 0) {
+            throw new IllegalArgumentException("Values can't span multiple lines");
+        }
+        load();
+        long id = mNextId++;
+        mEntries.put(id, value);
+        append(RECORD_ADD + Long.toString(id) + SEPARATOR + value + '\n', 1, false);
+        return id;
+    }
+
+    /**
+     * Adds all the values with a single write, used to import entries from elsewhere.
+     */
+    public synchronized void addAll(Collection<String> values) {
+        load();
+        StringBuilder records = new StringBuilder();
+        int count = 0;
+        for (String value : values) {
+            if (value.indexOf('\n') >= 0) {
+                Log.w(TAG, "Skipping value with line breaks");
+                continue;
+            }
+            long id = mNextId++;
+            mEntries.put(id, value);
+            appendAddRecord(records, id, value);
+            count++;
+        }
+        if (count > 0) {
+            append(records.toString(), count, true);
+        }
+    }
+
+    /**
+     * Returns the entries which haven't been polled yet, in the order they were added.
+     */
+    public synchronized List<Map.Entry<Long, String>> getEntries() {
+        load();
+        return new ArrayList<>(mEntries.entrySet());
+    }
+
+    public synchronized boolean isEmpty() {
+        load();
+        return mEntries.isEmpty();
+    }
+
+    public synchronized void remove(Collection<Long> ids) {
+        load();
+        StringBuilder records = new StringBuilder();
+        int count = 0;
+        for (Long id : ids) {
+            if (mEntries.remove(id) != null) {
+                records.append(RECORD_REMOVE).append(id).append('\n');
+                count++;
+            }
+        }
+        if (count == 0) {
+            return;
+        }
+        append(records.toString(), count, true);
+        compactIfNeeded();
+    }
+
+    /**
+     * Takes all queued entries. They stay in the file until {@link #markConsumed(long)} is called
+     * with the id of the last one, so they are returned again after a crash.
+     */
+    public synchronized List<Map.Entry<Long, String>> poll() {
+        load();
+        List<Map.Entry<Long, String>> entries = new ArrayList<>(mEntries.entrySet());
+        mInFlight.putAll(mEntries);
+        mEntries.clear();
+        return entries;
+    }
+
+    /**
+     * Drops all polled entries up to and including the given id from the file.
+     */
+    public synchronized void markConsumed(long lastId) {
+        load();
+        Iterator<Long> it = mInFlight.keySet().iterator();
+        while (it.hasNext()) {
+            if (it.next() <= lastId) {
+                it.remove();
+            }
+        }
+        if (mEntries.isEmpty() && mInFlight.isEmpty()) {
+            // Nothing left worth keeping, start over with an empty file
+            rewrite();
+        } else {
+            append(RECORD_CONSUMED + Long.toString(lastId) + '\n', 1, true);
+            compactIfNeeded();
+        }
+    }
+
+    /**
+     * Forces the records appended so far to the disk.
+     */
+    public synchronized void sync() {
+        if (!mSyncPending || mOut == null) {
+            return;
+        }
+        try {
+            mOut.getFD().sync();
+            mSyncPending = false;
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to sync " + mFile.getName(), e);
+        }
+    }
+
+    private void load() {
+        if (mLoaded) {
+            return;
+        }
+        mLoaded = true;
+        if (!mFile.exists()) {
+            return;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(mFile, "rw")) {
+            byte[] data = new byte[(int) raf.length()];
+            raf.readFully(data);
+            int validLength = 0;
+            int start = 0;
+            for (int i = 0; i < data.length; i++) {
+                if (data[i] != '\n') {
+                    continue;
+                }
+                parseRecord(new String(data, start, i - start, StandardCharsets.UTF_8));
+                start = i + 1;
+                validLength = start;
+            }
+            if (validLength < data.length) {
+                // The last record was torn by a crash, cut it off so new records start on a
+                // fresh line
+                Log.w(TAG, "Dropping incomplete record in " + mFile.getName());
+                raf.setLength(validLength);
+                raf.getFD().sync();
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to read " + mFile.getName(), e);
+        }
+    }
+
+    private void parseRecord(String record) {
+        mRecordCount++;
+        try {
+            char type = record.charAt(0);
+            if (type == RECORD_ADD) {
+                int separator = record.indexOf(SEPARATOR);
+                long id = Long.parseLong(record.substring(1, separator));
+                mEntries.put(id, record.substring(separator + 1));
+                mNextId = Math.max(mNextId, id + 1);
+            } else if (type == RECORD_REMOVE) {
+                mEntries.remove(Long.parseLong(record.substring(1)));
+            } else if (type == RECORD_CONSUMED) {
+                long lastId = Long.parseLong(record.substring(1));
+                Iterator<Long> it = mEntries.keySet().iterator();
+                while (it.hasNext()) {
+                    if (it.next() <= lastId) {
+                        it.remove();
+                    }
+                }
+                mNextId = Math.max(mNextId, lastId + 1);
+            } else {
+                Log.w(TAG, "Skipping unknown record in " + mFile.getName());
+            }
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Skipping bad record in " + mFile.getName(), e);
+        }
+    }
+
+    private static void appendAddRecord(StringBuilder records, long id, String value) {
+        records.append(RECORD_ADD).append(id).append(SEPARATOR).append(value).append('\n');
+    }
+
+    private void append(String records, int count, boolean sync) {
+        mRecordCount += count;
+        try {
+            if (mOut == null) {
+                mFile.getParentFile().mkdirs();
+                mOut = new FileOutputStream(mFile, true);
+            }
+            mOut.write(records.getBytes(StandardCharsets.UTF_8));
+            mSyncPending = true;
+            if (sync) {
+                sync();
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to write " + mFile.getName(), e);
+        }
+    }
+
+    private void compactIfNeeded() {
+        if (mRecordCount > COMPACT_MIN_RECORDS + 2 * (mEntries.size() + mInFlight.size())) {
+            rewrite();
+        }
+    }
+
+    /**
+     * Replaces the file with one holding only the entries which are still needed.
+     */
+    private void rewrite() {
+        closeOutput();
+        File tmp = new File(mFile.getPath() + ".tmp");
+        StringBuilder records = new StringBuilder();
+        for (Map.Entry<Long, String> entry : mInFlight.entrySet()) {
+            appendAddRecord(records, entry.getKey(), entry.getValue());
+        }
+        for (Map.Entry<Long, String> entry : mEntries.entrySet()) {
+            appendAddRecord(records, entry.getKey(), entry.getValue());
+        }
+        try (FileOutputStream out = new FileOutputStream(tmp)) {
+            out.write(records.toString().getBytes(StandardCharsets.UTF_8));
+            out.getFD().sync();
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to compact " + mFile.getName(), e);
+            tmp.delete();
+            return;
+        }
+        if (tmp.renameTo(mFile)) {
+            mRecordCount = mInFlight.size() + mEntries.size();
+        } else {
+            Log.e(TAG, "Failed to replace " + mFile.getName());
+            tmp.delete();
+        }
+    }
+
+    private void closeOutput() {
+        if (mOut == null) {
+            return;
+        }
+        sync();
+        try {
+            mOut.close();
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to close " + mFile.getName(), e);
+        }
+        mOut = null;
+    }
+}
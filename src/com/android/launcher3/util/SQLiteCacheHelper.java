@@ -7,6 +7,7 @@ import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteException;
 import android.database.sqlite.SQLiteFullException;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteQueryBuilder;
 import android.util.Log;
 
 import com.android.launcher3.Utilities;
@@ -15,6 +16,7 @@ import com.android.launcher3.config.FeatureFlags;
 /**
  * An extension of {@link SQLiteOpenHelper} with utility methods for a single table cache DB.
  * Any exception during write operations are ignored, and any version change causes a DB reset.
+ * The DB uses a write-ahead log, so reads don't wait for the cache updates.
  */
 public abstract class SQLiteCacheHelper {
     private static final String TAG = "SQLiteCacheHelper";
@@ -24,6 +26,7 @@ public abstract class SQLiteCacheHelper {
 
     private final String mTableName;
     private final MySQLiteOpenHelper mOpenHelper;
+    private final WalCheckpointer mCheckpointer;
 
     private boolean mIgnoreWrites;
 
@@ -33,6 +36,8 @@ public abstract class SQLiteCacheHelper {
         }
         mTableName = tableName;
         mOpenHelper = new MySQLiteOpenHelper(context, name, version);
+        mOpenHelper.setWriteAheadLoggingEnabled(true);
+        mCheckpointer = new WalCheckpointer(mOpenHelper);
 
         mIgnoreWrites = false;
     }
@@ -46,6 +51,7 @@ public abstract class SQLiteCacheHelper {
         }
         try {
             mOpenHelper.getWritableDatabase().delete(mTableName, whereClause, whereArgs);
+            mCheckpointer.onWrite();
         } catch (SQLiteFullException e) {
             onDiskFull(e);
         } catch (SQLiteException e) {
@@ -63,6 +69,7 @@ public abstract class SQLiteCacheHelper {
         try {
             mOpenHelper.getWritableDatabase().insertWithOnConflict(
                     mTableName, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+            mCheckpointer.onWrite();
         } catch (SQLiteFullException e) {
             onDiskFull(e);
         } catch (SQLiteException e) {
@@ -83,6 +90,23 @@ public abstract class SQLiteCacheHelper {
                 mTableName, columns, selection, selectionArgs, null, null, null);
     }
 
+    /**
+     * Returns the SQL for a query which runs often with different arguments, to be used with
+     * {@link #rawQuery(String, String[])}. Building it once skips the query builder on every
+     * call, and the same string keeps hitting the prepared statement cache of the connection.
+     */
+    public String buildQuery(String[] columns, String selection) {
+        return SQLiteQueryBuilder.buildQueryString(
+                false, mTableName, columns, selection, null, null, null, null);
+    }
+
+    /**
+     * @see SQLiteDatabase#rawQuery(String, String[])
+     */
+    public Cursor rawQuery(String sql, String[] selectionArgs) {
+        return mOpenHelper.getReadableDatabase().rawQuery(sql, selectionArgs);
+    }
+
     public void clear() {
         mOpenHelper.clearDB(mOpenHelper.getWritableDatabase());
     }
@@ -103,6 +127,12 @@ public abstract class SQLiteCacheHelper {
             onCreateTable(db);
         }
 
+        @Override
+        public void onOpen(SQLiteDatabase db) {
+            super.onOpen(db);
+            WalCheckpointer.configure(db);
+        }
+
         @Override
         public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
             if (oldVersion != newVersion) {
@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.launcher3.util;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.android.launcher3.LauncherModel;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Checkpoints a database in write-ahead log mode once writes to it have settled.
+ * <p>
+ * SQLite normally copies the log back into the database as soon as it grows past a small size,
+ * which happens in the middle of bursts like the icon cache update. Instead the automatic
+ * checkpoint is only kept as an upper bound, and a passive checkpoint runs on the worker thread
+ * after no writes happened for a while. Passive checkpoints never block readers or writers.
+ * <p>
+ * Passive checkpoints don't need the write lock either, so anything copying the database file has
+ * to {@link #pause()} them.
+ */
+public class WalCheckpointer implements Runnable {
+
+    private static final String TAG = "WalCheckpointer";
+
+    // Upper bound for the log size between our own checkpoints, about 4MB with the default page size
+    private static final int AUTO_CHECKPOINT_PAGES = 1000;
+    private static final long IDLE_DELAY_MS = 2000;
+
+    private final SQLiteOpenHelper mHelper;
+    private final Handler mHandler;
+    private final AtomicBoolean mScheduled = new AtomicBoolean();
+    private final ReentrantLock mPauseLock = new ReentrantLock();
+
+    private volatile long mLastWriteTime;
+
+    public WalCheckpointer(SQLiteOpenHelper helper) {
+        mHelper = helper;
+        mHandler = new Handler(LauncherModel.getWorkerLooper());
+    }
+
+    /**
+     * Raises the automatic checkpoint threshold, called when the database is opened. Only the
+     * primary connection writes, so it's the only one which needs it.
+     */
+    public static void configure(SQLiteDatabase db) {
+        if (!db.isWriteAheadLoggingEnabled()) {
+            return;
+        }
+        try (Cursor c = db.rawQuery("PRAGMA wal_autocheckpoint=" + AUTO_CHECKPOINT_PAGES, null)) {
+            c.moveToFirst();
+        } catch (SQLiteException e) {
+            Log.d(TAG, "Failed to set checkpoint threshold", e);
+        }
+    }
+
+    /**
+     * Called after every write, pushes the checkpoint back until writes stop.
+     */
+    public void onWrite() {
+        mLastWriteTime = SystemClock.uptimeMillis();
+        if (mScheduled.compareAndSet(false, true)) {
+            mHandler.postDelayed(this, IDLE_DELAY_MS);
+        }
+    }
+
+    /**
+     * Keeps checkpoints from running until {@link #resume()} is called, waiting for a running one
+     * to finish.
+     */
+    public void pause() {
+        mPauseLock.lock();
+    }
+
+    public void resume() {
+        mPauseLock.unlock();
+    }
+
+    @Override
+    public void run() {
+        long wait = mLastWriteTime + IDLE_DELAY_MS - SystemClock.uptimeMillis();
+        if (wait > 0) {
+            mHandler.postDelayed(this, wait);
+            return;
+        }
+        if (!mPauseLock.tryLock()) {
+            // Try again once whoever paused us is done
+            mHandler.postDelayed(this, IDLE_DELAY_MS);
+            return;
+        }
+        mScheduled.set(false);
+        try {
+            SQLiteDatabase db = mHelper.getWritableDatabase();
+            if (!db.isWriteAheadLoggingEnabled()) {
+                return;
+            }
+            try (Cursor c = db.rawQuery("PRAGMA wal_checkpoint(PASSIVE)", null)) {
+                // Columns are busy, log pages and checkpointed pages
+                if (c.moveToFirst() && c.getInt(1) != c.getInt(2)) {
+                    Log.d(TAG, "Partial checkpoint of " + mHelper.getDatabaseName() + ", "
+                            + c.getInt(2) + " of " + c.getInt(1) + " pages");
+                }
+            }
+        } catch (SQLiteException e) {
+            Log.d(TAG, "Failed to checkpoint " + mHelper.getDatabaseName(), e);
+        } finally {
+            mPauseLock.unlock();
+        }
+    }
+}
@@ -28,6 +28,8 @@ import com.google.android.libraries.gsa.launcherclient.LauncherClientService;
 import com.google.android.libraries.gsa.launcherclient.StaticInteger;
 
 import org.zimmob.zimlx.settings.ui.SettingsActivity;
+import org.zimmob.zimlx.smartspace.SmartspaceScheduler;
+import org.zimmob.zimlx.util.ZimHttpClient;
 
 import java.io.FileDescriptor;
 import java.io.PrintWriter;
@@ -87,6 +89,8 @@ public class NexusLauncher {
 
         public void dump(final String s, final FileDescriptor fileDescriptor, final PrintWriter printWriter, final String[] array) {
             SmartspaceController.get(mLauncher).cX(s, printWriter);
+            SmartspaceScheduler.dumpIfCreated(s, printWriter);
+            ZimHttpClient.dumpIfCreated(s, printWriter);
         }
 
         public void finishBindingItems(final boolean b) {
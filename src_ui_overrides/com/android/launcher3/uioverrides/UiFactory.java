@@ -62,6 +62,9 @@ public class UiFactory {
     public static void onTrimMemory(Launcher launcher, int level) {
     }
 
+    public static void dumpStats(Context context, String prefix, PrintWriter writer) {
+    }
+
     public static void useFadeOutAnimationForLauncherStart(Launcher launcher,
                                                            CancellationSignal cancellationSignal) {
     }
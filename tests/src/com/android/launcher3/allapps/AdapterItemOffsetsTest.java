@@ -0,0 +1,181 @@
+package com.android.launcher3.allapps;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.android.launcher3.allapps.AlphabeticalAppsList.AdapterItem;
+import com.android.launcher3.allapps.AlphabeticalAppsList.ItemHeightProvider;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import androidx.test.filters.LargeTest;
+import androidx.test.filters.SmallTest;
+
+/**
+ * Tests for {@link AlphabeticalAppsList#computeItemOffsets}
+ */
+@SmallTest
+public class AdapterItemOffsetsTest extends TestCase {
+
+    private static final String TAG = "AdapterItemOffsetsTest";
+
+    private static final ItemHeightProvider HEIGHTS = (position, item) -> {
+        switch (item.viewType) {
+            case AllAppsGridAdapter.VIEW_TYPE_ICON:
+            case AllAppsGridAdapter.VIEW_TYPE_FOLDER:
+                return 100;
+            case AllAppsGridAdapter.VIEW_TYPE_SEARCH_SUGGESTION:
+                return 40;
+            case AllAppsGridAdapter.VIEW_TYPE_ALL_APPS_DIVIDER:
+                return 10;
+            case AllAppsGridAdapter.VIEW_TYPE_SEARCH_MARKET:
+                return 50;
+            default:
+                return 70;
+        }
+    };
+
+    public void testIconsInARowShareTheirOffset() {
+        List<AdapterItem> items = createItems(0, 0, 6, false, 4);
+        int[] offsets = AlphabeticalAppsList.computeItemOffsets(items, HEIGHTS, null);
+
+        assertEquals(0, offsets[0]);
+        assertEquals(0, offsets[3]);
+        assertEquals(100, offsets[4]);
+        assertEquals(100, offsets[5]);
+        assertEquals(200, offsets[6]);
+    }
+
+    public void testOffsetsMatchLinearScan() {
+        int[][] configs = {
+                // suggestions, folders, apps, search, columns
+                {0, 0, 0, 0, 4},
+                {0, 0, 1, 0, 4},
+                {0, 4, 23, 0, 4},
+                {3, 0, 7, 1, 5},
+                {0, 10, 103, 0, 5},
+                {2, 0, 0, 1, 5},
+        };
+        for (int[] config : configs) {
+            List<AdapterItem> items = createItems(
+                    config[0], config[1], config[2], config[3] != 0, config[4]);
+            int[] offsets = AlphabeticalAppsList.computeItemOffsets(items, HEIGHTS, null);
+            for (int position = 0; position <= items.size(); position++) {
+                assertEquals("position " + position + " of " + items.size(),
+                        linearScrollY(items, position), offsets[position]);
+            }
+        }
+    }
+
+    public void testReusesArrayOfSameSize() {
+        List<AdapterItem> items = createItems(0, 0, 9, false, 4);
+        int[] offsets = AlphabeticalAppsList.computeItemOffsets(items, HEIGHTS, null);
+        assertSame(offsets, AlphabeticalAppsList.computeItemOffsets(items, HEIGHTS, offsets));
+        assertNotSame(offsets, AlphabeticalAppsList.computeItemOffsets(
+                createItems(0, 0, 10, false, 4), HEIGHTS, offsets));
+    }
+
+    /**
+     * Compares looking up the scroll position of every row of a large drawer, as done while
+     * scrolling through it.
+     */
+    @LargeTest
+    public void testLookupLatency() {
+        List<AdapterItem> items = createItems(0, 40, 5000, false, 5);
+
+        long start = SystemClock.elapsedRealtimeNanos();
+        int[] offsets = AlphabeticalAppsList.computeItemOffsets(items, HEIGHTS, null);
+        long buildTime = SystemClock.elapsedRealtimeNanos() - start;
+
+        long tableTime = 0;
+        long linearTime = 0;
+        for (int position = 0; position < items.size(); position += 5) {
+            start = SystemClock.elapsedRealtimeNanos();
+            int y = offsets[position];
+            tableTime += SystemClock.elapsedRealtimeNanos() - start;
+
+            start = SystemClock.elapsedRealtimeNanos();
+            assertEquals(linearScrollY(items, position), y);
+            linearTime += SystemClock.elapsedRealtimeNanos() - start;
+        }
+
+        Log.d(TAG, String.format("%d items: table built in %.2fms, "
+                        + "lookups took %.2fms with the table and %.2fms scanning",
+                items.size(), buildTime / 1e6, tableTime / 1e6, linearTime / 1e6));
+    }
+
+    /**
+     * Creates adapter items the way {@link AlphabeticalAppsList} lays them out. Folders are
+     * expected to fill whole rows, as icons of different types never share a row in the scan.
+     */
+    private static List<AdapterItem> createItems(int suggestions, int folders, int apps,
+                                                 boolean search, int columns) {
+        List<AdapterItem> items = new ArrayList<>();
+        for (int i = 0; i < suggestions; i++) {
+            items.add(createItem(items.size(), AllAppsGridAdapter.VIEW_TYPE_SEARCH_SUGGESTION));
+        }
+        for (int i = 0; i < folders; i++) {
+            items.add(createItem(items.size(), AllAppsGridAdapter.VIEW_TYPE_FOLDER));
+        }
+        for (int i = 0; i < apps; i++) {
+            items.add(AdapterItem.asApp(items.size(), "A", null, i));
+        }
+        if (search) {
+            items.add(AdapterItem.asAllAppsDivider(items.size()));
+            items.add(AdapterItem.asMarketSearch(items.size()));
+        }
+
+        int numAppsInSection = 0;
+        int numAppsInRow = 0;
+        int rowIndex = -1;
+        for (AdapterItem item : items) {
+            item.rowIndex = 0;
+            if (AllAppsGridAdapter.isDividerViewType(item.viewType)) {
+                numAppsInSection = 0;
+            } else if (AllAppsGridAdapter.isIconViewType(item.viewType)) {
+                if (numAppsInSection % columns == 0) {
+                    numAppsInRow = 0;
+                    rowIndex++;
+                }
+                item.rowIndex = rowIndex;
+                item.rowAppIndex = numAppsInRow;
+                numAppsInSection++;
+                numAppsInRow++;
+            }
+        }
+        return items;
+    }
+
+    private static AdapterItem createItem(int position, int viewType) {
+        AdapterItem item = new AdapterItem();
+        item.position = position;
+        item.viewType = viewType;
+        return item;
+    }
+
+    /**
+     * The scroll position as AllAppsRecyclerView used to compute it for every lookup.
+     */
+    private static int linearScrollY(List<AdapterItem> items, int position) {
+        AdapterItem posItem = position < items.size() ? items.get(position) : null;
+        int y = 0;
+        for (int i = 0; i < position; i++) {
+            AdapterItem item = items.get(i);
+            if (AllAppsGridAdapter.isIconViewType(item.viewType)) {
+                if (posItem != null && posItem.viewType == item.viewType &&
+                        posItem.rowIndex == item.rowIndex) {
+                    break;
+                }
+                if (item.rowAppIndex == 0) {
+                    y += HEIGHTS.getItemHeight(i, item);
+                }
+            } else {
+                y += HEIGHTS.getItemHeight(i, item);
+            }
+        }
+        return y;
+    }
+}
@@ -0,0 +1,83 @@
+package com.android.launcher3.graphics;
+
+import android.graphics.Bitmap;
+import android.os.Handler;
+
+import com.android.launcher3.graphics.DragBitmapPool.OutlineKey;
+import com.android.launcher3.util.UiThreadHelper;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import androidx.test.filters.SmallTest;
+
+/**
+ * Tests for {@link DragBitmapPool}
+ */
+@SmallTest
+public class DragBitmapPoolTest extends TestCase {
+
+    private DragBitmapPool mPool;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mPool = DragBitmapPool.getInstance();
+        mPool.clear();
+    }
+
+    public void testObtainReturnsClearedBitmapOfRequestedSize() {
+        Bitmap bitmap = mPool.obtain(30, 50);
+        assertEquals(30, bitmap.getWidth());
+        assertEquals(50, bitmap.getHeight());
+        assertTrue(bitmap.isMutable());
+        assertEquals(0, bitmap.getPixel(15, 25));
+    }
+
+    public void testReleasedBitmapIsReusedForSizeInSameBucket() throws Exception {
+        Bitmap bitmap = mPool.obtain(100, 100);
+        bitmap.eraseColor(0xFFFF0000);
+        mPool.releaseAfterOutline(bitmap);
+        waitForBackgroundLooper();
+
+        // 96x104x4 bytes rounds up to the same power of two as 100x100x4
+        Bitmap reused = mPool.obtain(96, 104);
+        assertSame(bitmap, reused);
+        assertEquals(96, reused.getWidth());
+        assertEquals(104, reused.getHeight());
+        assertEquals(0, reused.getPixel(50, 50));
+    }
+
+    public void testForeignBitmapIsNotPooled() throws Exception {
+        Bitmap bitmap = Bitmap.createBitmap(100, 100, Bitmap.Config.ARGB_8888);
+        mPool.releaseAfterOutline(bitmap);
+        waitForBackgroundLooper();
+
+        assertNotSame(bitmap, mPool.obtain(100, 100));
+    }
+
+    public void testOutlineKeyComparesIconByIdentity() {
+        Bitmap icon = Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888);
+        Bitmap sameLookingIcon = Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888);
+        OutlineKey key = new OutlineKey(DragPreviewProvider.class, 1, icon, 1f, 20, 20);
+
+        assertEquals(key, new OutlineKey(DragPreviewProvider.class, 1, icon, 1f, 20, 20));
+        assertFalse(key.equals(
+                new OutlineKey(DragPreviewProvider.class, 1, sameLookingIcon, 1f, 20, 20)));
+        assertFalse(key.equals(new OutlineKey(DragPreviewProvider.class, 1, icon, 1.1f, 20, 20)));
+        assertFalse(key.equals(new OutlineKey(DragPreviewProvider.class, 2, icon, 1f, 20, 20)));
+
+        Bitmap outline = Bitmap.createBitmap(20, 20, Bitmap.Config.ALPHA_8);
+        mPool.putOutline(key, outline);
+        assertSame(outline, mPool.getOutline(
+                new OutlineKey(DragPreviewProvider.class, 1, icon, 1f, 20, 20)));
+    }
+
+    private static void waitForBackgroundLooper() throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(1);
+        new Handler(UiThreadHelper.getBackgroundLooper()).post(latch::countDown);
+        assertTrue(latch.await(1, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,120 @@
+package com.android.launcher3.util;
+
+import androidx.test.filters.SmallTest;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Unit tests for {@link DurableQueue}
+ */
+@SmallTest
+public class DurableQueueTest extends TestCase {
+
+    private File mFile;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mFile = File.createTempFile("queue", "");
+        mFile.delete();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mFile.delete();
+        super.tearDown();
+    }
+
+    public void testEntriesSurviveReload() {
+        DurableQueue queue = new DurableQueue(mFile);
+        queue.add("a");
+        long b = queue.add("b");
+        queue.add("c");
+        queue.remove(Collections.singletonList(b));
+
+        assertEquals(Arrays.asList("a", "c"), values(new DurableQueue(mFile).getEntries()));
+    }
+
+    public void testPolledEntriesReplayUntilConsumed() {
+        DurableQueue queue = new DurableQueue(mFile);
+        queue.add("a");
+        queue.add("b");
+        List<Map.Entry<Long, String>> polled = queue.poll();
+        assertEquals(Arrays.asList("a", "b"), values(polled));
+        assertTrue(queue.isEmpty());
+        queue.add("c");
+
+        // Crash before the polled entries were processed
+        assertEquals(Arrays.asList("a", "b", "c"), values(new DurableQueue(mFile).getEntries()));
+
+        queue.markConsumed(polled.get(polled.size() - 1).getKey());
+        assertEquals(Collections.singletonList("c"), values(new DurableQueue(mFile).getEntries()));
+    }
+
+    public void testIdsStayUniqueAfterReload() {
+        DurableQueue queue = new DurableQueue(mFile);
+        queue.add("a");
+        long last = queue.add("b");
+        queue.poll();
+
+        DurableQueue reloaded = new DurableQueue(mFile);
+        assertTrue(reloaded.add("c") > last);
+    }
+
+    public void testTornRecordIsDropped() throws IOException {
+        DurableQueue queue = new DurableQueue(mFile);
+        queue.add("a");
+        queue.sync();
+        try (FileOutputStream out = new FileOutputStream(mFile, true)) {
+            out.write("+2 tor".getBytes(StandardCharsets.UTF_8));
+        }
+
+        DurableQueue reloaded = new DurableQueue(mFile);
+        reloaded.add("b");
+        assertEquals(Arrays.asList("a", "b"), values(new DurableQueue(mFile).getEntries()));
+    }
+
+    public void testCompactionKeepsLiveEntries() {
+        DurableQueue queue = new DurableQueue(mFile);
+        List<Long> removed = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            long id = queue.add("value" + i);
+            if (i % 10 != 0) {
+                removed.add(id);
+            }
+        }
+        long sizeBefore = mFile.length();
+        queue.remove(removed);
+
+        assertTrue(mFile.length() < sizeBefore);
+        assertEquals(20, new DurableQueue(mFile).getEntries().size());
+    }
+
+    public void testConsumingEverythingEmptiesFile() {
+        DurableQueue queue = new DurableQueue(mFile);
+        queue.addAll(Arrays.asList("a", "b"));
+        List<Map.Entry<Long, String>> polled = queue.poll();
+        queue.markConsumed(polled.get(polled.size() - 1).getKey());
+
+        assertEquals(0, mFile.length());
+        assertTrue(new DurableQueue(mFile).isEmpty());
+    }
+
+    private static List<String> values(List<Map.Entry<Long, String>> entries) {
+        List<String> values = new ArrayList<>();
+        for (Map.Entry<Long, String> entry : entries) {
+            values.add(entry.getValue());
+        }
+        return values;
+    }
+}
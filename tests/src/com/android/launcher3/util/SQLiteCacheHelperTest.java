@@ -0,0 +1,217 @@
+package com.android.launcher3.util;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.android.launcher3.LauncherModel;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import androidx.test.InstrumentationRegistry;
+import androidx.test.filters.LargeTest;
+import androidx.test.filters.SmallTest;
+import androidx.test.runner.AndroidJUnit4;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Tests for {@link SQLiteCacheHelper}
+ */
+@RunWith(AndroidJUnit4.class)
+public class SQLiteCacheHelperTest {
+
+    private static final String TAG = "SQLiteCacheHelperTest";
+
+    private static final String DB_FILE = "test_cache.db";
+    private static final String JOURNAL_DB_FILE = "test_cache_journal.db";
+    private static final String TABLE_NAME = "entries";
+    private static final String COLUMN_KEY = "key";
+    private static final String COLUMN_DATA = "data";
+
+    private static final int ROWS = 500;
+    // About the size of a flattened icon
+    private static final int DATA_SIZE = 8 * 1024;
+
+    private Context mContext;
+    private TestCacheHelper mHelper;
+
+    @Before
+    public void setup() {
+        mContext = InstrumentationRegistry.getTargetContext();
+        mContext.deleteDatabase(DB_FILE);
+        mContext.deleteDatabase(JOURNAL_DB_FILE);
+        mHelper = new TestCacheHelper(mContext);
+    }
+
+    @After
+    public void tearDown() {
+        mContext.deleteDatabase(DB_FILE);
+        mContext.deleteDatabase(JOURNAL_DB_FILE);
+    }
+
+    @Test
+    @SmallTest
+    public void testPreparedQueryReturnsRows() {
+        mHelper.insertOrReplace(newValues(1));
+        mHelper.insertOrReplace(newValues(2));
+
+        String sql = mHelper.buildQuery(new String[]{COLUMN_DATA}, COLUMN_KEY + " = ?");
+        for (int key = 1; key <= 2; key++) {
+            try (Cursor c = mHelper.rawQuery(sql, new String[]{Integer.toString(key)})) {
+                assertTrue(c.moveToNext());
+                assertEquals(DATA_SIZE, c.getBlob(0).length);
+            }
+        }
+        try (Cursor c = mHelper.rawQuery(sql, new String[]{"3"})) {
+            assertFalse(c.moveToNext());
+        }
+    }
+
+    @Test
+    @SmallTest
+    public void testUsesWriteAheadLog() {
+        mHelper.insertOrReplace(newValues(1));
+        assertTrue(mContext.getDatabasePath(DB_FILE + "-wal").exists());
+    }
+
+    /**
+     * Writes rows on the model worker like the icon cache update does, while another thread keeps
+     * reading them, and compares against the same load on a rollback journal.
+     */
+    @Test
+    @LargeTest
+    public void testConcurrentReadWriteBenchmark() throws Exception {
+        Store wal = new Store() {
+            final String mQuery = mHelper.buildQuery(new String[]{COLUMN_DATA}, COLUMN_KEY + " = ?");
+
+            @Override
+            public void write(ContentValues values) {
+                mHelper.insertOrReplace(values);
+            }
+
+            @Override
+            public Cursor read(String[] args) {
+                return mHelper.rawQuery(mQuery, args);
+            }
+        };
+        JournalHelper journalHelper = new JournalHelper(mContext);
+        Store journal = new Store() {
+            @Override
+            public void write(ContentValues values) {
+                journalHelper.getWritableDatabase().insertWithOnConflict(
+                        TABLE_NAME, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+            }
+
+            @Override
+            public Cursor read(String[] args) {
+                return journalHelper.getReadableDatabase().query(TABLE_NAME,
+                        new String[]{COLUMN_DATA}, COLUMN_KEY + " = ?", args, null, null, null);
+            }
+        };
+
+        try {
+            runBenchmark("journal", journal);
+            runBenchmark("wal", wal);
+        } finally {
+            journalHelper.close();
+        }
+    }
+
+    private void runBenchmark(String name, Store store) throws InterruptedException {
+        // Seed half the rows so reads have something to find
+        for (int i = 0; i < ROWS / 2; i++) {
+            store.write(newValues(i));
+        }
+
+        AtomicBoolean writing = new AtomicBoolean(true);
+        CountDownLatch done = new CountDownLatch(1);
+        long[] writeTime = new long[1];
+        new Handler(LauncherModel.getWorkerLooper()).post(() -> {
+            long start = SystemClock.elapsedRealtime();
+            for (int i = 0; i < ROWS; i++) {
+                store.write(newValues(i));
+            }
+            writeTime[0] = SystemClock.elapsedRealtime() - start;
+            writing.set(false);
+            done.countDown();
+        });
+
+        int reads = 0;
+        long start = SystemClock.elapsedRealtime();
+        while (writing.get()) {
+            String[] args = new String[]{Integer.toString(reads % (ROWS / 2))};
+            try (Cursor c = store.read(args)) {
+                c.moveToNext();
+            }
+            reads++;
+        }
+        long readTime = SystemClock.elapsedRealtime() - start;
+        assertTrue(done.await(1, TimeUnit.MINUTES));
+
+        Log.d(TAG, String.format("%s: %d writes in %dms, %d reads in %dms (%.1f reads/ms)",
+                name, ROWS, writeTime[0], reads, readTime, reads / (float) Math.max(readTime, 1)));
+    }
+
+    private static ContentValues newValues(int key) {
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_KEY, key);
+        values.put(COLUMN_DATA, new byte[DATA_SIZE]);
+        return values;
+    }
+
+    private static void createTable(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE_NAME + " (" +
+                COLUMN_KEY + " INTEGER PRIMARY KEY, " +
+                COLUMN_DATA + " BLOB);");
+    }
+
+    private interface Store {
+        void write(ContentValues values);
+
+        Cursor read(String[] args);
+    }
+
+    private static class TestCacheHelper extends SQLiteCacheHelper {
+
+        TestCacheHelper(Context context) {
+            super(context, DB_FILE, 1, TABLE_NAME);
+        }
+
+        @Override
+        protected void onCreateTable(SQLiteDatabase db) {
+            createTable(db);
+        }
+    }
+
+    private static class JournalHelper extends SQLiteOpenHelper {
+
+        JournalHelper(Context context) {
+            super(context, JOURNAL_DB_FILE, null, 1);
+            setWriteAheadLoggingEnabled(false);
+        }
+
+        @Override
+        public void onCreate(SQLiteDatabase db) {
+            createTable(db);
+        }
+
+        @Override
+        public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        }
+    }
+}
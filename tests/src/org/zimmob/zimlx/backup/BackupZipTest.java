@@ -0,0 +1,128 @@
+package org.zimmob.zimlx.backup;
+
+import com.android.launcher3.util.IOUtils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import junit.framework.TestCase;
+
+import androidx.test.filters.SmallTest;
+
+/**
+ * Unit tests for {@link BackupZip}
+ */
+@SmallTest
+public class BackupZipTest extends TestCase {
+
+    private File mFile;
+    private Map<String, byte[]> mContents;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mFile = File.createTempFile("backup", ".zip");
+
+        Random random = new Random(3);
+        byte[] binary = new byte[20000];
+        random.nextBytes(binary);
+        mContents = new HashMap<>();
+        mContents.put("lcbkp", "[1,\"name\",7,\"01-01-2019 10:00:00\"]"
+                .getBytes(StandardCharsets.UTF_8));
+        mContents.put("prefs/pref_appNameMap", new byte[0]);
+        mContents.put("launcher.db", repeat("CREATE TABLE favorites ", 500));
+        mContents.put("wallpaper.png", binary);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mFile.delete();
+        super.tearDown();
+    }
+
+    public void testWrittenArchiveIsReadableByZipFile() throws IOException {
+        writeArchive();
+        try (ZipFile zip = new ZipFile(mFile)) {
+            assertEquals(mContents.size(), zip.size());
+            for (Map.Entry<String, byte[]> entry : mContents.entrySet()) {
+                ZipEntry zipEntry = zip.getEntry(entry.getKey());
+                assertNotNull(entry.getKey(), zipEntry);
+                try (InputStream in = zip.getInputStream(zipEntry)) {
+                    assertTrue(entry.getKey(), Arrays.equals(entry.getValue(), IOUtils.toByteArray(in)));
+                }
+            }
+        }
+    }
+
+    public void testIndexReadsWrittenArchive() throws IOException {
+        writeArchive();
+        assertIndexMatches();
+    }
+
+    public void testIndexReadsStreamedArchive() throws IOException {
+        // ZipOutputStream puts sizes in data descriptors, like backups of older versions
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(mFile))) {
+            for (Map.Entry<String, byte[]> entry : mContents.entrySet()) {
+                out.putNextEntry(new ZipEntry(entry.getKey()));
+                out.write(entry.getValue());
+            }
+        }
+        assertIndexMatches();
+    }
+
+    public void testIndexRejectsOtherFiles() throws IOException {
+        try (FileOutputStream out = new FileOutputStream(mFile)) {
+            out.write(repeat("not a zip", 10));
+        }
+        try (FileInputStream in = new FileInputStream(mFile)) {
+            BackupZip.Index.Companion.read(in.getChannel());
+            fail("Expected an IOException");
+        } catch (IOException expected) {
+        }
+    }
+
+    private void writeArchive() throws IOException {
+        try (FileOutputStream out = new FileOutputStream(mFile)) {
+            BackupZip.Writer writer = new BackupZip.Writer(out);
+            for (Map.Entry<String, byte[]> entry : mContents.entrySet()) {
+                writer.write(entry.getKey().endsWith(".png")
+                        ? BackupZip.Entry.Companion.stored(entry.getKey(), entry.getValue())
+                        : BackupZip.Entry.Companion.deflated(entry.getKey(), entry.getValue()));
+            }
+            writer.finish();
+        }
+    }
+
+    private void assertIndexMatches() throws IOException {
+        try (FileInputStream in = new FileInputStream(mFile)) {
+            FileChannel channel = in.getChannel();
+            BackupZip.Index index = BackupZip.Index.Companion.read(channel);
+            assertEquals(mContents.keySet(), index.getNames());
+            for (Map.Entry<String, byte[]> entry : mContents.entrySet()) {
+                assertTrue(entry.getKey(), Arrays.equals(entry.getValue(),
+                        index.read(entry.getKey())));
+            }
+            assertNull(index.read("missing"));
+        }
+    }
+
+    private static byte[] repeat(String s, int count) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            sb.append(s);
+        }
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,105 @@
+package org.zimmob.zimlx.backup;
+
+import com.android.launcher3.util.IOUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import androidx.test.filters.SmallTest;
+
+/**
+ * Unit tests for {@link ChunkStore}
+ */
+@SmallTest
+public class ChunkStoreTest extends TestCase {
+
+    private File mDir;
+    private ChunkStore mStore;
+    private byte[] mData;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mDir = File.createTempFile("chunks", "");
+        mDir.delete();
+        mDir.mkdirs();
+        mStore = new ChunkStore(mDir);
+
+        Random random = new Random(5);
+        mData = new byte[300 * 1024];
+        random.nextBytes(mData);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mStore.gc(new HashSet<>());
+        mDir.delete();
+        super.tearDown();
+    }
+
+    public void testRoundTrip() throws IOException {
+        List<String> hashes = mStore.put(mData);
+        assertTrue(hashes.size() > 1);
+        assertTrue(Arrays.equals(mData, read(hashes)));
+        assertEquals(0, read(mStore.put(new byte[0])).length);
+    }
+
+    public void testUnchangedChunksAreReused() throws IOException {
+        List<String> first = mStore.put(mData);
+        long written = mStore.getWrittenBytes().get();
+
+        byte[] edited = new byte[mData.length + 10];
+        System.arraycopy(mData, 0, edited, 0, 1000);
+        System.arraycopy(mData, 1000, edited, 1010, mData.length - 1000);
+        List<String> second = mStore.put(edited);
+
+        assertTrue(Arrays.equals(edited, read(second)));
+        // Inserting bytes only touches the chunk around them, later boundaries shift with the data
+        assertEquals(first.subList(1, first.size()), second.subList(1, second.size()));
+        assertTrue(mStore.getNewBytes().get() - mData.length < 64 * 1024);
+        assertTrue(mStore.getWrittenBytes().get() > written);
+    }
+
+    public void testGcKeepsReferencedChunks() throws IOException {
+        List<String> kept = mStore.put(mData);
+        byte[] other = new byte[mData.length];
+        new Random(6).nextBytes(other);
+        List<String> dropped = mStore.put(other);
+
+        assertTrue(mStore.gc(new HashSet<>(kept)) > 0);
+        assertTrue(Arrays.equals(mData, read(kept)));
+        for (String hash : dropped) {
+            assertFalse(mStore.contains(hash));
+        }
+    }
+
+    public void testDamagedChunkFailsRead() throws IOException {
+        String hash = mStore.put(mData).get(0);
+        File file = new File(new File(mDir, hash.substring(0, 2)), hash);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(raf.length() - 1);
+            int last = raf.read();
+            raf.seek(raf.length() - 1);
+            raf.write(last ^ 1);
+        }
+        try {
+            mStore.read(hash);
+            fail("Expected an IOException");
+        } catch (IOException expected) {
+        }
+    }
+
+    private byte[] read(List<String> hashes) throws IOException {
+        try (InputStream in = mStore.open(hashes)) {
+            return IOUtils.toByteArray(in);
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package org.zimmob.zimlx.blur;
+
+import android.util.Log;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import androidx.test.filters.LargeTest;
+import androidx.test.filters.SmallTest;
+
+/**
+ * Unit tests for {@link StackBlur}
+ */
+public class StackBlurTest extends TestCase {
+
+    private static final String TAG = "StackBlurTest";
+
+    // Common wallpaper sizes, downsampled like BlurWallpaperProvider does
+    private static final int[][] SIZES = {
+            {1080 / 8, 1920 / 8},
+            {1440 / 8, 2560 / 8},
+            {2160 / 8, 3840 / 8},
+            {1080, 1920},
+    };
+    private static final int[] RADII = {3, 10, 25};
+
+    @SmallTest
+    public void testMatchesReferenceKernel() {
+        Random random = new Random(42);
+        int width = 97;
+        int height = 61;
+        for (int radius : RADII) {
+            int[] pixels = randomPixels(random, width * height);
+            int[] expected = referenceBlur(pixels, width, height, radius);
+
+            new StackBlur().blur(pixels, width, height, radius);
+            assertWithinTolerance(expected, pixels, 1);
+        }
+    }
+
+    @SmallTest
+    public void testSolidColorIsUnchanged() {
+        int[] pixels = new int[64 * 48];
+        Arrays.fill(pixels, 0xff336699);
+        new StackBlur().blur(pixels, 64, 48, 25);
+        for (int pixel : pixels) {
+            assertEquals(0xff336699, pixel);
+        }
+    }
+
+    @SmallTest
+    public void testReusesScratchAcrossSizes() {
+        Random random = new Random(7);
+        StackBlur blur = new StackBlur();
+        int[][] sizes = {{200, 100}, {16, 300}, {1, 1}, {50, 50}};
+        for (int[] size : sizes) {
+            int[] pixels = randomPixels(random, size[0] * size[1]);
+            int[] expected = referenceBlur(pixels, size[0], size[1], 5);
+            blur.blur(pixels, size[0], size[1], 5);
+            assertWithinTolerance(expected, pixels, 1);
+        }
+    }
+
+    @LargeTest
+    public void testBenchmark() {
+        Random random = new Random(0);
+        StackBlur blur = new StackBlur();
+        for (int[] size : SIZES) {
+            int[] source = randomPixels(random, size[0] * size[1]);
+            int[] pixels = new int[source.length];
+            for (int radius : RADII) {
+                // Warm up once so the scratch buffer and JIT are in place
+                System.arraycopy(source, 0, pixels, 0, source.length);
+                blur.blur(pixels, size[0], size[1], radius);
+
+                int runs = 5;
+                long start = System.nanoTime();
+                for (int i = 0; i < runs; i++) {
+                    System.arraycopy(source, 0, pixels, 0, source.length);
+                    blur.blur(pixels, size[0], size[1], radius);
+                }
+                long avgMicros = (System.nanoTime() - start) / runs / 1000;
+                Log.i(TAG, size[0] + "x" + size[1] + " r=" + radius + ": " + avgMicros + "us");
+            }
+        }
+    }
+
+    private static int[] randomPixels(Random random, int count) {
+        int[] pixels = new int[count];
+        for (int i = 0; i < count; i++) {
+            pixels[i] = random.nextInt();
+        }
+        return pixels;
+    }
+
+    /**
+     * Straightforward separable triangle kernel with edge clamping, same as the stack blur
+     * computes but O(radius) per pixel.
+     */
+    private static int[] referenceBlur(int[] src, int width, int height, int radius) {
+        int[] tmp = new int[width * height];
+        int[] out = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                tmp[y * width + x] = kernel(src, y * width, 1, width, x, radius);
+            }
+        }
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                out[y * width + x] = kernel(tmp, x, width, height, y, radius);
+            }
+        }
+        return out;
+    }
+
+    private static int kernel(int[] src, int offset, int step, int length, int pos, int radius) {
+        int divSum = (radius + 1) * (radius + 1);
+        int result = 0;
+        for (int shift = 0; shift < 32; shift += 8) {
+            int sum = 0;
+            for (int i = -radius; i <= radius; i++) {
+                int index = Math.min(length - 1, Math.max(0, pos + i));
+                sum += ((src[offset + index * step] >>> shift) & 0xff) * (radius + 1 - Math.abs(i));
+            }
+            result |= (sum / divSum) << shift;
+        }
+        return result;
+    }
+
+    private static void assertWithinTolerance(int[] expected, int[] actual, int tolerance) {
+        for (int i = 0; i < expected.length; i++) {
+            for (int shift = 0; shift < 32; shift += 8) {
+                int e = (expected[i] >>> shift) & 0xff;
+                int a = (actual[i] >>> shift) & 0xff;
+                assertTrue("pixel " + i + " channel " + shift + ": " + e + " != " + a,
+                        Math.abs(e - a) <= tolerance);
+            }
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package org.zimmob.zimlx.iconpack;
+
+import android.graphics.drawable.Drawable;
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.zimmob.zimlx.ZimUtilsKt;
+
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import androidx.test.filters.LargeTest;
+import androidx.test.filters.SmallTest;
+
+/**
+ * Tests for {@link IconPickerIndex}
+ */
+@SmallTest
+public class IconPickerIndexTest extends TestCase {
+
+    private static final String TAG = "IconPickerIndexTest";
+
+    public void testMatchesWordPrefixes() {
+        IconPickerIndex index = new IconPickerIndex(Arrays.asList(
+                new IconPack.CategoryTitle("C"),
+                new TestEntry("Google Camera"),
+                new TestEntry("Camera"),
+                new TestEntry("Calculator"),
+                new TestEntry("Open Camera", false)));
+
+        assertNames(index.search("cam"), "Google Camera", "Camera");
+        assertNames(index.search("CA"), "Google Camera", "Camera", "Calculator");
+        assertNames(index.search("camera goo"), "Google Camera");
+        assertNames(index.search("open"));
+        assertNames(index.search("xyz"));
+        assertNames(index.search(" "));
+    }
+
+    public void testSkipsUnavailableEntries() {
+        IconPickerIndex index = new IconPickerIndex(Arrays.asList(
+                new IconPack.CategoryTitle("A"),
+                new TestEntry("Alarm", false),
+                new TestEntry("Album")));
+        assertEquals(2, index.getEntries().size());
+    }
+
+    /**
+     * Compares searching a synthetic 10k icon pack against filtering every entry with the collator.
+     */
+    @LargeTest
+    public void testSearchLatency() {
+        List<IconPack.PackEntry> entries = new ArrayList<>();
+        String[] words = {"google", "camera", "clock", "calendar", "music", "maps", "mail",
+                "weather", "photos", "phone", "settings", "store", "notes", "files", "browser"};
+        for (int i = 0; i < 10000; i++) {
+            entries.add(new TestEntry(words[i % words.length] + " "
+                    + words[(i / words.length) % words.length] + " " + i));
+        }
+
+        long start = SystemClock.elapsedRealtimeNanos();
+        IconPickerIndex index = new IconPickerIndex(entries);
+        long buildTime = SystemClock.elapsedRealtimeNanos() - start;
+
+        Collator collator = Collator.getInstance();
+        String[] queries = {"c", "ca", "cam", "came", "camera", "camera g", "camera go"};
+        long indexTime = 0;
+        long linearTime = 0;
+        for (String query : queries) {
+            start = SystemClock.elapsedRealtimeNanos();
+            int found = index.search(query).size();
+            indexTime += SystemClock.elapsedRealtimeNanos() - start;
+
+            start = SystemClock.elapsedRealtimeNanos();
+            for (IconPack.PackEntry entry : entries) {
+                ZimUtilsKt.matches(collator, query, ((IconPack.Entry) entry).getDisplayName());
+            }
+            linearTime += SystemClock.elapsedRealtimeNanos() - start;
+            assertTrue(query, found > 0);
+        }
+
+        Log.d(TAG, String.format("10k entries: index built in %.1fms, "
+                        + "%.2fms per query indexed, %.2fms per query linear",
+                buildTime / 1e6, indexTime / 1e6 / queries.length,
+                linearTime / 1e6 / queries.length));
+    }
+
+    private static void assertNames(List<IconPack.Entry> actual, String... expected) {
+        List<String> names = new ArrayList<>();
+        for (IconPack.Entry entry : actual) {
+            names.add(entry.getDisplayName());
+        }
+        assertEquals(Arrays.asList(expected), names);
+    }
+
+    private static class TestEntry extends IconPack.Entry {
+
+        private final String mName;
+        private final boolean mAvailable;
+
+        TestEntry(String name) {
+            this(name, true);
+        }
+
+        TestEntry(String name, boolean available) {
+            mName = name;
+            mAvailable = available;
+        }
+
+        @Override
+        public String getDisplayName() {
+            return mName;
+        }
+
+        @Override
+        public String getIdentifierName() {
+            return mName.toLowerCase().replace(' ', '_');
+        }
+
+        @Override
+        public boolean isAvailable() {
+            return mAvailable;
+        }
+
+        @Override
+        public Drawable drawableForDensity(int density) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public IconPackManager.CustomIconEntry toCustomEntry() {
+            return new IconPackManager.CustomIconEntry("test", getIdentifierName(), null);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package org.zimmob.zimlx.settings.ui.search;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import androidx.test.filters.SmallTest;
+
+/**
+ * Unit tests for {@link PrefixTrie}
+ */
+@SmallTest
+public class PrefixTrieTest extends TestCase {
+
+    private PrefixTrie mTrie;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mTrie = new PrefixTrie.Builder()
+                .add("icon", 1)
+                .add("icons", 2)
+                .add("iconpack", 3)
+                .add("dock", 4)
+                .add("drawer", 5)
+                .add("icon", 6)
+                .add("i", 7)
+                .build();
+    }
+
+    public void testFindsAllWordsWithPrefix() {
+        assertPostings(mTrie.find("icon"), 1, 2, 3, 6);
+        assertPostings(mTrie.find("i"), 1, 2, 3, 6, 7);
+        assertPostings(mTrie.find("d"), 4, 5);
+        assertPostings(mTrie.find("iconp"), 3);
+        assertPostings(mTrie.find("icons"), 2);
+        assertPostings(mTrie.find(""), 1, 2, 3, 4, 5, 6, 7);
+    }
+
+    public void testMissingPrefix() {
+        assertEquals(0, mTrie.find("x").length);
+        assertEquals(0, mTrie.find("iconz").length);
+        assertEquals(0, mTrie.find("iconpacks").length);
+        assertEquals(0, new PrefixTrie.Builder().build().find("a").length);
+    }
+
+    public void testSurvivesSerialization() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            mTrie.writeTo(out);
+        }
+        PrefixTrie read = PrefixTrie.readFrom(
+                new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        assertPostings(read.find("icon"), 1, 2, 3, 6);
+        assertPostings(read.find("dr"), 5);
+    }
+
+    public void testTokenizeNormalizes() {
+        assertEquals(Arrays.asList("icon", "pack", "cafe", "2x"),
+                PrefixTrie.tokenize("Icon-Pack  Café (2x)"));
+        assertTrue(PrefixTrie.tokenize(" - ").isEmpty());
+    }
+
+    private static void assertPostings(int[] actual, int... expected) {
+        int[] sorted = actual.clone();
+        Arrays.sort(sorted);
+        assertTrue(Arrays.toString(sorted), Arrays.equals(expected, sorted));
+    }
+}
@@ -0,0 +1,109 @@
+package org.zimmob.zimlx.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import androidx.test.filters.MediumTest;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+
+/**
+ * Tests for {@link ZimHttpClient} against a local server
+ */
+@MediumTest
+public class ZimHttpClientTest extends TestCase {
+
+    private static final ZimHttpClient.Endpoint CACHED =
+            new ZimHttpClient.Endpoint("cached", 5000, 60);
+    private static final ZimHttpClient.Endpoint UNCACHED =
+            new ZimHttpClient.Endpoint("uncached", 5000, 0);
+    private static final ZimHttpClient.Endpoint SHORT_TIMEOUT =
+            new ZimHttpClient.Endpoint("short_timeout", 200, 0);
+
+    private MockWebServer mServer;
+    private File mCacheDir;
+    private ZimHttpClient mClient;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mServer = new MockWebServer();
+        mServer.start();
+        mCacheDir = File.createTempFile("http", "cache");
+        mCacheDir.delete();
+        mClient = new ZimHttpClient(mCacheDir, false);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mServer.shutdown();
+        mClient.getClient().cache().delete();
+        super.tearDown();
+    }
+
+    public void testEndpointMaxAgeServesFromCache() throws Exception {
+        mServer.enqueue(new MockResponse().setBody("first"));
+        mServer.enqueue(new MockResponse().setBody("second"));
+        String url = mServer.url("/cached").toString();
+
+        assertEquals("first", mClient.get(CACHED, url));
+        assertEquals("first", mClient.get(CACHED, url));
+        assertEquals(1, mServer.getRequestCount());
+        assertEquals(1, mClient.getMetrics().get("cached").getCacheHits().get());
+    }
+
+    public void testServerHeadersApplyWithoutMaxAge() throws Exception {
+        mServer.enqueue(new MockResponse().setBody("first").setHeader("Cache-Control", "no-store"));
+        mServer.enqueue(new MockResponse().setBody("second"));
+        String url = mServer.url("/uncached").toString();
+
+        assertEquals("first", mClient.get(UNCACHED, url));
+        assertEquals("second", mClient.get(UNCACHED, url));
+        assertEquals(2, mServer.getRequestCount());
+    }
+
+    public void testIdenticalRequestsAreCoalesced() throws Exception {
+        mServer.enqueue(new MockResponse().setBody("slow").setBodyDelay(500, TimeUnit.MILLISECONDS));
+        String url = mServer.url("/slow").toString();
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Future<?>[] results = new Future[4];
+            for (int i = 0; i < results.length; i++) {
+                results[i] = executor.submit(() -> mClient.get(UNCACHED, url));
+            }
+            for (Future<?> result : results) {
+                assertEquals("slow", result.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, mServer.getRequestCount());
+        assertEquals(3, mClient.getMetrics().get("uncached").getCoalesced().get());
+    }
+
+    public void testEndpointTimeout() throws Exception {
+        mServer.enqueue(new MockResponse().setBody("late").setBodyDelay(2, TimeUnit.SECONDS));
+        try {
+            mClient.get(SHORT_TIMEOUT, mServer.url("/late").toString());
+            fail("Expected the call to time out");
+        } catch (IOException expected) {
+        }
+        assertEquals(1, mClient.getMetrics().get("short_timeout").getFailures().get());
+    }
+
+    public void testErrorResponseThrows() throws Exception {
+        mServer.enqueue(new MockResponse().setResponseCode(500));
+        try {
+            mClient.get(UNCACHED, mServer.url("/error").toString());
+            fail("Expected an error for a failed response");
+        } catch (IOException expected) {
+        }
+    }
+}